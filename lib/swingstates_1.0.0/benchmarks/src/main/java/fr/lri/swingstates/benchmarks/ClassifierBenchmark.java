@@ -0,0 +1,94 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fr.lri.swingstates.gestures.AbstractClassifier;
+import fr.lri.swingstates.gestures.Gesture;
+import fr.lri.swingstates.gestures.Score;
+import fr.lri.swingstates.gestures.clement.ClementClassifier;
+import fr.lri.swingstates.gestures.dollar1.Dollar1Classifier;
+import fr.lri.swingstates.gestures.dtw.DTWClassifier;
+import fr.lri.swingstates.gestures.rubine.RubineClassifier;
+
+/**
+ * Measures the recognition of a gesture by each classifier, for several vocabulary sizes.
+ * Classes are random walks and their examples are noisy copies of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ClassifierBenchmark {
+
+	@Param({ "rubine", "dollar1", "clement", "dtw" })
+	public String classifierName;
+
+	@Param({ "10", "100" })
+	public int nbClasses;
+
+	@Param({ "10" })
+	public int nbExamplesPerClass;
+
+	@Param({ "false", "true" })
+	public boolean parallel;
+
+	private AbstractClassifier classifier;
+	private ArrayList<Gesture> inputs = new ArrayList<Gesture>();
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		if (classifierName.equals("rubine"))
+			classifier = new RubineClassifier();
+		else if (classifierName.equals("dollar1"))
+			classifier = new Dollar1Classifier();
+		else if (classifierName.equals("clement"))
+			classifier = new ClementClassifier();
+		else
+			classifier = new DTWClassifier();
+		classifier.setParallel(parallel);
+
+		Random random = new Random(42);
+		for (int i = 0; i < nbClasses; i++) {
+			String className = "class" + i;
+			Gesture prototype = Scenes.randomGesture(random, 40);
+			classifier.addClass(className);
+			for (int j = 0; j < nbExamplesPerClass; j++)
+				classifier.addExample(className, Scenes.jitter(random, prototype, 3));
+			inputs.add(Scenes.jitter(random, prototype, 5));
+		}
+	}
+
+	private Gesture nextInput() {
+		next = (next + 1) % inputs.size();
+		return inputs.get(next);
+	}
+
+	@Benchmark
+	public String classify() throws Exception {
+		return classifier.classify(nextInput());
+	}
+
+	@Benchmark
+	public Vector<Score> sortedClasses() {
+		return classifier.sortedClasses(nextInput());
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.benchmarks;
+
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Point2D;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+
+import fr.lri.swingstates.canvas.CShape;
+import fr.lri.swingstates.canvas.CStateMachine;
+import fr.lri.swingstates.canvas.Canvas;
+import fr.lri.swingstates.canvas.transitions.PressOnShape;
+import fr.lri.swingstates.sm.State;
+import fr.lri.swingstates.sm.StateMachine;
+import fr.lri.swingstates.sm.Transition;
+import fr.lri.swingstates.sm.transitions.Drag;
+import fr.lri.swingstates.sm.transitions.Event;
+import fr.lri.swingstates.sm.transitions.Release;
+
+/**
+ * Measures the throughput of state machines: a drag and drop machine attached to a canvas
+ * receiving press, drag and release events, and a machine receiving virtual events.
+ * Events are processed in batches on the event dispatch thread, as in an application.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DispatchBenchmark {
+
+	static final int EVENTS = 1024;
+
+	@Param({ "100", "1000", "10000" })
+	public int nbShapes;
+
+	private Canvas canvas;
+	private MouseEvent[] mouseEvents;
+	private StateMachine virtualMachine;
+
+	private final Runnable dispatchMouseEvents = new Runnable() {
+		public void run() {
+			for (int i = 0; i < mouseEvents.length; i++) {
+				MouseEvent event = mouseEvents[i];
+				switch (event.getID()) {
+				case MouseEvent.MOUSE_PRESSED:
+					canvas.mousePressed(event);
+					break;
+				case MouseEvent.MOUSE_DRAGGED:
+					canvas.mouseDragged(event);
+					break;
+				default:
+					canvas.mouseReleased(event);
+					break;
+				}
+			}
+		}
+	};
+
+	private final Runnable dispatchVirtualEvents = new Runnable() {
+		public void run() {
+			for (int i = 0; i < EVENTS; i++)
+				virtualMachine.processEvent((i & 1) == 0 ? "on" : "off");
+		}
+	};
+
+	@Setup
+	public void setup() {
+		canvas = Scenes.newCanvas(nbShapes, 42);
+		CStateMachine dragAndDrop = new CStateMachine() {
+			Point2D p;
+			CShape dragged;
+			public State start = new State() {
+				Transition press = new PressOnShape(BUTTON1, ">> drag") {
+					public void action() {
+						p = getPoint();
+						dragged = getShape();
+					}
+				};
+			};
+			public State drag = new State() {
+				Transition move = new Drag(BUTTON1) {
+					public void action() {
+						Point2D q = getPoint();
+						dragged.translateBy(q.getX() - p.getX(), q.getY() - p.getY());
+						p = q;
+					}
+				};
+				Transition release = new Release(BUTTON1, ">> start") { };
+			};
+		};
+		dragAndDrop.attachTo(canvas);
+
+		// press on a shape, drag it back and forth, release it
+		mouseEvents = new MouseEvent[EVENTS];
+		CShape target = canvas.getDisplayList().get(canvas.getDisplayList().size() - 1);
+		int x = (int) target.getCenterX();
+		int y = (int) target.getCenterY();
+		for (int i = 0; i < EVENTS; i++) {
+			int id = MouseEvent.MOUSE_DRAGGED;
+			int dx = (i % 16) < 8 ? i % 16 : 16 - i % 16;
+			if (i % 64 == 0) {
+				id = MouseEvent.MOUSE_PRESSED;
+				dx = 0;
+			} else if (i % 64 == 63) {
+				id = MouseEvent.MOUSE_RELEASED;
+				dx = 0;
+			}
+			int modifiers = id == MouseEvent.MOUSE_RELEASED ? 0 : InputEvent.BUTTON1_DOWN_MASK;
+			mouseEvents[i] = new MouseEvent(canvas, id, 0, modifiers, x + dx, y, 1, false, MouseEvent.BUTTON1);
+		}
+
+		virtualMachine = new StateMachine() {
+			public State off = new State() {
+				Transition on = new Event("on", ">> on") { };
+			};
+			public State on = new State() {
+				Transition off = new Event("off", ">> off") { };
+			};
+		};
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS)
+	public void canvasMouseEvents() throws InterruptedException, InvocationTargetException {
+		SwingUtilities.invokeAndWait(dispatchMouseEvents);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS)
+	public void virtualEvents() throws InterruptedException, InvocationTargetException {
+		SwingUtilities.invokeAndWait(dispatchVirtualEvents);
+	}
+
+}
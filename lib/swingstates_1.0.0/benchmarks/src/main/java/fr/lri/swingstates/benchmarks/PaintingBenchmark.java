@@ -0,0 +1,71 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import fr.lri.swingstates.canvas.Canvas;
+
+/**
+ * Measures the painting of a whole canvas and of a small damaged region into a <code>BufferedImage</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintingBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int nbShapes;
+
+	@Param({ "false", "true" })
+	public boolean antialiased;
+
+	private Canvas canvas;
+	private BufferedImage image;
+	private Graphics2D graphics;
+
+	@Setup
+	public void setup() {
+		canvas = Scenes.newCanvas(nbShapes, 42);
+		canvas.setAntialiased(antialiased);
+		canvas.setDoubleBuffered(false);
+		image = new BufferedImage(Scenes.WIDTH, Scenes.HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		graphics = image.createGraphics();
+	}
+
+	@TearDown
+	public void tearDown() {
+		graphics.dispose();
+	}
+
+	@Benchmark
+	public BufferedImage paintAll() {
+		graphics.setClip(0, 0, Scenes.WIDTH, Scenes.HEIGHT);
+		canvas.paint(graphics);
+		return image;
+	}
+
+	@Benchmark
+	public BufferedImage paintDamagedRegion() {
+		graphics.setClip(Scenes.WIDTH / 2, Scenes.HEIGHT / 2, 64, 64);
+		canvas.paint(graphics);
+		return image;
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.benchmarks;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fr.lri.swingstates.canvas.CShape;
+import fr.lri.swingstates.canvas.Canvas;
+
+/**
+ * Measures <code>Canvas.pick</code> and <code>Canvas.pickAll</code> at random points,
+ * and picking right after a shape has moved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PickingBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int nbShapes;
+
+	private Canvas canvas;
+	private CShape moving;
+	private Point2D[] points;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		canvas = Scenes.newCanvas(nbShapes, 42);
+		moving = canvas.getDisplayList().get(0);
+		points = Scenes.randomPoints(1024, 7);
+	}
+
+	private Point2D nextPoint() {
+		next = (next + 1) & (points.length - 1);
+		return points[next];
+	}
+
+	@Benchmark
+	public CShape pick() {
+		return canvas.pick(nextPoint());
+	}
+
+	@Benchmark
+	public List<CShape> pickAll() {
+		return canvas.pickAll(nextPoint());
+	}
+
+	@Benchmark
+	public CShape moveThenPick() {
+		Point2D p = nextPoint();
+		moving.translateTo(p.getX(), p.getY());
+		return canvas.pick(p);
+	}
+
+}
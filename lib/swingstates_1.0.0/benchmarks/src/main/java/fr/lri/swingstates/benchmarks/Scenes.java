@@ -0,0 +1,102 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.benchmarks;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import fr.lri.swingstates.canvas.CShape;
+import fr.lri.swingstates.canvas.Canvas;
+import fr.lri.swingstates.gestures.Gesture;
+
+/**
+ * Builds the random, reproducible scenes and gestures the benchmarks run on.
+ */
+class Scenes {
+
+	static final int WIDTH = 1024;
+	static final int HEIGHT = 768;
+
+	/**
+	 * Builds a canvas containing rectangles, ellipses and segments at random positions.
+	 * @param nbShapes The number of shapes.
+	 * @param seed The seed of the random positions.
+	 * @return The canvas.
+	 */
+	static Canvas newCanvas(int nbShapes, long seed) {
+		Random random = new Random(seed);
+		Canvas canvas = new Canvas(WIDTH, HEIGHT);
+		canvas.setSize(WIDTH, HEIGHT);
+		for (int i = 0; i < nbShapes; i++) {
+			double x = random.nextDouble() * WIDTH;
+			double y = random.nextDouble() * HEIGHT;
+			double w = 5 + random.nextDouble() * 45;
+			double h = 5 + random.nextDouble() * 45;
+			CShape shape;
+			switch (i % 3) {
+			case 0:
+				shape = canvas.newRectangle(x, y, w, h);
+				break;
+			case 1:
+				shape = canvas.newEllipse(x, y, w, h);
+				break;
+			default:
+				shape = canvas.newSegment(x, y, x + w, y + h);
+				break;
+			}
+			shape.setFillPaint(new Color(random.nextInt(0xffffff)));
+		}
+		return canvas;
+	}
+
+	/**
+	 * Draws points at random positions on a canvas.
+	 * @param nbPoints The number of points.
+	 * @param seed The seed of the random positions.
+	 * @return The points.
+	 */
+	static Point2D[] randomPoints(int nbPoints, long seed) {
+		Random random = new Random(seed);
+		Point2D[] points = new Point2D[nbPoints];
+		for (int i = 0; i < nbPoints; i++)
+			points[i] = new Point2D.Double(random.nextDouble() * WIDTH, random.nextDouble() * HEIGHT);
+		return points;
+	}
+
+	/**
+	 * Builds a gesture as a random walk.
+	 * @param random The random generator.
+	 * @param nbPoints The number of points of the gesture.
+	 * @return The gesture.
+	 */
+	static Gesture randomGesture(Random random, int nbPoints) {
+		Gesture gesture = new Gesture();
+		double x = 0, y = 0;
+		for (int i = 0; i < nbPoints; i++) {
+			x += random.nextGaussian() * 10;
+			y += random.nextGaussian() * 10;
+			gesture.addPoint(x, y);
+		}
+		return gesture;
+	}
+
+	/**
+	 * Builds a noisy copy of a gesture.
+	 * @param random The random generator.
+	 * @param gesture The gesture to copy.
+	 * @param noise The standard deviation of the noise added to each coordinate.
+	 * @return The noisy gesture.
+	 */
+	static Gesture jitter(Random random, Gesture gesture, double noise) {
+		Gesture copy = new Gesture();
+		for (int i = 0; i < gesture.getPoints().size(); i++) {
+			Point2D p = gesture.getPoints().get(i);
+			copy.addPoint(p.getX() + random.nextGaussian() * noise, p.getY() + random.nextGaussian() * noise);
+		}
+		return copy;
+	}
+
+}
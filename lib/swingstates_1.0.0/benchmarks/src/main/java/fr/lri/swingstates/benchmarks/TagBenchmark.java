@@ -0,0 +1,99 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fr.lri.swingstates.canvas.CExtensionalTag;
+import fr.lri.swingstates.canvas.CShape;
+import fr.lri.swingstates.canvas.CTag;
+import fr.lri.swingstates.canvas.Canvas;
+
+/**
+ * Measures tag operations: membership tests, tagging and untagging a shape,
+ * iterating over the shapes of a tag and over the shapes of a conjunction of tags.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TagBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int nbShapes;
+
+	private List<CShape> shapes;
+	private CExtensionalTag even;
+	private CExtensionalTag thirds;
+	private CTag evenAndThirds;
+	private CExtensionalTag toggled;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		Canvas canvas = Scenes.newCanvas(nbShapes, 42);
+		shapes = canvas.getDisplayList();
+		even = new CExtensionalTag(canvas) { };
+		thirds = new CExtensionalTag(canvas) { };
+		toggled = new CExtensionalTag(canvas) { };
+		for (int i = 0; i < shapes.size(); i++) {
+			if (i % 2 == 0) shapes.get(i).addTag(even);
+			if (i % 3 == 0) shapes.get(i).addTag(thirds);
+		}
+		evenAndThirds = even.and(thirds);
+	}
+
+	private CShape nextShape() {
+		next = (next + 7919) % shapes.size();
+		return shapes.get(next);
+	}
+
+	@Benchmark
+	public boolean hasTag() {
+		return nextShape().hasTag(even);
+	}
+
+	@Benchmark
+	public boolean addThenRemoveTag() {
+		CShape shape = nextShape();
+		shape.addTag(toggled);
+		shape.removeTag(toggled);
+		return shape.hasTag(toggled);
+	}
+
+	@Benchmark
+	public int iterateTag() {
+		int n = 0;
+		even.reset();
+		while (even.hasNext()) {
+			even.nextShape();
+			n++;
+		}
+		return n;
+	}
+
+	@Benchmark
+	public int iterateAndTag() {
+		int n = 0;
+		evenAndThirds.reset();
+		while (evenAndThirds.hasNext()) {
+			evenAndThirds.nextShape();
+			n++;
+		}
+		return n;
+	}
+
+}
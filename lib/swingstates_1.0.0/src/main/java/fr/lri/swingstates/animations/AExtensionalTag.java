@@ -5,7 +5,11 @@
 */
 package fr.lri.swingstates.animations;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 
 
 
@@ -29,6 +33,16 @@ public class AExtensionalTag extends ATag {
 		super();
 		collection = new LinkedList<Object>();
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<Animation> getAnimations() {
+		ArrayList<Animation> animations = new ArrayList<Animation>(collection.size());
+		for (Iterator<Object> i = collection.iterator(); i.hasNext();)
+			animations.add((Animation) i.next());
+		return Collections.unmodifiableList(animations);
+	}
 	
 	/**
 	 * Method called when this tag is added to a <code>Animation</code>. By default, this method does nothing.
@@ -5,7 +5,10 @@
 */
 package fr.lri.swingstates.animations;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import fr.lri.swingstates.canvas.CElement;
 import fr.lri.swingstates.sm.Tag;
@@ -90,10 +93,26 @@ public class ATag extends Tag {
 	 * @return true if <code>a</code> is tagged by this tag, false otherwise.
 	 */
 	public boolean tagsAnimation(Animation a) {
+		for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+			if(cursor.next() == a) return true;
+		return false;
+	}
+
+	/**
+	 * Returns the animations that have this tag when this method is called.
+	 * Unlike <code>reset()</code>, <code>hasNext()</code> and <code>nextAnimation()</code>,
+	 * which share one iterator, the returned list is not affected by browsing this tag
+	 * again, nor by tagging or untagging animations while browsing it.
+	 * The bulk operations of a tag (<code>action()</code>, <code>start()</code>, etc.)
+	 * browse this list.
+	 * @return an unmodifiable list of the animations that have this tag.
+	 */
+	public List<Animation> getAnimations() {
+		ArrayList<Animation> animations = new ArrayList<Animation>();
 		reset();
 		while(hasNext())
-			if(nextAnimation() == a) return true;
-		return false;
+			animations.add(nextAnimation());
+		return Collections.unmodifiableList(animations);
 	}
 	
 	/**
@@ -108,9 +127,8 @@ public class ATag extends Tag {
 	 * @return this tag
 	 */ 
 	public final ATag action(){
-		reset(); 
-		while(hasNext())
-			action(nextAnimation());
+		for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+			action(cursor.next());
 		return this;
 	}
 	
@@ -121,9 +139,8 @@ public class ATag extends Tag {
 	 * @see fr.lri.swingstates.animations.Animation#setDelay(int)
 	 */
 	public ATag setDelay(int d) {
-		reset(); 
-		while(hasNext())
-			nextAnimation().setDelay(d);
+		for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+			cursor.next().setDelay(d);
 		return this;
 	}
 	
@@ -134,9 +151,8 @@ public class ATag extends Tag {
 	 * @see fr.lri.swingstates.animations.Animation#setLapDuration(long)
 	 */
 	public ATag setDurationLap(long d) {
-		reset(); 
-		while(hasNext())
-			nextAnimation().setLapDuration(d);
+		for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+			cursor.next().setLapDuration(d);
 		return this;
 	}
 	
@@ -147,9 +163,8 @@ public class ATag extends Tag {
 	 * @see fr.lri.swingstates.animations.Animation#setFunction(short)
 	 */
 	public ATag setFunction(short t) {
-		reset(); 
-		while(hasNext())
-			nextAnimation().setFunction(t);
+		for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+			cursor.next().setFunction(t);
 		return this;
 	}
 	
@@ -160,9 +175,8 @@ public class ATag extends Tag {
 	 * @see fr.lri.swingstates.animations.Animation#setNbLaps(int)
 	 */
 	public ATag setNbLaps(int laps) {
-		reset(); 
-		while(hasNext())
-			nextAnimation().setNbLaps(laps);
+		for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+			cursor.next().setNbLaps(laps);
 		return this;
 	}
 	
@@ -173,9 +187,8 @@ public class ATag extends Tag {
 	 * @see fr.lri.swingstates.animations.Animation#setAnimatedElement(CElement)
 	 */
 	public ATag setAnimatedElement(CElement ce) {
-		reset(); 
-		while(hasNext())
-			nextAnimation().setAnimatedElement(ce);
+		for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+			cursor.next().setAnimatedElement(ce);
 		return this;
 	}
 	
@@ -185,9 +198,8 @@ public class ATag extends Tag {
 	 * @see fr.lri.swingstates.animations.Animation#start()
 	 */
 	public final ATag start() {
-		reset(); 
-		while(hasNext())
-			nextAnimation().start();
+		for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+			cursor.next().start();
 		return this;
 	}
 	
@@ -197,9 +209,8 @@ public class ATag extends Tag {
 	 * @see fr.lri.swingstates.animations.Animation#stop()
 	 */
 	public final ATag stop() {
-		reset(); 
-		while(hasNext())
-			nextAnimation().stop();
+		for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+			cursor.next().stop();
 		return this;
 	}
 	
@@ -209,9 +220,8 @@ public class ATag extends Tag {
 	 * @see fr.lri.swingstates.animations.Animation#suspend()
 	 */
 	public final ATag suspend() {
-		reset(); 
-		while(hasNext())
-			nextAnimation().suspend();
+		for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+			cursor.next().suspend();
 		return this;
 	}
 	
@@ -221,9 +231,8 @@ public class ATag extends Tag {
 	 * @see fr.lri.swingstates.animations.Animation#resume()
 	 */
 	public final ATag resume() {
-		reset(); 
-		while(hasNext())
-			nextAnimation().resume();
+		for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+			cursor.next().resume();
 		return this;
 	}
 
@@ -236,9 +245,8 @@ public class ATag extends Tag {
 	public ATag addTag(AExtensionalTag t){ 
 		if(t == null || t == this)
 			return this;
-		reset(); 
-		while(hasNext())
-			(nextAnimation()).addTag(t);
+		for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+			(cursor.next()).addTag(t);
 		return this;
 	}
 	
@@ -251,9 +259,8 @@ public class ATag extends Tag {
 	public ATag addTag(String t){ 
 		if(t == null)
 			return this;
-		reset(); 
-		while(hasNext())
-			(nextAnimation()).addTag(t);
+		for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+			(cursor.next()).addTag(t);
 		return this;
 	}
 	
@@ -267,15 +274,11 @@ public class ATag extends Tag {
 	public ATag removeTag(AExtensionalTag t) { 
 		if(t == null) return this;
 		if(t == this) {
-			reset(); 
-			while(hasNext()) {
-				t.removeFrom(nextAnimation());
-				reset();
-			}
+			for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+				t.removeFrom(cursor.next());
 		} else {
-			reset(); 
-			while(hasNext())
-				(nextAnimation()).removeTag(t);
+			for (Iterator<Animation> cursor = getAnimations().iterator(); cursor.hasNext();)
+				(cursor.next()).removeTag(t);
 		}
 		return this;
 	}
@@ -5,20 +5,37 @@
 */
 package fr.lri.swingstates.canvas;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 
 /**
  * A <code>CAndTag</code> is a CTag corresponding to the set of shapes tagged 
  * by a <code>CTag t1</code> and a <code>CTag t2</code>.
+ * 
+ * <p>When both tags can be represented as bitmaps of shape ids (extensional and intentional
+ * tags, and combinations of them), the intersection is computed with word-parallel
+ * operations and kept until one of the two tags changes. Shapes are then browsed in
+ * display order. Otherwise, the shapes of t1 are browsed and those tagged by t2 are kept.</p>
  * @author Caroline Appert
  */
 public class CAndTag extends CTag {
 
 	private CTag tag1;
 	private CTag tag2;
-	private CShape next;
+
+	// the intersection of the bitmaps of the two tags, the versions of these bitmaps
+	// it has been computed from, and the shapes it contains
+	private BitSet bits = null;
+	private int version1, version2;
+	private int bitsVersion = 0;
+	private List<Object> shapes = null;
+	// the version of the display list these shapes have been sorted from
+	private int shapesOrder;
 	
 	/**
 	 * Builds a <code>CAndTag</code>tag corresponding to the set of shapes tagged by a tag t1 and a tag t2.
@@ -30,49 +47,88 @@ public class CAndTag extends CTag {
 		tag1 = t1;
 		tag2 = t2;
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	BitSet bits() {
+		if(canvas == null || tag2.canvas != canvas) return null;
+		synchronized(canvas.displayOrder) {
+			BitSet bits1 = tag1.bits();
+			BitSet bits2 = bits1 == null ? null : tag2.bits();
+			if(bits2 == null) return null;
+			if(bits == null || tag1.bitsVersion() != version1 || tag2.bitsVersion() != version2) {
+				BitSet b = (BitSet) bits1.clone();
+				b.and(bits2);
+				bits = b;
+				version1 = tag1.bitsVersion();
+				version2 = tag2.bitsVersion();
+				bitsVersion++;
+				shapes = null;
+			}
+			return bits;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	int bitsVersion() {
+		return bitsVersion;
+	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
 	public void reset() {
-		tag1.reset();
-		tag2.reset();
+		collection = getCollection();
+		iterator = collection.iterator();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public boolean hasNext(){
-		if(!tag1.hasNext()) return false;
-		while(tag1.hasNext()) {
-			next = tag1.nextShape();
-			if(tag2.getCollection().contains(next)) return true;
+	public boolean tagsShape(CShape s) {
+		if(canvas != null) {
+			synchronized(canvas.displayOrder) {
+				BitSet b = bits();
+				if(b != null) return s.getCanvas() == canvas && s.id >= 0 && b.get(s.id);
+			}
 		}
-		return false;
+		return tag1.tagsShape(s) && tag2.tagsShape(s);
 	}
 	
-	
 	/**
 	 * Returns a collection containing all the shapes tagged by this tag.
-	 * This method makes use of the iterator of the two tags, 
-	 * thus it must not been used while browsing t1 or t2.
 	 * @return a collection containing all the shapes tagged by this tag.
 	 */
 	public Collection<Object> getCollection() {
-		LinkedList<Object> l = new LinkedList<Object>();
-		tag1.reset();
-		while(tag1.hasNext()) {
-			CShape s = tag1.nextShape();
-			if(tag2.getCollection().contains(s)) l.add(s);
+		if(canvas != null) {
+			synchronized(canvas.displayOrder) {
+				BitSet b = bits();
+				if(b != null) {
+					if(shapes == null || shapesOrder != canvas.displayList.version()) {
+						shapes = Collections.unmodifiableList(canvas.shapesInDisplayOrder(b));
+						shapesOrder = canvas.displayList.version();
+					}
+					return shapes;
+				}
+			}
+		}
+		List<Object> l = new ArrayList<Object>();
+		for(Iterator<CShape> i = tag1.getShapes().iterator(); i.hasNext();) {
+			CShape s = i.next();
+			if(tag2.tagsShape(s)) l.add(s);
 		}
-		return l;	
+		return l;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public CShape nextShape() {
-		return next;
+	@SuppressWarnings("unchecked")
+	public List<CShape> getShapes() {
+		return Collections.unmodifiableList((List<CShape>) (List<?>) getCollection());
 	}
 	
 }
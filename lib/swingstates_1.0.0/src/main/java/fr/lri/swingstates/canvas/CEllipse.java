@@ -55,4 +55,32 @@ public class CEllipse extends CRectangularShape {
 		return sms;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * The outline is bounded by the ellipses of the same center whose radii are
+	 * those of this ellipse plus and minus half the width of the stroke, which is
+	 * exact for a circle and a close approximation for an ellipse.
+	 */
+	boolean outlineHits(double x, double y, double tolerance) {
+		double halfWidth = plainStrokeHalfWidth();
+		if (halfWidth < 0 || !(getShape() instanceof Ellipse2D))
+			return super.outlineHits(x, y, tolerance);
+		Ellipse2D ellipse = (Ellipse2D) getShape();
+		double a = ellipse.getWidth() / 2;
+		double b = ellipse.getHeight() / 2;
+		if (a <= 0 || b <= 0)
+			return super.outlineHits(x, y, tolerance);
+		double px = x - ellipse.getCenterX();
+		double py = y - ellipse.getCenterY();
+		double margin = halfWidth + tolerance / 2;
+		if (implicit(px, py, a + margin, b + margin) > 1)
+			return false;
+		return a <= margin || b <= margin || implicit(px, py, a - margin, b - margin) >= 1;
+	}
+
+	// the value of the implicit equation of the ellipse of radii a and b centered on (0, 0)
+	private static double implicit(double x, double y, double a, double b) {
+		return (x * x) / (a * a) + (y * y) / (b * b);
+	}
+
 }
@@ -5,12 +5,19 @@
 */
 package fr.lri.swingstates.canvas;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 
 /**
  * <p>A <code>CExtensionalTag</code> tag is a tag that can be explicitely attached to and detached from a shape, 
  * i.e. a shape can be added to or removed to the tag's collection.
+ * The collection is an insertion-ordered set, so testing, adding and removing
+ * a shape take constant time.
  * 
  * @see fr.lri.swingstates.canvas.CTag
  * @author Caroline Appert
@@ -18,14 +25,16 @@ import java.util.LinkedList;
 
 public abstract class CExtensionalTag extends CTag {
 
-	
+	// the ids of the tagged shapes, built the first time it is needed then kept up to date, see CTag.bits
+	private BitSet bits = null;
+	private int bitsVersion = 0;
 	
 	/**
 	 * Builds a CExtensionalTag that can tag shapes.
 	 */
 	public CExtensionalTag(){
 		super(null);
-		collection = new LinkedList<Object>();
+		collection = new LinkedHashSet<Object>();
 	}
 	
 	/**
@@ -34,7 +43,7 @@ public abstract class CExtensionalTag extends CTag {
 	 */
 	public CExtensionalTag(Canvas c){
 		super(c);
-		collection = new LinkedList<Object>();
+		collection = new LinkedHashSet<Object>();
 	}
 	
 	/**
@@ -44,6 +53,56 @@ public abstract class CExtensionalTag extends CTag {
 		iterator = collection.iterator();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<CShape> getShapes() {
+		ArrayList<CShape> shapes = new ArrayList<CShape>(collection.size());
+		for (Iterator<Object> i = collection.iterator(); i.hasNext();)
+			shapes.add((CShape) i.next());
+		return Collections.unmodifiableList(shapes);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean tagsShape(CShape s) {
+		return collection.contains(s);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	BitSet bits() {
+		if (bits == null) {
+			if (canvas == null)
+				return null;
+			BitSet b = new BitSet();
+			for (Iterator<Object> i = collection.iterator(); i.hasNext();) {
+				CShape s = (CShape) i.next();
+				// a shape that has been tagged before being added to the canvas has no id
+				if (s.getCanvas() != canvas || s.id < 0)
+					return null;
+				b.set(s.id);
+			}
+			bits = b;
+		}
+		return bits;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	int bitsVersion() {
+		return bitsVersion;
+	}
+
+	// called when the collection has been cleared without calling removeFrom
+	void clearedBits() {
+		bits = null;
+		bitsVersion++;
+	}
+
 	/**
 	 * Method called when this tag is added to an CShape. By default, this method does nothing.
 	 * Redefine it in a subclass to specify side effects, such as changing the color of the attached CShape.
@@ -68,8 +127,13 @@ public abstract class CExtensionalTag extends CTag {
 	 */
 	public final CExtensionalTag addTo(CShape s){
 		if(getCanvas() != null && s.getCanvas() != getCanvas()) return this;
-		if(collection.contains(s)) return this;
-		collection.add(s);
+		if(!collection.add(s)) return this;
+		if(bits != null) {
+			if(s.getCanvas() == canvas && s.id >= 0) bits.set(s.id);
+			else bits = null;
+		}
+		bitsVersion++;
+		s.taggedBy(this);
 		doAdded(s);
 		return this;
 	}
@@ -94,8 +158,15 @@ public abstract class CExtensionalTag extends CTag {
 	 * @see CExtensionalTag#removed(CShape)
 	 */
 	public final CExtensionalTag removeFrom(CShape s){
-		if(collection.remove(s))
+		if(collection.remove(s)) {
+			if(bits != null) {
+				if(s.getCanvas() == canvas && s.id >= 0) bits.clear(s.id);
+				else bits = null;
+			}
+			bitsVersion++;
+			s.untaggedBy(this);
 			removed(s);
+		}
 		return this;
 	}
 
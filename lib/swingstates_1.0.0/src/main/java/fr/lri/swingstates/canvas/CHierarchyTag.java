@@ -20,7 +20,8 @@ public class CHierarchyTag extends CIntentionalTag {
 	 * @param s The parent shape of the hierarchy.
 	 */
 	public CHierarchyTag(CShape s) {
-		super(s.getCanvas());
+		// hierarchy tags are built on demand (see CShape.getHierarchy), the canvas does not keep them
+		super(s.getCanvas(), false);
 		topShape = s;
 		reset();
 	}
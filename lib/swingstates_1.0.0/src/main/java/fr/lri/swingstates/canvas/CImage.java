@@ -5,31 +5,32 @@
 */
 package fr.lri.swingstates.canvas;
 
-import java.awt.Composite;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
-import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.Iterator;
 import java.util.LinkedList;
 
-import javax.imageio.ImageIO;
-
 
 /**
  * An image shape for use with a <code>Canvas</code>.
  * The image is loaded from a file and can be in any format recognized by Java2D.
- * The fill paint is ignored. 
+ * Only the size of the image is read when the shape is built: the image is decoded
+ * in the background, and the area of the image is filled with the fill paint until then.
+ * The images read from the same file or URL are decoded once and shared.
+ * If the image can not be read or decoded, the error is kept (see <code>getLoadingFailure</code>)
+ * and the area of the image stays filled with the fill paint; it is empty if even the size of the image
+ * can not be read.
+ * When the image is drawn scaled down, a copy of the image reduced by a power of 2 is drawn
+ * instead of the image itself (see <code>imageChanged</code>).
  * If the shape is outlined, the border of the image is drawn according to the outline paint and stroke.
  * 
  * @author Caroline Appert
@@ -37,6 +38,12 @@ import javax.imageio.ImageIO;
 public class CImage extends CShape {
 
 	private BufferedImage image = null;
+	// the image being decoded, null once it is
+	private ImageCache.Loading loading = null;
+	// true if the image has been decoded by ImageCache and can be shared, false if it has been given by the application
+	private boolean shared = false;
+	// the error that prevented the image from being read or decoded
+	private Exception failure = null;
 
 	/**
 	 * Builds an empty CImage.
@@ -66,15 +73,10 @@ public class CImage extends CShape {
 	public CImage(String imageFile, Point2D loc) {
 		super(null);
 		try {
-			FileInputStream fis = new FileInputStream(imageFile);
-			try {
-				image = ImageIO.read(fis);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-			init(loc);
-		} catch (FileNotFoundException e) {
+			load(ImageCache.load(new File(imageFile).getAbsoluteFile().toURI().toURL()), loc);
+		} catch (IOException e) {
 			e.printStackTrace();
+			failed(e, loc);
 		}
 	}
 	
@@ -86,63 +88,109 @@ public class CImage extends CShape {
 	public CImage(URL imageURL, Point2D loc) {
 		super(null);
 		try {
-			image = ImageIO.read(imageURL);
+			load(ImageCache.load(imageURL), loc);
 		} catch (IOException e) {
 			e.printStackTrace();
+			failed(e, loc);
 		}
-		init(loc);
 	}
 	
 	/**
-	 * Builds a CImage.
+	 * Builds a CImage. The stream is read to its end before this constructor returns.
 	 * @param imageStream The stream where to read the image
 	 * @param loc The location of the lower left corner of the image
 	 */
 	public CImage(InputStream imageStream, Point2D loc) {
 		super(null);
 		try {
-			image = ImageIO.read(imageStream);
+			load(ImageCache.load(imageStream), loc);
 		} catch (IOException e) {
 			e.printStackTrace();
+			failed(e, loc);
 		}
-		init(loc);
 	}
 	
 	private void init(Point2D loc){
-		int w = image.getWidth(null);
-		int h = image.getHeight(null);
+		init(loc, image.getWidth(null), image.getHeight(null));
+	}
+	
+	private void init(Point2D loc, int w, int h){
 		setShape(new Rectangle2D.Double(loc.getX(), loc.getY(), w, h));
 		changedTransform();
 	}
 	
+	private void load(ImageCache.Loading l, Point2D loc) {
+		loading = l;
+		shared = true;
+		init(loc, l.width, l.height);
+		l.whenLoaded(this);
+	}
+	
+	// called when the size of the image can not be read
+	private void failed(Exception e, Point2D loc) {
+		failure = e;
+		init(loc, 0, 0);
+	}
+	
+	// called once the image has been decoded
+	void imageLoaded(BufferedImage loaded) {
+		image = loaded;
+		loading = null;
+		repaint();
+	}
+	
+	// called if the image can not be decoded
+	void imageFailed(Exception e) {
+		failure = e;
+		loading = null;
+		repaint();
+	}
+	
+	/**
+	 * Returns the error that prevented the image of this shape from being read or decoded.
+	 * The area of the image is then filled with the fill paint, if this shape is filled,
+	 * and it is empty if the size of the image could not be read.
+	 * @return The error, null if the image has been decoded or is being decoded.
+	 */
+	public Exception getLoadingFailure() {
+		return failure;
+	}
+	
+	/**
+	 * Signals that the pixels of the image of this shape have been modified, so that the
+	 * reduced copies of the image used to draw it scaled down are computed again.
+	 * @return this shape
+	 */
+	public CImage imageChanged() {
+		if (image != null)
+			ImageCache.discardMipmaps(image);
+		repaint();
+		return this;
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
 	public void paint(Graphics g){
+		Painter painter = new Painter((Graphics2D)g);
+		paint(painter);
+		painter.restore();
+	}
+	
+	/**
+	 * Paints this shape, drawing the reduced copy of the image that is the closest to
+	 * the size of the image on the screen.
+	 * @param painter The painter.
+	 */
+	void paint(Painter painter){
 		if(!filled && !outlined) {
 			return;
 		}
 		
-		Graphics2D g2d = (Graphics2D)g;
-		Shape saveClip = g2d.getClip();
-		AffineTransform saveTransform = g2d.getTransform();
-		RenderingHints saveRenderingHints = g2d.getRenderingHints();
-		Composite saveComposite = g2d.getComposite();
+		Graphics2D g2d = painter.graphics();
+		painter.setHintsAndClip(this);
 		
-		if (renderingHints != null) {
-			g2d.addRenderingHints(renderingHints);
-		}
-		if (clip != null && (canvas != null && clip != canvas.clip)) {
-			if (clip == DEFAULT_CLIP) {
-				g2d.clipRect(0, 0, canvas.getWidth(), canvas.getHeight());
-			} else {
-				g2d.transform(clip.getAbsTransform());
-				g2d.clip(clip.getShape());
-				g2d.setTransform(saveTransform);
-			}
-		}
-		
-		if(filled || outlined) {
+		if(filled) {
 			CShape s = parent;
 			AffineTransform xform = new AffineTransform();
 			while (s != null) {
@@ -151,36 +199,45 @@ public class CImage extends CShape {
 				s = s.parent;
 			}
 			
-			
-			g2d.transform(xform);
 			Rectangle2D bounds = getShape().getBounds2D();
 			double dx = bounds.getWidth()*rx;
 			double dy = bounds.getHeight()*ry;
 			dx += bounds.getX();
 			dy += bounds.getY();
-			g2d.translate(tx+dx, ty+dy);
-			g2d.rotate (theta);
-			g2d.scale (sx, sy); 
-			g2d.translate (-bounds.getWidth()*rx, -bounds.getHeight()*ry);
-			if(filled) {
-				if (transparencyFill != null)
-					g2d.setComposite(transparencyFill);
-				g2d.drawImage(image, 0, 0, canvas);
-				g2d.setComposite(saveComposite);
-			}
-			g2d.setTransform(saveTransform);
-			if(outlined) {
-				g2d.setStroke(stroke);
-				g2d.transform(getAbsTransform());
-				if(transparencyOutline != null) g2d.setComposite(transparencyOutline);
-				g2d.setPaint(outlinePaint);
-				g2d.draw(getShape());
-				g2d.setTransform(saveTransform);
-				g2d.setComposite(saveComposite);
+			xform.translate(tx+dx, ty+dy);
+			xform.rotate (theta);
+			xform.scale (sx, sy); 
+			xform.translate (-bounds.getWidth()*rx, -bounds.getHeight()*ry);
+			painter.setTransform(xform);
+			painter.setComposite(transparencyFill);
+			if (image != null) {
+				BufferedImage drawn = image;
+				int level = ImageCache.mipmapLevel(image, pixelScale(g2d.getTransform()));
+				if (level > 0) {
+					drawn = ImageCache.mipmap(image, level);
+					xform.scale(image.getWidth() / (double) drawn.getWidth(), image.getHeight() / (double) drawn.getHeight());
+					painter.setTransform(xform);
+				}
+				g2d.drawImage(drawn, 0, 0, canvas);
+			} else {
+				painter.setPaint(fillPaint);
+				g2d.fill(new Rectangle2D.Double(0, 0, bounds.getWidth(), bounds.getHeight()));
 			}
 		}
-		g2d.setClip(saveClip);
-		g2d.setRenderingHints(saveRenderingHints);
+		if(outlined) {
+			painter.setStroke(stroke);
+			painter.setTransform(getAbsTransform());
+			painter.setComposite(transparencyOutline);
+			painter.setPaint(outlinePaint);
+			g2d.draw(getShape());
+		}
+	}
+	
+	// the size on the device of a pixel drawn with a transform, along its longest side
+	private static double pixelScale(AffineTransform t) {
+		double sx = Math.hypot(t.getScaleX(), t.getShearY());
+		double sy = Math.hypot(t.getShearX(), t.getScaleY());
+		return Math.max(sx, sy);
 	}
 	
 	/**
@@ -193,8 +250,19 @@ public class CImage extends CShape {
 		super.copyTo(sms);
 		if (sms instanceof CImage) {
 			CImage smi = (CImage) sms;
-			WritableRaster raster = image.copyData(null);
-			smi.image = new BufferedImage(image.getColorModel(), raster, image.isAlphaPremultiplied(), null);
+			smi.failure = failure;
+			smi.shared = shared;
+			if (shared) {
+				// the images decoded by ImageCache are shared by all the shapes built from the same file
+				smi.image = image;
+				smi.loading = loading;
+				if (loading != null)
+					loading.whenLoaded(smi);
+			} else if (image != null) {
+				// the application may modify the image it has given
+				WritableRaster raster = image.copyData(null);
+				smi.image = new BufferedImage(image.getColorModel(), raster, image.isAlphaPremultiplied(), null);
+			}
 		}
 		return this;
 	}
@@ -5,19 +5,32 @@
 */
 package fr.lri.swingstates.canvas;
 
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
 
 /**
  * <p>
  * Intentional tags label graphical objects, i.e. CShapes, that verify a given property,
- * such as all objects of a given color. The collection of tagged objects
- * is recomputed each time the tag is used. You don't have to add them explicitely to
+ * such as all objects of a given color. You don't have to add them explicitely to
  * <code>CShape</code>s.
  * </p>
  * 
  * <p>
+ * The collection of tagged objects is maintained incrementally: the canvas notifies its
+ * intentional tags when a shape is added, removed, tagged, untagged, reparented or modified
+ * (i.e. any change that repaints it or changes its pickability), and only the shapes
+ * notified since the tag was last used are tested again with <code>criterion</code>.
+ * If the property also depends on data the canvas does not know about (e.g. a field of
+ * the application), call <code>invalidate</code> when this data changes.
+ * The canvas keeps its intentional tags and notifies them of every change of its shapes:
+ * call <code>Canvas.unregisterTag</code> on a tag that is no longer used.
+ * </p>
+ * 
+ * <p>
  * Extends this <code>CIntentionalTag</code> class
  * and overrides the method <code>criterion</code> to specify the property. 
  * Here is an example of a tag shared by all red shapes. 
@@ -43,13 +56,31 @@ import java.util.LinkedList;
  */
 public abstract class CIntentionalTag extends CTag {
 
-	
+	// the ids of the shapes that verify the criterion, and the shapes to test again.
+	// Guarded by the lock of the display list of the canvas.
+	private BitSet members = new BitSet();
+	private int membersVersion = 0;
+	private HashSet<CShape> dirty = new HashSet<CShape>();
+	private HashSet<CShape> updating = new HashSet<CShape>();
+	private boolean dirtyAll = true;
+	// false once this tag has been unregistered from its canvas: all the shapes are then tested each time it is used
+	boolean notified = false;
+	// the members in display order, rebuilt when the members or the display order change
+	private List<Object> ordered = null;
+	private int orderedVersion;
+
 	/**
 	 * Builds a <code>CIntentionalTag</code>.
 	 * @param c The canvas in which the shapes must be tagged.
 	 */
 	public CIntentionalTag(Canvas c) {
-		super(c);
+		this(c, true);
+	}
+
+	// builds an intentional tag that is registered on its canvas or only notified by it, see CTag(Canvas, boolean)
+	CIntentionalTag(Canvas c, boolean registered) {
+		super(c, registered);
+		if (c != null) c.registerIntentionalTag(this);
 	}
 
 	/**
@@ -58,26 +89,144 @@ public abstract class CIntentionalTag extends CTag {
 	 * @return true if <code>s</code> checks the property, false otherwise.
 	 */
 	public abstract boolean criterion(CShape s);
-	
+
+	/**
+	 * Tests all the shapes of the canvas again the next time this tag is used.
+	 * Must be called when the property defined by <code>criterion</code> depends on data
+	 * that have changed without the canvas being notified.
+	 */
+	public void invalidate() {
+		// a tag without canvas tags no shape
+		if (canvas == null) return;
+		synchronized(canvas.displayOrder) {
+			dirtyAll = true;
+			dirty.clear();
+		}
+	}
+
+	/**
+	 * Tests a shape again the next time this tag is used.
+	 * @param s The shape.
+	 * @see CIntentionalTag#invalidate()
+	 */
+	public void invalidate(CShape s) {
+		if (canvas == null) return;
+		synchronized(canvas.displayOrder) {
+			if (!dirtyAll) dirty.add(s);
+		}
+	}
+
+	// called by the canvas when a shape has been removed from it
+	void shapeRemoved(CShape s) {
+		dirty.remove(s);
+		if (s.id >= 0 && members.get(s.id)) {
+			members.clear(s.id);
+			changedMembers();
+		}
+	}
+
+	// called by the canvas when all its shapes have been removed
+	void allShapesRemoved() {
+		dirty.clear();
+		members.clear();
+		dirtyAll = false;
+		changedMembers();
+	}
+
+	private void changedMembers() {
+		ordered = null;
+		membersVersion++;
+	}
+
+	// tests again the shapes that may have changed.
+	// Must be called while holding the lock of the display list.
+	private void update() {
+		if (dirtyAll || !notified) {
+			dirtyAll = false;
+			dirty.clear();
+			members.clear();
+			for (DisplayList.Node n = canvas.displayList.first(); n != null; n = n.next)
+				if (criterion(n.shape)) members.set(n.shape.id);
+			changedMembers();
+			return;
+		}
+		if (dirty.isEmpty()) return;
+		// the shapes notified while testing others are tested the next time
+		HashSet<CShape> toUpdate = dirty;
+		dirty = updating;
+		updating = toUpdate;
+		for (Iterator<CShape> i = toUpdate.iterator(); i.hasNext();)
+			update(i.next());
+		toUpdate.clear();
+	}
+
+	private void update(CShape s) {
+		if (!canvas.displayList.holds(s))
+			return;
+		boolean member = criterion(s);
+		if (member != members.get(s.id)) {
+			members.set(s.id, member);
+			changedMembers();
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	public final void reset() {
-		collection = new LinkedList<Object>();
-		synchronized(canvas.getDisplayList()) {
-			for(Iterator i = canvas.getDisplayList().iterator(); i.hasNext(); ) {
-				CShape next = (CShape)i.next();
-				if(criterion(next)) collection.add(next);
-			}
+		iterator = getCollection().iterator();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	public List<CShape> getShapes() {
+		return (List<CShape>) (List<?>) getCollection();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean tagsShape(CShape s) {
+		synchronized(canvas.displayOrder) {
+			if (dirtyAll || !notified)
+				update();
+			else if (dirty.remove(s))
+				update(s);
+			return canvas.displayList.holds(s) && members.get(s.id);
 		}
-		iterator = collection.iterator();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	BitSet bits() {
+		synchronized(canvas.displayOrder) {
+			update();
+			return members;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	int bitsVersion() {
+		return membersVersion;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public Collection<Object> getCollection() {
-		reset();
-		return collection;
+		synchronized(canvas.displayOrder) {
+			update();
+			if (ordered == null || orderedVersion != canvas.displayList.version()) {
+				ordered = Collections.unmodifiableList(canvas.shapesInDisplayOrder(members));
+				orderedVersion = canvas.displayList.version();
+			}
+			collection = ordered;
+			return collection;
+		}
 	}
 }
@@ -51,9 +51,15 @@ public class CNamedTag extends CExtensionalTag {
 	 * @return true if the name could be change, false otherwise.
 	 */
 	public boolean setName(String n) {
+		if(canvas == null) {
+			name = n;
+			return true;
+		}
 		if(canvas.getTag(n) != null)
 			return false;
+		String oldName = name;
 		name = n;
+		canvas.renamedTag(this, oldName);
 		return true;
 	}
 	
@@ -0,0 +1,139 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A <code>CNotTag</code> is a tag corresponding to the set of shapes of a canvas
+ * that are not tagged by a tag t.
+ * 
+ * <p>When t can be represented as a bitmap of shape ids (extensional and intentional
+ * tags, and combinations of them), the complement is computed with word-parallel
+ * operations and kept until t or the display list changes. Shapes are then browsed in
+ * display order. Otherwise, the display list is browsed.</p>
+ * 
+ * <p>The canvas of this tag is the canvas of t, looked up each time it is needed:
+ * an extensional tag only knows its canvas once it has been added to a shape.</p>
+ * 
+ * @see CTag#not()
+ */
+public class CNotTag extends CTag {
+
+	private CTag tag;
+
+	// the complement of the bitmap of the tag, the versions of the bitmaps
+	// it has been computed from, and the shapes it contains
+	private BitSet bits = null;
+	private int version, shapesVersion;
+	private int bitsVersion = 0;
+	private List<Object> shapes = null;
+	// the version of the display list these shapes have been sorted from
+	private int shapesOrder;
+
+	/**
+	 * Builds a <code>CNotTag</code>tag corresponding to the set of shapes not tagged by a tag t.
+	 * @param t The tag.
+	 */
+	public CNotTag(CTag t) {
+		super(t.canvas);
+		tag = t;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Canvas getCanvas() {
+		if(canvas == null) canvas = tag.getCanvas();
+		return canvas;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	BitSet bits() {
+		Canvas canvas = getCanvas();
+		if(canvas == null) return null;
+		synchronized(canvas.displayOrder) {
+			BitSet tagBits = tag.bits();
+			if(tagBits == null) return null;
+			if(bits == null || tag.bitsVersion() != version || canvas.shapeIdsVersion() != shapesVersion) {
+				BitSet b = (BitSet) canvas.shapeIds().clone();
+				b.andNot(tagBits);
+				bits = b;
+				version = tag.bitsVersion();
+				shapesVersion = canvas.shapeIdsVersion();
+				bitsVersion++;
+				shapes = null;
+			}
+			return bits;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	int bitsVersion() {
+		return bitsVersion;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void reset() {
+		collection = getCollection();
+		iterator = collection.iterator();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean tagsShape(CShape s) {
+		Canvas canvas = getCanvas();
+		if(canvas == null || s.getCanvas() != canvas) return false;
+		synchronized(canvas.displayOrder) {
+			BitSet b = bits();
+			if(b != null) return s.id >= 0 && b.get(s.id);
+		}
+		return !tag.tagsShape(s);
+	}
+
+	/**
+	 * Returns a collection containing all the shapes tagged by this tag.
+	 * @return a collection containing all the shapes tagged by this tag.
+	 */
+	public Collection<Object> getCollection() {
+		Canvas canvas = getCanvas();
+		if(canvas == null) return new ArrayList<Object>();
+		synchronized(canvas.displayOrder) {
+			BitSet b = bits();
+			if(b != null) {
+				if(shapes == null || shapesOrder != canvas.displayList.version()) {
+					shapes = Collections.unmodifiableList(canvas.shapesInDisplayOrder(b));
+					shapesOrder = canvas.displayList.version();
+				}
+				return shapes;
+			}
+			List<Object> l = new ArrayList<Object>();
+			for(DisplayList.Node n = canvas.displayList.first(); n != null; n = n.next)
+				if(!tag.tagsShape(n.shape)) l.add(n.shape);
+			return l;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	public List<CShape> getShapes() {
+		return Collections.unmodifiableList((List<CShape>) (List<?>) getCollection());
+	}
+
+}
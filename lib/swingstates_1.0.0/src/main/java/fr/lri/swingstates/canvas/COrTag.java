@@ -5,18 +5,36 @@
 */
 package fr.lri.swingstates.canvas;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 
 /**
  * A <code>COrTag</code> is a tag corresponding to the set of shapes tagged by a tag t1 or a tag t2.
+ * 
+ * <p>When both tags can be represented as bitmaps of shape ids (extensional and intentional
+ * tags, and combinations of them), the union is computed with word-parallel
+ * operations and kept until one of the two tags changes. Shapes are then browsed in
+ * display order. Otherwise, the shapes of t1 are browsed, then those of t2.</p>
  * @author appert
  */
 public class COrTag extends CTag {
 
 	CTag tag1;
 	CTag tag2;
+
+	// the union of the bitmaps of the two tags, the versions of these bitmaps
+	// it has been computed from, and the shapes it contains
+	private BitSet bits = null;
+	private int version1, version2;
+	private int bitsVersion = 0;
+	private List<Object> shapes = null;
+	// the version of the display list these shapes have been sorted from
+	private int shapesOrder;
 	
 	/**
 	 * Builds a <code>COrTag</code>tag corresponding to the set of shapes tagged by a tag t1 or a tag t2.
@@ -28,45 +46,85 @@ public class COrTag extends CTag {
 		tag1 = t1;
 		tag2 = t2;
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	BitSet bits() {
+		if(canvas == null || tag2.canvas != canvas) return null;
+		synchronized(canvas.displayOrder) {
+			BitSet bits1 = tag1.bits();
+			BitSet bits2 = bits1 == null ? null : tag2.bits();
+			if(bits2 == null) return null;
+			if(bits == null || tag1.bitsVersion() != version1 || tag2.bitsVersion() != version2) {
+				BitSet b = (BitSet) bits1.clone();
+				b.or(bits2);
+				bits = b;
+				version1 = tag1.bitsVersion();
+				version2 = tag2.bitsVersion();
+				bitsVersion++;
+				shapes = null;
+			}
+			return bits;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	int bitsVersion() {
+		return bitsVersion;
+	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
 	public void reset() {
-		tag1.reset();
-		tag2.reset();
+		collection = getCollection();
+		iterator = collection.iterator();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public boolean hasNext(){
-		if(!tag1.hasNext()) return tag2.hasNext();
-		return true;
+	public boolean tagsShape(CShape s) {
+		if(canvas != null) {
+			synchronized(canvas.displayOrder) {
+				BitSet b = bits();
+				if(b != null) return s.getCanvas() == canvas && s.id >= 0 && b.get(s.id);
+			}
+		}
+		return tag1.tagsShape(s) || tag2.tagsShape(s);
 	}
 	
 	/**
 	 * Returns a collection containing all the shapes tagged by this tag.
-	 * This method uses the iterator of the two tags, thus it mustn't be used while browsing this tag, the tag t1 or the tag t2.
 	 * @return a collection containing all the shapes tagged by this tag.
 	 */
 	public Collection<Object> getCollection() {
-		LinkedList<Object> l = new LinkedList<Object>();
-		tag1.reset();
-		while(tag1.hasNext())
-			l.add(tag1.nextShape());
-		tag2.reset();
-		while(tag2.hasNext())
-			l.add(tag2.nextShape());
-		return l;	
+		if(canvas != null) {
+			synchronized(canvas.displayOrder) {
+				BitSet b = bits();
+				if(b != null) {
+					if(shapes == null || shapesOrder != canvas.displayList.version()) {
+						shapes = Collections.unmodifiableList(canvas.shapesInDisplayOrder(b));
+						shapesOrder = canvas.displayList.version();
+					}
+					return shapes;
+				}
+			}
+		}
+		LinkedHashSet<Object> l = new LinkedHashSet<Object>(tag1.getShapes());
+		l.addAll(tag2.getShapes());
+		return new ArrayList<Object>(l);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public CShape nextShape() {
-		if(tag1.hasNext()) return tag1.nextShape();
-		return tag2.nextShape();
+	@SuppressWarnings("unchecked")
+	public List<CShape> getShapes() {
+		return Collections.unmodifiableList((List<CShape>) (List<?>) getCollection());
 	}
 	
 }
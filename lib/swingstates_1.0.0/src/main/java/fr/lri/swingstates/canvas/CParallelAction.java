@@ -0,0 +1,124 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * An action applied to every shape of a tag in two steps: an expensive computation,
+ * which is run on several threads, then a modification of the shape using the result
+ * of this computation, which is run on the event dispatch thread.
+ * </p>
+ *
+ * <p>
+ * <code>compute</code> must not modify any shape nor the canvas: it is called
+ * concurrently for different shapes. Here is an example that simplifies the
+ * geometry of all the shapes of a tag:
+ *
+ * <pre>
+ * tag.parallelAction(new CParallelAction&lt;Shape&gt;() {
+ * 	public Shape compute(CShape s) {
+ * 		return simplify(s.getShape());
+ * 	}
+ * 	public void apply(CShape s, Shape simplified) {
+ * 		s.setShape(simplified);
+ * 	}
+ * });
+ * </pre>
+ * </p>
+ *
+ * @param <T> The type of the result of the computation.
+ * @see CTag#parallelAction(CParallelAction)
+ */
+public abstract class CParallelAction<T> {
+
+	// under this number of shapes, the computation is run on the calling thread
+	private static final int PARALLEL_THRESHOLD = 64;
+
+	private static ExecutorService executor = null;
+
+	/**
+	 * Computes the modification of a shape. Called on a worker thread.
+	 * @param s The shape.
+	 * @return The result of the computation, passed to <code>apply</code>.
+	 */
+	public abstract T compute(CShape s);
+
+	/**
+	 * Modifies a shape using the result of <code>compute</code>. Called on the event
+	 * dispatch thread, during a batch of the canvas.
+	 * @param s The shape.
+	 * @param result The result of <code>compute(s)</code>.
+	 */
+	public abstract void apply(CShape s, T result);
+
+	private static synchronized ExecutorService executor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "SwingStates parallel action");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Calls <code>compute</code> for a list of shapes, splitting the list among
+	 * the available processors.
+	 * @param shapes The shapes.
+	 * @return The results, in the order of the shapes.
+	 * @throws InterruptedException If the calling thread is interrupted while waiting for the results.
+	 */
+	Object[] computeAll(final List<CShape> shapes) throws InterruptedException {
+		final Object[] results = new Object[shapes.size()];
+		int processors = Runtime.getRuntime().availableProcessors();
+		if (shapes.size() < PARALLEL_THRESHOLD || processors == 1) {
+			for (int i = 0; i < results.length; i++)
+				results[i] = compute(shapes.get(i));
+			return results;
+		}
+		// the absolute transforms are computed lazily: compute them on this thread, so that
+		// reading the geometry of a shape on a worker thread does not modify its ancestors
+		for (int i = 0; i < results.length; i++)
+			shapes.get(i).getAbsTransform();
+		int chunks = 4 * processors;
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunks);
+		for (int c = 0; c < chunks; c++) {
+			final int from = c * results.length / chunks;
+			final int to = (c + 1) * results.length / chunks;
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					for (int i = from; i < to; i++)
+						results[i] = compute(shapes.get(i));
+					return null;
+				}
+			});
+		}
+		for (Future<Object> f : executor().invokeAll(tasks)) {
+			try {
+				f.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				if (e.getCause() instanceof Error)
+					throw (Error) e.getCause();
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		return results;
+	}
+
+}
@@ -5,6 +5,7 @@
 */
 package fr.lri.swingstates.canvas;
 
+import java.awt.BasicStroke;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RoundRectangle2D;
@@ -103,4 +104,36 @@ public class CRectangle extends CRectangularShape {
 		return this;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * The outline of a rectangle without rounded corners lies between the rectangle
+	 * grown and shrunk by half the width of the stroke, with corners shaped by the
+	 * join of the stroke.
+	 */
+	boolean outlineHits(double x, double y, double tolerance) {
+		double halfWidth = plainStrokeHalfWidth();
+		if (halfWidth < 0 || !(getShape() instanceof Rectangle2D))
+			return super.outlineHits(x, y, tolerance);
+		Rectangle2D rect = (Rectangle2D) getShape();
+		if (rect.getWidth() <= 0 || rect.getHeight() <= 0)
+			return super.outlineHits(x, y, tolerance);
+		double margin = halfWidth + tolerance / 2;
+		// distances from the point to the rectangle along each axis, 0 inside
+		double dx = Math.max(0, Math.max(rect.getMinX() - x, x - rect.getMaxX()));
+		double dy = Math.max(0, Math.max(rect.getMinY() - y, y - rect.getMaxY()));
+		if (dx > margin || dy > margin)
+			return false;
+		BasicStroke basicStroke = (BasicStroke) stroke;
+		int join = basicStroke.getLineJoin();
+		// the miter of a right angle is sqrt(2) times as long as the stroke is wide
+		if (join == BasicStroke.JOIN_MITER && basicStroke.getMiterLimit() < Math.sqrt(2))
+			join = BasicStroke.JOIN_BEVEL;
+		if (join == BasicStroke.JOIN_ROUND && dx * dx + dy * dy > margin * margin)
+			return false;
+		if (join == BasicStroke.JOIN_BEVEL && dx + dy > halfWidth + tolerance / 2 * Math.sqrt(2))
+			return false;
+		return !(x > rect.getMinX() + margin && x < rect.getMaxX() - margin
+				&& y > rect.getMinY() + margin && y < rect.getMaxY() - margin);
+	}
+
 }
@@ -44,7 +44,7 @@ public abstract class CRectangularShape extends CShape {
 		double width = Math.abs(p1.getX() - p2.getX());
 		double height = Math.abs(p1.getY() - p2.getY());
 		((RectangularShape)getShape()).setFrame(minx, miny, width, height);
-		repaint();
+		changedShape();
 		return this;
 	}
 	
@@ -61,7 +61,7 @@ public abstract class CRectangularShape extends CShape {
 //		changedShape();
 //		return this;
 		((RectangularShape)getShape()).setFrameFromDiagonal(minx, miny, minx+width, miny+height);
-		repaint();
+		changedShape();
 		return this;
 	}
 	
@@ -79,7 +79,7 @@ public abstract class CRectangularShape extends CShape {
 //		double width = Math.abs(x1 - x2);
 //		double height = Math.abs(y1 - y2);
 		((RectangularShape)getShape()).setFrameFromDiagonal(x1, y1, x2, y2);
-		repaint();
+		changedShape();
 //		try {
 //			AffineTransform inverseTransform = getAbsTransform().createInverse();
 //			Point2D p1 = new Point2D.Double();
@@ -104,7 +104,7 @@ public abstract class CRectangularShape extends CShape {
 	 */
 	public CRectangularShape setDiagonal (Point2D p1, Point2D p2) {
 		((RectangularShape)getShape()).setFrameFromDiagonal(p1, p2);
-		repaint();
+		changedShape();
 		return this;
 	}
 	
@@ -5,6 +5,7 @@
 */
 package fr.lri.swingstates.canvas;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
@@ -53,7 +54,7 @@ public class CSegment extends CRectangularShape {
 	 */
 	public CSegment setPoints (Point2D p1, Point2D p2) {
 		((Line2D)getShape()).setLine(p1, p2);
-		repaint();
+		changedShape();
 		return this;
 	}
 	
@@ -67,7 +68,7 @@ public class CSegment extends CRectangularShape {
 	 */
 	public CSegment setPoints (double x1, double y1, double x2, double y2) {
 		((Line2D)getShape()).setLine(x1, y1, x2, y2);
-		repaint();
+		changedShape();
 		return this;
 	}
 	
@@ -138,7 +139,7 @@ public class CSegment extends CRectangularShape {
 				point2.setLocation(minx, miny);
 			}
 		((Line2D)getShape()).setLine(point1, point2);
-		repaint();
+		changedShape();
 		return this;
 	}
 	
@@ -153,6 +154,35 @@ public class CSegment extends CRectangularShape {
 	}
 
 	
+	/**
+	 * {@inheritDoc}
+	 * The distance from the point to the segment is computed in closed form.
+	 */
+	boolean outlineHits(double x, double y, double tolerance) {
+		double halfWidth = plainStrokeHalfWidth();
+		if (halfWidth < 0 || !(getShape() instanceof Line2D))
+			return super.outlineHits(x, y, tolerance);
+		Line2D line = (Line2D) getShape();
+		double margin = halfWidth + tolerance / 2;
+		int cap = ((BasicStroke) stroke).getEndCap();
+		if (cap == BasicStroke.CAP_ROUND)
+			return line.ptSegDistSq(x, y) <= margin * margin;
+		double dx = line.getX2() - line.getX1();
+		double dy = line.getY2() - line.getY1();
+		double length = Math.sqrt(dx * dx + dy * dy);
+		if (length == 0) {
+			// a butt-capped segment of length 0 is not drawn
+			return cap == BasicStroke.CAP_SQUARE
+				&& Math.abs(x - line.getX1()) <= margin && Math.abs(y - line.getY1()) <= margin;
+		}
+		// coordinates of the point along and across the segment
+		double along = ((x - line.getX1()) * dx + (y - line.getY1()) * dy) / length;
+		double across = ((y - line.getY1()) * dx - (x - line.getX1()) * dy) / length;
+		double capLength = cap == BasicStroke.CAP_SQUARE ? halfWidth : 0;
+		return along >= -capLength - tolerance / 2 && along <= length + capLength + tolerance / 2
+			&& Math.abs(across) <= margin;
+	}
+
 	/**
 	 * @return the length of this untransformed <code>CSegment</code>.
 	 */
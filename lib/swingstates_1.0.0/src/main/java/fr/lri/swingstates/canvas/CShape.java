@@ -8,7 +8,6 @@ package fr.lri.swingstates.canvas;
 import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
-import java.awt.Composite;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Paint;
@@ -29,6 +28,7 @@ import java.awt.geom.Point2D;
 import java.awt.geom.QuadCurve2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RectangularShape;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -128,7 +128,13 @@ public class CShape implements Cloneable, CElement
 	protected double theta = 0; // angle of rotation
 	protected double sx = 1, sy = 1; // scale
 	protected AffineTransform transform = new AffineTransform();
+	// the absolute transform is computed lazily, see getAbsTransform
 	protected AffineTransform absTransform = new AffineTransform();
+	private boolean absTransformValid = false;
+	// the bounding box in canvas coordinates, computed lazily, null if not known
+	private Rectangle2D absBoundingBox = null;
+	// the area in canvas coordinates, computed lazily, null if not known
+	private Area absArea = null;
 
 	// hierarchy
 	protected CShape parent = null;
@@ -137,7 +143,20 @@ public class CShape implements Cloneable, CElement
 	// ghost
 	protected CShape ghost = null;
 
-	private Rectangle pickingRectangle = new Rectangle();
+	// the region of the canvas covered by this shape the last time it was marked to be repainted
+	private Rectangle2D damagedBounds = null;
+	// the extensional tags attached to this shape, in the order they were added
+	private ArrayList<CExtensionalTag> extensionalTags = null;
+
+	// the node of this shape in the display list of its canvas, see DisplayList
+	DisplayList.Node displayNode = null;
+
+	// the dense id of this shape on its canvas, -1 if it is not on a canvas.
+	// Ids are reused, so that bitmaps of ids (e.g. the shapes of a tag) stay small.
+	int id = -1;
+
+	// the cached layer this shape is painted in, if any, see Layer
+	Layer layer = null;
 
 	// ____________________________________ CONSTRUCTORS
 	// _________________________________________________
@@ -182,6 +201,8 @@ public class CShape implements Cloneable, CElement
 	 */
 	void setCanvas(Canvas smc) {
 		canvas = smc;
+		damagedBounds = null;
+		layer = null;
 	}
 
 	/**
@@ -202,8 +223,7 @@ public class CShape implements Cloneable, CElement
 	 */
 	public CElement setShape(Shape s) {
 		shape = s;
-		strokedShape = null;
-		// changedShape();
+		changedShape();
 		return this;
 	}
 
@@ -245,16 +265,9 @@ public class CShape implements Cloneable, CElement
 
 		if(canvas != null) {
 			// remove tags
-			List<CTag> canvasTags = canvas.allCanvasTags;
-			synchronized(canvasTags) {
-				for (Iterator<CTag> i = canvasTags.iterator(); i.hasNext();) {
-					CTag next = i.next();
-					if (next instanceof CExtensionalTag) {
-						CExtensionalTag extTag = (CExtensionalTag) next;
-						if (extTag.tagsShape(this))
-							this.removeTag(extTag);
-					}
-				}
+			if (extensionalTags != null) {
+				while (!extensionalTags.isEmpty())
+					removeTag(extensionalTags.get(extensionalTags.size() - 1));
 			}
 		}
 
@@ -265,11 +278,96 @@ public class CShape implements Cloneable, CElement
 		setCanvas(null);
 	}
 
-	// mark the shape to be repainted
+	// signal that the geometry of this shape has been modified
+	// (either replaced or modified in place)
+	void changedShape() {
+		strokedShape = null;
+		absBoundingBox = null;
+		absArea = null;
+		if (canvas != null)
+			canvas.spatialIndex.invalidate(this);
+		repaint();
+	}
+
+	// mark the shape to be repainted: both the region it covered
+	// the last time it was repainted and the region it covers now are damaged.
+	// During a batch, this is done once, when the batch ends.
 	protected void repaint() {
+		if (canvas == null)
+			return;
+		canvas.shapeChanged(this);
+		if (!canvas.deferRepaint(this))
+			updateRepaint();
+	}
+
+	// mark the regions covered by this shape before and after it changed to be repainted
+	void updateRepaint() {
 		if (canvas != null) {
-			canvas.repaint();
+			Rectangle2D bounds = getAbsBounds(1);
+			if (bounds == null) {
+				if (layer != null)
+					layer.damageAll();
+				canvas.repaint();
+			} else {
+				if (layer != null) {
+					layer.damage(damagedBounds);
+					layer.damage(bounds);
+				}
+				if (damagedBounds != null)
+					canvas.repaint(damagedBounds);
+				canvas.repaint(bounds);
+			}
+			damagedBounds = bounds;
+		}
+	}
+
+	// the region of the canvas covered by this shape the last time it was repainted
+	Rectangle2D getDamagedBounds() {
+		return damagedBounds;
+	}
+
+	// the bounds of this shape, inflated by its stroke and by a margin
+	// in shape coordinates, then transformed in canvas coordinates.
+	// Returns null if these bounds can not be computed.
+	Rectangle2D getAbsBounds(double margin) {
+		if (shape == null)
+			return null;
+		Rectangle2D bounds = shape.getBounds2D();
+		margin += strokeMargin(stroke, shape);
+		double minX = bounds.getMinX() - margin, minY = bounds.getMinY() - margin;
+		double maxX = bounds.getMaxX() + margin, maxY = bounds.getMaxY() + margin;
+		double[] corners = new double[] { minX, minY, maxX, minY, maxX, maxY, minX, maxY };
+		getAbsTransform().transform(corners, 0, corners, 0, 4);
+		minX = maxX = corners[0];
+		minY = maxY = corners[1];
+		for (int i = 2; i < 8; i += 2) {
+			minX = Math.min(minX, corners[i]);
+			maxX = Math.max(maxX, corners[i]);
+			minY = Math.min(minY, corners[i + 1]);
+			maxY = Math.max(maxY, corners[i + 1]);
+		}
+		if (Double.isNaN(minX) || Double.isNaN(minY) || Double.isInfinite(minX) || Double.isInfinite(minY)
+				|| Double.isInfinite(maxX) || Double.isInfinite(maxY))
+			return null;
+		return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	// how far the outline of a shape can lie outside its geometric bounds
+	static double strokeMargin(Stroke stroke, Shape shape) {
+		if (stroke == null)
+			return 0;
+		if (stroke instanceof BasicStroke) {
+			BasicStroke basicStroke = (BasicStroke) stroke;
+			double halfWidth = basicStroke.getLineWidth() / 2;
+			if (basicStroke.getLineJoin() == BasicStroke.JOIN_MITER)
+				return halfWidth * Math.max(Math.sqrt(2), basicStroke.getMiterLimit());
+			return halfWidth * Math.sqrt(2);
 		}
+		Rectangle2D shapeBounds = shape.getBounds2D();
+		Rectangle2D strokedBounds = stroke.createStrokedShape(shape).getBounds2D();
+		return Math.max(
+				Math.max(shapeBounds.getMinX() - strokedBounds.getMinX(), strokedBounds.getMaxX() - shapeBounds.getMaxX()),
+				Math.max(shapeBounds.getMinY() - strokedBounds.getMinY(), strokedBounds.getMaxY() - shapeBounds.getMaxY()));
 	}
 
 	// ____________________________________ DRAWING
@@ -283,48 +381,38 @@ public class CShape implements Cloneable, CElement
 	 *            The graphics with which the shape must be painted.
 	 */
 	public void paint(Graphics g) {
+		Painter painter = new Painter((Graphics2D) g);
+		paint(painter);
+		painter.restore();
+	}
+
+	/**
+	 * Paints the shape with a painter, which sets the state of its graphics only
+	 * where it differs from the state of the shape painted before.
+	 * A subclass that overrides <code>paint(Graphics)</code> must override this
+	 * method too, otherwise the canvas paints it with <code>paint(Graphics)</code>.
+	 * 
+	 * @param painter
+	 *            The painter.
+	 */
+	void paint(Painter painter) {
 		if(!filled && !outlined) {
 			return;
 		}
-
-		Graphics2D g2d = (Graphics2D) g;
-		Shape saveClip = g2d.getClip();
-		AffineTransform saveTransform = g2d.getTransform();
-		RenderingHints saveRenderingHints = g2d.getRenderingHints();
-		if (renderingHints != null) {
-			g2d.addRenderingHints(renderingHints);
-		}
-		if (clip != null && (canvas != null && clip != canvas.clip)) {
-			if (clip == DEFAULT_CLIP) {
-				g2d.clipRect(0, 0, canvas.getWidth(), canvas.getHeight());
-			} else {
-				g2d.transform(clip.getAbsTransform());
-				g2d.clip(clip.getShape());
-				g2d.setTransform(saveTransform);
-			}
-		}
-
-		g2d.setStroke(stroke);
-		g2d.transform(getAbsTransform());
+		Graphics2D g2d = painter.graphics();
+		painter.setHintsAndClip(this);
+		painter.setStroke(stroke);
+		painter.setTransform(getAbsTransform());
 		if (filled) {
-			Composite comp = g2d.getComposite();
-			if (transparencyFill != null)
-				g2d.setComposite(transparencyFill);
-			g2d.setPaint(fillPaint);
+			painter.setComposite(transparencyFill);
+			painter.setPaint(fillPaint);
 			g2d.fill(getShape());
-			g2d.setComposite(comp);
 		}
 		if (outlined) {
-			Composite comp = g2d.getComposite();
-			if (transparencyOutline != null)
-				g2d.setComposite(transparencyOutline);
-			g2d.setPaint(outlinePaint);
+			painter.setComposite(transparencyOutline);
+			painter.setPaint(outlinePaint);
 			g2d.draw(shape);
-			g2d.setComposite(comp);
 		}
-		g2d.setTransform(saveTransform);
-		g2d.setClip(saveClip);
-		g2d.setRenderingHints(saveRenderingHints);
 	}
 
 	/**
@@ -538,6 +626,9 @@ public class CShape implements Cloneable, CElement
 	 */
 	public CElement setStroke(Stroke str) {
 		stroke = str;
+		strokedShape = null;
+		if (canvas != null)
+			canvas.spatialIndex.invalidate(this);
 		repaint();
 		return this;
 	}
@@ -804,6 +895,8 @@ public class CShape implements Cloneable, CElement
 		// invalidate shape since the reparenting is likely to change the
 		// shape's transform
 		changedTransform();
+		if (canvas != null)
+			canvas.hierarchyChanged(this);
 
 		return this;
 	}
@@ -872,6 +965,8 @@ public class CShape implements Cloneable, CElement
 	 * @return the shape's affine transform.
 	 */
 	public AffineTransform getAbsTransform() {
+		if (!absTransformValid)
+			computeAbsTransform();
 		return absTransform;
 	}
 
@@ -899,13 +994,14 @@ public class CShape implements Cloneable, CElement
 		return !(out || tooSmall);
 	}
 
+	// the absolute transform is the one of the parent, which is valid if this one is,
+	// concatenated with the transform of this shape
 	void computeAbsTransform() {
-		CShape s = parent;
-		absTransform = (AffineTransform) (getTransform().clone());
-		while (s != null) {
-			absTransform.preConcatenate(s.transform);
-			s = s.parent;
-		}
+		AffineTransform xform = (AffineTransform) (getTransform().clone());
+		if (parent != null)
+			xform.preConcatenate(parent.getAbsTransform());
+		absTransform = xform;
+		absTransformValid = true;
 	}
 
 	// Computes the current transformation of this shape
@@ -921,16 +1017,31 @@ public class CShape implements Cloneable, CElement
 		transform.rotate(theta);
 		transform.scale(sx, sy);
 		transform.translate(-dx, -dy);
-		computeAbsTransform();
 	}
 
-	// set absShape to null in order to signal that both transform and absShape
-	// are invalid
+	// signal that the transform of this shape has been modified: it is computed
+	// again, while the absolute transforms of this shape and its descendants
+	// are only invalidated
 	void changedTransform() {
 		computeTransform();
+		changedAbsTransform();
+	}
+
+	// signal that the absolute transform of this shape has been modified
+	// because its transform or the one of an ancestor has
+	private void changedAbsTransform() {
+		// during a batch, a shape whose absolute transform is already invalid has already been
+		// recorded to be repainted, and so have its descendants, whose transforms are invalid too
+		if (!absTransformValid && canvas != null && canvas.isBatching())
+			return;
+		absTransformValid = false;
+		absBoundingBox = null;
+		absArea = null;
+		if (canvas != null)
+			canvas.spatialIndex.invalidate(this);
 		if (children != null)
 			for (Iterator<CShape> i = children.iterator(); i.hasNext();)
-				((CShape) (i.next())).changedTransform();
+				((CShape) (i.next())).changedAbsTransform();
 		repaint();
 	}
 
@@ -1204,7 +1315,7 @@ public class CShape implements Cloneable, CElement
 	public Point2D canvasToShape(Point2D p) {
 		Point2D ptDst = new Point2D.Double();
 		try {
-			absTransform.inverseTransform(p, ptDst);
+			getAbsTransform().inverseTransform(p, ptDst);
 		} catch (NoninvertibleTransformException e) {
 			return p; // oh well, what can we do?
 		}
@@ -1225,7 +1336,7 @@ public class CShape implements Cloneable, CElement
 	public Point2D canvasToShapeRef(Point2D p) {
 		Point2D ptDst = new Point2D.Double();
 		try {
-			absTransform.inverseTransform(p, ptDst);
+			getAbsTransform().inverseTransform(p, ptDst);
 		} catch (NoninvertibleTransformException e) {
 			return p; // oh well, what can we do?
 		}
@@ -1237,38 +1348,34 @@ public class CShape implements Cloneable, CElement
 	// ____________________________________ BOUNDING BOX
 	// _________________________________________________
 
+	// the bounding box of this shape in canvas coordinates, cached until
+	// the geometry of this shape or its absolute transform change
+	Rectangle2D getAbsBoundingBox() {
+		Rectangle2D box = absBoundingBox;
+		if (box != null)
+			return box;
+		Rectangle2D bounds = getShape().getBounds2D();
+		double[] corners = new double[] { bounds.getMinX(), bounds.getMinY(), bounds.getMinX(), bounds.getMaxY(),
+				bounds.getMaxX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY() };
+		getAbsTransform().transform(corners, 0, corners, 0, 4);
+		double minX = corners[0], maxX = minX, minY = corners[1], maxY = minY;
+		for (int i = 2; i < 8; i += 2) {
+			minX = Math.min(minX, corners[i]);
+			maxX = Math.max(maxX, corners[i]);
+			minY = Math.min(minY, corners[i + 1]);
+			maxY = Math.max(maxY, corners[i + 1]);
+		}
+		box = new Rectangle2D.Double(minX, minY, Math.abs(maxX - minX), Math.abs(maxY - minY));
+		absBoundingBox = box;
+		return box;
+	}
+
 	/**
 	 * @return the rectangle that is the bounding box of this shape.
 	 */
 	public CRectangle getBoundingBox() {
-		double minX, maxX, minY, maxY;
-		Rectangle2D bounds = getShape().getBounds2D();
-		Point2D pt = new Point2D.Double(bounds.getMinX(), bounds.getMinY());
-		Point2D txPt = new Point2D.Double();
-		getAbsTransform().transform(pt, txPt);
-		minX = txPt.getX();
-		maxX = minX;
-		minY = txPt.getY();
-		maxY = minY;
-		pt.setLocation(bounds.getMinX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		minX = Math.min(minX, txPt.getX());
-		maxX = Math.max(maxX, txPt.getX());
-		minY = Math.min(minY, txPt.getY());
-		maxY = Math.max(maxY, txPt.getY());
-		pt.setLocation(bounds.getMaxX(), bounds.getMinY());
-		getAbsTransform().transform(pt, txPt);
-		minX = Math.min(minX, txPt.getX());
-		maxX = Math.max(maxX, txPt.getX());
-		minY = Math.min(minY, txPt.getY());
-		maxY = Math.max(maxY, txPt.getY());
-		pt.setLocation(bounds.getMaxX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		minX = Math.min(minX, txPt.getX());
-		maxX = Math.max(maxX, txPt.getX());
-		minY = Math.min(minY, txPt.getY());
-		maxY = Math.max(maxY, txPt.getY());
-		return new CRectangle(minX, minY, Math.abs(maxX - minX), Math.abs(maxY - minY));
+		Rectangle2D box = getAbsBoundingBox();
+		return new CRectangle(box.getX(), box.getY(), box.getWidth(), box.getHeight());
 	}
 
 	/**
@@ -1276,26 +1383,7 @@ public class CShape implements Cloneable, CElement
 	 *         precision.
 	 */
 	public double getHeight() {
-		double minY, maxY;
-		Rectangle2D bounds = getShape().getBounds2D();
-		Point2D pt = new Point2D.Double(bounds.getMinX(), bounds.getMinY());
-		Point2D txPt = new Point2D.Double();
-		getAbsTransform().transform(pt, txPt);
-		minY = txPt.getY();
-		maxY = minY;
-		pt.setLocation(bounds.getMinX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		minY = Math.min(minY, txPt.getY());
-		maxY = Math.max(maxY, txPt.getY());
-		pt.setLocation(bounds.getMaxX(), bounds.getMinY());
-		getAbsTransform().transform(pt, txPt);
-		minY = Math.min(minY, txPt.getY());
-		maxY = Math.max(maxY, txPt.getY());
-		pt.setLocation(bounds.getMaxX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		minY = Math.min(minY, txPt.getY());
-		maxY = Math.max(maxY, txPt.getY());
-		return Math.abs(maxY - minY);
+		return getAbsBoundingBox().getHeight();
 	}
 
 	/**
@@ -1303,26 +1391,7 @@ public class CShape implements Cloneable, CElement
 	 *         precision.
 	 */
 	public double getWidth() {
-		double minX, maxX;
-		Rectangle2D bounds = getShape().getBounds2D();
-		Point2D pt = new Point2D.Double(bounds.getMinX(), bounds.getMinY());
-		Point2D txPt = new Point2D.Double();
-		getAbsTransform().transform(pt, txPt);
-		minX = txPt.getX();
-		maxX = minX;
-		pt.setLocation(bounds.getMinX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		minX = Math.min(minX, txPt.getX());
-		maxX = Math.max(maxX, txPt.getX());
-		pt.setLocation(bounds.getMaxX(), bounds.getMinY());
-		getAbsTransform().transform(pt, txPt);
-		minX = Math.min(minX, txPt.getX());
-		maxX = Math.max(maxX, txPt.getX());
-		pt.setLocation(bounds.getMaxX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		minX = Math.min(minX, txPt.getX());
-		maxX = Math.max(maxX, txPt.getX());
-		return Math.abs(maxX - minX);
+		return getAbsBoundingBox().getWidth();
 	}
 
 	/**
@@ -1330,22 +1399,7 @@ public class CShape implements Cloneable, CElement
 	 *         this shape in double precision.
 	 */
 	public double getMinX() {
-		double minX;
-		Rectangle2D bounds = getShape().getBounds2D();
-		Point2D pt = new Point2D.Double(bounds.getMinX(), bounds.getMinY());
-		Point2D txPt = new Point2D.Double();
-		getAbsTransform().transform(pt, txPt);
-		minX = txPt.getX();
-		pt.setLocation(bounds.getMinX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		minX = Math.min(minX, txPt.getX());
-		pt.setLocation(bounds.getMaxX(), bounds.getMinY());
-		getAbsTransform().transform(pt, txPt);
-		minX = Math.min(minX, txPt.getX());
-		pt.setLocation(bounds.getMaxX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		minX = Math.min(minX, txPt.getX());
-		return minX;
+		return getAbsBoundingBox().getMinX();
 	}
 
 	/**
@@ -1353,22 +1407,7 @@ public class CShape implements Cloneable, CElement
 	 *         this shape in double precision.
 	 */
 	public double getMinY() {
-		double minY;
-		Rectangle2D bounds = getShape().getBounds2D();
-		Point2D pt = new Point2D.Double(bounds.getMinX(), bounds.getMinY());
-		Point2D txPt = new Point2D.Double();
-		getAbsTransform().transform(pt, txPt);
-		minY = txPt.getY();
-		pt.setLocation(bounds.getMinX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		minY = Math.min(minY, txPt.getY());
-		pt.setLocation(bounds.getMaxX(), bounds.getMinY());
-		getAbsTransform().transform(pt, txPt);
-		minY = Math.min(minY, txPt.getY());
-		pt.setLocation(bounds.getMaxX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		minY = Math.min(minY, txPt.getY());
-		return minY;
+		return getAbsBoundingBox().getMinY();
 	}
 
 	/**
@@ -1376,22 +1415,7 @@ public class CShape implements Cloneable, CElement
 	 *         this shape in double precision.
 	 */
 	public double getMaxX() {
-		double maxX;
-		Rectangle2D bounds = getShape().getBounds2D();
-		Point2D pt = new Point2D.Double(bounds.getMinX(), bounds.getMinY());
-		Point2D txPt = new Point2D.Double();
-		getAbsTransform().transform(pt, txPt);
-		maxX = txPt.getX();
-		pt.setLocation(bounds.getMinX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		maxX = Math.max(maxX, txPt.getX());
-		pt.setLocation(bounds.getMaxX(), bounds.getMinY());
-		getAbsTransform().transform(pt, txPt);
-		maxX = Math.max(maxX, txPt.getX());
-		pt.setLocation(bounds.getMaxX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		maxX = Math.max(maxX, txPt.getX());
-		return maxX;
+		return getAbsBoundingBox().getMaxX();
 	}
 
 	/**
@@ -1399,22 +1423,7 @@ public class CShape implements Cloneable, CElement
 	 *         this shape in double precision.
 	 */
 	public double getMaxY() {
-		double maxY;
-		Rectangle2D bounds = getShape().getBounds2D();
-		Point2D pt = new Point2D.Double(bounds.getMinX(), bounds.getMinY());
-		Point2D txPt = new Point2D.Double();
-		getAbsTransform().transform(pt, txPt);
-		maxY = txPt.getY();
-		pt.setLocation(bounds.getMinX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		maxY = Math.max(maxY, txPt.getY());
-		pt.setLocation(bounds.getMaxX(), bounds.getMinY());
-		getAbsTransform().transform(pt, txPt);
-		maxY = Math.max(maxY, txPt.getY());
-		pt.setLocation(bounds.getMaxX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		maxY = Math.max(maxY, txPt.getY());
-		return maxY;
+		return getAbsBoundingBox().getMaxY();
 	}
 
 	/**
@@ -1422,14 +1431,7 @@ public class CShape implements Cloneable, CElement
 	 *         this shape in double precision.
 	 */
 	public double getCenterX() {
-		Rectangle2D bounds = getShape().getBounds2D();
-		Point2D pt = new Point2D.Double(bounds.getMinX(), bounds.getMinY());
-		Point2D txPt = new Point2D.Double();
-		getAbsTransform().transform(pt, txPt);
-		double maxX = txPt.getX();
-		pt.setLocation(bounds.getMaxX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		return (maxX + txPt.getX()) / 2;
+		return getAbsBoundingBox().getCenterX();
 	}
 
 	/**
@@ -1437,14 +1439,7 @@ public class CShape implements Cloneable, CElement
 	 *         this shape in double precision.
 	 */
 	public double getCenterY() {
-		Rectangle2D bounds = getShape().getBounds2D();
-		Point2D pt = new Point2D.Double(bounds.getMinX(), bounds.getMinY());
-		Point2D txPt = new Point2D.Double();
-		getAbsTransform().transform(pt, txPt);
-		double maxY = txPt.getY();
-		pt.setLocation(bounds.getMaxX(), bounds.getMaxY());
-		getAbsTransform().transform(pt, txPt);
-		return (maxY + txPt.getY()) / 2;
+		return getAbsBoundingBox().getCenterY();
 	}
 
 	// ____________________________________ PICKING
@@ -1472,6 +1467,8 @@ public class CShape implements Cloneable, CElement
 	 */
 	public CElement setPickable(boolean pick) {
 		pickable = pick;
+		if (canvas != null)
+			canvas.shapeChanged(this);
 		return this;
 	}
 
@@ -1500,7 +1497,7 @@ public class CShape implements Cloneable, CElement
 	public CShape contains(Point2D p) {
 		Point2D ptDst = new Point2D.Double();
 		try {
-			absTransform.inverseTransform(p, ptDst);
+			getAbsTransform().inverseTransform(p, ptDst);
 			return shape.contains(ptDst) ? this : null;
 		} catch (NoninvertibleTransformException e) {
 			return null;
@@ -1522,15 +1519,10 @@ public class CShape implements Cloneable, CElement
 			return null;
 		Point2D ptDst = new Point2D.Double();
 		try {
-			absTransform.inverseTransform(p, ptDst);
-			pickingRectangle.setBounds((int) ptDst.getX() - tolerance / 2, (int) ptDst.getY() - tolerance / 2, tolerance, tolerance);
-
-			if(strokedShape == null) {
-				strokedShape = stroke.createStrokedShape(shape);
-			}
+			getAbsTransform().inverseTransform(p, ptDst);
 
 			if ((filled && shape.contains(ptDst)) 
-					|| (outlined && strokedShape.intersects(pickingRectangle)))
+					|| (outlined && outlineHits(ptDst.getX(), ptDst.getY(), tolerance)))
 				if(clip == null || clip == DEFAULT_CLIP) {
 					return this;
 				} else {
@@ -1598,14 +1590,9 @@ public class CShape implements Cloneable, CElement
 	public CShape isOnOutline(Point2D p) {
 		Point2D ptDst = new Point2D.Double();
 		try {
-			absTransform.inverseTransform(p, ptDst);
-			pickingRectangle.setBounds((int) ptDst.getX() - 1, (int) ptDst.getY() - 1, 2, 2);
-
-			if(strokedShape == null) {
-				strokedShape = stroke.createStrokedShape(shape);
-			}
+			getAbsTransform().inverseTransform(p, ptDst);
 
-			if (strokedShape.intersects(pickingRectangle))
+			if (outlineHits(ptDst.getX(), ptDst.getY(), 2))
 				return this;
 
 			//			if (((Graphics2D) canvas.getGraphics()).hit(pickingRectangle, shape, true))
@@ -1616,6 +1603,37 @@ public class CShape implements Cloneable, CElement
 		return null;
 	}
 
+	/**
+	 * Tests whether the outline of this shape, drawn with its stroke, intersects
+	 * the square of side <code>tolerance</code> centered on a point.
+	 * Subclasses whose geometry has a closed form override this method
+	 * to avoid building the stroked shape.
+	 * 
+	 * @param x
+	 *            The x coordinate of the point, in the coordinate system of this shape
+	 * @param y
+	 *            The y coordinate of the point, in the coordinate system of this shape
+	 * @param tolerance
+	 *            The side of the square
+	 * @return true if the outline intersects the square.
+	 */
+	boolean outlineHits(double x, double y, double tolerance) {
+		if(strokedShape == null) {
+			strokedShape = stroke.createStrokedShape(shape);
+		}
+		return strokedShape.intersects(x - tolerance / 2, y - tolerance / 2, tolerance, tolerance);
+	}
+
+	/**
+	 * @return half the width of the stroke of this shape if it is a <code>BasicStroke</code>
+	 * without dashes, a negative value otherwise.
+	 */
+	double plainStrokeHalfWidth() {
+		if (!(stroke instanceof BasicStroke) || ((BasicStroke) stroke).getDashArray() != null)
+			return -1;
+		return ((BasicStroke) stroke).getLineWidth() / 2;
+	}
+
 	/**
 	 * Tests whether a <code>CShape</code> s intersects this shape.
 	 * 
@@ -1624,13 +1642,26 @@ public class CShape implements Cloneable, CElement
 	 * @return this shape if s intersects it, null otherwise.
 	 */
 	public CShape intersects(CShape s) {
-		Area areaS = new Area(s.getAbsShape());
-		areaS.intersect(new Area(getAbsShape()));
+		if (!getAbsBoundingBox().intersects(s.getAbsBoundingBox()))
+			return null;
+		Area areaS = (Area) s.getAbsArea().clone();
+		areaS.intersect(getAbsArea());
 		if (areaS.isEmpty())
 			return null;
 		return this;
 	}
 
+	// the area of this shape in canvas coordinates, cached until the geometry of
+	// this shape or its absolute transform change. Must not be modified.
+	Area getAbsArea() {
+		Area area = absArea;
+		if (area == null) {
+			area = new Area(getAbsShape());
+			absArea = area;
+		}
+		return area;
+	}
+
 	public Shape getAbsShape() {
 		return getAbsTransform().createTransformedShape(shape);
 	}
@@ -1697,10 +1728,13 @@ public class CShape implements Cloneable, CElement
 
 
 		transform = new AffineTransform();
-		absTransform = new AffineTransform();
+		absTransformValid = false;
+		absBoundingBox = null;
+		absArea = null;
 		if(parent != null)
 			parent.removeChild(this);
 		removeAllChildren();
+		changedShape();
 		return this;
 	}
 
@@ -1714,8 +1748,10 @@ public class CShape implements Cloneable, CElement
 	 *         it, null otherwise.
 	 */
 	public CPolyLine getIntersection(CShape s) {
-		Area areaS = new Area(s.getAbsShape());
-		areaS.intersect(new Area(getAbsShape()));
+		if (!getAbsBoundingBox().intersects(s.getAbsBoundingBox()))
+			return null;
+		Area areaS = (Area) s.getAbsArea().clone();
+		areaS.intersect(getAbsArea());
 		if (areaS.isEmpty())
 			return null;
 		GeneralPath gp = new GeneralPath();
@@ -1735,8 +1771,9 @@ public class CShape implements Cloneable, CElement
 	 *         intersects it, null otherwise.
 	 */
 	public CPolyLine getSubtraction(CShape s) {
-		Area areaS = new Area(getAbsShape());
-		areaS.subtract(new Area(s.getAbsShape()));
+		Area areaS = (Area) getAbsArea().clone();
+		if (getAbsBoundingBox().intersects(s.getAbsBoundingBox()))
+			areaS.subtract(s.getAbsArea());
 		if (areaS.isEmpty())
 			return null;
 		GeneralPath gp = new GeneralPath();
@@ -1761,21 +1798,10 @@ public class CShape implements Cloneable, CElement
 	public boolean isAbove(CShape before) {
 		if (canvas == null)
 			return false;
-		boolean hasSeenMe = false;
-		boolean res = false;
 		synchronized(canvas.displayOrder) {
-			for (Iterator<CShape> i = canvas.displayOrder.iterator(); i.hasNext();) {
-				CShape shape = i.next();
-				if (shape == before) {
-					res = !hasSeenMe;
-					break;
-				} else {
-					if (shape == this)
-						hasSeenMe = true;
-				}
-			}
+			return before != this && canvas.displayList.holds(this) && canvas.displayList.holds(before)
+				&& DisplayList.isAbove(this, before);
 		}
-		return res;
 	}
 
 	/**
@@ -1793,25 +1819,26 @@ public class CShape implements Cloneable, CElement
 		if(before instanceof Canvas) {
 			return aboveAll();
 		}
-		CShape foregroundShape = null;
-		if(before instanceof CShape) {
-			foregroundShape = (CShape)before;
-		}
-		else {
-			CTag beforeTag = (CTag)before;
-			List<CShape> displaylist = getCanvas().getDisplayList();
-			synchronized(displaylist) {
-				for (Iterator<CShape> iter = displaylist.iterator(); iter.hasNext();) {
-					CShape element = iter.next();
-					if(element.hasTag(beforeTag)) {
+		synchronized(canvas.displayOrder) {
+			DisplayList displayList = canvas.displayList;
+			CShape foregroundShape = null;
+			if(before instanceof CShape) {
+				foregroundShape = (CShape)before;
+			}
+			else {
+				CTag beforeTag = (CTag)before;
+				for (DisplayList.Node n = displayList.last(); n != null; n = n.prev) {
+					CShape element = n.shape;
+					if(element != this && element.hasTag(beforeTag)) {
 						foregroundShape = element;
+						break;
 					}
 				}
 			}
+			if (foregroundShape == this)
+				return this;
+			displayList.moveAbove(this, displayList.holds(foregroundShape) ? foregroundShape : null);
 		}
-		canvas.displayOrder.remove(this);
-		int index = canvas.displayOrder.indexOf(foregroundShape);
-		canvas.displayOrder.add(index+1, this);
 		repaint();
 		return this;
 	}
@@ -1825,8 +1852,11 @@ public class CShape implements Cloneable, CElement
 	public CElement aboveAll() {
 		if (canvas == null)
 			return this;
-		canvas.displayOrder.remove(this);
-		canvas.displayOrder.add(this);
+		synchronized(canvas.displayOrder) {
+			if (canvas.displayList.last() == displayNode)
+				return this;
+			canvas.displayList.moveBelow(this, null);
+		}
 		repaint();
 		return this;
 	}
@@ -1843,23 +1873,10 @@ public class CShape implements Cloneable, CElement
 	public boolean isBelow(CShape after) {
 		if (canvas == null)
 			return false;
-		boolean hasSeenMe = false;
-		boolean res = false;
 		synchronized(canvas.displayOrder) {
-			for (Iterator<CShape> i = canvas.displayOrder.iterator(); i.hasNext();) {
-				CShape shape = i.next();
-				if (shape == after) {
-					res = hasSeenMe;
-					break;
-				} else {
-					if (shape == this) {
-						hasSeenMe = true;
-					}
-				}
-
-			}
+			return after != this && canvas.displayList.holds(this) && canvas.displayList.holds(after)
+				&& DisplayList.isAbove(after, this);
 		}
-		return res;
 	}
 
 	/**
@@ -1877,26 +1894,26 @@ public class CShape implements Cloneable, CElement
 		if(after instanceof Canvas) {
 			return belowAll();
 		}
-		CShape backgroundShape = null;
-		if(after instanceof CShape) {
-			backgroundShape = (CShape)after;
-		}
-		else {
-			CTag beforeTag = (CTag)after;
-			List<CShape> displaylist = getCanvas().getDisplayList();
-			synchronized(displaylist) {
-				for (Iterator<CShape> iter = displaylist.iterator(); iter.hasNext();) {
-					CShape element = iter.next();
-					if(element.hasTag(beforeTag)) {
+		synchronized(canvas.displayOrder) {
+			DisplayList displayList = canvas.displayList;
+			CShape backgroundShape = null;
+			if(after instanceof CShape) {
+				backgroundShape = (CShape)after;
+			}
+			else {
+				CTag beforeTag = (CTag)after;
+				for (DisplayList.Node n = displayList.first(); n != null; n = n.next) {
+					CShape element = n.shape;
+					if(element != this && element.hasTag(beforeTag)) {
 						backgroundShape = element;
 						break;
 					}
 				}
 			}
+			if (backgroundShape == this)
+				return this;
+			displayList.moveBelow(this, displayList.holds(backgroundShape) ? backgroundShape : null);
 		}
-		canvas.displayOrder.remove(this);
-		int index = canvas.displayOrder.indexOf(backgroundShape);
-		canvas.displayOrder.add(index, this);
 		repaint();
 		return this;
 
@@ -1911,8 +1928,11 @@ public class CShape implements Cloneable, CElement
 	public CElement belowAll() {
 		if (canvas == null)
 			return this;
-		canvas.displayOrder.remove(this);
-		canvas.displayOrder.add(0, this);
+		synchronized(canvas.displayOrder) {
+			if (canvas.displayList.first() == displayNode)
+				return this;
+			canvas.displayList.moveAbove(this, null);
+		}
 		repaint();
 		return this;
 	}
@@ -1972,11 +1992,7 @@ public class CShape implements Cloneable, CElement
 	public boolean hasTag(CTag t) {
 		if (canvas == null || t == null)
 			return false;
-		t.reset();
-		while (t.hasNext())
-			if (t.nextShape() == this)
-				return true;
-		return false;
+		return t.tagsShape(this);
 	}
 
 	/**
@@ -1993,18 +2009,34 @@ public class CShape implements Cloneable, CElement
 	}
 
 	/**
-	 * @return The list of extensional tags that tag this shape, null if this shape is not attached to a canvas.
+	 * @return The list of extensional tags registered in the canvas of this shape that tag this shape,
+	 * in the order of <code>Canvas.getAllTags()</code>, null if this shape is not attached to a canvas.
 	 */
 	public LinkedList<CExtensionalTag> getTags() {
 		if(canvas == null) return null;
-		LinkedList<CExtensionalTag> tags = new LinkedList<CExtensionalTag>();
-		for(Iterator<CTag> it = canvas.allCanvasTags.iterator(); it.hasNext(); ) {
-			CTag next = it.next();
-			if(next instanceof CExtensionalTag)
-				if(hasTag(next))
-					tags.add((CExtensionalTag)next);
+		if(extensionalTags == null) return new LinkedList<CExtensionalTag>();
+		return canvas.registeredAmong(extensionalTags);
+	}
+
+	// called by a CExtensionalTag when it is added to this shape
+	void taggedBy(CExtensionalTag t) {
+		if (extensionalTags == null)
+			extensionalTags = new ArrayList<CExtensionalTag>(2);
+		extensionalTags.add(t);
+		if (canvas != null) {
+			canvas.updateLayer(this);
+			canvas.shapeChanged(this);
+		}
+	}
+
+	// called by a CExtensionalTag when it is removed from this shape
+	void untaggedBy(CExtensionalTag t) {
+		if (extensionalTags != null)
+			extensionalTags.remove(t);
+		if (canvas != null) {
+			canvas.updateLayer(this);
+			canvas.shapeChanged(this);
 		}
-		return tags;
 	}
 
 	/**
@@ -2146,12 +2178,9 @@ public class CShape implements Cloneable, CElement
 	 */
 	public CShape duplicateWithTags() {
 		CShape sms = duplicate();
-		if(getCanvas() != null) {
-			for(Iterator<CTag> iterator = getCanvas().getAllTags().iterator(); iterator.hasNext(); ) {
-				CTag next = iterator.next();
-				if(next instanceof CExtensionalTag && next.tagsShape(this))
-					sms.addTag((CExtensionalTag)next);
-			}
+		if(getCanvas() != null && extensionalTags != null) {
+			for(Iterator<CExtensionalTag> iterator = getTags().iterator(); iterator.hasNext(); )
+				sms.addTag(iterator.next());
 		}
 		return sms;
 	}
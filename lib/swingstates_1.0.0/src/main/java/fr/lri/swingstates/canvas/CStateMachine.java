@@ -196,12 +196,21 @@ public abstract class CStateMachine extends BasicInputStateMachine {
 	 *         transition of class <code>cl</code>.
 	 */
 	protected boolean hasTransitionOfClass(Class<?> cl) {
-		for (Iterator<Transition> i = currentState.getTransitions().iterator(); i.hasNext();) {
-			Transition nextTrans = i.next();
-			if (cl.isAssignableFrom(nextTrans.getClass()))
-				return true;
-		}
-		return false;
+		return currentState.hasTransitionOfClass(cl);
+	}
+
+	/**
+	 * Tests whether or not one this state machine has a transition of one
+	 * of several classes. The answer is cached by the current state using
+	 * the identity of <code>classes</code>, which should thus be a constant.
+	 * 
+	 * @param classes
+	 *            The classes of transitions
+	 * @return true if the current state of this state machine contains a
+	 *         transition of one of the classes in <code>classes</code>.
+	 */
+	protected boolean hasTransitionOfClass(Class<?>[] classes) {
+		return currentState.hasTransitionOfClass(classes);
 	}
 
 	/**
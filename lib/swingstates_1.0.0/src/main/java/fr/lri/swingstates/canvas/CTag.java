@@ -14,11 +14,18 @@ import java.awt.RenderingHints.Key;
 import java.awt.geom.Area;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Vector;
 
+import javax.swing.SwingUtilities;
+
 import fr.lri.swingstates.animations.Animation;
 import fr.lri.swingstates.sm.Tag;
 
@@ -82,8 +89,13 @@ public abstract class CTag extends Tag implements CElement {
 	 * @param c The canvas.
 	 */
 	public CTag(Canvas c){
+		this(c, true);
+	}
+
+	// builds a tag that is registered on its canvas or not, see CHierarchyTag
+	CTag(Canvas c, boolean registered) {
 		canvas = c;
-		if(c!=null) c.registerTag(this);
+		if(c != null && registered) c.registerTag(this);
 	}
 	
 	/**
@@ -92,6 +104,34 @@ public abstract class CTag extends Tag implements CElement {
 	public Canvas getCanvas() {
 		return canvas;
 	}
+
+	// starts a batch on the canvas of this tag, if any, so that a bulk operation
+	// on the shapes of this tag repaints them once, see Canvas#beginBatch()
+	private Canvas beginBatch() {
+		Canvas c = getCanvas();
+		if(c != null) c.beginBatch();
+		return c;
+	}
+
+	private static void endBatch(Canvas c) {
+		if(c != null) c.endBatch();
+	}
+
+	// an operation of a bulk operation of a tag on one of its shapes
+	private interface ShapeOperation {
+		void apply(CShape shape);
+	}
+
+	// applies an operation to every shape that has this tag, in one batch
+	private void forEachShape(ShapeOperation operation) {
+		Canvas c = beginBatch();
+		try {
+			for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+				operation.apply(cursor.next());
+		} finally {
+			endBatch(c);
+		}
+	}
 	
 	/**
 	 * {@inheritDoc}
@@ -116,18 +156,52 @@ public abstract class CTag extends Tag implements CElement {
 		return (CShape) iterator.next();
 	}
 	
+	/**
+	 * Returns the shapes that have this tag when this method is called.
+	 * Unlike <code>reset()</code>, <code>hasNext()</code> and <code>nextShape()</code>,
+	 * which share one iterator, the returned list is not affected by browsing this tag
+	 * again, e.g. in a nested loop or in <code>action(CShape)</code>, nor by tagging,
+	 * untagging or removing shapes while browsing it.
+	 * The bulk operations of a tag (<code>action()</code>, <code>translateBy</code>, etc.)
+	 * browse this list.
+	 * @return an unmodifiable list of the shapes that have this tag.
+	 */
+	public List<CShape> getShapes() {
+		ArrayList<CShape> shapes = new ArrayList<CShape>();
+		reset();
+		while(hasNext())
+			shapes.add(nextShape());
+		return Collections.unmodifiableList(shapes);
+	}
+
 	/**
 	 * Tests if the shape s is tagged by this tag.
 	 * @param s The shape
 	 * @return true if s is tagged by this tag, false otherwise.
 	 */
 	public boolean tagsShape(CShape s) {
-		reset();
-		while(hasNext())
-			if(nextShape() == s) return true;
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+			if(cursor.next() == s) return true;
 		return false;
 	}
 	
+	/**
+	 * Returns the shapes of this tag as a bitmap of their ids on the canvas of this tag,
+	 * used to combine tags with word-parallel operations (see <code>CAndTag</code>).
+	 * Must be called while holding the lock of the display list. The bitmap must not be modified.
+	 * @return the bitmap, or null if this tag cannot be represented as a bitmap.
+	 */
+	BitSet bits() {
+		return null;
+	}
+
+	/**
+	 * @return A number that changes each time the bitmap returned by <code>bits()</code> changes.
+	 */
+	int bitsVersion() {
+		return 0;
+	}
+
 	/**
 	 * Builds a tag corresponding to the set of shapes tagged by this tag and by t.
 	 * @param t The second tag.
@@ -174,6 +248,15 @@ public abstract class CTag extends Tag implements CElement {
 		return new COrTag(this, namedTag);
 	}
 	
+	/**
+	 * Builds a tag corresponding to the set of shapes of the canvas that are not tagged by this tag.
+	 * @return a new CTag to access shapes not tagged by this tag.
+	 * @see fr.lri.swingstates.canvas.CNotTag
+	 */
+	public CTag not() {
+		return new CNotTag(this);
+	}
+	
 	/**
 	 * Method called by <code>action()</code>. This method does nothing.
 	 * Redefine it in a subclass to specify the effect of <code>CTag#action()</code>
@@ -186,99 +269,168 @@ public abstract class CTag extends Tag implements CElement {
 	 * @return this tag
 	 */ 
 	public final CTag action(){
-		reset(); 
-		while(hasNext())
-			action(nextShape());
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				action(shape);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Applies a parallel action to every CShape that has this tag: <code>action.compute</code>
+	 * is called for these shapes on as many threads as there are processors, then
+	 * <code>action.apply</code> is called for each of them on the event dispatch thread,
+	 * in one batch of the canvas. This method returns once all the shapes have been modified.
+	 * The shapes browsed are those that have this tag when this method is called.
+	 * @param action The action.
+	 * @return this tag
+	 * @see CParallelAction
+	 */
+	public final <T> CTag parallelAction(final CParallelAction<T> action) {
+		final List<CShape> shapes = getShapes();
+		final Object[] results;
+		try {
+			results = action.computeAll(shapes);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return this;
+		}
+		Runnable apply = new Runnable() {
+			@SuppressWarnings("unchecked")
+			public void run() {
+				Canvas c = beginBatch();
+				try {
+					for (int i = 0; i < results.length; i++)
+						action.apply(shapes.get(i), (T) results[i]);
+				} finally {
+					endBatch(c);
+				}
+			}
+		};
+		if (SwingUtilities.isEventDispatchThread()) {
+			apply.run();
+		} else {
+			try {
+				SwingUtilities.invokeAndWait(apply);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				if (e.getCause() instanceof Error)
+					throw (Error) e.getCause();
+				throw new RuntimeException(e.getCause());
+			}
+		}
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setShape(Shape sh){ 
-		reset(); 
-		while(hasNext())
-			nextShape().setShape(sh);
+	public CElement setShape(final Shape sh){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setShape(sh);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setParent(CShape parent){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setParent(parent);
+	public CElement setParent(final CShape parent){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setParent(parent);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setStroke(Stroke str){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setStroke(str);
+	public CElement setStroke(final Stroke str){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setStroke(str);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setTransparencyFill(AlphaComposite transparencyFill){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setTransparencyFill(transparencyFill);
+	public CElement setTransparencyFill(final AlphaComposite transparencyFill){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setTransparencyFill(transparencyFill);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setTransparencyFill(float alpha){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setTransparencyFill(alpha);
+	public CElement setTransparencyFill(final float alpha){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setTransparencyFill(alpha);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setTransparencyOutline(AlphaComposite transparencyOutline){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setTransparencyOutline(transparencyOutline);
+	public CElement setTransparencyOutline(final AlphaComposite transparencyOutline){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setTransparencyOutline(transparencyOutline);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setTransparencyOutline(float alpha){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setTransparencyOutline(alpha);
+	public CElement setTransparencyOutline(final float alpha){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setTransparencyOutline(alpha);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setFillPaint(Paint fp){ 
-		reset();
-		while(hasNext())
-			(nextShape()).setFillPaint(fp);
+	public CElement setFillPaint(final Paint fp){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setFillPaint(fp);
+			}
+		});
 		return this;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setOutlinePaint(Paint op){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setOutlinePaint(op);
+	public CElement setOutlinePaint(final Paint op){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setOutlinePaint(op);
+			}
+		});
 		return this;
 	}
 	
@@ -288,9 +440,8 @@ public abstract class CTag extends Tag implements CElement {
 	 * @see fr.lri.swingstates.canvas.CShape#isAntialiased()
 	 */
 	public boolean isAntialiased(){ 
-		reset(); 
-		while(hasNext()) 
-			if(!(nextShape()).isAntialiased()) return false;
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+			if(!(cursor.next()).isAntialiased()) return false;
 		return true;
 	}
 	
@@ -301,9 +452,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public LinkedList<CShape> getAntialiasedShapes(){ 
 		LinkedList<CShape> filledShapes = new LinkedList<CShape>();
-		reset(); 
-		while(hasNext()) {
-			CShape s = nextShape();
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			CShape s = cursor.next();
 			if(s.isAntialiased())
 				filledShapes.add(s);
 		}
@@ -313,20 +463,24 @@ public abstract class CTag extends Tag implements CElement {
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setRenderingHint(Key hintKey, Object hintValue) {
-		reset(); 
-		while(hasNext())
-			(nextShape()).setRenderingHint(hintKey, hintValue);
+	public CElement setRenderingHint(final Key hintKey, final Object hintValue) {
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setRenderingHint(hintKey, hintValue);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setAntialiased(boolean a){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setAntialiased(a);
+	public CElement setAntialiased(final boolean a){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setAntialiased(a);
+			}
+		});
 		return this;
 	}
 	
@@ -334,9 +488,8 @@ public abstract class CTag extends Tag implements CElement {
 	 * {@inheritDoc}
 	 */
 	public boolean isFilled(){ 
-		reset(); 
-		while(hasNext())
-			if(!(nextShape()).isFilled()) return false;
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+			if(!(cursor.next()).isFilled()) return false;
 		return true;
 	}
 	
@@ -347,9 +500,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public LinkedList<CShape> getFilledShapes(){ 
 		LinkedList<CShape> filledShapes = new LinkedList<CShape>();
-		reset(); 
-		while(hasNext()) {
-			CShape s = nextShape();
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			CShape s = cursor.next();
 			if(s.isFilled())
 				filledShapes.add(s);
 		}
@@ -359,10 +511,12 @@ public abstract class CTag extends Tag implements CElement {
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setFilled(boolean f){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setFilled(f);
+	public CElement setFilled(final boolean f){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setFilled(f);
+			}
+		});
 		return this;
 	}
 	
@@ -372,9 +526,8 @@ public abstract class CTag extends Tag implements CElement {
 	 * @see fr.lri.swingstates.canvas.CShape#isOutlined()
 	 */
 	public boolean isOutlined(){ 
-		reset(); 
-		while(hasNext())
-			if(!(nextShape()).isOutlined()) return false;
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+			if(!(cursor.next()).isOutlined()) return false;
 		return true;
 	}
 	
@@ -384,9 +537,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public LinkedList<CShape> getOutlinedShapes(){ 
 		LinkedList<CShape> outlinedShapes = new LinkedList<CShape>();
-		reset(); 
-		while(hasNext()) {
-			CShape s = nextShape();
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			CShape s = cursor.next();
 			if(s.isOutlined())
 				outlinedShapes.add(s);
 		}
@@ -396,10 +548,12 @@ public abstract class CTag extends Tag implements CElement {
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setOutlined(boolean f){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setOutlined(f);
+	public CElement setOutlined(final boolean f){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setOutlined(f);
+			}
+		});
 		return this;
 	}
 
@@ -409,19 +563,20 @@ public abstract class CTag extends Tag implements CElement {
 	 * @see fr.lri.swingstates.canvas.CShape#isDrawable()
 	 */
 	public boolean isDrawable(){ 
-		reset(); 
-		while(hasNext())
-			if(!(nextShape()).isDrawable()) return false;
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+			if(!(cursor.next()).isDrawable()) return false;
 		return true;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setDrawable(boolean f){ 
-		reset(); 
-		while(hasNext()) 
-			nextShape().setDrawable(f);
+	public CElement setDrawable(final boolean f){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setDrawable(f);
+			}
+		});
 		return this;
 	}
 
@@ -431,29 +586,32 @@ public abstract class CTag extends Tag implements CElement {
 	 * @see fr.lri.swingstates.canvas.CShape#isPickable()
 	 */
 	public boolean isPickable(){ 
-		reset(); 
-		while(hasNext())
-			if(!(nextShape()).isPickable()) return false;
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+			if(!(cursor.next()).isPickable()) return false;
 		return true;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setPickable(boolean pick){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setPickable(pick);
+	public CElement setPickable(final boolean pick){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setPickable(pick);
+			}
+		});
 		return this;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setReferencePoint(double x, double y){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setReferencePoint(x, y);
+	public CElement setReferencePoint(final double x, final double y){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setReferencePoint(x, y);
+			}
+		});
 		return this;
 	}
 	
@@ -461,9 +619,11 @@ public abstract class CTag extends Tag implements CElement {
 	 * {@inheritDoc}
 	 */
 	public CElement setTransformToIdentity() { 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setTransformToIdentity();
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setTransformToIdentity();
+			}
+		});
 		return this;
 	}
 	
@@ -471,89 +631,107 @@ public abstract class CTag extends Tag implements CElement {
 	 * {@inheritDoc}
 	 */
 	public CElement fixReferenceShapeToCurrent() { 
-		reset(); 
-		while(hasNext())
-			(nextShape()).fixReferenceShapeToCurrent();
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.fixReferenceShapeToCurrent();
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement translateBy(double tx, double ty){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).translateBy(tx, ty);
+	public CElement translateBy(final double tx, final double ty){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.translateBy(tx, ty);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement translateTo(double tx, double ty){
-		reset(); 
-		while(hasNext())
-			(nextShape()).translateTo(tx, ty);
+	public CElement translateTo(final double tx, final double ty){
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.translateTo(tx, ty);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement scaleBy(double sx, double sy) {
-		reset(); 
-		while(hasNext())
-			(nextShape()).scaleBy(sx, sy);
+	public CElement scaleBy(final double sx, final double sy) {
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.scaleBy(sx, sy);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement scaleBy(double s) { 
-		reset(); 
-		while(hasNext())
-			(nextShape()).scaleBy(s);
+	public CElement scaleBy(final double s) { 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.scaleBy(s);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement scaleTo(double sx, double sy) { 
-		reset(); 
-		while(hasNext())
-			(nextShape()).scaleTo(sx, sy);
+	public CElement scaleTo(final double sx, final double sy) { 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.scaleTo(sx, sy);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement scaleTo(double s) { 
-		reset(); 
-		while(hasNext())
-			(nextShape()).scaleTo(s);
+	public CElement scaleTo(final double s) { 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.scaleTo(s);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement rotateBy(double theta) { 
-		reset(); 
-		while(hasNext())
-			(nextShape()).rotateBy(theta);
+	public CElement rotateBy(final double theta) { 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.rotateBy(theta);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement rotateTo(double theta) { 
-		reset(); 
-		while(hasNext())
-			(nextShape()).rotateTo(theta);
+	public CElement rotateTo(final double theta) { 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.rotateTo(theta);
+			}
+		});
 		return this;
 	}
 	
@@ -566,9 +744,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public CShape contains(double x, double y) { 
 	    CShape res = null;
-	    reset(); 
-	    while(hasNext()) {
-			CShape s = nextShape();
+	    for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			CShape s = cursor.next();
 			if(s.contains(x, y) != null) {
 				if(res == null) res = s;
 				else if(s.isAbove(res)) res = s;
@@ -585,9 +762,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public CShape contains(Point2D p) { 
 	    CShape res = null;
-	    reset(); 
-	    while(hasNext()) {
-			CShape s = nextShape();
+	    for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			CShape s = cursor.next();
 			if(s.contains(p) != null) {
 				if(res == null) res = s;
 				else if(s.isAbove(res)) res = s;
@@ -607,9 +783,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public CShape contains(double x, double y, double w, double h) { 
 	    CShape res = null;
-	    reset(); 
-	    while(hasNext()) {
-			CShape s = nextShape();
+	    for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			CShape s = cursor.next();
 			if(s.contains(x, y, w, h) != null) {
 				if(res == null) res = s;
 				else if(s.isAbove(res)) res = s;
@@ -626,9 +801,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public CShape contains(Rectangle r) { 
 	    CShape res = null;
-	    reset(); 
-	    while(hasNext()) {
-			CShape s = nextShape();
+	    for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			CShape s = cursor.next();
 			if(s.contains(r) != null) {
 				if(res == null) res = s;
 				else if(s.isAbove(res)) res = s;
@@ -645,9 +819,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public CShape isOnOutline(Point2D p) { 
 	    CShape res = null;
-	    reset(); 
-	    while(hasNext()) {
-			CShape s = nextShape();
+	    for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			CShape s = cursor.next();
 			if(s.isOnOutline(p) != null) {
 				if(res == null) res = s;
 				else if(s.isAbove(res)) res = s;
@@ -661,9 +834,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public CShape intersects(CShape s) {
 	    CShape res = null;
-	    reset(); 
-	    while(hasNext()) {
-			CShape shape = nextShape();
+	    for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			CShape shape = cursor.next();
 			if(shape.intersects(s) != null) {
 				if(res == null) res = shape;
 				else if(shape.isAbove(res)) res = shape;
@@ -679,14 +851,14 @@ public abstract class CTag extends Tag implements CElement {
 	 * @see fr.lri.swingstates.canvas.CShape#getIntersection(CShape)
 	 */
 	public CPolyLine getIntersection(CShape s) {
-		Area areaS = new Area(s.getAbsShape());
+		Area areaS = s.getAbsArea();
+		Rectangle2D boxS = s.getAbsBoundingBox();
 		Area areaSms = null;
 		Area res = new Area();
-		reset(); 
-	    while(hasNext()) {
-			CShape sms = nextShape();
-			if(sms.isPickable()) {
-				areaSms = new Area(sms.getAbsShape());
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			CShape sms = cursor.next();
+			if(sms.isPickable() && sms.getAbsBoundingBox().intersects(boxS)) {
+				areaSms = (Area) sms.getAbsArea().clone();
 				areaSms.intersect(areaS);
 				if(!areaSms.isEmpty()) res.add(areaSms);
 			}
@@ -708,9 +880,8 @@ public abstract class CTag extends Tag implements CElement {
 	public CShape getFirstHavingTag(CTag t) { 
 		if(t==null) return null;
 	    CShape res = null;
-	    reset(); 
-	    while(hasNext()) {
-			CShape s = nextShape();
+	    for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			CShape s = cursor.next();
 			if(s.hasTag(t)) {
 				if(res == null) res = s;
 				else if(res.isBelow(s)) res = s;
@@ -727,9 +898,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public boolean hasTag(String t) { 
 		if(t==null) return true;
-		reset(); 
-		while(hasNext()) {
-			CShape next = nextShape();
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			CShape next = cursor.next();
 			if(!next.hasTag(t)) return false;
 		}
 		return true;
@@ -742,9 +912,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public boolean hasTag(CTag t) { 
 		if(t==null) return true;
-		reset(); 
-		while(hasNext()) 
-			if(!((nextShape()).hasTag(t))) return false;
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+			if(!((cursor.next()).hasTag(t))) return false;
 		return true;
 	}
 
@@ -909,10 +1078,12 @@ public abstract class CTag extends Tag implements CElement {
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement setClip(CShape clip){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).setClip(clip);
+	public CElement setClip(final CShape clip){ 
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.setClip(clip);
+			}
+		});
 		return this;
 	}
 
@@ -921,9 +1092,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public void addGhost(){ 
 		CShape s = null;
-		reset(); 
-		while(hasNext()) {
-			s = nextShape();
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			s = cursor.next();
 			s.addGhost();
 		}
 	}
@@ -932,9 +1102,8 @@ public abstract class CTag extends Tag implements CElement {
 	 * {@inheritDoc}
 	 */
 	public void removeGhost(){ 
-		reset(); 
-		while(hasNext())
-			(nextShape()).removeGhost();
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+			(cursor.next()).removeGhost();
 	}
 
 	/**
@@ -949,9 +1118,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public double getMinX() {
 		double minX = Double.MAX_VALUE;
-		reset(); 
-		while(hasNext())
-			minX = Math.min(nextShape().getMinX(), minX);
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+			minX = Math.min(cursor.next().getMinX(), minX);
 		return minX;
 	}
 	
@@ -960,9 +1128,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public double getMaxX() {
 		double maxX = Double.MIN_VALUE;
-		reset(); 
-		while(hasNext())
-			maxX = Math.max(nextShape().getMaxX(), maxX);
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+			maxX = Math.max(cursor.next().getMaxX(), maxX);
 		return maxX;
 	}
 	
@@ -978,9 +1145,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public double getMinY() {
 		double minY = Double.MAX_VALUE;
-		reset(); 
-		while(hasNext())
-			minY = Math.min(nextShape().getMinY(), minY);
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+			minY = Math.min(cursor.next().getMinY(), minY);
 		return minY;
 	}
 	
@@ -989,9 +1155,8 @@ public abstract class CTag extends Tag implements CElement {
 	 */
 	public double getMaxY() {
 		double maxY = Double.MIN_VALUE;
-		reset(); 
-		while(hasNext())
-			maxY = Math.max(nextShape().getMaxY(), maxY);
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+			maxY = Math.max(cursor.next().getMaxY(), maxY);
 		return maxY;
 	}
 	
@@ -1007,8 +1172,8 @@ public abstract class CTag extends Tag implements CElement {
 	 * @return the first shape that has this tag, null if no shape has this tag.
 	 */
 	public CShape firstShape() {
-		reset(); 
-		if (hasNext()) return nextShape();
+		Iterator<CShape> cursor = getShapes().iterator();
+		if (cursor.hasNext()) return cursor.next();
 		return null;
 	}
 	
@@ -1016,10 +1181,9 @@ public abstract class CTag extends Tag implements CElement {
 	 * {@inheritDoc}
 	 */
 	public CShape getFirstAntialiasedShape(){ 
-		reset();
 		CShape s = null;
-		while(hasNext()) {
-			s = nextShape();
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			s = cursor.next();
 			if(s.isAntialiased()) return s;
 		}
 		return s;
@@ -1029,10 +1193,9 @@ public abstract class CTag extends Tag implements CElement {
 	 * {@inheritDoc}
 	 */
 	public CShape getFirstFilledShape(){ 
-		reset();
 		CShape s = null;
-		while(hasNext()) {
-			s = nextShape();
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			s = cursor.next();
 			if(s.isFilled()) return s;
 		}
 		return s;
@@ -1042,10 +1205,9 @@ public abstract class CTag extends Tag implements CElement {
 	 * {@inheritDoc}
 	 */
 	public final CShape getFirstOutlinedShape(){ 
-		reset();
 		CShape s = null;
-		while(hasNext()) {
-			s = nextShape();
+		for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();) {
+			s = cursor.next();
 			if(s.isOutlined()) return s;
 		}
 		return s;
@@ -1054,24 +1216,28 @@ public abstract class CTag extends Tag implements CElement {
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement addTag(CExtensionalTag t){ 
+	public CElement addTag(final CExtensionalTag t){ 
 		if(t == null || t == this)
 			return this;
-		reset(); 
-		while(hasNext())
-			(nextShape()).addTag(t);
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.addTag(t);
+			}
+		});
 		return this;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
-	public CElement addTag(String t){ 
+	public CElement addTag(final String t){ 
 		if(t == null)
 			return this;
-		reset(); 
-		while(hasNext())
-			(nextShape()).addTag(t);
+		forEachShape(new ShapeOperation() {
+			public void apply(CShape shape) {
+				shape.addTag(t);
+			}
+		});
 		return this;
 	}
 	
@@ -1081,15 +1247,16 @@ public abstract class CTag extends Tag implements CElement {
 	public CElement removeTag(CExtensionalTag t) { 
 		if(t == null) return this;
 		if(t == this) {
-			reset(); 
-			while(hasNext()) {
-				t.removed(nextShape());
-			}
+			Object[] shapes = collection.toArray();
 			collection.clear();
+			t.clearedBits();
+			for (int i = 0; i < shapes.length; i++) {
+				((CShape) shapes[i]).untaggedBy(t);
+				t.removed((CShape) shapes[i]);
+			}
 		} else {
-			reset(); 
-			while(hasNext())
-				(nextShape()).removeTag(t);
+			for (Iterator<CShape> cursor = getShapes().iterator(); cursor.hasNext();)
+				(cursor.next()).removeTag(t);
 		}
 		return this;
 	}
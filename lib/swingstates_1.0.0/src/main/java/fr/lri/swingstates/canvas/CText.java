@@ -6,12 +6,10 @@
 package fr.lri.swingstates.canvas;
 
 import java.awt.Color;
-import java.awt.Composite;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
-import java.awt.Shape;
 import java.awt.font.FontRenderContext;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
@@ -64,74 +62,54 @@ public class CText extends CShape {
 	 * {@inheritDoc}
 	 */
 	public void paint(Graphics g){
+		Painter painter = new Painter((Graphics2D)g);
+		paint(painter);
+		painter.restore();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	void paint(Painter painter){
 
 		if(!filled && !outlined) {
 			return;
 		}
 
-		Graphics2D g2d = (Graphics2D)g;
-		Shape saveClip = g2d.getClip();
-		AffineTransform saveTransform = g2d.getTransform();
-		RenderingHints saveRenderingHints = g2d.getRenderingHints();
-		Composite saveComposite = g2d.getComposite();
-
+		Graphics2D g2d = painter.graphics();
+		painter.setHintsAndClip(this);
+		painter.setFont(font);
 
-		if (renderingHints != null) {
-			g2d.addRenderingHints(renderingHints);
-		}
-		if (clip != null && (canvas != null && clip != canvas.clip)) {
-			if (clip == DEFAULT_CLIP) {
-				g2d.clipRect(0, 0, canvas.getWidth(), canvas.getHeight());
-			} else {
-				g2d.transform(clip.getAbsTransform());
-				g2d.clip(clip.getShape());
-				g2d.setTransform(saveTransform);
+		if(filled) {
+			CShape s = parent;
+			AffineTransform xform = new AffineTransform();
+			while (s != null) {
+				s.getAbsShape();
+				xform.preConcatenate (s.transform);
+				s = s.parent;
 			}
-		}
-
-		g2d.setFont(font);
-		g2d.setPaint(fillPaint);
 
-		//		if(filled || outlined) {
-		CShape s = parent;
-
-		AffineTransform xform = new AffineTransform();
-		while (s != null) {
-			s.getAbsShape();
-			xform.preConcatenate (s.transform);
-			s = s.parent;
-		}
-		g2d.transform(xform);
-
-
-		Rectangle2D bounds = getShape().getBounds2D();
-		double dx = bounds.getWidth()*rx;
-		double dy = bounds.getHeight()*ry;
-		dx += bounds.getX();
-		dy += bounds.getY();
-		g2d.translate(tx+dx, ty+dy);
-		g2d.rotate (theta);
-		g2d.scale (sx, sy); 
-		g2d.translate (-bounds.getWidth()*rx, -bounds.getHeight()*ry);
-		if(filled) {
-			if (transparencyFill != null)
-				g2d.setComposite(transparencyFill);
+			Rectangle2D bounds = getShape().getBounds2D();
+			double dx = bounds.getWidth()*rx;
+			double dy = bounds.getHeight()*ry;
+			dx += bounds.getX();
+			dy += bounds.getY();
+			xform.translate(tx+dx, ty+dy);
+			xform.rotate (theta);
+			xform.scale (sx, sy); 
+			xform.translate (-bounds.getWidth()*rx, -bounds.getHeight()*ry);
+			painter.setTransform(xform);
+			painter.setComposite(transparencyFill);
+			painter.setPaint(fillPaint);
 			g2d.drawString(text, 0, -(int)yOffSet);
-			g2d.setComposite(saveComposite);
 		}
-		g2d.setTransform(saveTransform);
 		if(outlined) {
-			g2d.setStroke(stroke);
-			g2d.transform(getAbsTransform());
-			if (transparencyOutline != null)
-				g2d.setComposite(transparencyOutline);
-			g2d.setPaint(outlinePaint);
+			painter.setStroke(stroke);
+			painter.setTransform(getAbsTransform());
+			painter.setComposite(transparencyOutline);
+			painter.setPaint(outlinePaint);
 			g2d.draw(getShape());
-			g2d.setTransform(saveTransform);
-			g2d.setComposite(saveComposite);
 		}
-		g2d.setClip(saveClip);
-		g2d.setRenderingHints(saveRenderingHints);
 
 	}
 
@@ -30,14 +30,22 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Vector;
 
 import javax.swing.JComponent;
@@ -140,9 +148,74 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 
 	protected List<CStateMachine> stateMachines = null;
 	protected List<CShape> displayOrder;
+	DisplayList displayList;
+
+	// the shapes of this canvas by id, and the ids in use, see CShape.id.
+	// Guarded by the lock of the display list.
+	private CShape[] shapesById = new CShape[16];
+	private BitSet shapeIds = new BitSet();
+	private int shapeIdsVersion = 0;
+	// no id below this one is free
+	private int firstFreeId = 0;
+
+	/**
+	 * The index of the shapes of this canvas by bounding box, used for picking and painting.
+	 */
+	SpatialIndex spatialIndex = new SpatialIndex();
+
+	// the intentional tags of this canvas, notified when shapes change, see CIntentionalTag.
+	// Held weakly, so that the tags the canvas does not register (e.g. CHierarchyTag) can be
+	// garbage collected. Guarded by the lock of the display list.
+	private ArrayList<WeakReference<CIntentionalTag>> intentionalTags = new ArrayList<WeakReference<CIntentionalTag>>();
+
+	// the cached layers, from back to front. Guarded by the lock of the display list.
+	private ArrayList<Layer> layers = new ArrayList<Layer>();
+
+	// the shapes modified and the regions damaged during a batch, see beginBatch
+	private final Object batchLock = new Object();
+	private int batchDepth = 0;
+	private LinkedHashSet<CShape> batchedShapes = new LinkedHashSet<CShape>();
+	private Rectangle2D batchedDamage = null;
+
+	private static final Comparator<CShape> FRONT_TO_BACK = new Comparator<CShape>() {
+		public int compare(CShape s1, CShape s2) {
+			long l1 = s1.displayNode.label, l2 = s2.displayNode.label;
+			return l2 < l1 ? -1 : (l2 == l1 ? 0 : 1);
+		}
+	};
+
+	private static final Comparator<CShape> BACK_TO_FRONT = new Comparator<CShape>() {
+		public int compare(CShape s1, CShape s2) {
+			long l1 = s1.displayNode.label, l2 = s2.displayNode.label;
+			return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+		}
+	};
+
+	// the classes of transitions that require picking for each kind of event
+	private static final Class<?>[] PICKING_TRANSITIONS = { EventOnShape.class, EventOnTag.class };
+	private static final Class<?>[] ENTER_LEAVE_TRANSITIONS = {
+		EnterOnShape.class, EnterOnTag.class, LeaveOnShape.class, LeaveOnTag.class };
+	private static final Class<?>[] ENTER_TRANSITIONS = { Enter.class, EnterOnShape.class, EnterOnTag.class };
+	private static final Class<?>[] LEAVE_TRANSITIONS = { LeaveOnShape.class, LeaveOnTag.class };
+	private static final Class<?>[] RELEASE_PICKING_TRANSITIONS = { ReleaseOnShape.class, ReleaseOnTag.class };
+	private static final Class<?>[] CLICK_PICKING_TRANSITIONS = { ClickOnShape.class, ClickOnTag.class };
+	private static final Class<?>[] WHEEL_PICKING_TRANSITIONS = { WheelOnShape.class, WheelOnTag.class };
+	private static final Class<?>[] DRAG_PICKING_TRANSITIONS = {
+		EnterOnShape.class, EnterOnTag.class, LeaveOnShape.class, LeaveOnTag.class, DragOnShape.class, DragOnTag.class };
+	private static final Class<?>[] MOVE_PICKING_TRANSITIONS = {
+		EnterOnShape.class, EnterOnTag.class, LeaveOnShape.class, LeaveOnTag.class, MoveOnShape.class, MoveOnTag.class };
 
 	protected List<CTag> allCanvasTags = null;
 
+	// the registered tags with the order of their registration, the named tags by name,
+	// the tags by class and the class tags, for constant-time lookups.
+	// Guarded by the lock of allCanvasTags.
+	private IdentityHashMap<CTag, Long> registeredTags = new IdentityHashMap<CTag, Long>();
+	private long registrations = 0;
+	private HashMap<String, CNamedTag> namedTags = new HashMap<String, CNamedTag>();
+	private HashMap<Class<?>, List<CTag>> tagsByClass = new HashMap<Class<?>, List<CTag>>();
+	HashMap<Class<?>, ClassTag> classTags = new HashMap<Class<?>, ClassTag>();
+
 	/**
 	 * The active pickers on this <code>Canvas</code>.
 	 */
@@ -173,7 +246,8 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 	 */
 	public Canvas() {
 		super();
-		displayOrder = Collections.synchronizedList(new LinkedList<CShape>());
+		displayList = new DisplayList();
+		displayOrder = Collections.synchronizedList(displayList);
 		stateMachines = Collections.synchronizedList(new LinkedList<CStateMachine>());
 		allCanvasTags = Collections.synchronizedList(new LinkedList<CTag>());
 		addPicker(masterPicker);
@@ -214,8 +288,229 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 	 *            The tag to register
 	 */
 	void registerTag(CTag tag) {
-		if (!allCanvasTags.contains(tag))
+		synchronized(allCanvasTags) {
+			if (registeredTags.containsKey(tag))
+				return;
+			registeredTags.put(tag, ++registrations);
 			allCanvasTags.add(tag);
+			List<CTag> sameClass = tagsByClass.get(tag.getClass());
+			if (sameClass == null) {
+				sameClass = new ArrayList<CTag>(1);
+				tagsByClass.put(tag.getClass(), sameClass);
+			}
+			sameClass.add(tag);
+			if (tag instanceof CNamedTag) {
+				CNamedTag namedTag = (CNamedTag) tag;
+				if (!namedTags.containsKey(namedTag.getName()))
+					namedTags.put(namedTag.getName(), namedTag);
+			}
+		}
+	}
+
+	// updates the index of the named tags after a tag has been renamed
+	void renamedTag(CNamedTag tag, String oldName) {
+		synchronized(allCanvasTags) {
+			if (!registeredTags.containsKey(tag))
+				return;
+			if (namedTags.get(oldName) == tag)
+				forgetName(oldName, tag);
+			if (!namedTags.containsKey(tag.getName()))
+				namedTags.put(tag.getName(), tag);
+		}
+	}
+
+	// removes a tag from the index of the named tags, another tag may have the same name.
+	// Must be called while holding the lock of allCanvasTags.
+	private void forgetName(String name, CTag tag) {
+		namedTags.remove(name);
+		for (Iterator<CTag> i = allCanvasTags.iterator(); i.hasNext();) {
+			CTag next = i.next();
+			if (next instanceof CNamedTag && next != tag && name.equals(((CNamedTag) next).getName())) {
+				namedTags.put(name, (CNamedTag) next);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Unregisters a tag from this canvas, so that it can be garbage collected once the
+	 * application does not use it anymore. The tag is no longer returned by <code>getAllTags</code>
+	 * and <code>getTag</code>. An intentional tag is no longer notified of the changes of the
+	 * shapes: it tests all the shapes each time it is used.
+	 * 
+	 * @param tag
+	 *            The tag to unregister.
+	 */
+	public void unregisterTag(CTag tag) {
+		synchronized(allCanvasTags) {
+			if (registeredTags.remove(tag) != null) {
+				allCanvasTags.remove(tag);
+				List<CTag> sameClass = tagsByClass.get(tag.getClass());
+				sameClass.remove(tag);
+				if (sameClass.isEmpty())
+					tagsByClass.remove(tag.getClass());
+				if (tag instanceof CNamedTag && namedTags.get(((CNamedTag) tag).getName()) == tag)
+					forgetName(((CNamedTag) tag).getName(), tag);
+				classTags.values().remove(tag);
+			}
+		}
+		if (tag instanceof CIntentionalTag) {
+			synchronized(displayOrder) {
+				for (Iterator<WeakReference<CIntentionalTag>> i = intentionalTags.iterator(); i.hasNext();)
+					if (i.next().get() == tag)
+						i.remove();
+				((CIntentionalTag) tag).notified = false;
+			}
+		}
+	}
+
+	/**
+	 * Returns the tags registered in this canvas whose class is a given class
+	 * (not a subclass of it).
+	 * Must be called while holding the lock of <code>allCanvasTags</code>.
+	 * @param tagClass The class.
+	 * @return the tags, in the order they were registered.
+	 */
+	List<CTag> tagsOfClass(Class<?> tagClass) {
+		List<CTag> sameClass = tagsByClass.get(tagClass);
+		return sameClass == null ? Collections.<CTag>emptyList() : sameClass;
+	}
+
+	/**
+	 * Returns the tags among given tags that are registered in this canvas,
+	 * in the order they were registered (the order of <code>getAllTags()</code>).
+	 * @param tags The tags.
+	 * @return the registered tags.
+	 */
+	LinkedList<CExtensionalTag> registeredAmong(List<CExtensionalTag> tags) {
+		ArrayList<CExtensionalTag> registered = new ArrayList<CExtensionalTag>(tags.size());
+		synchronized(allCanvasTags) {
+			for (Iterator<CExtensionalTag> i = tags.iterator(); i.hasNext();) {
+				CExtensionalTag tag = i.next();
+				if (registeredTags.containsKey(tag))
+					registered.add(tag);
+			}
+			Collections.sort(registered, new Comparator<CTag>() {
+				public int compare(CTag t1, CTag t2) {
+					return registeredTags.get(t1).compareTo(registeredTags.get(t2));
+				}
+			});
+		}
+		return new LinkedList<CExtensionalTag>(registered);
+	}
+
+	// registers an intentional tag to be notified when shapes change
+	void registerIntentionalTag(CIntentionalTag tag) {
+		synchronized(displayOrder) {
+			intentionalTags.add(new WeakReference<CIntentionalTag>(tag));
+			tag.notified = true;
+		}
+	}
+
+	// returns the intentional tag at index i or after it, null if there is none, dropping the
+	// tags that have been garbage collected. Must be called while holding the lock of the display list.
+	private CIntentionalTag intentionalTag(int i) {
+		while (i < intentionalTags.size()) {
+			CIntentionalTag tag = intentionalTags.get(i).get();
+			if (tag != null)
+				return tag;
+			int last = intentionalTags.size() - 1;
+			intentionalTags.set(i, intentionalTags.get(last));
+			intentionalTags.remove(last);
+		}
+		return null;
+	}
+
+	// notifies the intentional tags that a shape has been added, tagged, untagged or modified
+	void shapeChanged(CShape shape) {
+		synchronized(displayOrder) {
+			CIntentionalTag tag;
+			for (int i = 0; (tag = intentionalTag(i)) != null; i++)
+				tag.invalidate(shape);
+		}
+	}
+
+	// notifies the intentional tags that a shape and its descendants have been reparented
+	void hierarchyChanged(CShape shape) {
+		synchronized(displayOrder) {
+			if (intentionalTags.isEmpty())
+				return;
+		}
+		shapeChanged(shape);
+		if (shape.children != null)
+			for (Iterator<CShape> i = shape.children.iterator(); i.hasNext();)
+				hierarchyChanged(i.next());
+	}
+
+	// notifies the intentional tags that a shape has been removed, then releases its id
+	private void shapeRemoved(CShape shape) {
+		synchronized(displayOrder) {
+			CIntentionalTag tag;
+			for (int i = 0; (tag = intentionalTag(i)) != null; i++)
+				tag.shapeRemoved(shape);
+			if (shape.id >= 0 && shapesById[shape.id] == shape) {
+				shapeIds.clear(shape.id);
+				shapesById[shape.id] = null;
+				firstFreeId = Math.min(firstFreeId, shape.id);
+				shapeIdsVersion++;
+			}
+			shape.id = -1;
+		}
+	}
+
+	// gives the smallest free id to a shape added to this canvas
+	private void assignId(CShape shape) {
+		synchronized(displayOrder) {
+			int id = shapeIds.nextClearBit(firstFreeId);
+			if (id >= shapesById.length)
+				shapesById = Arrays.copyOf(shapesById, Math.max(2 * shapesById.length, id + 1));
+			shapesById[id] = shape;
+			shapeIds.set(id);
+			firstFreeId = id + 1;
+			shapeIdsVersion++;
+			shape.id = id;
+		}
+	}
+
+	/**
+	 * Returns the ids of the shapes of this canvas, i.e. a bitmap of the whole display list.
+	 * Must be called while holding the lock of the display list. The bitmap must not be modified.
+	 * @return the ids in use.
+	 */
+	BitSet shapeIds() {
+		return shapeIds;
+	}
+
+	// incremented each time a shape is added to or removed from this canvas
+	int shapeIdsVersion() {
+		return shapeIdsVersion;
+	}
+
+	/**
+	 * Returns the shapes of this canvas having given ids, in the order of their ids.
+	 * Must be called while holding the lock of the display list.
+	 * @param ids The ids of the shapes.
+	 * @return the shapes.
+	 */
+	List<Object> shapesOf(BitSet ids) {
+		List<Object> shapes = new ArrayList<Object>(ids.cardinality());
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1))
+			if (id < shapesById.length && shapesById[id] != null)
+				shapes.add(shapesById[id]);
+		return shapes;
+	}
+
+	/**
+	 * Returns the shapes of this canvas having given ids, from back to front.
+	 * Must be called while holding the lock of the display list.
+	 * @param ids The ids of the shapes.
+	 * @return the shapes.
+	 */
+	@SuppressWarnings("unchecked")
+	List<Object> shapesInDisplayOrder(BitSet ids) {
+		List<Object> shapes = shapesOf(ids);
+		Collections.sort((List<CShape>) (List<?>) shapes, BACK_TO_FRONT);
+		return shapes;
 	}
 
 	/**
@@ -226,17 +521,13 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 	 * @return The tag, or null if no such tag exists.
 	 */
 	public CNamedTag getTag(String tag) {
+		CNamedTag namedTag;
 		synchronized(allCanvasTags) {
-			for (Iterator<CTag> i = allCanvasTags.iterator(); i.hasNext();) {
-				CTag next = i.next();
-				if (next instanceof CNamedTag)
-					if (((CNamedTag) next).getName().compareTo(tag) == 0) {
-						((CNamedTag) next).reset();
-						return (CNamedTag) next;
-					}
-			}
+			namedTag = namedTags.get(tag);
 		}
-		return null;
+		if (namedTag != null)
+			namedTag.reset();
+		return namedTag;
 	}
 
 	/**
@@ -294,23 +585,300 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 			g2d.clip(g2d.getClip());
 
 		synchronized(displayOrder) {
-			for (Iterator<CShape> i = displayOrder.iterator(); i.hasNext();) {
-				CShape sms = (CShape) (i.next());
-				if (sms.isDrawable() && sms.isVisible())
-					sms.paint(g);
+			boolean layered = !layers.isEmpty() && Layer.isCacheable(g2d.getTransform());
+			if (layered)
+				for (Iterator<Layer> i = layers.iterator(); i.hasNext();)
+					i.next().paint(this, g2d);
+			List<CShape> candidates = paintCandidates(g2d.getClipBounds());
+			Painter painter = new Painter(g2d);
+			if (candidates == null) {
+				// the whole canvas is painted: walk the display list without allocating an iterator
+				for (DisplayList.Node n = displayList.first(); n != null; n = n.next) {
+					CShape sms = n.shape;
+					if ((sms.layer == null || !layered) && sms.isDrawable() && sms.isVisible())
+						painter.paint(sms);
+				}
+			} else {
+				for (Iterator<CShape> i = candidates.iterator(); i.hasNext();) {
+					CShape sms = (CShape) (i.next());
+					if ((sms.layer == null || !layered) && sms.isDrawable() && sms.isVisible())
+						painter.paint(sms);
+				}
 			}
+			painter.restore();
 		}
 
-		// to process enter/leave events if needed
-		if (hasTransitionOfClass(EnterOnShape.class)
-				|| hasTransitionOfClass(EnterOnTag.class)
-				|| hasTransitionOfClass(LeaveOnShape.class)
-				|| hasTransitionOfClass(LeaveOnTag.class)) {
+		// to process enter/leave events if needed, once the current batch if any has ended
+		if (!isBatching() && hasTransitionOfClass(ENTER_LEAVE_TRANSITIONS)) {
 			updatePickers(true);
 		}
 
 	}
 
+	// the shapes that may have to be painted in a region, from back to front,
+	// or null if all the shapes of the display list may have to be painted.
+	// Must be called while holding the lock of the display list.
+	private List<CShape> paintCandidates(Rectangle area) {
+		if (area == null || area.contains(0, 0, getWidth(), getHeight()))
+			return null;
+		List<CShape> candidates = new ArrayList<CShape>();
+		if (!spatialIndex.candidatesIn(area, displayOrder.size(), candidates))
+			return null;
+		Collections.sort(candidates, BACK_TO_FRONT);
+		return candidates;
+	}
+
+	// the shapes that may have to be painted in a region of a layer, from back to front.
+	// Must be called while holding the lock of the display list.
+	List<CShape> layerCandidates(Rectangle area) {
+		List<CShape> candidates = paintCandidates(area);
+		return candidates == null ? displayList : candidates;
+	}
+
+	/**
+	 * Caches the shapes having a given tag in an offscreen layer. The shapes of a
+	 * layer are rasterized in an image, which is drawn instead of them until one of
+	 * these shapes changes: only the region this shape covers is then rasterized again.
+	 * Caching the shapes that rarely change, such as a background or guides, avoids
+	 * repainting them each time a shape is dragged over them.
+	 * 
+	 * <p>
+	 * Layers are drawn in the order they were added, below all the shapes that do not
+	 * belong to any layer, whatever their place in the display list.
+	 * Within a layer, shapes are painted in the display list order. A shape having
+	 * the tags of several layers belongs to the first one.
+	 * </p>
+	 * 
+	 * @param tag
+	 *            The tag of the shapes of the layer.
+	 * @return this canvas.
+	 * @see Canvas#removeLayer(CExtensionalTag)
+	 * @see Canvas#refreshLayers()
+	 */
+	public Canvas addLayer(CExtensionalTag tag) {
+		if (tag == null)
+			return this;
+		synchronized(displayOrder) {
+			for (Iterator<Layer> i = layers.iterator(); i.hasNext();)
+				if (i.next().tag == tag)
+					return this;
+			layers.add(new Layer(tag));
+			for (Iterator<CShape> i = displayOrder.iterator(); i.hasNext();)
+				updateLayer(i.next());
+		}
+		repaint();
+		return this;
+	}
+
+	/**
+	 * Caches the shapes having a given <code>CNamedTag</code> in an offscreen layer.
+	 * 
+	 * @param tagName
+	 *            The name of the tag of the shapes of the layer.
+	 * @return this canvas.
+	 * @see Canvas#addLayer(CExtensionalTag)
+	 */
+	public Canvas addLayer(String tagName) {
+		return addLayer(newTag(tagName));
+	}
+
+	/**
+	 * Stops caching the shapes having a given tag in an offscreen layer.
+	 * 
+	 * @param tag
+	 *            The tag of the shapes of the layer.
+	 * @return this canvas.
+	 * @see Canvas#addLayer(CExtensionalTag)
+	 */
+	public Canvas removeLayer(CExtensionalTag tag) {
+		synchronized(displayOrder) {
+			for (Iterator<Layer> i = layers.iterator(); i.hasNext();) {
+				Layer layer = i.next();
+				if (layer.tag == tag) {
+					i.remove();
+					layer.dispose();
+					for (Iterator<CShape> j = displayOrder.iterator(); j.hasNext();)
+						updateLayer(j.next());
+					break;
+				}
+			}
+		}
+		repaint();
+		return this;
+	}
+
+	/**
+	 * Rasterizes all the layers of this canvas again. A layer is only rasterized again
+	 * where its shapes have changed, so this method must be called when the rendering of
+	 * a shape of a layer changes without this shape being modified, e.g. when the
+	 * content of an image or of a widget changes.
+	 * 
+	 * @return this canvas.
+	 * @see Canvas#addLayer(CExtensionalTag)
+	 */
+	public Canvas refreshLayers() {
+		synchronized(displayOrder) {
+			for (Iterator<Layer> i = layers.iterator(); i.hasNext();)
+				i.next().damageAll();
+		}
+		repaint();
+		return this;
+	}
+
+	// puts a shape in the first layer whose tag it has, if any,
+	// after it has been tagged or untagged
+	void updateLayer(CShape shape) {
+		if (shape.layer == null && layers.isEmpty())
+			return;
+		synchronized(displayOrder) {
+			Layer layer = null;
+			for (Iterator<Layer> i = layers.iterator(); i.hasNext() && layer == null;) {
+				Layer next = i.next();
+				if (next.tag.tagsShape(shape))
+					layer = next;
+			}
+			if (layer == shape.layer)
+				return;
+			if (shape.layer != null) {
+				if (shape.getDamagedBounds() == null)
+					shape.layer.damageAll();
+				else
+					shape.layer.damage(shape.getDamagedBounds());
+			}
+			shape.layer = layer;
+		}
+		shape.repaint();
+	}
+
+	/**
+	 * Marks a region of this canvas to be repainted. The region is enlarged
+	 * to the enclosing pixels plus one pixel to account for antialiasing.
+	 * Swing coalesces the regions marked before the next paint.
+	 * 
+	 * @param area
+	 *            The region, in the canvas coordinate system.
+	 */
+	void repaint(Rectangle2D area) {
+		synchronized(batchLock) {
+			if (batchDepth > 0) {
+				if (batchedDamage == null)
+					batchedDamage = new Rectangle2D.Double(area.getX(), area.getY(), area.getWidth(), area.getHeight());
+				else
+					batchedDamage.add(area);
+				return;
+			}
+		}
+		int x0 = (int) Math.floor(area.getMinX()) - 1;
+		int y0 = (int) Math.floor(area.getMinY()) - 1;
+		int x1 = (int) Math.ceil(area.getMaxX()) + 1;
+		int y1 = (int) Math.ceil(area.getMaxY()) + 1;
+		repaint(x0, y0, x1 - x0, y1 - y0);
+	}
+
+	/**
+	 * Starts a batch of modifications of the shapes of this canvas. Until the
+	 * matching <code>endBatch</code>, a modified shape is only recorded: the
+	 * computation of its new bounds, the update of the index used for picking,
+	 * the marking of the regions to repaint and the update of the shapes under
+	 * the pickers are done once per shape when the batch ends, however many
+	 * times the shape has been modified, and the damaged regions are repainted at once.
+	 * Batches can be nested, only the outermost one has an effect. The bulk
+	 * operations of tags (e.g. <code>CTag.translateBy</code>) are batches.
+	 * 
+	 * <pre>
+	 * canvas.beginBatch();
+	 * try {
+	 * 	for (Iterator i = guides.iterator(); i.hasNext();)
+	 * 		((CShape) i.next()).setDrawable(false);
+	 * } finally {
+	 * 	canvas.endBatch();
+	 * }
+	 * </pre>
+	 * 
+	 * @see Canvas#endBatch()
+	 * @see Canvas#batch(Runnable)
+	 */
+	public void beginBatch() {
+		synchronized(batchLock) {
+			batchDepth++;
+		}
+	}
+
+	/**
+	 * Ends a batch started by <code>beginBatch</code>. When the outermost batch
+	 * ends, the shapes modified during the batch are updated and the union of
+	 * the regions they damaged is marked to be repainted.
+	 * 
+	 * @see Canvas#beginBatch()
+	 */
+	public void endBatch() {
+		Rectangle2D damage;
+		while (true) {
+			CShape[] shapes;
+			synchronized(batchLock) {
+				if (batchDepth == 0)
+					return;
+				if (batchDepth > 1) {
+					batchDepth--;
+					return;
+				}
+				if (batchedShapes.isEmpty()) {
+					batchDepth = 0;
+					damage = batchedDamage;
+					batchedDamage = null;
+					break;
+				}
+				shapes = batchedShapes.toArray(new CShape[batchedShapes.size()]);
+				batchedShapes.clear();
+			}
+			// the batch is still open so that the regions damaged by the shapes are accumulated
+			for (int i = 0; i < shapes.length; i++)
+				if (shapes[i].getCanvas() == this)
+					shapes[i].updateRepaint();
+		}
+		if (damage != null)
+			repaint(damage);
+	}
+
+	/**
+	 * Runs modifications of the shapes of this canvas in a batch.
+	 * 
+	 * @param modifications
+	 *            The modifications.
+	 * @return this canvas.
+	 * @see Canvas#beginBatch()
+	 */
+	public Canvas batch(Runnable modifications) {
+		beginBatch();
+		try {
+			modifications.run();
+		} finally {
+			endBatch();
+		}
+		return this;
+	}
+
+	/**
+	 * @return True if a batch of modifications is in progress.
+	 * @see Canvas#beginBatch()
+	 */
+	public boolean isBatching() {
+		synchronized(batchLock) {
+			return batchDepth > 0;
+		}
+	}
+
+	// records a shape to repaint when the current batch ends.
+	// Returns false if no batch is in progress.
+	boolean deferRepaint(CShape shape) {
+		synchronized(batchLock) {
+			if (batchDepth == 0)
+				return false;
+			batchedShapes.add(shape);
+			return true;
+		}
+	}
+
 	/**
 	 * Processes an event to all the state machines that monitor this canvas, a
 	 * shape in this canvas or a tag attached to shapes in this canvas. Performs
@@ -357,8 +925,7 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 		boolean isConsumed = false;
 		virtualEvent.setSource(this);
 		if(virtualEvent instanceof VirtualCanvasEvent) {
-			if (hasTransitionOfClass(EventOnShape.class)
-					|| hasTransitionOfClass(EventOnTag.class)) {
+			if (hasTransitionOfClass(PICKING_TRANSITIONS)) {
 				((VirtualCanvasEvent)virtualEvent).setShape(pick(((VirtualCanvasEvent)virtualEvent).getPoint()));
 			}
 		}
@@ -513,9 +1080,7 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 		if (event.getClass().equals(MouseEvent.class) && masterPicker != null) {
 			masterPicker.move(event.getPoint());
 		}
-		if (hasTransitionOfClass(Enter.class)
-				|| hasTransitionOfClass(EnterOnShape.class)
-				|| hasTransitionOfClass(EnterOnTag.class)) {
+		if (hasTransitionOfClass(ENTER_TRANSITIONS)) {
 			processEvent(event);
 		}
 	}
@@ -527,8 +1092,7 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 		if (event.getClass().equals(MouseEvent.class) && masterPicker != null) {
 			masterPicker.move(event.getPoint());
 		}
-		if (hasTransitionOfClass(LeaveOnShape.class)
-				|| hasTransitionOfClass(LeaveOnTag.class)) {
+		if (hasTransitionOfClass(LEAVE_TRANSITIONS)) {
 			processEvent(event);
 		}
 	}
@@ -591,6 +1155,34 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 		return false;
 	}
 
+	/**
+	 * Tests whether or not one of the attached state machines has a transition
+	 * of one of several classes. The answer of each machine is cached by
+	 * its current state using the identity of <code>classes</code>,
+	 * which should thus be a constant.
+	 * 
+	 * @param classes
+	 *            The classes of transitions
+	 * @return true if there is at least one state machine whose current state
+	 *         contained a transition of one of the classes in <code>classes</code>.
+	 */
+	protected boolean hasTransitionOfClass(Class<?>[] classes) {
+		CStateMachine machine;
+		synchronized(stateMachines) {
+			Iterator<CStateMachine> i = stateMachines.iterator(); // Must be in synchronized block
+			while (i.hasNext()) {
+				machine = i.next();
+				if (machine.isActive()) {
+					if (machine.getCurrentState() == null)
+						continue;
+					if (machine.hasTransitionOfClass(classes))
+						return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	// events incoming from java.awt (MouseEvent)
 	// or from any other GMouse (PickerEvent)
 	protected void pickAndProcess(MouseEvent event) {
@@ -612,44 +1204,31 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 			processModifiedEvent(eventPicker, event);
 			return;
 		case MouseEvent.MOUSE_RELEASED:
-			if (hasTransitionOfClass(ReleaseOnShape.class)
-					|| hasTransitionOfClass(ReleaseOnTag.class)) {
+			if (hasTransitionOfClass(RELEASE_PICKING_TRANSITIONS)) {
 				updatePicker(eventPicker, event.getModifiersEx());
 			}
 			processModifiedEvent(eventPicker, event);
 			return;
 		case MouseEvent.MOUSE_CLICKED:
-			if (hasTransitionOfClass(ClickOnShape.class)
-					|| hasTransitionOfClass(ClickOnTag.class)) {
+			if (hasTransitionOfClass(CLICK_PICKING_TRANSITIONS)) {
 				updatePicker(eventPicker, event.getModifiersEx());
 			}
 			processModifiedEvent(eventPicker, event);
 			return;
 		case MouseEvent.MOUSE_WHEEL:
-			if (hasTransitionOfClass(WheelOnShape.class)
-					|| hasTransitionOfClass(WheelOnTag.class)) {
+			if (hasTransitionOfClass(WHEEL_PICKING_TRANSITIONS)) {
 				updatePicker(eventPicker, event.getModifiersEx());
 			}
 			processModifiedEvent(eventPicker, event);
 			return;
 		case MouseEvent.MOUSE_DRAGGED:
-			if (hasTransitionOfClass(EnterOnShape.class)
-					|| hasTransitionOfClass(EnterOnTag.class)
-					|| hasTransitionOfClass(LeaveOnShape.class)
-					|| hasTransitionOfClass(LeaveOnTag.class)
-					|| hasTransitionOfClass(DragOnShape.class)
-					|| hasTransitionOfClass(DragOnTag.class)) {
+			if (hasTransitionOfClass(DRAG_PICKING_TRANSITIONS)) {
 				updatePicker(eventPicker, event.getModifiersEx());
 			}
 			processModifiedEvent(eventPicker, event);
 			return;
 		case MouseEvent.MOUSE_MOVED:
-			if (hasTransitionOfClass(EnterOnShape.class)
-					|| hasTransitionOfClass(EnterOnTag.class)
-					|| hasTransitionOfClass(LeaveOnShape.class)
-					|| hasTransitionOfClass(LeaveOnTag.class)
-					|| hasTransitionOfClass(MoveOnShape.class)
-					|| hasTransitionOfClass(MoveOnTag.class)) {
+			if (hasTransitionOfClass(MOVE_PICKING_TRANSITIONS)) {
 				updatePicker(eventPicker, event.getModifiersEx());
 			}
 			processModifiedEvent(eventPicker, event);
@@ -771,8 +1350,9 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 	 *         if there is no shape at this postion.
 	 */
 	public CShape pick(Point2D p) {
-		for (ListIterator<CShape> i = displayOrder.listIterator(displayOrder.size()); i.hasPrevious();) {
-			CShape sms = i.previous();
+		List<CShape> candidates = pickCandidates(p);
+		for (Iterator<CShape> i = candidates.iterator(); i.hasNext();) {
+			CShape sms = i.next();
 			if (sms.isPickable())
 				if (sms.pick(p, 2) != null)
 					return sms;
@@ -780,6 +1360,25 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 		return null;
 	}
 
+	/**
+	 * Returns the shapes whose bounding box contains a given position,
+	 * from the topmost to the bottommost one.
+	 * 
+	 * @param p
+	 *            The position.
+	 * @return the shapes that may be picked at <code>p</code>.
+	 */
+	List<CShape> pickCandidates(Point2D p) {
+		List<CShape> candidates = new ArrayList<CShape>();
+		spatialIndex.candidatesAt(p, candidates);
+		if (candidates.size() > 1) {
+			synchronized(displayOrder) {
+				Collections.sort(candidates, FRONT_TO_BACK);
+			}
+		}
+		return candidates;
+	}
+
 	/**
 	 * Returns a list containing all the shapes at a given position.
 	 * 
@@ -789,11 +1388,12 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 	 */
 	public LinkedList<CShape> pickAll(Point2D p) {
 		LinkedList<CShape> pickedShapes = new LinkedList<CShape>();
-		for (ListIterator<CShape> i = displayOrder.listIterator(0); i.hasNext();) {
+		List<CShape> candidates = pickCandidates(p);
+		for (Iterator<CShape> i = candidates.iterator(); i.hasNext();) {
 			CShape sms = i.next();
 			if (sms.isPickable())
 				if (sms.pick(p, 2) != null)
-					pickedShapes.addFirst(sms);
+					pickedShapes.add(sms);
 		}
 
 		return pickedShapes;
@@ -810,8 +1410,9 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 	 *         <code>p</code>.
 	 */
 	public CShape pickShapeHavingTag(Point2D p, CTag tag) {
-		for (ListIterator<CShape> i = displayOrder.listIterator(displayOrder.size()); i.hasPrevious();) {
-			CShape sms = i.previous();
+		List<CShape> candidates = pickCandidates(p);
+		for (Iterator<CShape> i = candidates.iterator(); i.hasNext();) {
+			CShape sms = i.next();
 			if (sms.isPickable())
 				if (sms.pick(p, 2) != null)
 					if (sms.hasTag(tag)) {
@@ -851,9 +1452,12 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 			return this;
 		if (sms.getCanvas() == null) {
 			sms.setCanvas(this);
+			assignId(sms);
 			displayOrder.add(sms);
+			spatialIndex.add(sms);
+			shapeChanged(sms);
 		}
-		repaint();
+		sms.repaint();
 		return this;
 	}
 
@@ -879,9 +1483,15 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 		if (shape == null)
 			return this;
 		if (shape.getCanvas() == this) {
+			Rectangle2D damaged = shape.getDamagedBounds();
 			shape.prepareToRemove();
 			displayOrder.remove(shape);
-			repaint();
+			spatialIndex.remove(shape);
+			shapeRemoved(shape);
+			if (damaged != null)
+				repaint(damaged);
+			else
+				repaint();
 		}
 		return this;
 	}
@@ -899,13 +1509,12 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 		LinkedList<Object> taggedShapes = new LinkedList<Object>();
 		for (shapes.reset(); shapes.hasNext();)
 			taggedShapes.add(shapes.nextShape());
-		for (Iterator<Object> i = taggedShapes.iterator(); i.hasNext();)
-			((CShape) i.next()).prepareToRemove();
-//		displayOrder.removeAll(taggedShapes);
-		for(Iterator<CShape> it = displayOrder.iterator(); it.hasNext(); ) {
-			if(taggedShapes.contains(it.next())) {
-				it.remove();
-			}
+		for (Iterator<Object> i = taggedShapes.iterator(); i.hasNext();) {
+			CShape next = (CShape) i.next();
+			next.prepareToRemove();
+			spatialIndex.remove(next);
+			displayOrder.remove(next);
+			shapeRemoved(next);
 		}
 		repaint();
 		return this;
@@ -923,7 +1532,19 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 			displayOrderCopy.add(i.next());
 		for (Iterator<CShape> i = displayOrderCopy.iterator(); i.hasNext();)
 			i.next().prepareToRemove();
-		displayOrder.clear();
+		synchronized(displayOrder) {
+			displayOrder.clear();
+			CIntentionalTag tag;
+			for (int i = 0; (tag = intentionalTag(i)) != null; i++)
+				tag.allShapesRemoved();
+			for (Iterator<CShape> i = displayOrderCopy.iterator(); i.hasNext();)
+				i.next().id = -1;
+			Arrays.fill(shapesById, null);
+			shapeIds.clear();
+			firstFreeId = 0;
+			shapeIdsVersion++;
+		}
+		spatialIndex.clear();
 		repaint();
 		return this;
 	}
@@ -1373,6 +1994,7 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 			renderingHints = new RenderingHints(hintKey, hintValue);
 		else
 			renderingHints.add(new RenderingHints(hintKey, hintValue));
+		refreshLayers();
 		return this;
 	}
 
@@ -1412,6 +2034,7 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 		CNamedTag tag = getTag(t);
 		if (tag == null) {
 			tag = new CNamedTag(t);
+			tag.canvas = this;
 			registerTag(tag);
 		}
 		return tag;
@@ -1875,9 +2498,9 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 	public CShape intersects(CShape s) {
 		CShape res = null;
 		synchronized (displayOrder) {
-			for (Iterator<CShape> i = displayOrder.iterator(); i.hasNext();) {
+			for (Iterator<CShape> i = intersectionCandidates(s).iterator(); i.hasNext();) {
 				CShape sms = i.next();
-				if (sms.isPickable())
+				if (sms.isPickable() && (res == null || DisplayList.isAbove(sms, res)))
 					if (sms.intersects(s) != null)
 						res = sms;
 			}
@@ -1885,6 +2508,15 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 		return res;
 	}
 
+	// the shapes of this canvas whose bounds may intersect the bounds of a shape, not sorted.
+	// Must be called while holding the lock of the display list.
+	private List<CShape> intersectionCandidates(CShape s) {
+		List<CShape> candidates = new ArrayList<CShape>();
+		if (!spatialIndex.candidatesIn(s.getAbsBoundingBox(), displayOrder.size(), candidates))
+			return displayList;
+		return candidates;
+	}
+
 	/**
 	 * Tests whether a <code>CShape</code> s intersects this
 	 * <code>CElement</code>.
@@ -1896,14 +2528,15 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 	 * @see fr.lri.swingstates.canvas.CShape#getIntersection(CShape)
 	 */
 	public CPolyLine getIntersection(CShape s) {
-		Area areaS = new Area(s.getAbsShape());
+		Area areaS = s.getAbsArea();
+		Rectangle2D boxS = s.getAbsBoundingBox();
 		Area areaSms = null;
 		Area res = new Area();
 		synchronized (displayOrder) {
-			for (Iterator<CShape> i = displayOrder.iterator(); i.hasNext();) {
+			for (Iterator<CShape> i = intersectionCandidates(s).iterator(); i.hasNext();) {
 				CShape sms = i.next();
-				if (sms.isPickable()) {
-					areaSms = new Area(sms.getAbsShape());
+				if (sms.isPickable() && sms.getAbsBoundingBox().intersects(boxS)) {
+					areaSms = (Area) sms.getAbsArea().clone();
 					areaSms.intersect(areaS);
 					if (!areaSms.isEmpty()) {
 						res.add(areaSms);
@@ -1920,6 +2553,95 @@ MouseMotionListener, MouseWheelListener, KeyListener, CElement {
 		return intersection;
 	}
 
+	/**
+	 * Returns the pairs of distinct shapes having a given tag whose bounding boxes
+	 * overlap. The bounding boxes are sorted along the x axis and swept once
+	 * (sweep and prune), so that only the boxes overlapping along x are compared.
+	 * This is a broad phase: the shapes of a pair may not intersect, but two shapes
+	 * that intersect always form a pair. <code>CShape.intersects</code> tells
+	 * whether the shapes of a pair actually intersect.
+	 * 
+	 * @param tag
+	 *            The tag.
+	 * @return the pairs, as arrays of two shapes, each pair once.
+	 * @see CShape#intersects(CShape)
+	 */
+	public List<CShape[]> getCandidatePairs(CTag tag) {
+		return candidatePairs(tag.getShapes(), null);
+	}
+
+	/**
+	 * Returns the pairs of distinct shapes, the first one having a tag and the second one
+	 * having another tag, whose bounding boxes overlap.
+	 * 
+	 * @param tag1
+	 *            The tag of the first shapes of the pairs.
+	 * @param tag2
+	 *            The tag of the second shapes of the pairs.
+	 * @return the pairs, as arrays of two shapes.
+	 * @see Canvas#getCandidatePairs(CTag)
+	 */
+	public List<CShape[]> getCandidatePairs(CTag tag1, CTag tag2) {
+		return candidatePairs(tag1.getShapes(), tag2.getShapes());
+	}
+
+	// the pairs of shapes of two lists whose bounding boxes overlap, the pairs of shapes
+	// of the first list if the second one is null
+	private List<CShape[]> candidatePairs(List<CShape> shapes1, List<CShape> shapes2) {
+		// 1 for a shape of the first list, 2 for a shape of the second list, 3 for both
+		IdentityHashMap<CShape, Integer> roles = new IdentityHashMap<CShape, Integer>();
+		for (Iterator<CShape> i = shapes1.iterator(); i.hasNext();) {
+			CShape s = i.next();
+			if (s.getCanvas() == this)
+				roles.put(s, shapes2 == null ? 3 : 1);
+		}
+		if (shapes2 != null) {
+			for (Iterator<CShape> i = shapes2.iterator(); i.hasNext();) {
+				CShape s = i.next();
+				if (s.getCanvas() == this)
+					roles.put(s, roles.containsKey(s) ? 3 : 2);
+			}
+		}
+		List<CShape[]> pairs = new ArrayList<CShape[]>();
+		synchronized (displayOrder) {
+			int n = roles.size();
+			CShape[] shapes = roles.keySet().toArray(new CShape[n]);
+			Arrays.sort(shapes, new Comparator<CShape>() {
+				public int compare(CShape s1, CShape s2) {
+					return Double.compare(s1.getAbsBoundingBox().getMinX(), s2.getAbsBoundingBox().getMinX());
+				}
+			});
+			// the shapes whose boxes may overlap the boxes of the next shapes along x
+			int[] active = new int[n];
+			int activeCount = 0;
+			for (int i = 0; i < n; i++) {
+				Rectangle2D box = shapes[i].getAbsBoundingBox();
+				int kept = 0;
+				for (int k = 0; k < activeCount; k++) {
+					int j = active[k];
+					Rectangle2D other = shapes[j].getAbsBoundingBox();
+					if (other.getMaxX() < box.getMinX())
+						continue;
+					active[kept++] = j;
+					if (other.getMaxY() < box.getMinY() || box.getMaxY() < other.getMinY())
+						continue;
+					int roleI = roles.get(shapes[i]).intValue(), roleJ = roles.get(shapes[j]).intValue();
+					if (shapes2 == null) {
+						pairs.add(new CShape[] { shapes[j], shapes[i] });
+					} else {
+						if ((roleJ & 1) != 0 && (roleI & 2) != 0)
+							pairs.add(new CShape[] { shapes[j], shapes[i] });
+						if ((roleI & 1) != 0 && (roleJ & 2) != 0)
+							pairs.add(new CShape[] { shapes[i], shapes[j] });
+					}
+				}
+				activeCount = kept;
+				active[activeCount++] = i;
+			}
+		}
+		return pairs;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
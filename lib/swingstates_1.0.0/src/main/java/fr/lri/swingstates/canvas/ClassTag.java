@@ -5,7 +5,6 @@
 */
 package fr.lri.swingstates.canvas;
 
-import java.util.Hashtable;
 import java.util.Iterator;
 
 /**
@@ -18,8 +17,6 @@ import java.util.Iterator;
  */
 public class ClassTag extends CIntentionalTag {
 
-	private static Hashtable<String, ClassTag> classTags;
-	
 	private Class cl;
 	
 	/**
@@ -36,10 +33,12 @@ public class ClassTag extends CIntentionalTag {
 	 * {@inheritDoc}
 	 */
 	public boolean criterion(CShape s) {
-		for(Iterator i = canvas.allCanvasTags.iterator(); i.hasNext(); ) {
-			CTag tg = (CTag)i.next();
-			if(tg.getClass() == cl && s.hasTag(tg))
-				return true;
+		synchronized(canvas.allCanvasTags) {
+			for(Iterator<CTag> i = canvas.tagsOfClass(cl).iterator(); i.hasNext(); ) {
+				CTag tg = i.next();
+				if(tg != this && s.hasTag(tg))
+					return true;
+			}
 		}
 		return s.getClass() == cl;
 	}
@@ -48,20 +47,31 @@ public class ClassTag extends CIntentionalTag {
 	 * Returns the existing <code>ClassTag</code>
 	 * registered on a given canvas or creates it if
 	 * it does not exist.
+	 * The <code>ClassTag</code>s are kept by their canvas,
+	 * so they do not prevent it from being garbage collected.
 	 * 
 	 * @param c The canvas on which must be registered this tag
 	 * @param tagClass The class of the tag
 	 * @return The <code>tagClass</code> 
 	 */
 	public static ClassTag getTag(Canvas c, Class tagClass) {
-		if(classTags == null) {
-			classTags = new Hashtable<String, ClassTag>();
+		ClassTag existingTag;
+		synchronized(c.allCanvasTags) {
+			existingTag = c.classTags.get(tagClass);
 		}
-		String key = tagClass.getName() + c.getClass().getName() + "@" + Integer.toHexString(c.hashCode());
-		ClassTag existingTag = classTags.get(key);
 		if(existingTag == null) {
-			existingTag = new ClassTag(c, tagClass);
-			classTags.put(key, existingTag);					
+			// built without holding the lock of the tags: building an intentional tag
+			// takes the lock of the display list, under which criterion takes the lock of the tags
+			ClassTag newTag = new ClassTag(c, tagClass);
+			synchronized(c.allCanvasTags) {
+				existingTag = c.classTags.get(tagClass);
+				if(existingTag == null) {
+					existingTag = newTag;
+					c.classTags.put(tagClass, existingTag);
+				}
+			}
+			if(existingTag != newTag)
+				c.unregisterTag(newTag);
 		}
 		existingTag.reset();
 		return existingTag;
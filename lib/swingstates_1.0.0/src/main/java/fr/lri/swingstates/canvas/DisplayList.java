@@ -0,0 +1,398 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import java.util.AbstractSequentialList;
+import java.util.ConcurrentModificationException;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The list backing the display list of a <code>Canvas</code>, from back to front.
+ * Each shape is held by a node (see <code>CShape.displayNode</code>) linked to the
+ * nodes of its neighbours, so that a shape can be removed, inserted at either end
+ * or next to another shape in constant time, and the list can be traversed without
+ * allocating an iterator.
+ *
+ * <p>
+ * Each node also has a label that increases from back to front, so that two
+ * shapes are compared in the display order in constant time. Labels are
+ * maintained with the order-maintenance scheme of Bender et al.: a node is
+ * inserted in the middle of the gap between its neighbours and, when there is
+ * no gap left, the smallest enclosing range of labels that is sparse enough is
+ * relabelled evenly, which takes O(log n) amortized time.
+ * </p>
+ *
+ * <p>
+ * A shape is at most once in a display list. <code>add</code> rejects a shape that is
+ * already in a display list, and setting an element to a shape of this list exchanges
+ * the two shapes, so that <code>Collections.sort</code>, <code>reverse</code>,
+ * <code>shuffle</code> and <code>swap</code> reorder this list as they would reorder a
+ * <code>LinkedList</code>. Setting an element replaces the shape in its node: it does
+ * not invalidate the iterators of this list. An element can not be set to a shape that
+ * is not in this list, which would leave the replaced shape attached to the canvas:
+ * shapes are added to and removed from the canvas instead.
+ * </p>
+ *
+ * <p>
+ * Operations that take an index (e.g. <code>get(int)</code>, <code>indexOf</code>)
+ * walk the list as in a <code>LinkedList</code>.
+ * </p>
+ */
+class DisplayList extends AbstractSequentialList<CShape> {
+
+	// labels lie in ]0, UNIVERSE[, 0 and UNIVERSE are the labels of the ends of the list
+	private static final int BITS = 62;
+	private static final long UNIVERSE = 1L << BITS;
+	// the gap left after the last node or before the first one
+	private static final long END_GAP = 1L << 32;
+	// a range of 2^i labels is sparse enough when it contains at most (2/T)^i nodes
+	private static final double T = 1.4;
+
+	/**
+	 * The place of a shape in a display list.
+	 */
+	static final class Node {
+		CShape shape;
+		Node prev = null, next = null;
+		long label = 0;
+		final DisplayList owner;
+
+		private Node(DisplayList owner, CShape shape) {
+			this.owner = owner;
+			this.shape = shape;
+		}
+	}
+
+	private Node first = null;
+	private Node last = null;
+	private int size = 0;
+	// incremented each time the order of the shapes changes, including by set
+	private int version = 0;
+
+	/**
+	 * @return The node at the back of this list, null if this list is empty.
+	 */
+	Node first() {
+		return first;
+	}
+
+	/**
+	 * @return The node at the front of this list, null if this list is empty.
+	 */
+	Node last() {
+		return last;
+	}
+
+	/**
+	 * @param s A shape.
+	 * @return True if <code>s</code> is in this list.
+	 */
+	boolean holds(CShape s) {
+		return s != null && s.displayNode != null && s.displayNode.owner == this;
+	}
+
+	/**
+	 * @return The number of times the shapes of this list have been added, removed or reordered.
+	 */
+	int version() {
+		return version;
+	}
+
+	/**
+	 * Compares two shapes of this list.
+	 * @param s1 The first shape.
+	 * @param s2 The second shape.
+	 * @return True if <code>s1</code> is displayed above <code>s2</code>.
+	 */
+	static boolean isAbove(CShape s1, CShape s2) {
+		return s1.displayNode.label > s2.displayNode.label;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a shape at the front of this list.
+	 * @param s The shape.
+	 * @return true.
+	 * @throws IllegalArgumentException If the shape is already in a display list.
+	 */
+	public boolean add(CShape s) {
+		checkNotHeld(s);
+		insertAfter(last, s);
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean contains(Object o) {
+		return o instanceof CShape && holds((CShape) o);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean remove(Object o) {
+		if (!contains(o))
+			return false;
+		unlink(((CShape) o).displayNode);
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void clear() {
+		for (Node n = first; n != null; n = n.next)
+			n.shape.displayNode = null;
+		first = last = null;
+		size = 0;
+		modCount++;
+		version++;
+	}
+
+	/**
+	 * Moves a shape of this list, or inserts a shape, right above another one.
+	 * @param s The shape to move.
+	 * @param below The shape that must be right below <code>s</code>, null to move <code>s</code> at the back.
+	 */
+	void moveAbove(CShape s, CShape below) {
+		if (s == below)
+			return;
+		if (holds(s))
+			unlink(s.displayNode);
+		insertAfter(below == null ? null : below.displayNode, s);
+	}
+
+	/**
+	 * Moves a shape of this list, or inserts a shape, right below another one.
+	 * @param s The shape to move.
+	 * @param above The shape that must be right above <code>s</code>, null to move <code>s</code> at the front.
+	 */
+	void moveBelow(CShape s, CShape above) {
+		if (s == above)
+			return;
+		if (holds(s))
+			unlink(s.displayNode);
+		insertAfter(above == null ? last : above.displayNode.prev, s);
+	}
+
+	private static void checkNotHeld(CShape s) {
+		if (s.displayNode != null)
+			throw new IllegalArgumentException("The shape is already in a display list");
+	}
+
+	// removes a node of this list
+	private void unlink(Node n) {
+		if (n.prev == null)
+			first = n.next;
+		else
+			n.prev.next = n.next;
+		if (n.next == null)
+			last = n.prev;
+		else
+			n.next.prev = n.prev;
+		n.prev = n.next = null;
+		n.shape.displayNode = null;
+		size--;
+		modCount++;
+		version++;
+	}
+
+	// inserts a shape right after a node of this list, at the back if prev is null
+	private Node insertAfter(Node prev, CShape s) {
+		Node n = new Node(this, s);
+		Node next = prev == null ? first : prev.next;
+		n.prev = prev;
+		n.next = next;
+		if (prev == null)
+			first = n;
+		else
+			prev.next = n;
+		if (next == null)
+			last = n;
+		else
+			next.prev = n;
+		s.displayNode = n;
+		size++;
+		modCount++;
+		version++;
+		label(n);
+		return n;
+	}
+
+	// exchanges the shape of a node with another shape of this list
+	private CShape replace(Node n, CShape s) {
+		CShape old = n.shape;
+		if (s == old)
+			return old;
+		if (!holds(s))
+			throw new IllegalArgumentException("The shape is not in this display list");
+		Node other = s.displayNode;
+		other.shape = old;
+		old.displayNode = other;
+		n.shape = s;
+		s.displayNode = n;
+		version++;
+		return old;
+	}
+
+	// gives a label to a node that has just been linked
+	private void label(Node n) {
+		long low = n.prev == null ? 0 : n.prev.label;
+		long high = n.next == null ? UNIVERSE : n.next.label;
+		if (n.next == null && UNIVERSE - low > 2 * END_GAP) {
+			n.label = low + END_GAP;
+		} else if (n.prev == null && high > 2 * END_GAP) {
+			n.label = high - END_GAP;
+		} else if (high - low > 1) {
+			n.label = low + (high - low) / 2;
+		} else {
+			relabel(n);
+		}
+	}
+
+	// relabels evenly the smallest range of labels around a node that is sparse enough
+	private void relabel(Node n) {
+		long label = n.prev == null ? 0 : n.prev.label;
+		Node from = n, to = n;
+		int count = 1;
+		for (int i = 1; i <= BITS; i++) {
+			long rangeStart = label & ~((1L << i) - 1);
+			long rangeEnd = rangeStart + (1L << i);
+			while (from.prev != null && from.prev.label >= rangeStart) {
+				from = from.prev;
+				count++;
+			}
+			while (to.next != null && to.next.label < rangeEnd) {
+				to = to.next;
+				count++;
+			}
+			// the ends of the list are not part of any range
+			long available = (1L << i) - (rangeStart == 0 ? 1 : 0);
+			if (count < available && count <= Math.pow(2 / T, i)) {
+				spread(from, count, rangeStart == 0 ? 1 : rangeStart, rangeEnd);
+				return;
+			}
+		}
+		// the list is too dense: relabel it entirely
+		spread(first, size, 1, UNIVERSE);
+	}
+
+	// gives evenly spaced labels in [start, end[ to count nodes
+	private static void spread(Node from, int count, long start, long end) {
+		long gap = (end - start) / count;
+		long label = start + gap / 2;
+		for (Node n = from; count > 0; n = n.next, count--) {
+			n.label = label;
+			label += gap;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public ListIterator<CShape> listIterator(int index) {
+		if (index < 0 || index > size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return new Itr(index);
+	}
+
+	private class Itr implements ListIterator<CShape> {
+		private Node next;
+		private Node lastReturned = null;
+		private int nextIndex;
+		private int expectedModCount = modCount;
+
+		Itr(int index) {
+			if (index < size / 2) {
+				next = first;
+				for (nextIndex = 0; nextIndex < index; nextIndex++)
+					next = next.next;
+			} else {
+				next = null;
+				for (nextIndex = size; nextIndex > index; nextIndex--)
+					next = next == null ? last : next.prev;
+			}
+		}
+
+		public boolean hasNext() {
+			return nextIndex < size;
+		}
+
+		public CShape next() {
+			checkForComodification();
+			if (!hasNext())
+				throw new NoSuchElementException();
+			lastReturned = next;
+			next = next.next;
+			nextIndex++;
+			return lastReturned.shape;
+		}
+
+		public boolean hasPrevious() {
+			return nextIndex > 0;
+		}
+
+		public CShape previous() {
+			checkForComodification();
+			if (!hasPrevious())
+				throw new NoSuchElementException();
+			next = next == null ? last : next.prev;
+			lastReturned = next;
+			nextIndex--;
+			return lastReturned.shape;
+		}
+
+		public int nextIndex() {
+			return nextIndex;
+		}
+
+		public int previousIndex() {
+			return nextIndex - 1;
+		}
+
+		public void remove() {
+			checkForComodification();
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			if (next == lastReturned)
+				next = lastReturned.next;
+			else
+				nextIndex--;
+			unlink(lastReturned);
+			lastReturned = null;
+			expectedModCount = modCount;
+		}
+
+		public void set(CShape s) {
+			checkForComodification();
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			replace(lastReturned, s);
+		}
+
+		public void add(CShape s) {
+			checkForComodification();
+			checkNotHeld(s);
+			insertAfter(next == null ? last : next.prev, s);
+			nextIndex++;
+			lastReturned = null;
+			expectedModCount = modCount;
+		}
+
+		private void checkForComodification() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+		}
+	}
+
+}
@@ -0,0 +1,392 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.SwingUtilities;
+
+/**
+ * The images decoded for <code>CImage</code>s, shared by all the canvases.
+ *
+ * <p>
+ * An image read from a URL is decoded once: the <code>CImage</code>s built from the
+ * same URL share the same <code>BufferedImage</code>, converted to the format of the
+ * screen. Decoded images are held by soft references, and the most recently used
+ * ones are also held strongly, up to <code>MAX_RECENT_BYTES</code>.
+ * </p>
+ *
+ * <p>
+ * Only the size of an image is read on the calling thread, along with the whole stream
+ * for an image read from a stream; the image is decoded on a background thread and
+ * handed to the waiting <code>CImage</code>s on the event dispatch thread. If the image can not be decoded, they are given the error instead
+ * (see <code>CImage.getLoadingFailure</code>), and the image is decoded again the
+ * next time it is loaded.
+ * </p>
+ *
+ * <p>
+ * The copies of an image reduced by successive factors of 2 (a mip chain) are also
+ * kept, for drawing the image scaled down without resampling it at full resolution.
+ * They are computed when first needed and released along with the image.
+ * </p>
+ */
+class ImageCache {
+
+	/**
+	 * The number of bytes of the recently used images that are kept whatever the available memory.
+	 */
+	static final long MAX_RECENT_BYTES = 64L << 20;
+
+	private static final HashMap<String, SoftReference<BufferedImage>> decoded = new HashMap<String, SoftReference<BufferedImage>>();
+	private static final LinkedHashMap<String, BufferedImage> recent = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+	private static long recentBytes = 0;
+	// the images being decoded, by URL
+	private static final HashMap<String, Loading> loading = new HashMap<String, Loading>();
+	// the reduced copies of the images, the i-th one is 2^(i+1) times smaller than the image
+	private static final Map<BufferedImage, List<BufferedImage>> mipmaps = new WeakHashMap<BufferedImage, List<BufferedImage>>();
+
+	private static ExecutorService executor = null;
+
+	/**
+	 * An image that is decoded, or being decoded, in the background.
+	 */
+	static class Loading {
+
+		final int width, height;
+		private BufferedImage image = null;
+		// the error that prevented the image from being decoded
+		private Exception failure = null;
+		private List<CImage> waiting = new ArrayList<CImage>();
+
+		Loading(int width, int height) {
+			this.width = width;
+			this.height = height;
+		}
+
+		Loading(BufferedImage image) {
+			this(image.getWidth(), image.getHeight());
+			this.image = image;
+			waiting = null;
+		}
+
+		/**
+		 * Gives the image to a <code>CImage</code> once it is decoded, right now if it already is,
+		 * or the error that prevented it from being decoded.
+		 * @param c The <code>CImage</code>.
+		 */
+		void whenLoaded(CImage c) {
+			BufferedImage loaded;
+			Exception failed;
+			synchronized (this) {
+				if (waiting != null) {
+					waiting.add(c);
+					return;
+				}
+				loaded = image;
+				failed = failure;
+			}
+			if (loaded != null)
+				c.imageLoaded(loaded);
+			else
+				c.imageFailed(failed);
+		}
+
+		/**
+		 * @return The error that prevented the image from being decoded, null if it is decoded or being decoded.
+		 */
+		synchronized Exception failure() {
+			return failure;
+		}
+
+		// called on the event dispatch thread, with a null image and the error if the image could not be decoded
+		private void loaded(BufferedImage loaded, Exception failed) {
+			List<CImage> toNotify;
+			synchronized (this) {
+				image = loaded;
+				failure = failed;
+				toNotify = waiting;
+				waiting = null;
+			}
+			for (Iterator<CImage> i = toNotify.iterator(); i.hasNext();) {
+				if (loaded != null)
+					i.next().imageLoaded(loaded);
+				else
+					i.next().imageFailed(failed);
+			}
+		}
+	}
+
+	/**
+	 * Returns the image at a given URL, decoding it in the background if it is neither
+	 * in this cache nor already being decoded.
+	 * @param url The URL.
+	 * @return The image or the image being decoded.
+	 * @throws IOException If the size of the image can not be read.
+	 */
+	static Loading load(URL url) throws IOException {
+		String key = url.toExternalForm();
+		Loading l;
+		synchronized (ImageCache.class) {
+			BufferedImage image = cached(key);
+			if (image != null)
+				return new Loading(image);
+			l = loading.get(key);
+			if (l != null)
+				return l;
+		}
+		// the size is read out of the lock, the first decoding started wins
+		ImageInputStream in = ImageIO.createImageInputStream(url.openStream());
+		ImageReader reader = reader(in);
+		l = size(reader, in);
+		synchronized (ImageCache.class) {
+			Loading other = loading.get(key);
+			if (other != null) {
+				reader.dispose();
+				in.close();
+				return other;
+			}
+			loading.put(key, l);
+		}
+		decode(key, reader, in, l);
+		return l;
+	}
+
+	/**
+	 * Decodes an image read from a stream in the background. The stream is read to its end
+	 * on the calling thread, so that the caller may close it once this method returns.
+	 * The image is not cached.
+	 * @param stream The stream.
+	 * @return The image being decoded.
+	 * @throws IOException If the stream or the size of the image can not be read.
+	 */
+	static Loading load(InputStream stream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		for (int n = stream.read(buffer); n != -1; n = stream.read(buffer))
+			bytes.write(buffer, 0, n);
+		ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		ImageReader reader = reader(in);
+		Loading l = size(reader, in);
+		decode(null, reader, in, l);
+		return l;
+	}
+
+	private static ImageReader reader(ImageInputStream in) throws IOException {
+		if (in == null)
+			throw new IOException("Can not read the image");
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+		if (!readers.hasNext()) {
+			in.close();
+			throw new IOException("Unknown image format");
+		}
+		ImageReader reader = readers.next();
+		reader.setInput(in, true, true);
+		return reader;
+	}
+
+	// reads the size of an image, releasing the reader and its stream if it can not be read
+	private static Loading size(ImageReader reader, ImageInputStream in) throws IOException {
+		try {
+			return new Loading(reader.getWidth(0), reader.getHeight(0));
+		} catch (IOException e) {
+			reader.dispose();
+			in.close();
+			throw e;
+		} catch (RuntimeException e) {
+			reader.dispose();
+			in.close();
+			throw e;
+		}
+	}
+
+	private static void decode(final String key, final ImageReader reader, final ImageInputStream in, final Loading l) {
+		executor().execute(new Runnable() {
+			public void run() {
+				BufferedImage image = null;
+				Exception failure = null;
+				try {
+					image = compatible(reader.read(0));
+				} catch (IOException e) {
+					e.printStackTrace();
+					failure = e;
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+					failure = e;
+				} finally {
+					reader.dispose();
+					try {
+						in.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+				if (key != null) {
+					synchronized (ImageCache.class) {
+						loading.remove(key);
+						if (image != null)
+							remember(key, image);
+					}
+				}
+				final BufferedImage loaded = image;
+				final Exception failed = failure;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						l.loaded(loaded, failed);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Returns a copy of an image reduced 2^level times, at least one pixel wide and high.
+	 * @param image The image.
+	 * @param level The level of the copy, 0 for the image itself.
+	 * @return The reduced copy.
+	 */
+	static BufferedImage mipmap(BufferedImage image, int level) {
+		if (level <= 0)
+			return image;
+		List<BufferedImage> levels;
+		synchronized (mipmaps) {
+			levels = mipmaps.get(image);
+			if (levels == null) {
+				levels = new ArrayList<BufferedImage>(level);
+				mipmaps.put(image, levels);
+			}
+		}
+		synchronized (levels) {
+			while (levels.size() < level) {
+				BufferedImage larger = levels.isEmpty() ? image : levels.get(levels.size() - 1);
+				levels.add(halve(larger));
+			}
+			return levels.get(level - 1);
+		}
+	}
+
+	/**
+	 * @param image The image.
+	 * @param scale The size of a pixel of the image once drawn, in device pixels.
+	 * @return The level of the reduced copy of the image to draw at this scale: the smallest
+	 * one whose pixels are not drawn smaller than half a device pixel.
+	 */
+	static int mipmapLevel(BufferedImage image, double scale) {
+		int level = 0;
+		int w = image.getWidth(), h = image.getHeight();
+		while (scale < 0.5 && (w > 1 || h > 1)) {
+			scale *= 2;
+			w = Math.max(1, w / 2);
+			h = Math.max(1, h / 2);
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Discards the reduced copies of an image, after it has been modified.
+	 * @param image The image.
+	 */
+	static void discardMipmaps(BufferedImage image) {
+		synchronized (mipmaps) {
+			mipmaps.remove(image);
+		}
+	}
+
+	// an image twice smaller, each pixel averaging four pixels of the image
+	private static BufferedImage halve(BufferedImage image) {
+		int w = Math.max(1, image.getWidth() / 2), h = Math.max(1, image.getHeight() / 2);
+		BufferedImage half = new BufferedImage(w, h, image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = half.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(image, 0, 0, w, h, null);
+		g.dispose();
+		return compatible(half);
+	}
+
+	// converts an image to the format of the screen, so that drawing it needs no conversion
+	private static BufferedImage compatible(BufferedImage image) {
+		if (GraphicsEnvironment.isHeadless())
+			return image;
+		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+		if (image.getColorModel().equals(gc.getColorModel(image.getTransparency())))
+			return image;
+		BufferedImage converted = gc.createCompatibleImage(image.getWidth(), image.getHeight(), image.getTransparency());
+		Graphics2D g = converted.createGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return converted;
+	}
+
+	// must be called while holding the lock of this class
+	private static BufferedImage cached(String key) {
+		BufferedImage image = recent.get(key);
+		if (image != null)
+			return image;
+		SoftReference<BufferedImage> ref = decoded.get(key);
+		if (ref == null)
+			return null;
+		image = ref.get();
+		if (image == null)
+			decoded.remove(key);
+		else
+			remember(key, image);
+		return image;
+	}
+
+	// must be called while holding the lock of this class
+	private static void remember(String key, BufferedImage image) {
+		decoded.put(key, new SoftReference<BufferedImage>(image));
+		if (recent.put(key, image) == null)
+			recentBytes += bytes(image);
+		for (Iterator<BufferedImage> i = recent.values().iterator(); recentBytes > MAX_RECENT_BYTES && recent.size() > 1;) {
+			recentBytes -= bytes(i.next());
+			i.remove();
+		}
+	}
+
+	private static long bytes(BufferedImage image) {
+		return 4L * image.getWidth() * image.getHeight();
+	}
+
+	private static synchronized ExecutorService executor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "SwingStates image loader");
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
+		}
+		return executor;
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A cached layer of a <code>Canvas</code>: the shapes having a given tag are
+ * rasterized in an offscreen image, which is drawn instead of these shapes.
+ * The regions of the image covered by a shape of the layer before and after
+ * it changes are damaged and rasterized again the next time the layer is painted.
+ *
+ * @see Canvas#addLayer(CExtensionalTag)
+ */
+class Layer {
+
+	final CExtensionalTag tag;
+
+	private BufferedImage image = null;
+	private double scaleX = 1, scaleY = 1;
+	// the damaged region, in canvas coordinates
+	private Rectangle2D damaged = null;
+	private boolean damagedAll = true;
+
+	Layer(CExtensionalTag tag) {
+		this.tag = tag;
+	}
+
+	/**
+	 * Marks a region of this layer to be rasterized again.
+	 * @param area The region, in canvas coordinates.
+	 */
+	synchronized void damage(Rectangle2D area) {
+		if (damagedAll || area == null)
+			return;
+		if (damaged == null)
+			damaged = new Rectangle2D.Double(area.getX(), area.getY(), area.getWidth(), area.getHeight());
+		else
+			damaged.add(area);
+	}
+
+	/**
+	 * Marks this whole layer to be rasterized again.
+	 */
+	synchronized void damageAll() {
+		damagedAll = true;
+		damaged = null;
+	}
+
+	// the damaged region in canvas coordinates enlarged to the enclosing device pixels,
+	// or null if nothing is damaged. The image is reallocated if the size of the canvas
+	// or the scale of the device have changed.
+	private synchronized Rectangle takeDamage(Canvas canvas, GraphicsConfiguration gc, double sx, double sy) {
+		int width = (int) Math.ceil(canvas.getWidth() * sx);
+		int height = (int) Math.ceil(canvas.getHeight() * sy);
+		if (image == null || image.getWidth() != width || image.getHeight() != height || sx != scaleX || sy != scaleY) {
+			image = gc == null ? new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE)
+					: gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+			scaleX = sx;
+			scaleY = sy;
+			damagedAll = true;
+		}
+		Rectangle area;
+		if (damagedAll) {
+			area = new Rectangle(0, 0, width, height);
+		} else if (damaged != null) {
+			int x0 = (int) Math.floor(damaged.getMinX() * sx) - 1;
+			int y0 = (int) Math.floor(damaged.getMinY() * sy) - 1;
+			int x1 = (int) Math.ceil(damaged.getMaxX() * sx) + 1;
+			int y1 = (int) Math.ceil(damaged.getMaxY() * sy) + 1;
+			area = new Rectangle(x0, y0, x1 - x0, y1 - y0).intersection(new Rectangle(0, 0, width, height));
+		} else {
+			return null;
+		}
+		damagedAll = false;
+		damaged = null;
+		return area.isEmpty() ? null : area;
+	}
+
+	/**
+	 * @param deviceTransform The transform of the graphics of a canvas.
+	 * @return True if layers can be cached with this transform, i.e. it only scales and translates.
+	 */
+	static boolean isCacheable(AffineTransform deviceTransform) {
+		return deviceTransform.getShearX() == 0 && deviceTransform.getShearY() == 0
+				&& deviceTransform.getScaleX() > 0 && deviceTransform.getScaleY() > 0;
+	}
+
+	/**
+	 * Rasterizes the damaged region of this layer then draws this layer.
+	 * Must be called while holding the lock of the display list.
+	 * @param canvas The canvas.
+	 * @param g The graphics of the canvas, whose clip is the region to draw and whose transform is cacheable.
+	 * @see Layer#isCacheable(AffineTransform)
+	 */
+	void paint(Canvas canvas, Graphics2D g) {
+		if (canvas.getWidth() <= 0 || canvas.getHeight() <= 0)
+			return;
+		AffineTransform deviceTransform = g.getTransform();
+		double sx = deviceTransform.getScaleX(), sy = deviceTransform.getScaleY();
+		Rectangle area = takeDamage(canvas, g.getDeviceConfiguration(), sx, sy);
+		if (area != null) {
+			Graphics2D ig = image.createGraphics();
+			ig.setComposite(AlphaComposite.Clear);
+			ig.fill(area);
+			ig.setComposite(AlphaComposite.SrcOver);
+			ig.clip(area);
+			ig.scale(sx, sy);
+			if (canvas.renderingHints != null)
+				ig.addRenderingHints(canvas.renderingHints);
+			Rectangle2D canvasArea = new Rectangle2D.Double(area.x / sx, area.y / sy, area.width / sx, area.height / sy);
+			List<CShape> candidates = canvas.layerCandidates(canvasArea.getBounds());
+			Painter painter = new Painter(ig);
+			for (Iterator<CShape> i = candidates.iterator(); i.hasNext();) {
+				CShape shape = i.next();
+				if (shape.layer == this && shape.isDrawable() && shape.isVisible())
+					painter.paint(shape);
+			}
+			ig.dispose();
+		}
+		g.scale(1 / sx, 1 / sy);
+		g.drawImage(image, 0, 0, null);
+		g.setTransform(deviceTransform);
+	}
+
+	/**
+	 * Releases the offscreen image of this layer.
+	 */
+	synchronized void dispose() {
+		image = null;
+		damageAll();
+	}
+
+}
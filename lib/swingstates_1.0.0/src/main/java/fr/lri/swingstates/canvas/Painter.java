@@ -0,0 +1,258 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Paints a sequence of shapes with the same <code>Graphics2D</code>. The state of
+ * the graphics (rendering hints, clip, transform, stroke, paint, composite and font)
+ * is saved once, changed only when a shape needs a state different from the one of
+ * the shape painted before it, and restored once at the end. Consecutive shapes
+ * sharing their style are thus painted with their fill and draw calls only.
+ *
+ * <p>
+ * The shapes whose class overrides <code>CShape.paint(Graphics)</code> outside of
+ * this package are painted with their own method, on the saved state of the graphics.
+ * </p>
+ */
+class Painter {
+
+	// whether the shapes of a class can be painted by paint(Painter)
+	private static final ConcurrentHashMap<Class<?>, Boolean> batched = new ConcurrentHashMap<Class<?>, Boolean>();
+
+	private final Graphics2D g;
+
+	// the state of the graphics when this painter has been created
+	private final Stroke baseStroke;
+	private final Paint basePaint;
+	private final Composite baseComposite;
+	private final Font baseFont;
+	// saved the first time they have to change, getTransform, getClip and getRenderingHints allocate
+	private AffineTransform baseTransform = null;
+	private Shape baseClip = null;
+	private boolean baseClipSaved = false;
+	private RenderingHints baseHints = null;
+
+	// the current state of the graphics
+	private Stroke stroke;
+	private Paint paint;
+	private Composite composite;
+	private Font font;
+	// the transform concatenated to the base transform
+	private AffineTransform transform = new AffineTransform();
+	private boolean transformKnown = true;
+	// the shape whose clip is set, null for the base clip
+	private CShape clipOwner = null;
+	// the hints added to the base hints
+	private RenderingHints hints = null;
+
+	/**
+	 * Builds a painter.
+	 * @param g The graphics with which the shapes are painted.
+	 */
+	Painter(Graphics2D g) {
+		this.g = g;
+		stroke = baseStroke = g.getStroke();
+		paint = basePaint = g.getPaint();
+		composite = baseComposite = g.getComposite();
+		font = baseFont = g.getFont();
+	}
+
+	/**
+	 * @return The graphics of this painter.
+	 */
+	Graphics2D graphics() {
+		return g;
+	}
+
+	/**
+	 * Paints a shape.
+	 * @param s The shape.
+	 */
+	void paint(CShape s) {
+		if (isBatched(s.getClass())) {
+			s.paint(this);
+			return;
+		}
+		restore();
+		s.paint((Graphics) g);
+		// the shape has restored the transform, the clip and the hints it has changed
+		stroke = g.getStroke();
+		paint = g.getPaint();
+		composite = g.getComposite();
+		font = g.getFont();
+		transformKnown = false;
+	}
+
+	/**
+	 * Sets the rendering hints and the clip of a shape.
+	 * @param s The shape.
+	 */
+	void setHintsAndClip(CShape s) {
+		RenderingHints h = s.renderingHints;
+		if (h != hints && (h == null || !h.equals(hints))) {
+			if (hints != null)
+				g.setRenderingHints(baseHints);
+			else if (h != null && baseHints == null)
+				baseHints = g.getRenderingHints();
+			if (h != null)
+				g.addRenderingHints(h);
+			hints = h;
+		}
+		CShape owner = s.clip;
+		if (owner != null && (s.canvas == null || owner == s.canvas.clip))
+			owner = null;
+		if (owner != clipOwner) {
+			// the clip is read and set in the user space of the base transform
+			resetTransform();
+			if (!baseClipSaved) {
+				baseClip = g.getClip();
+				baseClipSaved = true;
+			}
+			g.setClip(baseClip);
+			if (owner == CShape.DEFAULT_CLIP) {
+				g.clipRect(0, 0, s.canvas.getWidth(), s.canvas.getHeight());
+			} else if (owner != null) {
+				g.transform(owner.getAbsTransform());
+				g.clip(owner.getShape());
+				g.setTransform(baseTransform);
+			}
+			clipOwner = owner;
+		}
+	}
+
+	/**
+	 * Sets the transform of the graphics to the base transform concatenated with a given transform.
+	 * @param t The transform.
+	 */
+	void setTransform(AffineTransform t) {
+		if (transformKnown && t.equals(transform))
+			return;
+		resetTransform();
+		g.transform(t);
+		transform.setTransform(t);
+	}
+
+	// sets the transform of the graphics to the base transform
+	private void resetTransform() {
+		if (baseTransform == null)
+			baseTransform = g.getTransform();
+		if (!transformKnown || !transform.isIdentity()) {
+			g.setTransform(baseTransform);
+			transform.setToIdentity();
+			transformKnown = true;
+		}
+	}
+
+	/**
+	 * Sets the stroke of the graphics.
+	 * @param s The stroke.
+	 */
+	void setStroke(Stroke s) {
+		if (s != stroke && (s == null || !s.equals(stroke))) {
+			g.setStroke(s);
+			stroke = s;
+		}
+	}
+
+	/**
+	 * Sets the paint of the graphics.
+	 * @param p The paint, null leaves the paint unchanged.
+	 */
+	void setPaint(Paint p) {
+		if (p != null && p != paint && !p.equals(paint)) {
+			g.setPaint(p);
+			paint = p;
+		}
+	}
+
+	/**
+	 * Sets the composite of the graphics. The paint must be set after the composite.
+	 * @param c The composite, null for the base composite.
+	 */
+	void setComposite(Composite c) {
+		if (c == null)
+			c = baseComposite;
+		if (c != composite && !c.equals(composite)) {
+			g.setComposite(c);
+			composite = c;
+			// the graphics may combine the alpha of the composite with the color when the paint is set
+			paint = null;
+		}
+	}
+
+	/**
+	 * Sets the font of the graphics.
+	 * @param f The font.
+	 */
+	void setFont(Font f) {
+		if (f != font && f != null && !f.equals(font)) {
+			g.setFont(f);
+			font = f;
+		}
+	}
+
+	/**
+	 * Restores the state of the graphics when this painter has been created.
+	 */
+	void restore() {
+		if (hints != null) {
+			g.setRenderingHints(baseHints);
+			hints = null;
+		}
+		if (clipOwner != null) {
+			resetTransform();
+			g.setClip(baseClip);
+			clipOwner = null;
+		}
+		resetTransform();
+		setStroke(baseStroke);
+		setComposite(baseComposite);
+		if (paint != basePaint) {
+			g.setPaint(basePaint);
+			paint = basePaint;
+		}
+		setFont(baseFont);
+	}
+
+	// true if the class that overrides paint(Graphics) last also overrides paint(Painter)
+	private static boolean isBatched(Class<?> c) {
+		Boolean b = batched.get(c);
+		if (b == null) {
+			b = Boolean.FALSE;
+			for (Class<?> k = c; k != null; k = k.getSuperclass()) {
+				boolean paintsBatched = declaresPaint(k, Painter.class);
+				if (paintsBatched || declaresPaint(k, Graphics.class)) {
+					b = Boolean.valueOf(paintsBatched);
+					break;
+				}
+			}
+			batched.put(c, b);
+		}
+		return b.booleanValue();
+	}
+
+	private static boolean declaresPaint(Class<?> c, Class<?> parameter) {
+		try {
+			c.getDeclaredMethod("paint", parameter);
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		} catch (SecurityException e) {
+			return false;
+		}
+	}
+
+}
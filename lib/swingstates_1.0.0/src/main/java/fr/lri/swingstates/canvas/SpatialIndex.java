@@ -0,0 +1,208 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ * A uniform grid that indexes the shapes of a <code>Canvas</code> by their
+ * absolute bounding box. It is used by the picking methods of the canvas
+ * to test only the few shapes whose bounds contain the picked point instead
+ * of the whole display list.
+ * </p>
+ *
+ * <p>
+ * The index is maintained lazily: a shape whose geometry, transform or stroke
+ * changes is only marked as dirty and is moved to its new cells the next time
+ * the index is queried. The bounds of a shape are inflated by its stroke width
+ * and the picking tolerance, so the index always returns a superset of the
+ * shapes that <code>CShape.pick</code> accepts.
+ * </p>
+ *
+ * @see fr.lri.swingstates.canvas.Canvas#pick(Point2D)
+ */
+class SpatialIndex {
+
+	/**
+	 * The size of a grid cell, in canvas coordinates.
+	 */
+	static final double CELL_SIZE = 64;
+
+	/**
+	 * Shapes spanning more cells than this are not binned but tested on every query.
+	 */
+	static final int MAX_CELLS_PER_SHAPE = 1024;
+
+	/**
+	 * The picking tolerance the index bounds account for.
+	 */
+	static final int TOLERANCE = 2;
+
+	private static final int[] OVERSIZED = new int[0];
+
+	private HashMap<Long, ArrayList<CShape>> cells = new HashMap<Long, ArrayList<CShape>>();
+	private IdentityHashMap<CShape, int[]> ranges = new IdentityHashMap<CShape, int[]>();
+	private ArrayList<CShape> oversized = new ArrayList<CShape>();
+	private Set<CShape> dirty = Collections.newSetFromMap(new IdentityHashMap<CShape, Boolean>());
+
+	/**
+	 * Adds a shape to this index.
+	 * @param s The shape.
+	 */
+	synchronized void add(CShape s) {
+		dirty.add(s);
+	}
+
+	/**
+	 * Removes a shape from this index.
+	 * @param s The shape.
+	 */
+	synchronized void remove(CShape s) {
+		dirty.remove(s);
+		unbin(s);
+	}
+
+	/**
+	 * Removes all the shapes from this index.
+	 */
+	synchronized void clear() {
+		cells.clear();
+		ranges.clear();
+		oversized.clear();
+		dirty.clear();
+	}
+
+	/**
+	 * Marks a shape as having changed bounds. Does nothing if the shape
+	 * is not in this index.
+	 * @param s The shape.
+	 */
+	synchronized void invalidate(CShape s) {
+		if (ranges.containsKey(s))
+			dirty.add(s);
+	}
+
+	/**
+	 * Collects the shapes whose bounds may contain a point. The shapes are not sorted.
+	 * @param p The point.
+	 * @param result The list the candidates are added to.
+	 */
+	synchronized void candidatesAt(Point2D p, List<CShape> result) {
+		refresh();
+		ArrayList<CShape> cell = cells.get(key(cell(p.getX()), cell(p.getY())));
+		if (cell != null)
+			result.addAll(cell);
+		result.addAll(oversized);
+	}
+
+	/**
+	 * Collects the shapes whose bounds may intersect a rectangle, each shape once.
+	 * The shapes are not sorted. Nothing is collected if the rectangle spans
+	 * more than <code>maxCells</code> cells, since testing every shape is then cheaper.
+	 * @param r The rectangle.
+	 * @param maxCells The maximum number of cells to look up.
+	 * @param result The list the candidates are added to.
+	 * @return true if the candidates have been collected, false if the rectangle is too large.
+	 */
+	synchronized boolean candidatesIn(Rectangle2D r, int maxCells, List<CShape> result) {
+		int x0 = cell(r.getMinX()), y0 = cell(r.getMinY());
+		int x1 = cell(r.getMaxX()), y1 = cell(r.getMaxY());
+		if (((long) x1 - x0 + 1) * ((long) y1 - y0 + 1) > maxCells)
+			return false;
+		refresh();
+		Set<CShape> seen = Collections.newSetFromMap(new IdentityHashMap<CShape, Boolean>());
+		for (int x = x0; x <= x1; x++) {
+			for (int y = y0; y <= y1; y++) {
+				ArrayList<CShape> cell = cells.get(key(x, y));
+				if (cell == null)
+					continue;
+				for (int i = 0; i < cell.size(); i++) {
+					CShape s = cell.get(i);
+					if (seen.add(s))
+						result.add(s);
+				}
+			}
+		}
+		result.addAll(oversized);
+		return true;
+	}
+
+	private void refresh() {
+		if (dirty.isEmpty())
+			return;
+		for (Iterator<CShape> i = dirty.iterator(); i.hasNext();) {
+			CShape s = i.next();
+			unbin(s);
+			bin(s);
+		}
+		dirty.clear();
+	}
+
+	private void bin(CShape s) {
+		Rectangle2D bounds = s.getAbsBounds(TOLERANCE + 1);
+		int[] range = OVERSIZED;
+		if (bounds != null) {
+			int x0 = cell(bounds.getMinX()), y0 = cell(bounds.getMinY());
+			int x1 = cell(bounds.getMaxX()), y1 = cell(bounds.getMaxY());
+			if (((long) x1 - x0 + 1) * ((long) y1 - y0 + 1) <= MAX_CELLS_PER_SHAPE)
+				range = new int[] { x0, y0, x1, y1 };
+		}
+		ranges.put(s, range);
+		if (range == OVERSIZED) {
+			oversized.add(s);
+			return;
+		}
+		for (int x = range[0]; x <= range[2]; x++) {
+			for (int y = range[1]; y <= range[3]; y++) {
+				Long k = key(x, y);
+				ArrayList<CShape> cell = cells.get(k);
+				if (cell == null) {
+					cell = new ArrayList<CShape>(4);
+					cells.put(k, cell);
+				}
+				cell.add(s);
+			}
+		}
+	}
+
+	private void unbin(CShape s) {
+		int[] range = ranges.remove(s);
+		if (range == null)
+			return;
+		if (range == OVERSIZED) {
+			oversized.remove(s);
+			return;
+		}
+		for (int x = range[0]; x <= range[2]; x++) {
+			for (int y = range[1]; y <= range[3]; y++) {
+				Long k = key(x, y);
+				ArrayList<CShape> cell = cells.get(k);
+				if (cell != null) {
+					cell.remove(s);
+					if (cell.isEmpty())
+						cells.remove(k);
+				}
+			}
+		}
+	}
+
+	private static int cell(double coord) {
+		return (int) Math.floor(coord / CELL_SIZE);
+	}
+
+	private static Long key(int x, int y) {
+		return Long.valueOf(((long) x << 32) | (y & 0xffffffffL));
+	}
+
+}
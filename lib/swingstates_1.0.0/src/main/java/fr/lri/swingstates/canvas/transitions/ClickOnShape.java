@@ -97,4 +97,11 @@ public class ClickOnShape extends MouseOnShape {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_CLICKED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_CLICKED;
+	}
 }
@@ -271,5 +271,12 @@ public class ClickOnTag extends MouseOnTag {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_CLICKED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_CLICKED;
+	}
 }
 
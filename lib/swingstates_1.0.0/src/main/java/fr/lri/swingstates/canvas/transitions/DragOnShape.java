@@ -95,5 +95,12 @@ public class DragOnShape extends MouseOnShape {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_DRAGGED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_DRAGGED;
+	}
 }
 
@@ -266,5 +266,12 @@ public class DragOnTag extends MouseOnTag {
 		return matches(eventObject, MouseEvent.MOUSE_DRAGGED);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_DRAGGED;
+	}
+
 }
 
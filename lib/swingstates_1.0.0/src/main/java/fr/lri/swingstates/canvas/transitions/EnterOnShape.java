@@ -52,4 +52,11 @@ public class EnterOnShape extends MouseOnShape {
 			return false;
 		return matchesIgnoreButtons(eventObject, MouseEvent.MOUSE_ENTERED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_ENTERED;
+	}
 }
@@ -187,4 +187,11 @@ public class EnterOnTag extends MouseOnTag {
 	public boolean matches(EventObject eventObject) {
 		return matchesIgnoreButtons(eventObject, MouseEvent.MOUSE_ENTERED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_ENTERED;
+	}
 }
@@ -53,4 +53,11 @@ public class LeaveOnShape extends MouseOnShape {
 		return matchesIgnoreButtons(eventObject, MouseEvent.MOUSE_EXITED);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_EXITED;
+	}
+
 }
\ No newline at end of file
@@ -178,4 +178,11 @@ public class LeaveOnTag extends MouseOnTag {
 	public boolean matches(EventObject eventObject) {
 		return matchesIgnoreButtons(eventObject, MouseEvent.MOUSE_EXITED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_EXITED;
+	}
 }
@@ -63,4 +63,11 @@ public class MoveOnShape extends MouseOnShape {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_MOVED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_MOVED;
+	}
 }
@@ -182,4 +182,11 @@ public class MoveOnTag extends MouseOnTag {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_MOVED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_MOVED;
+	}
 }
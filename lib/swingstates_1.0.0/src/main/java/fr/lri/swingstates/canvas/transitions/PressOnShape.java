@@ -94,4 +94,11 @@ public class PressOnShape extends MouseOnShape {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_PRESSED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_PRESSED;
+	}
 }
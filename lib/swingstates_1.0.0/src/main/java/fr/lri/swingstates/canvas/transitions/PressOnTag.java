@@ -269,4 +269,11 @@ public class PressOnTag extends MouseOnTag {
 		return matches(eventObject, MouseEvent.MOUSE_PRESSED);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_PRESSED;
+	}
+
 }
@@ -94,4 +94,11 @@ public class ReleaseOnShape extends MouseOnShape {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_RELEASED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_RELEASED;
+	}
 }
@@ -269,5 +269,12 @@ public class ReleaseOnTag extends MouseOnTag {
 		return matches(eventObject, MouseEvent.MOUSE_RELEASED);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_RELEASED;
+	}
+
 }
 
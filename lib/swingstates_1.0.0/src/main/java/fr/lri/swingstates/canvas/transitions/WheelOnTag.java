@@ -220,4 +220,11 @@ public class WheelOnTag extends MouseOnTag {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_WHEEL);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_WHEEL;
+	}
 }
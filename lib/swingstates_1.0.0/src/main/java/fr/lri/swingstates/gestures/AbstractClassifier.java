@@ -9,14 +9,20 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import javax.imageio.ImageIO;
 import javax.swing.event.EventListenerList;
@@ -42,38 +48,172 @@ public abstract class AbstractClassifier {
 
 	protected abstract void write(DataOutputStream out) throws IOException;
 
+	/**
+	 * Adds a class of gestures read from a file, without notifying the listeners of this classifier.
+	 * By default, the class is added with <code>addClass</code>, <code>setTemplate</code> and
+	 * <code>addExample</code>; a subclass may redefine this method to fill its structures at once.
+	 * 
+	 * @param className The name of the class of gestures.
+	 * @param template The template of this class, null if it has none.
+	 * @param examples The examples of this class.
+	 */
+	protected void loadClass(String className, Vector<Point2D> template, Vector<Gesture> examples) {
+		EventListenerList listeners = classifierListeners;
+		classifierListeners = null;
+		try {
+			addClass(className);
+			if(template != null) setTemplate(className, template);
+			for (Iterator<Gesture> iterator = examples.iterator(); iterator.hasNext();)
+				addExample(className, iterator.next());
+		} finally {
+			classifierListeners = listeners;
+		}
+	}
+
+	/**
+	 * Collects the parameters of this classifier that are saved along with its classes in the compact format.
+	 * A subclass that has parameters should redefine this method and call <code>super.getParameters</code>.
+	 * 
+	 * @param parameters The map where to put the parameters, by name.
+	 * @see AbstractClassifier#saveCompact(File)
+	 */
+	protected void getParameters(Map<String, Double> parameters) {
+		parameters.put("minimumStrokeLength", (double) minimumStrokeLength);
+	}
+
+	/**
+	 * Sets a parameter of this classifier read from a file in the compact format.
+	 * Parameters this classifier does not know are ignored.
+	 * 
+	 * @param name The name of the parameter.
+	 * @param value The value of the parameter.
+	 * @see AbstractClassifier#getParameters(Map)
+	 */
+	protected void setParameter(String name, double value) {
+		if(name.compareTo("minimumStrokeLength") == 0) minimumStrokeLength = (int) value;
+	}
+
+	/**
+	 * Loads the definition of this classifier from a file saved either by
+	 * <code>save</code> or by <code>saveCompact</code>.
+	 * 
+	 * @param filename The file containing the definition of the classifier.
+	 * @throws IOException if a reading error occurs.
+	 */
+	protected void load(File filename) throws IOException {
+		if(ClassifierFile.isCompact(filename)) {
+			ClassifierFile.read(this, filename);
+			return;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+		try {
+			read(in);
+		} finally {
+			in.close();
+		}
+	}
+
 	private EventListenerList classifierListeners = null;
 
-	protected double[][] distances = new double[50][50];
+	private ClassDistances distances = new ClassDistances();
+
+	private static ForkJoinPool pool = null;
+
+	private boolean parallel = false;
+	private int parallelGrain = 64;
 	
+	/**
+	 * The examples and templates an input gesture is compared to during a classification.
+	 * A subclass prepares them on the calling thread, so <code>distance</code> can be called
+	 * from several threads at once when this classifier is parallel.
+	 * 
+	 * @see AbstractClassifier#classDistances(Candidates, int, boolean)
+	 */
+	protected abstract static class Candidates {
+
+		/**
+		 * @return The number of candidates.
+		 */
+		protected abstract int size();
+
+		/**
+		 * @param candidate The index of a candidate.
+		 * @return The index of the class of gestures of this candidate.
+		 */
+		protected abstract int classIndex(int candidate);
+
+		/**
+		 * Computes the distance between the input gesture and a candidate.
+		 * An implementation may give up as soon as the distance is known to be
+		 * greater than <code>bestSoFar</code> and return any greater value.
+		 * 
+		 * @param candidate The index of a candidate.
+		 * @param bestSoFar The distance of the best candidate found so far.
+		 * @return The distance between the input gesture and this candidate.
+		 */
+		protected abstract double distance(int candidate, double bestSoFar);
+
+	}
+
+	private class MatchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		Candidates candidates;
+		AtomicLongArray bounds;
+		AtomicLongArray scores;
+		int from, to;
+
+		MatchTask(Candidates candidates, AtomicLongArray bounds, AtomicLongArray scores, int from, int to) {
+			this.candidates = candidates;
+			this.bounds = bounds;
+			this.scores = scores;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if(to - from <= parallelGrain) {
+				match(candidates, bounds, scores, from, to);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new MatchTask(candidates, bounds, scores, from, middle), 
+						new MatchTask(candidates, bounds, scores, middle, to));
+			}
+		}
+
+	}
+
 	public AbstractClassifier() {
 		invalidateAllDistances();
 	}
 	
 	
+	/**
+	 * Forgets all the distances between classes of gestures.
+	 */
 	protected void invalidateAllDistances() {
-		for(int i = 0; i < distances.length; i++) {
-			for(int j = 0; j < distances[0].length; j++) {
-				distances[i][j] = Double.NaN;
-			}
-		}
+		distances.invalidateAll();
 	}
 	
+	/**
+	 * Forgets the distances from a class of gestures to the others and from the others to this class.
+	 * @param className The name of the class of gestures.
+	 */
 	protected void invalidateDistance(String className) {
-		int index = classesNames.indexOf(className);
-		for(int i = 0; i < distances.length; i++) {
-			distances[i][index] = Double.NaN;
-		}
-		for(int i = 0; i < distances[0].length; i++) {
-			distances[index][i] = Double.NaN;
-		}
+		distances.invalidate(classesNames.indexOf(className));
+	}
+	
+	/**
+	 * Forgets the distances from a class of gestures to the others, e.g. when one of its examples has been added or removed.
+	 * @param className The name of the class of gestures.
+	 */
+	protected void invalidateDistancesFrom(String className) {
+		distances.invalidateRow(classesNames.indexOf(className));
 	}
 	
 	protected void invalidateDistance(String className1, String className2) {
-		int index1 = classesNames.indexOf(className1);
-		int index2 = classesNames.indexOf(className2);
-			distances[index2][index1] = Double.NaN;
-			distances[index1][index2] = Double.NaN;
+		distances.invalidate(classesNames.indexOf(className1), classesNames.indexOf(className2));
 	}
 	
 	public synchronized void addClassifierListener(ClassifierListener l) {
@@ -165,16 +305,7 @@ public abstract class AbstractClassifier {
 	public int addClass(String className) {
 		classesNames.add(className);
 		templates.add(null);
-		if(classesNames.size() > distances.length) {
-			double[][] tmp = new double[2*distances.length][2*distances.length];
-			for (int i = 0; i < distances.length; i++) {
-				for (int j = 0; j < distances[0].length; j++) {
-					tmp[i][j] = distances[i][j];
-				}
-			}
-			distances = tmp;
-		}
-		invalidateDistance(className);
+		distances.addClass();
 		return classesNames.size() - 1;
 	}
 
@@ -203,9 +334,9 @@ public abstract class AbstractClassifier {
 	 *            The name of the class of gestures to remove.
 	 */
 	public void removeClass(String className) {
-		invalidateDistance(className);
 		int index = classesNames.indexOf(className);
 		if (index != -1) {
+			distances.removeClass(index);
 			classesNames.remove(index);
 			templates.remove(index);
 		}
@@ -265,11 +396,29 @@ public abstract class AbstractClassifier {
 		}
 	}
 
+	/**
+	 * Saves the definition of this classifier in a file in the compact format:
+	 * the points of all the templates and examples are stored in columns,
+	 * so the file is read in one pass, a column at a time. Files in this format
+	 * cannot be read by the versions of SwingStates that do not know it.
+	 * 
+	 * @param filename
+	 *            The name of the file where to write the definition of the
+	 *            classifier.
+	 */
+	public void saveCompact(File filename) {
+		try {
+			ClassifierFile.write(this, filename);
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+
 	/**
 	 * Resets this classifier (i.e. removes all the classes of gestures).
 	 */
 	public void reset() {
-		invalidateAllDistances();
+		distances.clear();
 		classesNames.clear();
 		templates.clear();
 	}
@@ -365,7 +514,200 @@ public abstract class AbstractClassifier {
 		}
 	}
 	
-	public abstract double distance(String gesture1, String gesture2);
+	/**
+	 * Computes the distance from a class of gestures to another one.
+	 * Distances are computed once and kept until the examples or the template of one of the classes change.
+	 * 
+	 * @param gesture1 The name of the first class of gestures.
+	 * @param gesture2 The name of the second class of gestures.
+	 * @return The distance from the class <code>gesture1</code> to the class <code>gesture2</code>,
+	 * <code>Double.NaN</code> if one of these classes does not exist.
+	 */
+	public double distance(String gesture1, String gesture2) {
+		return classDistance(classesNames.indexOf(gesture1), classesNames.indexOf(gesture2));
+	}
+
+	private double classDistance(int index1, int index2) {
+		if(index1 == -1 || index2 == -1) return Double.NaN;
+		distances.ensureSize(classesNames.size());
+		double distance = distances.get(index1, index2);
+		if(!Double.isNaN(distance)) return distance;
+		long version = distances.getVersion();
+		distance = computeDistance(index1, index2);
+		if(isDistanceFinal()) distances.set(index1, index2, distance, version);
+		return distance;
+	}
+
+	/**
+	 * Tells whether the distances returned by <code>computeDistance</code> can be kept until the classes
+	 * of gestures change. A subclass that returns an approximate distance while it can not compute the
+	 * actual one (e.g. a classifier that has not enough examples to be trained) returns false meanwhile.
+	 * 
+	 * @return True if the distances computed by this classifier can be kept.
+	 */
+	protected boolean isDistanceFinal() {
+		return true;
+	}
+
+	/**
+	 * Computes the distance from a class of gestures to another one.
+	 * This method is only called when the distance is not known yet, possibly from several threads at once.
+	 * By default, it calls <code>distance(String, String)</code>, for the subclasses that redefine this
+	 * method instead: a subclass must redefine one of the two methods.
+	 * 
+	 * @param index1 The index of the first class of gestures in <code>getClassesNames</code>.
+	 * @param index2 The index of the second class of gestures in <code>getClassesNames</code>.
+	 * @return The distance from the first class to the second one.
+	 */
+	protected double computeDistance(int index1, int index2) {
+		return distance(classesNames.get(index1), classesNames.get(index2));
+	}
+
+	/**
+	 * Computes the distances between all the classes of gestures of this classifier.
+	 * Only the distances that are not known yet are computed, in several threads if this classifier is parallel.
+	 * 
+	 * @return The distances, <code>getDistances()[i][j]</code> being the distance from the i-th class
+	 * of <code>getClassesNames</code> to the j-th one.
+	 */
+	public double[][] getDistances() {
+		final int nbClasses = classesNames.size();
+		final double[][] result = new double[nbClasses][nbClasses];
+		if(parallel && nbClasses > 1) {
+			getPool().invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				protected void compute() {
+					RecursiveAction[] rows = new RecursiveAction[nbClasses];
+					for (int i = 0; i < nbClasses; i++) {
+						final int index1 = i;
+						rows[i] = new RecursiveAction() {
+							private static final long serialVersionUID = 1L;
+							protected void compute() {
+								for (int index2 = 0; index2 < nbClasses; index2++)
+									result[index1][index2] = classDistance(index1, index2);
+							}
+						};
+					}
+					invokeAll(rows);
+				}
+			});
+		} else {
+			for (int i = 0; i < nbClasses; i++)
+				for (int j = 0; j < nbClasses; j++)
+					result[i][j] = classDistance(i, j);
+		}
+		return result;
+	}
+
+	/**
+	 * Computes, for each class of gestures, the smallest distance between the input gesture
+	 * and the candidates of this class. If this classifier is parallel, the candidates are
+	 * split among the threads of a fork/join pool that share the best distances found so far.
+	 * 
+	 * @param candidates The candidates.
+	 * @param nbClasses The number of classes of gestures.
+	 * @param bestOnly True if only the best class matters: candidates are then abandoned as soon as they
+	 * are known to be farther than the best candidate of any class, and the distance of a class
+	 * is not accurate unless it is the smallest one.
+	 * @return The distances of the classes, <code>Double.POSITIVE_INFINITY</code> for a class that has no candidates.
+	 */
+	protected double[] classDistances(Candidates candidates, int nbClasses, boolean bestOnly) {
+		long infinity = Double.doubleToLongBits(Double.POSITIVE_INFINITY);
+		AtomicLongArray scores = new AtomicLongArray(nbClasses);
+		for (int i = 0; i < nbClasses; i++)
+			scores.set(i, infinity);
+		AtomicLongArray bounds = scores;
+		if(bestOnly) {
+			bounds = new AtomicLongArray(1);
+			bounds.set(0, infinity);
+		}
+		if(parallel && candidates.size() > parallelGrain)
+			getPool().invoke(new MatchTask(candidates, bounds, scores, 0, candidates.size()));
+		else
+			match(candidates, bounds, scores, 0, candidates.size());
+		double[] result = new double[nbClasses];
+		for (int i = 0; i < nbClasses; i++)
+			result[i] = Double.longBitsToDouble(scores.get(i));
+		return result;
+	}
+
+	/**
+	 * Builds the list of scores of the classes of gestures sorted from the best match to the worst match.
+	 * 
+	 * A class that has no candidates gets a score of <code>Integer.MAX_VALUE</code>.
+	 * 
+	 * @param classDistances The distances of the classes, in the order of <code>getClassesNames</code>.
+	 * @return The sorted scores.
+	 */
+	protected Vector<Score> sortedScores(double[] classDistances) {
+		Vector<Score> sortedScores = new Vector<Score>();
+		for (int nc = 0; nc < classDistances.length; nc++) {
+			double score = classDistances[nc] == Double.POSITIVE_INFINITY ? Integer.MAX_VALUE : classDistances[nc];
+			int i = 0;
+			while (i < sortedScores.size() && sortedScores.get(i).getScore() < score)
+				i++;
+			sortedScores.add(i, new Score(classesNames.get(nc), score));
+		}
+		return sortedScores;
+	}
+
+	private static void match(Candidates candidates, AtomicLongArray bounds, AtomicLongArray scores, int from, int to) {
+		boolean shared = bounds.length() == 1;
+		for (int c = from; c < to; c++) {
+			int classIndex = candidates.classIndex(c);
+			int boundIndex = shared ? 0 : classIndex;
+			double d = candidates.distance(c, Double.longBitsToDouble(bounds.get(boundIndex)));
+			if(d < Double.longBitsToDouble(bounds.get(boundIndex))) {
+				lower(scores, classIndex, d);
+				if(shared) lower(bounds, 0, d);
+			}
+		}
+	}
+
+	private static void lower(AtomicLongArray values, int index, double value) {
+		long bits = Double.doubleToLongBits(value);
+		long current;
+		do {
+			current = values.get(index);
+			if(Double.longBitsToDouble(current) <= value) return;
+		} while (!values.compareAndSet(index, current, bits));
+	}
+
+	private static synchronized ForkJoinPool getPool() {
+		if(pool == null) pool = new ForkJoinPool();
+		return pool;
+	}
+
+	/**
+	 * @return True if this classifier compares an input gesture to its examples in several threads.
+	 */
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Sets whether this classifier compares an input gesture to its examples in several threads.
+	 * This only pays off for classifiers that contain hundreds of examples.
+	 * @param parallel True to classify gestures in several threads.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * @return The number of candidates below which a parallel classification is not split further.
+	 */
+	public int getParallelGrain() {
+		return parallelGrain;
+	}
+
+	/**
+	 * Sets the number of candidates below which a parallel classification is not split further.
+	 * @param parallelGrain The number of candidates.
+	 */
+	public void setParallelGrain(int parallelGrain) {
+		this.parallelGrain = Math.max(1, parallelGrain);
+	}
 	
 	public int getMinimumStrokeLength() {
 		return minimumStrokeLength;
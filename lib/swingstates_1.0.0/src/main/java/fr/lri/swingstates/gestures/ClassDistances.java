@@ -0,0 +1,162 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.gestures;
+
+import java.util.Arrays;
+
+/**
+ * The distances between the classes of gestures of a classifier, filled lazily.
+ * A distance that is not known yet is <code>Double.NaN</code>. The store grows
+ * with the number of classes, and removing a class removes its row and its column.
+ *
+ * <p>
+ * A distance is computed outside of the lock of this store, so the store counts
+ * its modifications: a distance is only stored if nothing has been invalidated
+ * since its computation started.
+ * </p>
+ */
+class ClassDistances {
+
+	private double[][] values = new double[16][16];
+	private int size = 0;
+	private long version = 0;
+
+	ClassDistances() {
+		for (int i = 0; i < values.length; i++)
+			Arrays.fill(values[i], Double.NaN);
+	}
+
+	/**
+	 * @return The number of modifications of this store.
+	 */
+	synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return The number of classes.
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @param index1 The index of the first class.
+	 * @param index2 The index of the second class.
+	 * @return The distance from the first class to the second one, <code>Double.NaN</code> if it is not known.
+	 */
+	synchronized double get(int index1, int index2) {
+		if(index1 < 0 || index2 < 0 || index1 >= size || index2 >= size) return Double.NaN;
+		return values[index1][index2];
+	}
+
+	/**
+	 * Stores the distance from a class to another one.
+	 * @param index1 The index of the first class.
+	 * @param index2 The index of the second class.
+	 * @param distance The distance.
+	 * @param computedVersion The version of this store when the computation of the distance started.
+	 */
+	synchronized void set(int index1, int index2, double distance, long computedVersion) {
+		if(computedVersion != version || index1 < 0 || index2 < 0 || index1 >= size || index2 >= size) return;
+		values[index1][index2] = distance;
+	}
+
+	/**
+	 * Adds a class, at the last index.
+	 */
+	synchronized void addClass() {
+		if(size == values.length) {
+			double[][] tmp = new double[2 * size][2 * size];
+			for (int i = 0; i < tmp.length; i++) {
+				Arrays.fill(tmp[i], Double.NaN);
+				if(i < size) System.arraycopy(values[i], 0, tmp[i], 0, size);
+			}
+			values = tmp;
+		}
+		Arrays.fill(values[size], 0, size + 1, Double.NaN);
+		for (int i = 0; i < size; i++)
+			values[i][size] = Double.NaN;
+		size++;
+		version++;
+	}
+
+	/**
+	 * Adds classes until this store has a given number of classes, e.g. after classes
+	 * have been read from a file.
+	 * @param nbClasses The number of classes.
+	 */
+	synchronized void ensureSize(int nbClasses) {
+		while (size < nbClasses)
+			addClass();
+	}
+
+	/**
+	 * Removes a class, the classes that follow it being shifted.
+	 * @param index The index of the class.
+	 */
+	synchronized void removeClass(int index) {
+		if(index < 0 || index >= size) return;
+		double[] removed = values[index];
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		values[size - 1] = removed;
+		for (int i = 0; i < size - 1; i++)
+			System.arraycopy(values[i], index + 1, values[i], index, size - index - 1);
+		size--;
+		version++;
+	}
+
+	/**
+	 * Forgets the distances from a class to the others.
+	 * @param index The index of the class.
+	 */
+	synchronized void invalidateRow(int index) {
+		if(index < 0 || index >= size) return;
+		Arrays.fill(values[index], 0, size, Double.NaN);
+		version++;
+	}
+
+	/**
+	 * Forgets the distances from a class to the others and from the others to this class.
+	 * @param index The index of the class.
+	 */
+	synchronized void invalidate(int index) {
+		if(index < 0 || index >= size) return;
+		Arrays.fill(values[index], 0, size, Double.NaN);
+		for (int i = 0; i < size; i++)
+			values[i][index] = Double.NaN;
+		version++;
+	}
+
+	/**
+	 * Forgets the distances between two classes.
+	 * @param index1 The index of the first class.
+	 * @param index2 The index of the second class.
+	 */
+	synchronized void invalidate(int index1, int index2) {
+		if(index1 < 0 || index2 < 0 || index1 >= size || index2 >= size) return;
+		values[index1][index2] = Double.NaN;
+		values[index2][index1] = Double.NaN;
+		version++;
+	}
+
+	/**
+	 * Forgets all the distances.
+	 */
+	synchronized void invalidateAll() {
+		for (int i = 0; i < size; i++)
+			Arrays.fill(values[i], 0, size, Double.NaN);
+		version++;
+	}
+
+	/**
+	 * Removes all the classes.
+	 */
+	synchronized void clear() {
+		invalidateAll();
+		size = 0;
+	}
+
+}
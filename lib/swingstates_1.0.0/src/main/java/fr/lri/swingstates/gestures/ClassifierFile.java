@@ -0,0 +1,244 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.gestures;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * <p>
+ * The compact file format of classifiers. Unlike the format of <code>AbstractClassifier.save</code>,
+ * which interleaves coordinates and times point by point, it stores the points of all the templates
+ * and examples in columns so that a file is read in one call and each column is decoded in bulk:
+ * </p>
+ * <ol>
+ * <li> a header: the magic number <code>SSGC</code>, the version of the format, the number of classes,
+ * examples, points and parameters; </li>
+ * <li> the parameters of the classifier (name and value); </li>
+ * <li> the class table: for each class, its name, the first point and number of points of its template
+ * (-1 if it has none) and the first example and number of examples of this class; </li>
+ * <li> the example table: for each example, its first point and number of points; </li>
+ * <li> the x column, the y column (doubles) and the time column (longs) of all the points, aligned on 8 bytes. </li>
+ * </ol>
+ *
+ * @see AbstractClassifier#saveCompact(File)
+ */
+class ClassifierFile {
+
+	static final int MAGIC = 0x53534743;
+	static final int VERSION = 1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * @param file A file.
+	 * @return True if <code>file</code> starts with the magic number of the compact format.
+	 * @throws IOException if a reading error occurs.
+	 */
+	static boolean isCompact(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			byte[] magic = new byte[4];
+			if(in.read(magic) != 4) return false;
+			return ByteBuffer.wrap(magic).getInt() == MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the definition of a classifier in the compact format.
+	 * @param classifier The classifier.
+	 * @param file The file to write.
+	 * @throws IOException if a writing error occurs.
+	 */
+	static void write(AbstractClassifier classifier, File file) throws IOException {
+		ArrayList<String> names = classifier.getClassesNames();
+		ArrayList<Vector<Point2D>> templates = classifier.getTemplates();
+		Map<String, Double> parameters = new LinkedHashMap<String, Double>();
+		classifier.getParameters(parameters);
+
+		int nExamples = 0;
+		int nPoints = 0;
+		int tablesSize = 0;
+		ArrayList<Vector<Gesture>> examples = new ArrayList<Vector<Gesture>>(names.size());
+		for (int i = 0; i < names.size(); i++) {
+			Vector<Gesture> classExamples = classifier.getExamples(names.get(i));
+			if(classExamples == null) classExamples = new Vector<Gesture>();
+			examples.add(classExamples);
+			if(templates.get(i) != null) nPoints += templates.get(i).size();
+			for (Iterator<Gesture> iterator = classExamples.iterator(); iterator.hasNext();)
+				nPoints += iterator.next().getPoints().size();
+			nExamples += classExamples.size();
+			tablesSize += 2 + names.get(i).getBytes(UTF8).length + 16;
+		}
+		for (Iterator<String> iterator = parameters.keySet().iterator(); iterator.hasNext();)
+			tablesSize += 2 + iterator.next().getBytes(UTF8).length + 8;
+		tablesSize += 24 + 8 * nExamples;
+		int columnsOffset = (tablesSize + 7) & ~7;
+
+		ByteBuffer buffer = ByteBuffer.allocate(columnsOffset + 24 * nPoints);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(names.size()).putInt(nExamples).putInt(nPoints).putInt(parameters.size());
+		for (Iterator<Map.Entry<String, Double>> iterator = parameters.entrySet().iterator(); iterator.hasNext();) {
+			Map.Entry<String, Double> parameter = iterator.next();
+			putString(buffer, parameter.getKey());
+			buffer.putDouble(parameter.getValue());
+		}
+		DoubleBuffer xs = slice(buffer, columnsOffset, nPoints).asDoubleBuffer();
+		DoubleBuffer ys = slice(buffer, columnsOffset + 8 * nPoints, nPoints).asDoubleBuffer();
+		LongBuffer times = slice(buffer, columnsOffset + 16 * nPoints, nPoints).asLongBuffer();
+		int point = 0;
+		int example = 0;
+		for (int i = 0; i < names.size(); i++) {
+			putString(buffer, names.get(i));
+			Vector<Point2D> template = templates.get(i);
+			if(template == null) {
+				buffer.putInt(-1).putInt(-1);
+			} else {
+				buffer.putInt(point).putInt(template.size());
+				for (Iterator<Point2D> iterator = template.iterator(); iterator.hasNext();) {
+					Point2D p = iterator.next();
+					xs.put(p.getX());
+					ys.put(p.getY());
+					times.put(0);
+					point++;
+				}
+			}
+			buffer.putInt(example).putInt(examples.get(i).size());
+			example += examples.get(i).size();
+		}
+		for (int i = 0; i < names.size(); i++) {
+			for (Iterator<Gesture> iterator = examples.get(i).iterator(); iterator.hasNext();) {
+				Gesture gesture = iterator.next();
+				buffer.putInt(point).putInt(gesture.points.size());
+				for (int j = 0; j < gesture.points.size(); j++) {
+					Point2D p = gesture.points.get(j);
+					xs.put(p.getX());
+					ys.put(p.getY());
+					times.put(gesture.timePoints.get(j));
+					point++;
+				}
+			}
+		}
+		buffer.clear();
+
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			FileChannel channel = out.getChannel();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads the definition of a classifier in the compact format. The classifiers keep their
+	 * templates and examples as <code>Point2D</code> objects, so the file is read at once in
+	 * memory and its columns are copied into these objects.
+	 * @param classifier The classifier, which should be empty.
+	 * @param file The file to read.
+	 * @throws IOException if a reading error occurs or if the file is not in the compact format.
+	 */
+	static void read(AbstractClassifier classifier, File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		ByteBuffer buffer;
+		try {
+			FileChannel channel = in.getChannel();
+			buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining())
+				if(channel.read(buffer) < 0)
+					throw new IOException(file + " is truncated");
+			buffer.flip();
+		} finally {
+			in.close();
+		}
+		if(buffer.getInt() != MAGIC)
+			throw new IOException(file + " is not a compact classifier file");
+		int version = buffer.getInt();
+		if(version > VERSION)
+			throw new IOException(file + " has been written with a newer version (" + version + ") of the compact classifier format");
+		int nClasses = buffer.getInt();
+		int nExamples = buffer.getInt();
+		int nPoints = buffer.getInt();
+		int nParameters = buffer.getInt();
+		for (int i = 0; i < nParameters; i++) {
+			String name = getString(buffer);
+			classifier.setParameter(name, buffer.getDouble());
+		}
+		String[] names = new String[nClasses];
+		int[] classTable = new int[4 * nClasses];
+		for (int i = 0; i < nClasses; i++) {
+			names[i] = getString(buffer);
+			for (int j = 0; j < 4; j++)
+				classTable[4 * i + j] = buffer.getInt();
+		}
+		int[] exampleTable = new int[2 * nExamples];
+		buffer.asIntBuffer().get(exampleTable);
+		int columnsOffset = (buffer.position() + 8 * nExamples + 7) & ~7;
+		double[] xs = new double[nPoints];
+		double[] ys = new double[nPoints];
+		long[] times = new long[nPoints];
+		slice(buffer, columnsOffset, nPoints).asDoubleBuffer().get(xs);
+		slice(buffer, columnsOffset + 8 * nPoints, nPoints).asDoubleBuffer().get(ys);
+		slice(buffer, columnsOffset + 16 * nPoints, nPoints).asLongBuffer().get(times);
+
+		for (int i = 0; i < nClasses; i++) {
+			Vector<Point2D> template = null;
+			int first = classTable[4 * i];
+			int size = classTable[4 * i + 1];
+			if(size != -1) {
+				template = new Vector<Point2D>(size);
+				for (int j = first; j < first + size; j++)
+					template.add(new Point2D.Double(xs[j], ys[j]));
+			}
+			int firstExample = classTable[4 * i + 2];
+			Vector<Gesture> examples = new Vector<Gesture>(classTable[4 * i + 3]);
+			for (int e = firstExample; e < firstExample + classTable[4 * i + 3]; e++) {
+				Gesture gesture = new Gesture();
+				first = exampleTable[2 * e];
+				size = exampleTable[2 * e + 1];
+				for (int j = first; j < first + size; j++)
+					gesture.addPoint(new Point2D.Double(xs[j], ys[j]), times[j]);
+				examples.add(gesture);
+			}
+			classifier.loadClass(names[i], template, examples);
+		}
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int nValues) {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.clear();
+		duplicate.position(offset);
+		duplicate.limit(offset + 8 * nValues);
+		return duplicate.slice();
+	}
+
+	private static void putString(ByteBuffer buffer, String s) {
+		byte[] bytes = s.getBytes(UTF8);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xffff];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+}
@@ -180,48 +180,313 @@ public class GestureUtils {
 	}
 
 	public static double distanceAtBestAngle(Vector<Point2D> points, Vector<Point2D> gesturePoints, double thetaA, double thetaB, double deltaTheta) {
+		return distanceAtBestAngle(asArray(points), asArray(gesturePoints), thetaA, thetaB, deltaTheta);
+	}
+
+	public static double pathDistance(Vector<Point2D> pointsA, Vector<Point2D> pointsB) {
+		double d = 0;
+		Iterator<Point2D> iteratorB = pointsB.iterator();
+		Point2D ptA, ptB;
+		for (Iterator<Point2D> iteratorA = pointsA.iterator(); iteratorA.hasNext();) {
+			ptA = iteratorA.next();
+			ptB = iteratorB.next();
+			d += ptA.distance(ptB);
+		}
+		return d / pointsA.size();
+	}
+
+	// ____________________________________ POINTS AS ARRAYS
+	// The methods below work on arrays of interleaved coordinates
+	// (x0, y0, x1, y1, ...) instead of vectors of points. They do not allocate
+	// any object, so they can be used to compare a gesture to many templates.
+
+	/**
+	 * @param points
+	 *            The vector of points.
+	 * @return the coordinates of the points as an array (x0, y0, x1, y1, ...).
+	 */
+	public static double[] asArray(Vector<Point2D> points) {
+		double[] res = new double[2 * points.size()];
+		int i = 0;
+		for (Iterator<Point2D> iterator = points.iterator(); iterator.hasNext();) {
+			Point2D next = iterator.next();
+			res[i++] = next.getX();
+			res[i++] = next.getY();
+		}
+		return res;
+	}
+
+	/**
+	 * @param points
+	 *            The coordinates of the points (x0, y0, x1, y1, ...).
+	 * @return the points as a vector.
+	 */
+	public static Vector<Point2D> asVector(double[] points) {
+		Vector<Point2D> res = new Vector<Point2D>(points.length / 2);
+		for (int i = 0; i < points.length; i += 2)
+			res.add(new Point2D.Double(points[i], points[i + 1]));
+		return res;
+	}
+
+	/**
+	 * Resamples a set of points in <code>n</code> points evenly spaced along its path.
+	 * 
+	 * @param points
+	 *            the points to resample
+	 * @param n
+	 *            the number of points after resampling
+	 * @param newPoints
+	 *            the array of at least <code>2*n</code> coordinates where to store resampled points
+	 */
+	public static void resample(Vector<Point2D> points, int n, double[] newPoints) {
+		if (points.isEmpty())
+			return;
+		double segLength = pathLength(points) / (n - 1);
+		double currentSegLength = 0;
+		Point2D pt = points.get(0);
+		double x1 = pt.getX();
+		double y1 = pt.getY();
+		newPoints[0] = x1;
+		newPoints[1] = y1;
+		int count = 1;
+		for (int i = 1; i < points.size(); i++) {
+			pt = points.get(i);
+			double x2 = pt.getX();
+			double y2 = pt.getY();
+			double d = Math.sqrt((x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1));
+			// each new point 'q' becomes the start of the remaining segment
+			while (d != 0 && currentSegLength + d >= segLength) {
+				double t = (segLength - currentSegLength) / d;
+				x1 += t * (x2 - x1);
+				y1 += t * (y2 - y1);
+				if (count < n) {
+					newPoints[2 * count] = x1;
+					newPoints[2 * count + 1] = y1;
+					count++;
+				}
+				currentSegLength = 0.0;
+				d = Math.sqrt((x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1));
+			}
+			currentSegLength += d;
+			x1 = x2;
+			y1 = y2;
+		}
+		// sometimes we fall a rounding-error short of adding the last point, so
+		// add it if so
+		for (; count < n; count++) {
+			newPoints[2 * count] = x1;
+			newPoints[2 * count + 1] = y1;
+		}
+	}
+
+	/**
+	 * Scales a set of points so that the largest side of its bounding box has a given size.
+	 * 
+	 * @param points
+	 *            the coordinates of the points to scale
+	 * @param size
+	 *            the size of the largest side of the bounding box after scaling
+	 * @param newPoints
+	 *            the array where to store scaled points (can be <code>points</code>)
+	 */
+	public static void scaleToSquare(double[] points, double size, double[] newPoints) {
+		// same bounding box as boundingBox(Vector)
+		double minX = Double.MAX_VALUE;
+		double minY = Double.MAX_VALUE;
+		double maxX = Double.MIN_VALUE;
+		double maxY = Double.MIN_VALUE;
+		for (int i = 0; i < points.length; i += 2) {
+			minX = Math.min(minX, points[i]);
+			maxX = Math.max(maxX, points[i]);
+			minY = Math.min(minY, points[i + 1]);
+			maxY = Math.max(maxY, points[i + 1]);
+		}
+		double maxSide = Math.max(Math.max(maxX - minX, 1), Math.max(maxY - minY, 1));
+		double scale = size / maxSide;
+		for (int i = 0; i < points.length; i++)
+			newPoints[i] = points[i] * scale;
+	}
+
+	/**
+	 * Translates a set of points so that its centroid is the origin.
+	 * 
+	 * @param points
+	 *            the coordinates of the points to translate
+	 * @param newPoints
+	 *            the array where to store translated points (can be <code>points</code>)
+	 */
+	public static void translateToOrigin(double[] points, double[] newPoints) {
+		double cx = centroidX(points);
+		double cy = centroidY(points);
+		for (int i = 0; i < points.length; i += 2) {
+			newPoints[i] = points[i] - cx;
+			newPoints[i + 1] = points[i + 1] - cy;
+		}
+	}
+
+	/**
+	 * @param points
+	 *            the coordinates of the points to rotate
+	 * @param theta
+	 *            the angle in radians
+	 * @param newPoints
+	 *            the array where to store rotated points (can be <code>points</code>)
+	 */
+	public static void rotateBy(double[] points, double theta, double[] newPoints) {
+		double cx = centroidX(points);
+		double cy = centroidY(points);
+		double cos = Math.cos(theta);
+		double sin = Math.sin(theta);
+		for (int i = 0; i < points.length; i += 2) {
+			double dx = points[i] - cx;
+			double dy = points[i + 1] - cy;
+			newPoints[i] = dx * cos - dy * sin + cx;
+			newPoints[i + 1] = dx * sin + dy * cos + cy;
+		}
+	}
+
+	/**
+	 * Rotates a set of points so that the angle between its centroid and its first point is zero.
+	 * 
+	 * @param points
+	 *            the coordinates of the points to rotate
+	 * @param newPoints
+	 *            the array where to store rotated points (can be <code>points</code>)
+	 */
+	public static void rotateToZero(double[] points, double[] newPoints) {
+		rotateBy(points, -indicativeAngle(points), newPoints);
+	}
+
+	/**
+	 * @param pointsA
+	 *            the coordinates of the first set of points
+	 * @param pointsB
+	 *            the coordinates of the second set of points
+	 * @return the average distance between the points of <code>pointsA</code>
+	 *         and the points having the same index in <code>pointsB</code>.
+	 */
+	public static double pathDistance(double[] pointsA, double[] pointsB) {
+		double d = 0;
+		for (int i = 0; i < pointsA.length; i += 2) {
+			double dx = pointsA[i] - pointsB[i];
+			double dy = pointsA[i + 1] - pointsB[i + 1];
+			d += Math.sqrt(dx * dx + dy * dy);
+		}
+		return d / (pointsA.length / 2);
+	}
+
+	/**
+	 * Computes the path distance between two sets of points once both have been
+	 * rotated to zero, without storing the rotated points.
+	 * 
+	 * @param pointsA
+	 *            the coordinates of the first set of points
+	 * @param pointsB
+	 *            the coordinates of the second set of points
+	 * @return the path distance between <code>pointsA</code> and
+	 *         <code>pointsB</code> rotated to zero.
+	 * @see #rotateToZero(double[], double[])
+	 */
+	public static double pathDistanceAtZeroAngle(double[] pointsA, double[] pointsB) {
+		double cxA = centroidX(pointsA);
+		double cyA = centroidY(pointsA);
+		double cxB = centroidX(pointsB);
+		double cyB = centroidY(pointsB);
+		double thetaA = -Math.atan2(cyA - pointsA[1], cxA - pointsA[0]);
+		double thetaB = -Math.atan2(cyB - pointsB[1], cxB - pointsB[0]);
+		double cosA = Math.cos(thetaA), sinA = Math.sin(thetaA);
+		double cosB = Math.cos(thetaB), sinB = Math.sin(thetaB);
+		double d = 0;
+		for (int i = 0; i < pointsA.length; i += 2) {
+			double dxA = pointsA[i] - cxA;
+			double dyA = pointsA[i + 1] - cyA;
+			double dxB = pointsB[i] - cxB;
+			double dyB = pointsB[i + 1] - cyB;
+			double dx = (dxA * cosA - dyA * sinA + cxA) - (dxB * cosB - dyB * sinB + cxB);
+			double dy = (dxA * sinA + dyA * cosA + cyA) - (dxB * sinB + dyB * cosB + cyB);
+			d += Math.sqrt(dx * dx + dy * dy);
+		}
+		return d / (pointsA.length / 2);
+	}
+
+	/**
+	 * Searches the rotation of a set of points in [<code>thetaA</code>,
+	 * <code>thetaB</code>] that minimizes its path distance to another set
+	 * of points (golden section search). The rotated points are never stored,
+	 * so this method does not allocate any object.
+	 * 
+	 * @param points
+	 *            the coordinates of the points to rotate
+	 * @param gesturePoints
+	 *            the coordinates of the points to compare to
+	 * @param thetaA
+	 *            the lower bound of the rotation angle, in radians
+	 * @param thetaB
+	 *            the upper bound of the rotation angle, in radians
+	 * @param deltaTheta
+	 *            the precision of the search, in radians
+	 * @return the minimum path distance found.
+	 */
+	public static double distanceAtBestAngle(double[] points, double[] gesturePoints, double thetaA, double thetaB, double deltaTheta) {
+		double cx = centroidX(points);
+		double cy = centroidY(points);
 		double thetaa = thetaA;
 		double thetab = thetaB;
 		double phi = 0.5 * (-1 + Math.sqrt(5));
-		Vector<Point2D> newPoints = new Vector<Point2D>();
 		double x1 = phi * thetaa + (1 - phi) * thetab;
-		double f1 = distanceAtAngle(points, gesturePoints, x1, newPoints);
+		double f1 = distanceAtAngle(points, cx, cy, gesturePoints, x1);
 		double x2 = (1 - phi) * thetaa + phi * thetab;
-		double f2 = distanceAtAngle(points, gesturePoints, x2, newPoints);
+		double f2 = distanceAtAngle(points, cx, cy, gesturePoints, x2);
 		while (Math.abs(thetab - thetaa) > deltaTheta) {
 			if (f1 < f2) {
 				thetab = x2;
 				x2 = x1;
 				f2 = f1;
 				x1 = phi * thetaa + (1 - phi) * thetab;
-				f1 = distanceAtAngle(points, gesturePoints, x1, newPoints);
+				f1 = distanceAtAngle(points, cx, cy, gesturePoints, x1);
 			} else {
 				thetaa = x1;
 				x1 = x2;
 				f1 = f2;
 				x2 = (1 - phi) * thetaa + phi * thetab;
-				f2 = distanceAtAngle(points, gesturePoints, x2, newPoints);
+				f2 = distanceAtAngle(points, cx, cy, gesturePoints, x2);
 			}
 		}
 		return Math.min(f1, f2);
 	}
 
-	private static double distanceAtAngle(Vector<Point2D> points, Vector<Point2D> gesturePoints, double theta, Vector<Point2D> newPoints) {
-		rotateBy(points, theta, newPoints);
-		double res = pathDistance(newPoints, gesturePoints);
-		return res;
-	}
-
-	public static double pathDistance(Vector<Point2D> pointsA, Vector<Point2D> pointsB) {
+	// the path distance between gesturePoints and points rotated by theta around (cx, cy)
+	private static double distanceAtAngle(double[] points, double cx, double cy, double[] gesturePoints, double theta) {
+		double cos = Math.cos(theta);
+		double sin = Math.sin(theta);
 		double d = 0;
-		Iterator<Point2D> iteratorB = pointsB.iterator();
-		Point2D ptA, ptB;
-		for (Iterator<Point2D> iteratorA = pointsA.iterator(); iteratorA.hasNext();) {
-			ptA = iteratorA.next();
-			ptB = iteratorB.next();
-			d += ptA.distance(ptB);
+		for (int i = 0; i < points.length; i += 2) {
+			double dx = points[i] - cx;
+			double dy = points[i + 1] - cy;
+			double x = dx * cos - dy * sin + cx - gesturePoints[i];
+			double y = dx * sin + dy * cos + cy - gesturePoints[i + 1];
+			d += Math.sqrt(x * x + y * y);
 		}
-		return d / pointsA.size();
+		return d / (points.length / 2);
+	}
+
+	// the angle between the centroid of a set of points and its first point
+	private static double indicativeAngle(double[] points) {
+		return Math.atan2(centroidY(points) - points[1], centroidX(points) - points[0]);
+	}
+
+	private static double centroidX(double[] points) {
+		double sum = 0;
+		for (int i = 0; i < points.length; i += 2)
+			sum += points[i];
+		return sum / (points.length / 2);
+	}
+
+	private static double centroidY(double[] points) {
+		double sum = 0;
+		for (int i = 1; i < points.length; i += 2)
+			sum += points[i];
+		return sum / (points.length / 2);
 	}
 
 	/**
@@ -27,6 +27,9 @@ import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Locale;
@@ -384,9 +387,65 @@ public class Training {
 		file.add(close);
 		file.add(quit);
 		menuBar.add(file);
+		JMenu classesMenu = new JMenu("Classes...");
+		JMenuItem confusable = new JMenuItem("Confusable classes", KeyEvent.VK_C);
+		confusable.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				showConfusableClasses();
+			}
+		});
+		classesMenu.add(confusable);
+		menuBar.add(classesMenu);
 		frame.setJMenuBar(menuBar);
 	}
 
+	private void showConfusableClasses() {
+		StringBuilder report = new StringBuilder();
+		for (Iterator<AbstractClassifier> iterator = classifiers.iterator(); iterator.hasNext();) {
+			AbstractClassifier classifier = iterator.next();
+			report.append(classifier.getClass().getSimpleName()).append('\n');
+			for (Iterator<Score> pairs = confusableClasses(classifier, 10).iterator(); pairs.hasNext();) {
+				Score pair = pairs.next();
+				report.append("  ").append(pair.getName()).append(": ").append(myFormatter.format(pair.getScore())).append('\n');
+			}
+		}
+		JTextArea textArea = new JTextArea(report.toString());
+		textArea.setFont(currentFont);
+		textArea.setEditable(false);
+		JDialog dialog = new JDialog(frame, "confusable classes");
+		dialog.getContentPane().add(new JScrollPane(textArea));
+		dialog.pack();
+		dialog.setVisible(true);
+	}
+
+	/**
+	 * Lists the pairs of classes of gestures that a classifier is the most likely to confuse,
+	 * i.e. the pairs of closest classes.
+	 * 
+	 * @param classifier The classifier.
+	 * @param maxPairs The maximum number of pairs to list.
+	 * @return The pairs of classes, named "class1 / class2", from the closest to the farthest.
+	 */
+	public static Vector<Score> confusableClasses(AbstractClassifier classifier, int maxPairs) {
+		double[][] distances = classifier.getDistances();
+		ArrayList<String> names = classifier.getClassesNames();
+		Vector<Score> pairs = new Vector<Score>();
+		for (int i = 0; i < distances.length; i++) {
+			for (int j = i + 1; j < distances.length; j++) {
+				double distance = Math.min(distances[i][j], distances[j][i]);
+				if(!Double.isNaN(distance))
+					pairs.add(new Score(names.get(i) + " / " + names.get(j), distance));
+			}
+		}
+		Collections.sort(pairs, new Comparator<Score>() {
+			public int compare(Score s1, Score s2) {
+				return Double.compare(s1.getScore(), s2.getScore());
+			}
+		});
+		if(pairs.size() > maxPairs) pairs.setSize(maxPairs);
+		return pairs;
+	}
+
 	protected void addClass(String nameClass, boolean selectNewClass, boolean createNewClass) {
 		if (!selectNewClass && !createNewClass) {
 			// loading an existing classifier
@@ -6,14 +6,13 @@
 package fr.lri.swingstates.gestures.clement;
 
 import java.awt.geom.Point2D;
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.Iterator;
 import java.util.Vector;
 
 import fr.lri.swingstates.gestures.GestureUtils;
@@ -31,46 +30,7 @@ public class ClementClassifier extends ShapeMatchingClassifier {
 	}
 
 	@Override
-	public double distance(String gesture1, String gesture2) {
-		int index1 = classesNames.indexOf(gesture1);
-		int index2 = classesNames.indexOf(gesture2);
-
-		if(!Double.isNaN(distances[index1][index2])) {
-			return distances[index1][index2];
-		}
-
-		Vector<Point2D> template1 = getTemplate(gesture1);
-		Vector<Point2D> template2 = getTemplate(gesture2);
-
-		double minDis = distance(template1, template2);
-		ResampledGestureClass gc1 = classes.get(index1);
-		Vector<Vector<Point2D>> examples1 = gc1.getResampledGestures();
-		for (Iterator<Vector<Point2D>> iterator1 = examples1.iterator(); iterator1.hasNext();) {
-			Vector<Point2D> ex1  = iterator1.next();
-			double dis = distance(ex1, template2);
-			if(dis < minDis) {
-				minDis = dis;
-			}
-		}
-		distances[index1][index2] = minDis;
-
-		minDis = distance(template2, template1);
-		ResampledGestureClass gc2 = classes.get(index2);
-		Vector<Vector<Point2D>> examples2 = gc2.getResampledGestures();
-		for (Iterator<Vector<Point2D>> iterator = examples2.iterator(); iterator.hasNext();) {
-			Vector<Point2D> ex2  = iterator.next();
-			double dis = distance(template1, ex2);
-			if(dis < minDis) {
-				minDis = dis;
-			}
-		}
-		distances[index2][index1] = minDis;
-
-		return distances[index1][index2];
-	}
-
-	@Override
-	public double distance(Vector<Point2D> inputPointsResampled1, Vector<Point2D> inputPointsResampled2) {
+	public double distance(double[] inputPointsResampled1, double[] inputPointsResampled2) {
 		OptimizationParameters params = new OptimizationParameters(inputPointsResampled1, inputPointsResampled2);
 		UniformScaleAndRotation optimizer = new UniformScaleAndRotation();
 		//OptimizationParameters params = new OptimizationParameters(inputPointsResampled2, inputPointsResampled1);
@@ -111,7 +71,7 @@ public class ClementClassifier extends ShapeMatchingClassifier {
 	public static ClementClassifier newClassifier(File filename) {
 		ClementClassifier c = new ClementClassifier();
 		try {
-			c.read(new DataInputStream(new FileInputStream(filename)));
+			c.load(filename);
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -132,7 +92,7 @@ public class ClementClassifier extends ShapeMatchingClassifier {
 		try {
 			URLConnection urlc = null;
 			urlc = url.openConnection();
-			c.read(new DataInputStream(urlc.getInputStream()));
+			c.read(new DataInputStream(new BufferedInputStream(urlc.getInputStream())));
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -44,4 +44,25 @@ public class OptimizationParameters {
 
 	}
 
+	public OptimizationParameters(double[] inputPointsResampled1, double[] inputPointsResampled2) {
+
+		for (int index = 0; index<inputPointsResampled1.length; index += 2) {
+
+			double x1 = inputPointsResampled1[index];
+			double y1 = inputPointsResampled1[index+1];
+			double x2 = inputPointsResampled2[index];
+			double y2 = inputPointsResampled2[index+1];
+
+			A += x1*x2;
+			B += y1*x2;
+			C += x1*y2;
+			D += y1*y2;
+			squared_x1 += x1*x1;
+			squared_y1 += y1*y1;
+			x1_y1 += x1*y1;
+			squared_distances_sum2 += x2*x2 + y2*y2;
+		}
+
+	}
+
 }
@@ -13,16 +13,13 @@ package fr.lri.swingstates.gestures.dollar1;
  * prototypes. In proc.UIST'07.
  ******************************************************************************/
 
-import java.awt.geom.Point2D;
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.Iterator;
-import java.util.Vector;
 
 import fr.lri.swingstates.gestures.GestureUtils;
 import fr.lri.swingstates.gestures.shapeMatching.ShapeMatchingClassifier;
@@ -39,51 +36,12 @@ public class Dollar1Classifier extends ShapeMatchingClassifier {
 		super();
 	}
 	
-	public double distance(String gesture1, String gesture2) {
-		int index1 = classesNames.indexOf(gesture1);
-		int index2 = classesNames.indexOf(gesture2);
-		
-		if(!Double.isNaN(distances[index1][index2])) {
-			return distances[index1][index2];
-		}
-		
-		Vector<Point2D> template1 = getTemplate(gesture1);
-		Vector<Point2D> template2 = getTemplate(gesture2);
-		
-		double minDis = distance(template1, template2);
-		ResampledGestureClass gc1 = classes.get(index1);
-		Vector<Vector<Point2D>> examples1 = gc1.getResampledGestures();
-		for (Iterator<Vector<Point2D>> iterator1 = examples1.iterator(); iterator1.hasNext();) {
-			Vector<Point2D> ex1  = iterator1.next();
-			double dis = distance(ex1, template2);
-			if(dis < minDis) {
-				minDis = dis;
-			}
-		}
-		distances[index1][index2] = minDis;
-		
-		minDis = distance(template2, template1);
-		ResampledGestureClass gc2 = classes.get(index2);
-		Vector<Vector<Point2D>> examples2 = gc2.getResampledGestures();
-		for (Iterator<Vector<Point2D>> iterator = examples2.iterator(); iterator.hasNext();) {
-			Vector<Point2D> ex2  = iterator.next();
-			double dis = distance(template1, ex2);
-			if(dis < minDis) {
-				minDis = dis;
-			}
-		}
-		distances[index2][index1] = minDis;
-		
-		return distances[index1][index2];
-	}
-	
-	public double distance(Vector<Point2D> inputPointsResampled1, Vector<Point2D> inputPointsResampled2) {
-		Vector<Point2D> rotatedPoints1 = new Vector<Point2D>();
-		Vector<Point2D> rotatedPoints2 = new Vector<Point2D>();
-		GestureUtils.rotateToZero(inputPointsResampled1, rotatedPoints1);
-		GestureUtils.rotateToZero(inputPointsResampled2, rotatedPoints2);
-//		double dis = GestureUtils.distanceAtBestAngle(rotatedPoints1, rotatedPoints2, -theta, theta, deltaTheta);
-		return GestureUtils.pathDistance(rotatedPoints1, rotatedPoints2);
+	/**
+	 * {@inheritDoc} Both gestures are rotated to zero before being compared.
+	 */
+	public double distance(double[] inputPointsResampled1, double[] inputPointsResampled2) {
+//		double dis = GestureUtils.distanceAtBestAngle(inputPointsResampled1, inputPointsResampled2, -theta, theta, deltaTheta);
+		return GestureUtils.pathDistanceAtZeroAngle(inputPointsResampled1, inputPointsResampled2);
 //		return dis;
 	}
 	
@@ -110,7 +68,7 @@ public class Dollar1Classifier extends ShapeMatchingClassifier {
 	public static Dollar1Classifier newClassifier(File filename) {
 		Dollar1Classifier c = new Dollar1Classifier();
 		try {
-			c.read(new DataInputStream(new FileInputStream(filename)));
+			c.load(filename);
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -131,7 +89,7 @@ public class Dollar1Classifier extends ShapeMatchingClassifier {
 		try {
 			URLConnection urlc = null;
 			urlc = url.openConnection();
-			c.read(new DataInputStream(urlc.getInputStream()));
+			c.read(new DataInputStream(new BufferedInputStream(urlc.getInputStream())));
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -7,16 +7,18 @@ package fr.lri.swingstates.gestures.dtw;
  */
 
 import java.awt.geom.Point2D;
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Vector;
 
@@ -29,14 +31,23 @@ import fr.lri.swingstates.gestures.shapeMatching.NamedGesture;
 import fr.lri.swingstates.gestures.shapeMatching.ShapeMatchingClassifier;
 
 /**
- * A very simple recognizer that performs simple shape matching based on a single example per class (one template):
+ * A recognizer that compares gestures using dynamic time warping (DTW):
  * <ol>
- * <li> Resample the gesture to classify so it contains the number of uniformly spaced points as the gesture templates contained in this classifier. </li>
- * <li> For each template, scale the input gesture so its bounding box matches the bounding box of the template
- * and compute the sum of distances point to point between the template points and the input gesture points. </li>
- * <li> Returns the name of the class for the template that minimizes this sum of distances. </li>
+ * <li> Resample the gesture to classify in a fixed number of uniformly spaced points, scale it to a square and translate it to the origin. </li>
+ * <li> For each example and template, compute the cost of the best alignment between the two sequences of points,
+ * a point being allowed to be matched to the points of the other sequence that are at most <code>warpingWindow</code> indices away
+ * (Sakoe-Chiba band). </li>
+ * <li> Returns the name of the class for the example or template that minimizes this cost. </li>
  * </ol>
  * 
+ * <p>
+ * Only two rows of the band are kept during the computation. Before the full alignment is computed,
+ * an example is compared to the best match found so far using two cheap lower bounds of its cost
+ * (LB_Kim, the cost of matching the first and last points, and LB_Keogh, the distance to the envelope of the example),
+ * and the alignment itself is abandoned as soon as one of its rows costs more than the best match.
+ * Most examples are thus rejected without computing their alignment.
+ * </p>
+ * 
  * @author Caroline Appert
  *
  */
@@ -44,6 +55,31 @@ public class DTWClassifier extends AbstractClassifier {
 
 	protected ArrayList<GestureClass>    classes = new ArrayList<GestureClass>();
 
+	protected int nbPoints = 32;
+	protected double sizeScaleToSquare = 200;
+	protected int warpingWindow = 3;
+
+	// the normalized points and envelopes of the examples and templates, computed on demand.
+	// The gestures passed to distance or classify are normalized at each call and never kept here.
+	private IdentityHashMap<Vector<Point2D>, Sequence> sequences = new IdentityHashMap<Vector<Point2D>, Sequence>();
+
+	/**
+	 * A gesture resampled, scaled and translated to the origin, along with
+	 * the envelope of its coordinates within the warping window.
+	 */
+	private static class Sequence {
+		double[] points;
+		double[] lower;
+		double[] upper;
+
+		Sequence(double[] points, int window) {
+			this.points = points;
+			lower = new double[points.length];
+			upper = new double[points.length];
+			envelope(points, window, lower, upper);
+		}
+	}
+
 	public DTWClassifier() {
 		super();
 	}
@@ -51,45 +87,49 @@ public class DTWClassifier extends AbstractClassifier {
 	/**
 	 * {@inheritDoc}
 	 */
-	public double distance(String gesture1, String gesture2) {
-		int index1 = classesNames.indexOf(gesture1);
-		int index2 = classesNames.indexOf(gesture2);
-		
-		if(!Double.isNaN(distances[index1][index2])) {
-			return distances[index1][index2];
-		}
-		
-		Vector<Point2D> template1 = getTemplate(gesture1);
-		Vector<Point2D> template2 = getTemplate(gesture2);
-		
-		double minDis = distance(template1, template2);
-		GestureClass gc1 = classes.get(index1);
-		Vector<Gesture> examples1 = gc1.getGestures();
-		for (Iterator<Gesture> iterator = examples1.iterator(); iterator.hasNext();) {
-			Vector<Point2D> ex1  = iterator.next().getPoints();
-			double dis = distance(ex1, template2);
+	protected double computeDistance(int index1, int index2) {
+		ArrayList<Sequence> targets = getSequences(index2, true);
+		double minDis = Double.POSITIVE_INFINITY;
+		for (Iterator<Sequence> iterator = getSequences(index1, false).iterator(); iterator.hasNext();) {
+			double dis = distance(iterator.next().points, targets, minDis);
 			if(dis < minDis) {
 				minDis = dis;
 			}
 		}
-		distances[index1][index2] = minDis;
-		
-		minDis = distance(template2, template1);
-		GestureClass gc2 = classes.get(index2);
-		Vector<Gesture> examples2 = gc2.getGestures();
-		for (Iterator<Gesture> iterator = examples2.iterator(); iterator.hasNext();) {
-			Vector<Point2D> ex2  = iterator.next().getPoints();
-			double dis = distance(template1, ex2);
+		return minDis;
+	}
+
+	/**
+	 * Collects the sequences of the template and the examples of a class.
+	 * @param index The index of the class.
+	 * @param templateOnly True to collect only the template of the class, unless it has none.
+	 * @return The sequences, empty if the class has neither template nor examples.
+	 */
+	private ArrayList<Sequence> getSequences(int index, boolean templateOnly) {
+		ArrayList<Sequence> result = new ArrayList<Sequence>();
+		Vector<Point2D> template = templates.get(index);
+		if(template != null) {
+			result.add(getSequence(template));
+			if(templateOnly) return result;
+		}
+		for (Iterator<Gesture> iterator = classes.get(index).getGestures().iterator(); iterator.hasNext();)
+			result.add(getSequence(iterator.next().getPoints()));
+		return result;
+	}
+
+	// the cost of the best alignment between normalized points and the closest of several sequences
+	private double distance(double[] points, ArrayList<Sequence> sequences, double bestSoFar) {
+		double minDis = Double.POSITIVE_INFINITY;
+		for (Iterator<Sequence> iterator = sequences.iterator(); iterator.hasNext();) {
+			double dis = distance(points, iterator.next(), Math.min(minDis, bestSoFar));
 			if(dis < minDis) {
 				minDis = dis;
 			}
 		}
-
-		distances[index2][index1] = minDis;
-		
-		return distances[index1][index2];
+		return minDis;
 	}
 
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -97,13 +137,29 @@ public class DTWClassifier extends AbstractClassifier {
 		return distance(gesture.getPoints(), gesture2);
 	}
 
+	/**
+	 * Computes the cost of the best alignment between a gesture and the template of a class,
+	 * or its closest example if the class has no template.
+	 * @param inputPoints The points of the gesture.
+	 * @param gesture2 The name of the class.
+	 * @return The cost of the best alignment between the gesture and the template,
+	 * <code>Double.POSITIVE_INFINITY</code> if the class has neither template nor examples
+	 * and <code>Double.NaN</code> if there is no such class.
+	 */
 	public double distance(Vector<Point2D> inputPoints, String gesture2) {
-		return distance(inputPoints, getTemplate(gesture2));
+		int index = classesNames.indexOf(gesture2);
+		if(index == -1) return Double.NaN;
+		return distance(normalize(inputPoints), getSequences(index, true), Double.POSITIVE_INFINITY);
 	}
 
+	/**
+	 * Computes the cost of the best alignment between two gestures, as an average distance between matched points.
+	 * @param inputPoints1 The points of the first gesture.
+	 * @param inputPoints2 The points of the second gesture.
+	 * @return The cost of the best alignment between the two gestures.
+	 */
 	public double distance(Vector<Point2D> inputPoints1, Vector<Point2D> inputPoints2) {
-		// TODO
-		return -1;
+		return distance(normalize(inputPoints1), new Sequence(normalize(inputPoints2), warpingWindow), Double.POSITIVE_INFINITY);
 	}
 
 	/**
@@ -112,33 +168,203 @@ public class DTWClassifier extends AbstractClassifier {
 	public String classify(Gesture g) {
 		if(GestureUtils.pathLength(g.getPoints()) < minimumStrokeLength) return null;
 
-		double minScore = Double.MAX_VALUE;
-		double currentScore = -1;
+		double[] classDistances = classDistances(getCandidates(normalize(g.getPoints()), true), classes.size(), true);
+		double minScore = Double.POSITIVE_INFINITY;
 		GestureClass recognized = null;
+		for (int nc = 0; nc < classDistances.length; nc++) {
+			if (classDistances[nc] < minScore) {
+				minScore = classDistances[nc];
+				recognized = classes.get(nc);
+			}
+		}
+		return recognized == null ? null : recognized.getName();
+	}
+
+	/**
+	 * Collects the examples and templates an input gesture is compared to.
+	 * Their sequences are computed on the calling thread.
+	 * @param inputPoints The normalized points of the input gesture.
+	 * @param allTemplates True to compare the input gesture to the template of every class,
+	 * false to compare it only to the template of the classes that have no examples.
+	 * @return The candidates.
+	 */
+	private Candidates getCandidates(final double[] inputPoints, boolean allTemplates) {
+		final ArrayList<Sequence> candidates = new ArrayList<Sequence>();
+		final ArrayList<Integer> candidatesClasses = new ArrayList<Integer>();
+		for (int nc = 0; nc < classes.size(); nc++) {
+			Vector<Gesture> examples = classes.get(nc).getGestures();
+			for (Iterator<Gesture> gesturesIterator = examples.iterator(); gesturesIterator.hasNext();) {
+				candidates.add(getSequence(gesturesIterator.next().getPoints()));
+				candidatesClasses.add(nc);
+			}
+			Vector<Point2D> gesturePoints = getTemplates().get(nc);
+			if(gesturePoints != null && (allTemplates || examples.isEmpty())) {
+				candidates.add(getSequence(gesturePoints));
+				candidatesClasses.add(nc);
+			}
+		}
+		return new Candidates() {
+			protected int size() {
+				return candidates.size();
+			}
+			protected int classIndex(int candidate) {
+				return candidatesClasses.get(candidate);
+			}
+			protected double distance(int candidate, double bestSoFar) {
+				return DTWClassifier.this.distance(inputPoints, candidates.get(candidate), bestSoFar);
+			}
+		};
+	}
 
 
-		for (Iterator<GestureClass> classesIterator = classes.iterator(); classesIterator.hasNext();) {
-			GestureClass nextClass = classesIterator.next();
-			if(nextClass.getGestures().size() > 0) {
-				for (Iterator<Gesture> gesturesIterator = nextClass.getGestures().iterator(); gesturesIterator.hasNext();) {
-					Vector<Point2D> gesturePoints = gesturesIterator.next().getPoints();
-					currentScore = distance(g.getPoints(), gesturePoints);
-					if (currentScore < minScore) {
-						minScore = currentScore;
-						recognized = nextClass;
-					}
+	/**
+	 * Resamples, scales and translates to the origin a set of points.
+	 * @param points The points.
+	 * @return The normalized points, as an array of interleaved coordinates.
+	 */
+	protected double[] normalize(Vector<Point2D> points) {
+		double[] newPoints = new double[2 * nbPoints];
+		GestureUtils.resample(points, nbPoints, newPoints);
+		GestureUtils.scaleToSquare(newPoints, sizeScaleToSquare, newPoints);
+		GestureUtils.translateToOrigin(newPoints, newPoints);
+		return newPoints;
+	}
+
+	// must only be called for the templates and the examples of this classifier
+	private synchronized Sequence getSequence(Vector<Point2D> points) {
+		Sequence sequence = sequences.get(points);
+		if(sequence == null) {
+			sequence = new Sequence(normalize(points), warpingWindow);
+			sequences.put(points, sequence);
+		}
+		return sequence;
+	}
+
+	/**
+	 * Computes the cost of aligning normalized points with a sequence, giving up
+	 * as soon as it is known to be greater than <code>bestSoFar</code>.
+	 * @return The average cost, or <code>Double.POSITIVE_INFINITY</code> if it is greater than <code>bestSoFar</code>.
+	 */
+	private double distance(double[] points, Sequence sequence, double bestSoFar) {
+		int n = points.length / 2;
+		double bound = bestSoFar * n;
+		if(lowerBoundKim(points, sequence.points) > bound
+				|| lowerBoundKeogh(points, sequence.lower, sequence.upper, bound) > bound)
+			return Double.POSITIVE_INFINITY;
+		return dtw(points, sequence.points, warpingWindow, bound) / n;
+	}
+
+	/**
+	 * Computes the cost of the best alignment between two sequences of the same number of points,
+	 * i.e. the sum of the distances between matched points, each point being matched to points
+	 * that are at most <code>window</code> indices away in the other sequence.
+	 * Only the <code>2*window+1</code> cells of the current and previous rows are stored.
+	 * 
+	 * @param pointsA The first sequence, as an array of interleaved coordinates.
+	 * @param pointsB The second sequence, as an array of interleaved coordinates.
+	 * @param window The width of the warping window.
+	 * @param bestSoFar The cost above which the computation is abandoned.
+	 * @return The cost of the best alignment, or <code>Double.POSITIVE_INFINITY</code> if it is greater than <code>bestSoFar</code>.
+	 */
+	public static double dtw(double[] pointsA, double[] pointsB, int window, double bestSoFar) {
+		int n = pointsA.length / 2;
+		int w = Math.max(0, Math.min(window, n - 1));
+		double[] previous = new double[2 * w + 1];
+		double[] current = new double[2 * w + 1];
+		Arrays.fill(previous, Double.POSITIVE_INFINITY);
+		for (int i = 0; i < n; i++) {
+			Arrays.fill(current, Double.POSITIVE_INFINITY);
+			double rowMin = Double.POSITIVE_INFINITY;
+			int jMin = Math.max(0, i - w);
+			int jMax = Math.min(n - 1, i + w);
+			for (int j = jMin; j <= jMax; j++) {
+				// cell (i, j) is stored at index j - i + w, cell (i-1, j) at index j - i + w + 1 of the previous row
+				int k = j - i + w;
+				double min;
+				if(i == 0 && j == 0) {
+					min = 0;
+				} else {
+					min = Double.POSITIVE_INFINITY;
+					if(k > 0 && current[k - 1] < min) min = current[k - 1];
+					if(previous[k] < min) min = previous[k];
+					if(k < 2 * w && previous[k + 1] < min) min = previous[k + 1];
 				}
-			} 
-			Vector<Point2D> gesturePoints = getTemplates().get(getClassesNames().indexOf(nextClass.getName()));
-			if(gesturePoints != null) {
-				currentScore = distance(g.getPoints(), gesturePoints);
-				if (currentScore < minScore) {
-					minScore = currentScore;
-					recognized = nextClass;
+				double dx = pointsA[2 * i] - pointsB[2 * j];
+				double dy = pointsA[2 * i + 1] - pointsB[2 * j + 1];
+				current[k] = min + Math.sqrt(dx * dx + dy * dy);
+				if(current[k] < rowMin) rowMin = current[k];
+			}
+			if(rowMin > bestSoFar) return Double.POSITIVE_INFINITY;
+			double[] tmp = previous;
+			previous = current;
+			current = tmp;
+		}
+		return previous[w];
+	}
+
+	/**
+	 * Computes a lower bound of the cost of aligning two sequences from their first and last points,
+	 * which are always matched together.
+	 * 
+	 * @param pointsA The first sequence, as an array of interleaved coordinates.
+	 * @param pointsB The second sequence, as an array of interleaved coordinates.
+	 * @return A lower bound of <code>dtw(pointsA, pointsB, window, bestSoFar)</code>.
+	 */
+	public static double lowerBoundKim(double[] pointsA, double[] pointsB) {
+		int last = pointsA.length - 2;
+		double d = Point2D.distance(pointsA[0], pointsA[1], pointsB[0], pointsB[1]);
+		if(last > 0) d += Point2D.distance(pointsA[last], pointsA[last + 1], pointsB[last], pointsB[last + 1]);
+		return d;
+	}
+
+	/**
+	 * Computes the envelope of a sequence, i.e. for each point, the bounding box
+	 * of the points that are at most <code>window</code> indices away.
+	 * 
+	 * @param points The sequence, as an array of interleaved coordinates.
+	 * @param window The width of the warping window.
+	 * @param lower The array where to store the lower coordinates of the envelope.
+	 * @param upper The array where to store the upper coordinates of the envelope.
+	 */
+	public static void envelope(double[] points, int window, double[] lower, double[] upper) {
+		int n = points.length / 2;
+		for (int i = 0; i < n; i++) {
+			int jMax = Math.min(n - 1, i + window);
+			for (int c = 0; c < 2; c++) {
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				for (int j = Math.max(0, i - window); j <= jMax; j++) {
+					double v = points[2 * j + c];
+					if(v < min) min = v;
+					if(v > max) max = v;
 				}
+				lower[2 * i + c] = min;
+				upper[2 * i + c] = max;
 			}
 		}
-		return recognized.getName();
+	}
+
+	/**
+	 * Computes a lower bound of the cost of aligning a sequence with another one given the envelope of the latter:
+	 * each point is at least as far from the points it can be matched with as from their bounding box.
+	 * 
+	 * @param points The sequence, as an array of interleaved coordinates.
+	 * @param lower The lower coordinates of the envelope of the other sequence.
+	 * @param upper The upper coordinates of the envelope of the other sequence.
+	 * @param bestSoFar The cost above which the computation is abandoned.
+	 * @return A lower bound of the cost, which is greater than <code>bestSoFar</code> if the computation has been abandoned.
+	 */
+	public static double lowerBoundKeogh(double[] points, double[] lower, double[] upper, double bestSoFar) {
+		double d = 0;
+		for (int i = 0; i < points.length; i += 2) {
+			double dx = points[i] < lower[i] ? lower[i] - points[i] : (points[i] > upper[i] ? points[i] - upper[i] : 0);
+			double dy = points[i + 1] < lower[i + 1] ? lower[i + 1] - points[i + 1] : (points[i + 1] > upper[i + 1] ? points[i + 1] - upper[i + 1] : 0);
+			if(dx != 0 || dy != 0) {
+				d += Math.sqrt(dx * dx + dy * dy);
+				if(d > bestSoFar) return d;
+			}
+		}
+		return d;
 	}
 
 	/**
@@ -164,7 +390,7 @@ public class DTWClassifier extends AbstractClassifier {
 	public static DTWClassifier newClassifier(File filename) {
 		DTWClassifier c = new DTWClassifier();
 		try {
-			c.read(new DataInputStream(new FileInputStream(filename)));
+			c.load(filename);
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -185,7 +411,7 @@ public class DTWClassifier extends AbstractClassifier {
 		try {
 			URLConnection urlc = null;
 			urlc = url.openConnection();
-			c.read(new DataInputStream(urlc.getInputStream()));
+			c.read(new DataInputStream(new BufferedInputStream(urlc.getInputStream())));
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -223,11 +449,23 @@ public class DTWClassifier extends AbstractClassifier {
 	public void removeClass(String className) {
 		int index = classesNames.indexOf(className);
 		if(index == -1) return;
+		forget(templates.get(index));
+		for (Iterator<Gesture> iterator = classes.get(index).getGestures().iterator(); iterator.hasNext();)
+			forget(iterator.next().getPoints());
 		super.removeClass(className);
 		classes.remove(index);
 		fireClassRemoved(className);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setTemplate(String className, Vector<Point2D> template) {
+		int index = classesNames.indexOf(className);
+		if(index != -1) forget(templates.get(index));
+		super.setTemplate(className, template);
+	}
+
 	/**
 	 * Adds a class and set the template for this class.
 	 * @param className The name of the class to add
@@ -238,6 +476,18 @@ public class DTWClassifier extends AbstractClassifier {
 		templates.set(index, template);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void loadClass(String className, Vector<Point2D> template, Vector<Gesture> examples) {
+		classesNames.add(className);
+		templates.add(template);
+		GestureClass gestureClass = new GestureClass(className);
+		classes.add(gestureClass);
+		for (Iterator<Gesture> iterator = examples.iterator(); iterator.hasNext();)
+			gestureClass.addExample(iterator.next());
+	}
+
 	protected Object read(DataInputStream in) throws IOException {
 		int nClasses = in.readInt();
 		for (int i = 0; i < nClasses; i++) {
@@ -290,36 +540,64 @@ public class DTWClassifier extends AbstractClassifier {
 	 * {@inheritDoc}
 	 */
 	public Vector<Score> sortedClasses(Gesture g) {
-		Vector<Score> sortedScores = new Vector<Score>();
+		return sortedScores(classDistances(getCandidates(normalize(g.getPoints()), false), classes.size(), false));
+	}
 
-		double score;
-		double minClassScore = 0;
-		for (int nc = 0; nc < classes.size(); nc++) {
-			minClassScore = Integer.MAX_VALUE;
-			if(classes.get(nc).getGestures().size() > 0) {
-				for (Iterator<Gesture> gesturesIterator = classes.get(nc).getGestures().iterator(); gesturesIterator.hasNext();) {
-					Vector<Point2D> gesturePoints = gesturesIterator.next().getPoints();
-					score = distance(g.getPoints(), gesturePoints);
-					if (score < minClassScore)
-						minClassScore = score;
-				}
-			} else {
-				Vector<Point2D> gesturePoints = getTemplates().get(nc);
-				score = distance(g.getPoints(), gesturePoints);
-				if (score < minClassScore)
-					minClassScore = score;
-			}
-			if (nc == 0) {
-				sortedScores.add(new Score(classes.get(nc).getName(), minClassScore));
-			} else {
-				int i = 0;
-				while (i < sortedScores.size() && sortedScores.get(i).getScore() < minClassScore)
-					i++;
-				sortedScores.add(i, new Score(classes.get(nc).getName(), minClassScore));
-			}
-		}
 
-		return sortedScores;
+	/**
+	 * @return The number of points gestures are resampled in before being compared.
+	 */
+	public int getNbPoints() {
+		return nbPoints;
+	}
+
+	/**
+	 * Sets the number of points gestures are resampled in before being compared.
+	 * @param nbPoints The number of points.
+	 */
+	public void setNbPointsForResampling(int nbPoints) {
+		this.nbPoints = nbPoints;
+		clearSequences();
+	}
+
+	/**
+	 * @return The side size of the bounding box to which gestures are scaled after having being resampled.
+	 */
+	public double getSizeScaleToSquare() {
+		return sizeScaleToSquare;
+	}
+
+	/**
+	 * The side size of the bounding box to which gestures are scaled after having being resampled.
+	 * @param size The side size of the bounding box
+	 */
+	public void setSizeScaleToSquare(int size) {
+		this.sizeScaleToSquare = size;
+		clearSequences();
+	}
+
+	/**
+	 * @return The maximum difference of indices between two matched points.
+	 */
+	public int getWarpingWindow() {
+		return warpingWindow;
+	}
+
+	/**
+	 * Sets the maximum difference of indices between two matched points.
+	 * A window of 0 matches the points of both gestures one to one, while a window
+	 * of <code>getNbPoints()</code> allows any alignment. Narrow windows are faster
+	 * and prune more examples.
+	 * @param warpingWindow The width of the warping window.
+	 */
+	public void setWarpingWindow(int warpingWindow) {
+		this.warpingWindow = Math.max(0, warpingWindow);
+		clearSequences();
+	}
+
+	private synchronized void clearSequences() {
+		sequences.clear();
+		invalidateAllDistances();
 	}
 
 	/**
@@ -347,8 +625,10 @@ public class DTWClassifier extends AbstractClassifier {
 		for (Iterator<GestureClass> iterator = classes.iterator(); iterator.hasNext();) {
 			GestureClass next = iterator.next();
 			if(next != null) {
-				invalidateDistance(next.getName());
-				next.removeExample(example);
+				if(next.removeExample(example)) {
+					forget(example.getPoints());
+					invalidateDistancesFrom(next.getName());
+				}
 				fireExampleRemoved(next.getName(), example);
 			}
 		}
@@ -358,12 +638,12 @@ public class DTWClassifier extends AbstractClassifier {
 	 * {@inheritDoc}
 	 */
 	public void addExample(String className, Gesture example) {
-		invalidateDistance(className);
 		int index = classesNames.indexOf(className);
 		if(index == -1) return;
 		GestureClass gestureClass = classes.get(index);
 		if(gestureClass != null) {
 			gestureClass.addExample(example);
+			invalidateDistancesFrom(className);
 			fireExampleAdded(className, example);
 		}
 	}
@@ -385,6 +665,11 @@ public class DTWClassifier extends AbstractClassifier {
 	public void reset() {
 		super.reset();
 		classes.clear();
+		clearSequences();
+	}
+
+	private synchronized void forget(Vector<Point2D> points) {
+		if(points != null) sequences.remove(points);
 	}
 
 }
@@ -15,16 +15,17 @@ package fr.lri.swingstates.gestures.rubine;
 
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Vector;
 
 import fr.lri.swingstates.canvas.CPolyLine;
@@ -251,7 +252,7 @@ public class RubineClassifier extends AbstractClassifier {
 		try {
 			URLConnection urlc = null;
 			urlc = url.openConnection();
-			c.read(new DataInputStream(urlc.getInputStream()));
+			c.read(new DataInputStream(new BufferedInputStream(urlc.getInputStream())));
 			c.compile();
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -297,7 +298,7 @@ public class RubineClassifier extends AbstractClassifier {
 	public static RubineClassifier newClassifier(File filename) {
 		RubineClassifier c = new RubineClassifier();
 		try {
-			c.read(new DataInputStream(new FileInputStream(filename)));
+			c.load(filename);
 			c.compile();
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -330,6 +331,7 @@ public class RubineClassifier extends AbstractClassifier {
 		cnst.remove(index);
 		super.removeClass(className);
 		compiled = false;
+		invalidateAllDistances();
 		fireClassRemoved(className);
 	}
 	
@@ -427,6 +429,8 @@ public class RubineClassifier extends AbstractClassifier {
 			/* could add log(priorprob class) to cnst */
 		}
 		compiled = true;
+		// the weights of all the classes have changed
+		invalidateAllDistances();
 	}
 
 	private void init() {
@@ -445,7 +449,7 @@ public class RubineClassifier extends AbstractClassifier {
 	/**
 	 * Compiles this classifier (i.e. performs training).
 	 */
-	private void compile() {
+	private synchronized void compile() {
 		if (!compiled)
 			compute();
 	}
@@ -517,6 +521,7 @@ public class RubineClassifier extends AbstractClassifier {
 		weights.add(new Vector<Double>(NAME_FEATURES.length));
 		cnst.add(0.0);
 		compiled = false;
+		invalidateAllDistances();
 		fireClassAdded(className);
 		return index;
 	}
@@ -599,6 +604,34 @@ public class RubineClassifier extends AbstractClassifier {
 		out.writeInt(minimumStrokeLength);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void loadClass(String className, Vector<Point2D> template, Vector<Gesture> examples) {
+		classesNames.add(className);
+		templates.add(template);
+		RubineGestureClass gestureClass = new RubineGestureClass(className);
+		classes.add(gestureClass);
+		for (Iterator<Gesture> iterator = examples.iterator(); iterator.hasNext();)
+			gestureClass.addExample(iterator.next());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void getParameters(Map<String, Double> parameters) {
+		super.getParameters(parameters);
+		parameters.put("mahalanobisThreshold", (double) mahalanobisThreshold);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void setParameter(String name, double value) {
+		super.setParameter(name, value);
+		if(name.compareTo("mahalanobisThreshold") == 0) mahalanobisThreshold = (int) value;
+	}
+
 	protected Object read(DataInputStream in) throws IOException {
 		int nClasses = in.readInt();
 		for (int i = 0; i < nClasses; i++) {
@@ -1006,8 +1039,10 @@ public class RubineClassifier extends AbstractClassifier {
 		for (Iterator<RubineGestureClass> iterator = classes.iterator(); iterator.hasNext();) {
 			RubineGestureClass next = iterator.next();
 			if(next != null) {
-				invalidateDistance(next.getName());
-				next.removeExample(example);
+				if(next.removeExample(example)) {
+					compiled = false;
+					invalidateAllDistances();
+				}
 				fireExampleRemoved(next.getName(), example);
 			}
 		}
@@ -1017,12 +1052,14 @@ public class RubineClassifier extends AbstractClassifier {
 	 * {@inheritDoc}
 	 */
 	public void addExample(String className, Gesture example) {
-		invalidateDistance(className);
 		int index = classesNames.indexOf(className);
 		if(index == -1) return;
 		RubineGestureClass gestureClass = classes.get(index);
 		if(gestureClass != null) {
 			gestureClass.addExample(example);
+			// the weights of all the classes depend on this example
+			compiled = false;
+			invalidateAllDistances();
 			fireExampleAdded(className, example);
 		}
 	}
@@ -1050,16 +1087,19 @@ public class RubineClassifier extends AbstractClassifier {
 	}
 
 	
-	public double distance(String gesture1, String gesture2) {
+	/**
+	 * {@inheritDoc} The distances are not kept while this classifier can not be trained.
+	 */
+	protected boolean isDistanceFinal() {
+		return compiled;
+	}
+
+	/**
+	 * {@inheritDoc} The distance is 10 while this classifier can not be trained.
+	 */
+	protected double computeDistance(int index1, int index2) {
 		compile();
 		if(!compiled) return 10;
-		
-		int index1 = classesNames.indexOf(gesture1);
-		int index2 = classesNames.indexOf(gesture2);
-		
-		if(!Double.isNaN(distances[index1][index2])) {
-			return distances[index1][index2];
-		}
 
 		double dis = 0;
 		
@@ -1077,11 +1117,8 @@ public class RubineClassifier extends AbstractClassifier {
 		
 //		dis = mahalanobisDistance(av1, av2, invAvgCov);
 		
-		
-		distances[index1][index2] = dis;
-		distances[index2][index1] = dis;
-		
 		return dis;
 	}
+
 	
 }
@@ -6,17 +6,20 @@
 package fr.lri.swingstates.gestures.shapeMatching;
 
 import java.awt.geom.Point2D;
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import fr.lri.swingstates.gestures.AbstractClassifier;
@@ -41,7 +44,10 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 
 	protected class ResampledGestureClass extends GestureClass {
 
-		private Vector<Vector<Point2D>> resampledGestures = new Vector<Vector<Point2D>>();
+		// the coordinates (x0, y0, x1, y1, ...) of the resampled examples
+		private ArrayList<double[]> resampledPoints = new ArrayList<double[]>();
+		// the coordinates of the template, null if the class has no template
+		private double[] template = null;
 
 		ResampledGestureClass() {
 			super();
@@ -52,22 +58,18 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 		}
 
 		/**
-		 * {@inheritDoc} Each time a gesture is added, a vector of points
-		 * corresponding to this gesture as resampled, rotated and scaled is
-		 * computed and stored in <code>resampledGestures</code>.
+		 * {@inheritDoc} Each time a gesture is added, the coordinates of
+		 * this gesture as resampled, rotated and scaled are computed and
+		 * stored in <code>resampledPoints</code>.
 		 */
 		public void addExample(Gesture gesture) {
 			super.addExample(gesture);
-			Vector<Point2D> newPoints = new Vector<Point2D>();
-			GestureUtils.resample(gesture.getPoints(), ShapeMatchingClassifier.this.getNbPoints(), newPoints);
-			GestureUtils.scaleToSquare(newPoints, ShapeMatchingClassifier.this.getSizeScaleToSquare(), newPoints);
-			GestureUtils.translateToOrigin(newPoints, newPoints);
-			resampledGestures.add(newPoints);
+			resampledPoints.add(normalizeAsArray(gesture.getPoints()));
 		}
 		
 		public void addResampledExample(Vector<Point2D> gesture) {
 			super.addExample(null);
-			resampledGestures.add(gesture);
+			resampledPoints.add(GestureUtils.asArray(gesture));
 		}
 
 		/**
@@ -78,18 +80,33 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 				return false;
 			int index = gestures.indexOf(gesture);
 			if (index != -1)
-				resampledGestures.remove(index);
+				resampledPoints.remove(index);
 			return super.removeExample(gesture);
 		}
 
 		/**
+		 * Returns a copy of the gesture examples as resampled and scaled:
+		 * the examples are modified with <code>addExample</code>, <code>addResampledExample</code>
+		 * and <code>removeExample</code>.
 		 * @return The vector of gesture examples as resampled and scaled.
-		 * @see Dollar1GestureClass#addExample(Gesture)
+		 * @see ResampledGestureClass#addExample(Gesture)
 		 */
 		public Vector<Vector<Point2D>> getResampledGestures() {
+			Vector<Vector<Point2D>> resampledGestures = new Vector<Vector<Point2D>>(resampledPoints.size());
+			for (Iterator<double[]> iterator = resampledPoints.iterator(); iterator.hasNext();)
+				resampledGestures.add(GestureUtils.asVector(iterator.next()));
 			return resampledGestures;
 		}
 
+		/**
+		 * @return The coordinates (x0, y0, x1, y1, ...) of the gesture examples as resampled and scaled,
+		 * which must not be modified.
+		 * @see ResampledGestureClass#addExample(Gesture)
+		 */
+		public List<double[]> getResampledPoints() {
+			return Collections.unmodifiableList(resampledPoints);
+		}
+
 		/**
 		 * @return The average vector of this class. A point#i in this vector is the
 		 *         gravity center of points#i of all examples.
@@ -101,12 +118,12 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 			for (int i = 0; i < nbPoints; i++) {
 				sumX = 0;
 				sumY = 0;
-				for (Iterator<Vector<Point2D>> iterator = resampledGestures.iterator(); iterator.hasNext();) {
-					Point2D pt = iterator.next().get(i);
-					sumX += pt.getX();
-					sumY += pt.getY();
+				for (Iterator<double[]> iterator = resampledPoints.iterator(); iterator.hasNext();) {
+					double[] pts = iterator.next();
+					sumX += pts[2 * i];
+					sumY += pts[2 * i + 1];
 				}
-				average.add(new Point2D.Double(sumX / resampledGestures.size(), sumY / resampledGestures.size()));
+				average.add(new Point2D.Double(sumX / resampledPoints.size(), sumY / resampledPoints.size()));
 			}
 			return average;
 		}
@@ -134,109 +151,150 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 	/**
 	 * {@inheritDoc}
 	 */
-	public double distance(String gesture1, String gesture2) {
-		int index1 = classesNames.indexOf(gesture1);
-		int index2 = classesNames.indexOf(gesture2);
-		
-		if(!Double.isNaN(distances[index1][index2])) {
-			return distances[index1][index2];
-		}
-		
-		Vector<Point2D> template1 = getTemplate(gesture1);
-		Vector<Point2D> template2 = getTemplate(gesture2);
-		
-		double minDis = distance(template1, template2);
-		ResampledGestureClass gc1 = classes.get(index1);
-		Vector<Vector<Point2D>> examples1 = gc1.getResampledGestures();
-		for (Iterator<Vector<Point2D>> iterator = examples1.iterator(); iterator.hasNext();) {
-			Vector<Point2D> ex1  = iterator.next();
-			double dis = distance(ex1, template2);
+	protected double computeDistance(int index1, int index2) {
+		double[] template2 = getTemplateArray(index2);
+		double minDis = distance(getTemplateArray(index1), template2);
+		List<double[]> examples1 = classes.get(index1).getResampledPoints();
+		for (Iterator<double[]> iterator = examples1.iterator(); iterator.hasNext();) {
+			double dis = distance(iterator.next(), template2);
 			if(dis < minDis) {
 				minDis = dis;
 			}
 		}
-		distances[index1][index2] = minDis;
-		
-		minDis = distance(template2, template1);
-		ResampledGestureClass gc2 = classes.get(index2);
-		Vector<Vector<Point2D>> examples2 = gc2.getResampledGestures();
-		for (Iterator<Vector<Point2D>> iterator = examples2.iterator(); iterator.hasNext();) {
-			Vector<Point2D> ex2  = iterator.next();
-			double dis = distance(template1, ex2);
-			if(dis < minDis) {
-				minDis = dis;
-			}
-		}
-
-		distances[index2][index1] = minDis;
-		
-		return distances[index1][index2];
+		return minDis;
 	}
 
+
 	/**
 	 * {@inheritDoc}
 	 */
 	public double distance(Gesture gesture, String gesture2) {
-		Vector<Point2D> inputPointsResampled = normalize(gesture);
-		return distance(inputPointsResampled, gesture2);
+		return distance(normalizeAsArray(gesture.getPoints()), getTemplateArray(classesNames.indexOf(gesture2)));
 	}
 
 	public Vector<Point2D> normalize(Gesture gesture) {
-		Vector<Point2D> inputPointsResampled = new Vector<Point2D>();
-		GestureUtils.resample(gesture.getPoints(), nbPoints, inputPointsResampled);
+		return GestureUtils.asVector(normalizeAsArray(gesture.getPoints()));
+	}
+
+	/**
+	 * Resamples, scales and translates a set of points the same way as the
+	 * gesture examples of this classifier.
+	 * @param points The points.
+	 * @return the coordinates (x0, y0, x1, y1, ...) of the normalized points.
+	 */
+	protected double[] normalizeAsArray(Vector<Point2D> points) {
+		double[] inputPointsResampled = new double[2 * nbPoints];
+		GestureUtils.resample(points, nbPoints, inputPointsResampled);
 		GestureUtils.scaleToSquare(inputPointsResampled, sizeScaleToSquare, inputPointsResampled);
 		GestureUtils.translateToOrigin(inputPointsResampled, inputPointsResampled);
 		return inputPointsResampled;
 	}
 
 	public double distance(Vector<Point2D> inputPointsResampled, String gesture2) {
-		return distance(inputPointsResampled, getTemplate(gesture2));
+		return distance(GestureUtils.asArray(inputPointsResampled), getTemplateArray(classesNames.indexOf(gesture2)));
 	}
 
-	public double distance(Vector<Point2D> inputPointsResampled1, Vector<Point2D> inputPointsResampled2) {
+	/**
+	 * Computes the distance between two normalized gestures with
+	 * <code>distance(double[], double[])</code>, converting their points.
+	 * @param inputPointsResampled1 The points of the first gesture.
+	 * @param inputPointsResampled2 The points of the second gesture.
+	 * @return the distance between the two gestures.
+	 * @deprecated Subclasses redefine <code>distance(double[], double[])</code>, which
+	 * is the distance used to classify gestures.
+	 */
+	@Deprecated
+	public final double distance(Vector<Point2D> inputPointsResampled1, Vector<Point2D> inputPointsResampled2) {
+		return distance(GestureUtils.asArray(inputPointsResampled1), GestureUtils.asArray(inputPointsResampled2));
+	}
+
+	/**
+	 * Computes the distance between two normalized gestures. This is the
+	 * method used to classify gestures, the one to redefine in subclasses.
+	 * @param inputPointsResampled1 The coordinates (x0, y0, x1, y1, ...) of the first gesture.
+	 * @param inputPointsResampled2 The coordinates (x0, y0, x1, y1, ...) of the second gesture.
+	 * @return the distance between the two gestures.
+	 */
+	public double distance(double[] inputPointsResampled1, double[] inputPointsResampled2) {
 		return GestureUtils.pathDistance(inputPointsResampled1, inputPointsResampled2);
 //		return GestureUtils.distanceAtBestAngle(inputPointsResampled1, inputPointsResampled2, -theta, theta, deltaTheta);
 	}
 
+	/**
+	 * @param index The index of a class of gestures.
+	 * @return the coordinates (x0, y0, x1, y1, ...) of the template of this class, null if it has no template.
+	 */
+	protected double[] getTemplateArray(int index) {
+		return classes.get(index).template;
+	}
+
+	// sets the template of a class, as points and as coordinates
+	private void putTemplate(int index, Vector<Point2D> template) {
+		templates.set(index, template);
+		classes.get(index).template = template == null ? null : GestureUtils.asArray(template);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	public String classify(Gesture g) {
 		if(GestureUtils.pathLength(g.getPoints()) < minimumStrokeLength) return null;
 
+		double[] inputPointsResampled = normalizeAsArray(g.getPoints());
+		double[] classDistances = classDistances(getCandidates(inputPointsResampled, true), classes.size(), true);
+
 		double minScore = Double.MAX_VALUE;
-		double currentScore = -1;
 		GestureClass recognized = null;
-
-		Vector<Point2D> inputPointsResampled = normalize(g);
-
-		for (Iterator<ResampledGestureClass> classesIterator = classes.iterator(); classesIterator.hasNext();) {
-			ResampledGestureClass nextClass = classesIterator.next();
-			if(nextClass.getResampledGestures().size() > 0) {
-				for (Iterator<Vector<Point2D>> gesturesIterator = nextClass.getResampledGestures().iterator(); gesturesIterator.hasNext();) {
-					Vector<Point2D> gesturePoints = gesturesIterator.next();
-					currentScore = distance(inputPointsResampled, gesturePoints);
-					if (currentScore < minScore) {
-						minScore = currentScore;
-						recognized = nextClass;
-					}
-				}
-			} 
-			Vector<Point2D> gesturePoints = getTemplates().get(getClassesNames().indexOf(nextClass.getName()));
-			if(gesturePoints != null) {
-				currentScore = distance(inputPointsResampled, gesturePoints);
-				if (currentScore < minScore) {
-					minScore = currentScore;
-					recognized = nextClass;
-				}
+		for (int nc = 0; nc < classDistances.length; nc++) {
+			if (classDistances[nc] < minScore) {
+				minScore = classDistances[nc];
+				recognized = classes.get(nc);
 			}
 		}
 		currentDistance = minScore;
-		if (currentDistance > maximumDistance)
+		if (recognized == null || currentDistance > maximumDistance)
 			return null;
 		return recognized.getName();
 	}
 
+	/**
+	 * Collects the examples and templates an input gesture is compared to.
+	 * @param inputPointsResampled The normalized points of the input gesture.
+	 * @param allTemplates True to compare the input gesture to the template of every class,
+	 * false to compare it only to the template of the classes that have no examples.
+	 * @return The candidates.
+	 */
+	private Candidates getCandidates(final double[] inputPointsResampled, boolean allTemplates) {
+		final ArrayList<double[]> candidates = new ArrayList<double[]>();
+		final ArrayList<Integer> candidatesClasses = new ArrayList<Integer>();
+		for (int nc = 0; nc < classes.size(); nc++) {
+			List<double[]> resampledPoints = classes.get(nc).getResampledPoints();
+			for (int i = 0; i < resampledPoints.size(); i++) {
+				candidates.add(resampledPoints.get(i));
+				candidatesClasses.add(nc);
+			}
+			if(allTemplates || resampledPoints.isEmpty()) {
+				double[] gesturePoints = getTemplateArray(nc);
+				if(gesturePoints != null) {
+					candidates.add(gesturePoints);
+					candidatesClasses.add(nc);
+				}
+			}
+		}
+		return new Candidates() {
+			protected int size() {
+				return candidates.size();
+			}
+			protected int classIndex(int candidate) {
+				return candidatesClasses.get(candidate);
+			}
+			protected double distance(int candidate, double bestSoFar) {
+				return ShapeMatchingClassifier.this.distance(inputPointsResampled, candidates.get(candidate));
+			}
+		};
+	}
+
+
 	/**
 	 * Classifies a gesture and return the collection of resampled points for the input gesture.
 	 * @param g The input gesture.
@@ -249,14 +307,15 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 		double currentScore;
 		GestureClass recognized = null;
 
-		Vector<Point2D> inputPointsResampled = normalize(g);
-		Vector<Point2D> bestTemplate = null;
+		double[] inputPointsResampled = normalizeAsArray(g.getPoints());
+		double[] bestTemplate = null;
 
 		for (Iterator<ResampledGestureClass> classesIterator = classes.iterator(); classesIterator.hasNext();) {
 			ResampledGestureClass nextClass = classesIterator.next();
-			if(nextClass.getResampledGestures().size() > 0) {
-				for (Iterator<Vector<Point2D>> gesturesIterator = nextClass.getResampledGestures().iterator(); gesturesIterator.hasNext();) {
-					Vector<Point2D> gesturePoints = gesturesIterator.next();
+			List<double[]> resampledPoints = nextClass.getResampledPoints();
+			if(resampledPoints.size() > 0) {
+				for (int i = 0; i < resampledPoints.size(); i++) {
+					double[] gesturePoints = resampledPoints.get(i);
 					currentScore = distance(inputPointsResampled, gesturePoints);
 					if (currentScore < minScore) {
 						minScore = currentScore;
@@ -265,7 +324,7 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 					}
 				}
 			} else {
-				Vector<Point2D> gesturePoints = getTemplates().get(getClassesNames().indexOf(nextClass.getName()));
+				double[] gesturePoints = getTemplateArray(getClassesNames().indexOf(nextClass.getName()));
 				currentScore = distance(inputPointsResampled, gesturePoints);
 				if (currentScore < minScore) {
 					minScore = currentScore;
@@ -277,13 +336,9 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 		currentDistance = minScore;
 		if (currentDistance > maximumDistance)
 			return null;
-		Vector<Point2D> bestTemplateCopy = new Vector<Point2D>();
-		for (Iterator<Point2D> iterator = bestTemplate.iterator(); iterator.hasNext();) {
-			Point2D next = iterator.next();
-			bestTemplateCopy.add(new Point2D.Double(next.getX(), next.getY()));
-		}
+		Vector<Point2D> bestTemplateCopy = GestureUtils.asVector(bestTemplate);
 		// previously, there was a copy of inputPointsResampled instead
-		return new NamedGesture(recognized.getName(), inputPointsResampled, bestTemplateCopy);
+		return new NamedGesture(recognized.getName(), GestureUtils.asVector(inputPointsResampled), bestTemplateCopy);
 	}
 
 	/**
@@ -309,7 +364,7 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 	public static ShapeMatchingClassifier newClassifier(File filename) {
 		ShapeMatchingClassifier c = new ShapeMatchingClassifier();
 		try {
-			c.read(new DataInputStream(new FileInputStream(filename)));
+			c.load(filename);
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -330,7 +385,7 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 		try {
 			URLConnection urlc = null;
 			urlc = url.openConnection();
-			c.read(new DataInputStream(urlc.getInputStream()));
+			c.read(new DataInputStream(new BufferedInputStream(urlc.getInputStream())));
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -384,7 +439,36 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 		GestureUtils.resample(template, getNbPoints(), newPoints);
 		GestureUtils.scaleToSquare(newPoints, getSizeScaleToSquare(), newPoints);
 		GestureUtils.translateToOrigin(newPoints, newPoints);
-		templates.set(index, newPoints);
+		putTemplate(index, newPoints);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void loadClass(String className, Vector<Point2D> template, Vector<Gesture> examples) {
+		classesNames.add(className);
+		templates.add(null);
+		ResampledGestureClass gestureClass = new ResampledGestureClass(className);
+		classes.add(gestureClass);
+		putTemplate(classes.size() - 1, template);
+		for (Iterator<Gesture> iterator = examples.iterator(); iterator.hasNext();)
+			gestureClass.addExample(iterator.next());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void getParameters(Map<String, Double> parameters) {
+		super.getParameters(parameters);
+		parameters.put("maximumDistance", maximumDistance);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void setParameter(String name, double value) {
+		super.setParameter(name, value);
+		if(name.compareTo("maximumDistance") == 0) maximumDistance = value;
 	}
 
 	protected Object read(DataInputStream in) throws IOException {
@@ -392,17 +476,17 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 		for (int i = 0; i < nClasses; i++) {
 			classesNames.add(in.readUTF());
 			int nbPoints = in.readInt();
-			if(nbPoints == -1) {
-				templates.add(null);
-			} else {
-				Vector<Point2D> points = new Vector<Point2D>();
+			Vector<Point2D> points = null;
+			if(nbPoints != -1) {
+				points = new Vector<Point2D>();
 				for (int j = 0; j < nbPoints; j++) {
 					points.add(new Point2D.Double(in.readDouble(), in.readDouble()));
 				}
-				templates.add(points);
 			}
+			templates.add(null);
 			ResampledGestureClass gestureClass = new ResampledGestureClass(classesNames.get(i));
 			classes.add(gestureClass);
+			putTemplate(i, points);
 			gestureClass.read(in);
 
 		}
@@ -444,39 +528,11 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 	 * {@inheritDoc}
 	 */
 	public Vector<Score> sortedClasses(Gesture g) {
-		Vector<Score> sortedScores = new Vector<Score>();
-		Vector<Point2D> inputPointsResampled = normalize(g);
-
-		double score;
-		double minClassScore = 0;
-		for (int nc = 0; nc < classes.size(); nc++) {
-			minClassScore = Integer.MAX_VALUE;
-			if(classes.get(nc).getResampledGestures().size() > 0) {
-				for (Iterator<Vector<Point2D>> gesturesIterator = classes.get(nc).getResampledGestures().iterator(); gesturesIterator.hasNext();) {
-					Vector<Point2D> gesturePoints = gesturesIterator.next();
-					score = distance(inputPointsResampled, gesturePoints);
-					if (score < minClassScore)
-						minClassScore = score;
-				}
-			} else {
-				Vector<Point2D> gesturePoints = getTemplates().get(nc);
-				score = distance(inputPointsResampled, gesturePoints);
-				if (score < minClassScore)
-					minClassScore = score;
-			}
-			if (nc == 0) {
-				sortedScores.add(new Score(classes.get(nc).getName(), minClassScore));
-			} else {
-				int i = 0;
-				while (i < sortedScores.size() && sortedScores.get(i).getScore() < minClassScore)
-					i++;
-				sortedScores.add(i, new Score(classes.get(nc).getName(), minClassScore));
-			}
-		}
-
-		return sortedScores;
+		double[] inputPointsResampled = normalizeAsArray(g.getPoints());
+		return sortedScores(classDistances(getCandidates(inputPointsResampled, false), classes.size(), false));
 	}
 
+
 	/**
 	 * Saves the definition of this classifier in a file.
 	 * 
@@ -502,8 +558,8 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 		for (Iterator<ResampledGestureClass> iterator = classes.iterator(); iterator.hasNext();) {
 			ResampledGestureClass next = iterator.next();
 			if(next != null) {
-				invalidateDistance(next.getName());
-				next.removeExample(example);
+				if(next.removeExample(example))
+					invalidateDistancesFrom(next.getName());
 				fireExampleRemoved(next.getName(), example);
 			}
 		}
@@ -513,12 +569,12 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 	 * {@inheritDoc}
 	 */
 	public void addExample(String className, Gesture example) {
-		invalidateDistance(className);
 		int index = classesNames.indexOf(className);
 		if(index == -1) return;
 		ResampledGestureClass gestureClass = classes.get(index);
 		if(gestureClass != null) {
 			gestureClass.addExample(example);
+			invalidateDistancesFrom(className);
 			fireExampleAdded(className, example);
 		}
 	}
@@ -551,12 +607,11 @@ public class ShapeMatchingClassifier extends AbstractClassifier {
 		int index = classesNames.indexOf(className);
 		invalidateDistance(className);
 		if(index == -1) return;
-		templates.remove(index);
 		Vector<Point2D> newPoints = new Vector<Point2D>();
 		GestureUtils.resample(template, getNbPoints(), newPoints);
 		GestureUtils.scaleToSquare(newPoints, getSizeScaleToSquare(), newPoints);
 		GestureUtils.translateToOrigin(newPoints, newPoints);
-		templates.add(index, newPoints);
+		putTemplate(index, newPoints);
 		fireTemplateSet(className, newPoints);
 	}
 
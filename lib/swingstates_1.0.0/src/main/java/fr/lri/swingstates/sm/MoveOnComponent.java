@@ -50,4 +50,11 @@ public class MoveOnComponent extends MouseOnComponent {
 		return matches(eventObject, MouseEvent.MOUSE_MOVED);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_MOVED;
+	}
+
 }
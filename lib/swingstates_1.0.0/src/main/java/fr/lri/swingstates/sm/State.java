@@ -1,5 +1,12 @@
 package fr.lri.swingstates.sm;
 
+import java.awt.AWTEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.EventObject;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 
 
@@ -29,7 +36,13 @@ public abstract class State {
 	
 	private StateMachine machine;
 	private String name = null;
-	private LinkedList<Transition> transitions;
+	private TransitionList transitions;
+
+	// the dispatch tables, valid as long as the transitions have not been modified since tablesModCount
+	private int tablesModCount = -1;
+	private Transition[] allTransitions;
+	private HashMap<Integer, Transition[]> transitionsByEventID = new HashMap<Integer, Transition[]>();
+	private IdentityHashMap<Object, Boolean> classQueries = new IdentityHashMap<Object, Boolean>();
 	
 	/**
 	 * Builds a new state. 
@@ -40,7 +53,7 @@ public abstract class State {
 	 * when the machine is first created and when it is reset.
 	 */
 	public State () {
-		transitions = new LinkedList<Transition>();
+		transitions = new TransitionList();
 	}
 	
 	/**
@@ -91,6 +104,116 @@ public abstract class State {
 		return transitions;
 	}
 	
+	/**
+	 * Tests whether this state has a transition of a given class.
+	 * The answer is cached until the transitions of this state change.
+	 * @param cl The class of transitions.
+	 * @return true if this state has a transition of class <code>cl</code>.
+	 */
+	public synchronized boolean hasTransitionOfClass(Class<?> cl) {
+		checkDispatchTables();
+		Boolean res = classQueries.get(cl);
+		if (res == null) {
+			res = Boolean.FALSE;
+			for (int i = 0; i < allTransitions.length; i++) {
+				if (cl.isAssignableFrom(allTransitions[i].getClass())) {
+					res = Boolean.TRUE;
+					break;
+				}
+			}
+			classQueries.put(cl, res);
+		}
+		return res.booleanValue();
+	}
+
+	/**
+	 * Tests whether this state has a transition of one of several classes.
+	 * The answer is cached, using the identity of the array as the key,
+	 * until the transitions of this state change. The array should thus
+	 * be a constant.
+	 * @param classes The classes of transitions.
+	 * @return true if this state has a transition of one of the classes in <code>classes</code>.
+	 */
+	public synchronized boolean hasTransitionOfClass(Class<?>[] classes) {
+		checkDispatchTables();
+		Boolean res = classQueries.get(classes);
+		if (res == null) {
+			res = Boolean.FALSE;
+			for (int i = 0; i < classes.length; i++) {
+				if (hasTransitionOfClass(classes[i])) {
+					res = Boolean.TRUE;
+					break;
+				}
+			}
+			classQueries.put(classes, res);
+		}
+		return res.booleanValue();
+	}
+
+	/**
+	 * Returns the transitions of this state that may be triggered by an event,
+	 * in the order they must be tested. For AWT events, only the transitions
+	 * that manage the ID of the event are returned.
+	 * @param event The event.
+	 * @return the candidate transitions.
+	 * @see Transition#manageEventID(int)
+	 */
+	synchronized Transition[] getCandidateTransitions(EventObject event) {
+		checkDispatchTables();
+		if (!(event instanceof AWTEvent))
+			return allTransitions;
+		return candidateTransitions(((AWTEvent) event).getID());
+	}
+
+	/**
+	 * Builds the tables used to dispatch events to the transitions of this state.
+	 * This is done when the state machine initializes its states and transitions,
+	 * then again the first time an event is dispatched after the transitions change.
+	 */
+	synchronized void buildDispatchTables() {
+		allTransitions = transitions.toArray(new Transition[transitions.size()]);
+		transitionsByEventID.clear();
+		classQueries.clear();
+		tablesModCount = transitions.modCount();
+		for (int id = MouseEvent.MOUSE_FIRST; id <= MouseEvent.MOUSE_LAST; id++)
+			candidateTransitions(id);
+		for (int id = KeyEvent.KEY_FIRST; id <= KeyEvent.KEY_LAST; id++)
+			candidateTransitions(id);
+	}
+
+	private void checkDispatchTables() {
+		if (tablesModCount != transitions.modCount())
+			buildDispatchTables();
+	}
+
+	private Transition[] candidateTransitions(int id) {
+		Integer key = Integer.valueOf(id);
+		Transition[] candidates = transitionsByEventID.get(key);
+		if (candidates == null) {
+			ArrayList<Transition> l = new ArrayList<Transition>();
+			for (int i = 0; i < allTransitions.length; i++) {
+				Transition t = allTransitions[i];
+				if (!managesEventIDs(t) || t.manageEventID(id))
+					l.add(t);
+			}
+			candidates = l.size() == allTransitions.length ? allTransitions : l.toArray(new Transition[l.size()]);
+			transitionsByEventID.put(key, candidates);
+		}
+		return candidates;
+	}
+
+	// manageEventID can only be trusted if matches is not redefined
+	// in a subclass of the class that defines manageEventID
+	private static boolean managesEventIDs(Transition t) {
+		try {
+			Class<?> matchesClass = t.getClass().getMethod("matches", EventObject.class).getDeclaringClass();
+			Class<?> manageClass = t.getClass().getMethod("manageEventID", int.class).getDeclaringClass();
+			return matchesClass.isAssignableFrom(manageClass);
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
 	/**
 	 * The method called when the parent state machine enters this state.
 	 * This method does nothing. It can be redefined in derived classes
@@ -144,5 +267,22 @@ public abstract class State {
 		transitions.remove(t);
 		t.setInputState(null);
 	}
+
+	// a list of transitions that exposes its modification count,
+	// so that the dispatch tables can detect any change to it
+	private static class TransitionList extends LinkedList<Transition> {
+
+		private static final long serialVersionUID = 1L;
+
+		public Transition set(int index, Transition element) {
+			modCount++;
+			return super.set(index, element);
+		}
+
+		int modCount() {
+			return modCount;
+		}
+
+	}
 	
 }
@@ -364,6 +364,7 @@ public abstract class StateMachine implements ActionListener, StateMachineListen
 						t.setInputState(s);
 					}
 				}
+				s.buildDispatchTables();
 				// *** End initialization transitions for state s *** //
 			} catch (IllegalArgumentException e) {
 				e.printStackTrace();
@@ -518,12 +519,12 @@ public abstract class StateMachine implements ActionListener, StateMachineListen
 
 	protected Transition fireTransition(EventObject event) {
 		if(!inited) initStatesAndTransitions();
-		LinkedList<Transition> trans = currentState.getTransitions();
+		Transition[] trans = currentState.getCandidateTransitions(event);
 		Transition hasFired = null;
 		if(trans!=null){
-			for(Iterator<Transition> i = trans.iterator(); i.hasNext(); ){
+			for(int i = 0; i < trans.length; i++){
 				if(hasFired != null) break;
-				Transition t = i.next();
+				Transition t = trans[i];
 				if(t.matches(event)) {
 					t.setTriggeringEvent(event);
 					if (fireTransition(t)) {
@@ -211,10 +211,24 @@ public abstract class Transition {
 		this.triggeringEvent = triggeringEvent;
 	}
 	
+	/**
+	 * Tests if this transition needs the shape under the cursor
+	 * to be picked in order to be matched.
+	 * This method returns false.
+	 * @return True if picking is required by this transition.
+	 */
 	public boolean pickingRequired() {
 		return false;
 	}
 	
+	/**
+	 * Tests if this transition can be triggered by AWT events having a given ID.
+	 * It is used to dispatch AWT events only to the transitions that may match them.
+	 * This method returns true. It is redefined by the transitions that
+	 * are triggered by a single type of mouse or key event.
+	 * @param id The ID of the event (e.g. <code>MouseEvent.MOUSE_PRESSED</code>).
+	 * @return True if events having ID <code>id</code> can trigger this transition.
+	 */
 	public boolean manageEventID(int id) {
 		return true;
 	}
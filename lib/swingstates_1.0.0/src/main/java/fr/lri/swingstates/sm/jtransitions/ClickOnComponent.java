@@ -56,4 +56,11 @@ public class ClickOnComponent extends MouseOnComponent {
 		return matches(eventObject, MouseEvent.MOUSE_CLICKED);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_CLICKED;
+	}
+
 }
\ No newline at end of file
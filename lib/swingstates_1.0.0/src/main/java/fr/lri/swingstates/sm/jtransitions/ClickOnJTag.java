@@ -141,4 +141,11 @@ public class ClickOnJTag extends MouseOnJTag {
 		return matches(eventObject, MouseEvent.MOUSE_CLICKED);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_CLICKED;
+	}
+
 }
@@ -53,4 +53,11 @@ public class DragOnComponent extends MouseOnComponent {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_DRAGGED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_DRAGGED;
+	}
 }
@@ -139,4 +139,11 @@ public class DragOnJTag extends MouseOnJTag {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_DRAGGED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_DRAGGED;
+	}
 }
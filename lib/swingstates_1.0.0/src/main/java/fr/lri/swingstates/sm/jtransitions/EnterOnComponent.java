@@ -54,5 +54,12 @@ public class EnterOnComponent extends MouseOnComponent {
 		return b;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_ENTERED;
+	}
+
 }
 
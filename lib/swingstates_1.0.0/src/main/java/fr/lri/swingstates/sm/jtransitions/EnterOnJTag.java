@@ -128,4 +128,11 @@ public class EnterOnJTag extends MouseOnJTag {
 		return matchesIgnoreButtons(eventObject, MouseEvent.MOUSE_ENTERED);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_ENTERED;
+	}
+
 }
\ No newline at end of file
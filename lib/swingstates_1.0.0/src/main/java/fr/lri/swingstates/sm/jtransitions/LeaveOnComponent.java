@@ -41,4 +41,11 @@ public class LeaveOnComponent extends MouseOnComponent {
 		return matches(eventObject, MouseEvent.MOUSE_EXITED);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_EXITED;
+	}
+
 }
\ No newline at end of file
@@ -127,4 +127,11 @@ public class LeaveOnJTag extends MouseOnJTag {
 	public boolean matches(EventObject eventObject) {
 		return matchesIgnoreButtons(eventObject, MouseEvent.MOUSE_EXITED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_EXITED;
+	}
 }
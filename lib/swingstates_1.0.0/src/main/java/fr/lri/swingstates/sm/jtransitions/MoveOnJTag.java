@@ -127,4 +127,11 @@ public class MoveOnJTag extends MouseOnJTag {
 		return matches(eventObject, MouseEvent.MOUSE_MOVED);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_MOVED;
+	}
+
 }
@@ -53,4 +53,11 @@ public class PressOnComponent extends MouseOnComponent {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_PRESSED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_PRESSED;
+	}
 }
@@ -139,4 +139,11 @@ public class PressOnJTag extends MouseOnJTag {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_PRESSED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_PRESSED;
+	}
 }
@@ -54,4 +54,11 @@ public class ReleaseOnComponent extends MouseOnComponent {
 		return matches(eventObject, MouseEvent.MOUSE_RELEASED);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_RELEASED;
+	}
+
 }
@@ -139,4 +139,11 @@ public class ReleaseOnJTag extends MouseOnJTag {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_RELEASED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_RELEASED;
+	}
 }
@@ -83,4 +83,11 @@ public class WheelOnComponent extends MouseOnComponent {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_WHEEL);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_WHEEL;
+	}
 }
@@ -160,4 +160,11 @@ public class WheelOnJTag extends MouseOnJTag {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, MouseEvent.MOUSE_WHEEL);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == MouseEvent.MOUSE_WHEEL;
+	}
 }
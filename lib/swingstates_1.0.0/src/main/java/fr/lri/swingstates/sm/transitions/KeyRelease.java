@@ -65,5 +65,12 @@ public class KeyRelease extends KeyTransition {
 	public boolean matches(EventObject eventObject) {
 		return matches(eventObject, KeyEvent.KEY_RELEASED);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean manageEventID(int id) {
+		return id == KeyEvent.KEY_RELEASED;
+	}
 	
 }
@@ -0,0 +1,139 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CIntentionalTagTest {
+
+	// the shapes filled in red, counting the shapes it is notified of
+	static class RedTag extends CIntentionalTag {
+		int invalidated = 0;
+
+		RedTag(Canvas canvas) {
+			super(canvas);
+		}
+
+		public boolean criterion(CShape s) {
+			return s.getFillPaint() == Color.RED;
+		}
+
+		public void invalidate(CShape s) {
+			invalidated++;
+			super.invalidate(s);
+		}
+	}
+
+	private static CShape red(CShape s) {
+		s.setFillPaint(Color.RED);
+		return s;
+	}
+
+	private static List<Object> members(CTag tag) {
+		return new ArrayList<Object>(tag.getCollection());
+	}
+
+	// collects garbage until a reference is cleared, or gives up
+	private static void collect(WeakReference<?> ref) throws InterruptedException {
+		for (int i = 0; i < 50 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void membersFollowTheChangesOfTheShapes() {
+		Canvas canvas = new Canvas(100, 100);
+		CShape r1 = red(canvas.newRectangle(0, 0, 10, 10));
+		CShape r2 = canvas.newRectangle(20, 0, 10, 10);
+		CShape r3 = red(canvas.newRectangle(40, 0, 10, 10));
+		RedTag red = new RedTag(canvas);
+		assertEquals(Arrays.asList(r1, r3), members(red));
+		r2.setFillPaint(Color.RED);
+		r3.setFillPaint(Color.BLUE);
+		assertEquals(Arrays.asList(r1, r2), members(red));
+		r1.aboveAll();
+		assertEquals(Arrays.asList(r2, r1), members(red));
+		canvas.removeShape(r2);
+		assertEquals(Arrays.asList(r1), members(red));
+		assertFalse(red.tagsShape(r2));
+		CShape r4 = red(canvas.newEllipse(0, 0, 10, 10));
+		assertTrue(red.tagsShape(r4));
+		canvas.removeAllShapes();
+		assertTrue(members(red).isEmpty());
+	}
+
+	@Test
+	public void tagWithoutCanvasCanBeInvalidated() {
+		RedTag tag = new RedTag(null);
+		tag.invalidate();
+		tag.invalidate(red(new CRectangle(0, 0, 10, 10)));
+		assertEquals(1, tag.invalidated);
+	}
+
+	@Test
+	public void unregisteredTagIsNoLongerNotified() {
+		Canvas canvas = new Canvas(100, 100);
+		CShape r1 = red(canvas.newRectangle(0, 0, 10, 10));
+		RedTag red = new RedTag(canvas);
+		r1.setFillPaint(Color.BLUE);
+		assertTrue(red.invalidated > 0);
+		canvas.unregisterTag(red);
+		assertFalse(canvas.getAllTags().contains(red));
+		int invalidated = red.invalidated;
+		r1.setFillPaint(Color.RED);
+		CShape r2 = red(canvas.newRectangle(20, 0, 10, 10));
+		canvas.removeShape(r1);
+		assertEquals(invalidated, red.invalidated);
+		// the tag still tags the right shapes, it tests them all each time it is used
+		assertEquals(Arrays.asList(r2), members(red));
+		r2.setFillPaint(Color.GREEN);
+		assertTrue(members(red).isEmpty());
+		assertEquals(invalidated, red.invalidated);
+	}
+
+	@Test
+	public void unregisteredTagIsGarbageCollected() throws InterruptedException {
+		Canvas canvas = new Canvas(100, 100);
+		CShape r1 = red(canvas.newRectangle(0, 0, 10, 10));
+		RedTag red = new RedTag(canvas);
+		canvas.unregisterTag(red);
+		WeakReference<RedTag> ref = new WeakReference<RedTag>(red);
+		red = null;
+		collect(ref);
+		assertNull(ref.get());
+		// the canvas still notifies its tags
+		r1.setFillPaint(Color.BLUE);
+	}
+
+	@Test
+	public void hierarchyTagIsGarbageCollected() throws InterruptedException {
+		Canvas canvas = new Canvas(100, 100);
+		CShape parent = canvas.newRectangle(0, 0, 10, 10);
+		CShape child = canvas.newRectangle(20, 0, 10, 10);
+		child.setParent(parent);
+		CHierarchyTag hierarchy = parent.getHierarchy();
+		assertEquals(Arrays.asList(parent, child), members(hierarchy));
+		assertFalse(canvas.getAllTags().contains(hierarchy));
+		WeakReference<CHierarchyTag> ref = new WeakReference<CHierarchyTag>(hierarchy);
+		hierarchy = null;
+		collect(ref);
+		assertNull(ref.get());
+		child.setParent(null);
+		assertEquals(Arrays.asList(parent), members(parent.getHierarchy()));
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+
+import org.junit.Test;
+
+public class CShapeTransformTest {
+
+	// the absolute transform of a shape, computed from the transforms of its ancestors
+	private static AffineTransform expected(CShape s) {
+		AffineTransform t = new AffineTransform(s.getTransform());
+		for (CShape p = s.getParent(); p != null; p = p.getParent())
+			t.preConcatenate(p.getTransform());
+		return t;
+	}
+
+	private static void assertAbsolute(CShape s) {
+		AffineTransform expected = expected(s);
+		double[] e = new double[6], a = new double[6];
+		expected.getMatrix(e);
+		s.getAbsTransform().getMatrix(a);
+		assertArrayEquals(e, a, 1e-9);
+		Rectangle2D box = expected.createTransformedShape(s.getShape().getBounds2D()).getBounds2D();
+		assertEquals(box.getMinX(), s.getMinX(), 1e-9);
+		assertEquals(box.getMaxY(), s.getMaxY(), 1e-9);
+		assertEquals(box.getCenterX(), s.getCenterX(), 1e-9);
+	}
+
+	// a chain of shapes, each the parent of the next one
+	private static CShape[] chain(Canvas canvas) {
+		CShape[] chain = new CShape[4];
+		for (int i = 0; i < chain.length; i++) {
+			chain[i] = canvas.newRectangle(10 * i, 5 * i, 40, 20);
+			if (i > 0)
+				chain[i].setParent(chain[i - 1]);
+			chain[i].rotateBy(0.1 * (i + 1));
+		}
+		return chain;
+	}
+
+	@Test
+	public void descendantsFollowTheirAncestors() {
+		Canvas canvas = new Canvas(400, 400);
+		CShape[] chain = chain(canvas);
+		CShape leaf = chain[3];
+		assertAbsolute(leaf);
+		chain[0].translateBy(30, -10);
+		assertAbsolute(leaf);
+		chain[1].scaleBy(2);
+		assertAbsolute(chain[2]);
+		assertAbsolute(leaf);
+		chain[0].rotateBy(0.5);
+		chain[2].translateBy(5, 5);
+		assertAbsolute(leaf);
+		assertAbsolute(chain[1]);
+		// reparenting
+		leaf.setParent(chain[0]);
+		assertAbsolute(leaf);
+		chain[1].translateBy(100, 0);
+		assertAbsolute(leaf);
+		leaf.setParent(null);
+		assertAbsolute(leaf);
+		chain[0].translateBy(100, 0);
+		assertAbsolute(leaf);
+	}
+
+	@Test
+	public void descendantsFollowTheirAncestorsInBatches() {
+		Canvas canvas = new Canvas(400, 400);
+		CShape[] chain = chain(canvas);
+		canvas.beginBatch();
+		try {
+			// ancestors moved twice before the transforms are read
+			chain[0].translateBy(10, 0);
+			chain[1].translateBy(0, 10);
+			chain[0].rotateBy(0.2);
+			assertAbsolute(chain[3]);
+			// only part of the chain read before an ancestor moves
+			chain[2].scaleBy(1.5);
+			assertAbsolute(chain[1]);
+			chain[0].translateBy(-20, 0);
+			assertAbsolute(chain[3]);
+			assertAbsolute(chain[2]);
+			chain[1].rotateBy(-0.3);
+			chain[0].scaleBy(0.5);
+		} finally {
+			canvas.endBatch();
+		}
+		for (int i = 0; i < chain.length; i++)
+			assertAbsolute(chain[i]);
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class CTagTest {
+
+	private static Set<Object> members(CTag tag) {
+		return new HashSet<Object>(tag.getCollection());
+	}
+
+	private static Set<Object> set(Object... shapes) {
+		return new HashSet<Object>(Arrays.asList(shapes));
+	}
+
+	@Test
+	public void notBuiltBeforeTheTagIsAddedToShapes() {
+		Canvas canvas = new Canvas(100, 100);
+		CShape s1 = canvas.newRectangle(0, 0, 10, 10);
+		CShape s2 = canvas.newRectangle(20, 0, 10, 10);
+		CShape s3 = canvas.newRectangle(40, 0, 10, 10);
+		CNamedTag selected = new CNamedTag("selected");
+		CTag notSelected = selected.not();
+		CTag notNotSelected = notSelected.not();
+		selected.addTo(s2);
+		assertSame(canvas, notSelected.getCanvas());
+		assertEquals(set(s1, s3), members(notSelected));
+		assertEquals(set(s2), members(notNotSelected));
+		assertTrue(notSelected.tagsShape(s1));
+		assertFalse(notSelected.tagsShape(s2));
+		selected.addTo(s1);
+		assertEquals(set(s3), members(notSelected));
+		s2.removeTag(selected);
+		assertEquals(set(s2, s3), members(notSelected));
+	}
+
+	@Test
+	public void notIsEmptyBeforeTheTagIsAddedToShapes() {
+		Canvas canvas = new Canvas(100, 100);
+		CShape s = canvas.newRectangle(0, 0, 10, 10);
+		CTag notSelected = new CNamedTag("selected").not();
+		assertTrue(members(notSelected).isEmpty());
+		assertFalse(notSelected.tagsShape(s));
+	}
+
+	@Test
+	public void andOrNotCombineExtensionalAndIntentionalTags() {
+		Canvas canvas = new Canvas(100, 100);
+		CShape s1 = canvas.newRectangle(0, 0, 10, 10);
+		CShape s2 = canvas.newRectangle(20, 0, 10, 10);
+		CShape s3 = canvas.newRectangle(40, 0, 10, 10);
+		CShape s4 = canvas.newRectangle(60, 0, 10, 10);
+		s1.setFillPaint(Color.RED);
+		s2.setFillPaint(Color.RED);
+		CIntentionalTag red = new CIntentionalTag(canvas) {
+			public boolean criterion(CShape s) {
+				return s.getFillPaint() == Color.RED;
+			}
+		};
+		CNamedTag selected = new CNamedTag("selected");
+		selected.addTo(s2);
+		selected.addTo(s3);
+		CTag and = red.and(selected);
+		CTag or = red.or(selected);
+		CTag notAnd = and.not();
+		CTag orNot = red.or(selected.not());
+		assertEquals(set(s2), members(and));
+		assertEquals(set(s1, s2, s3), members(or));
+		assertEquals(set(s1, s3, s4), members(notAnd));
+		assertEquals(set(s1, s2, s4), members(orNot));
+		assertTrue(and.tagsShape(s2));
+		assertFalse(or.tagsShape(s4));
+		// the combinations follow the changes of their operands
+		s4.setFillPaint(Color.RED);
+		s2.removeTag(selected);
+		assertTrue(members(and).isEmpty());
+		assertEquals(set(s1, s2, s3, s4), members(or));
+		assertEquals(set(s1, s2, s3, s4), members(notAnd));
+		assertEquals(set(s1, s2, s4), members(orNot));
+		canvas.removeShape(s1);
+		assertEquals(set(s2, s3, s4), members(or));
+		assertEquals(set(s2, s3, s4), members(notAnd));
+	}
+
+	@Test
+	public void tagsOfShapesAreRegisteredTagsInRegistrationOrder() {
+		Canvas canvas = new Canvas(100, 100);
+		CShape other = canvas.newRectangle(0, 0, 10, 10);
+		CShape s = canvas.newRectangle(20, 0, 10, 10);
+		CNamedTag first = new CNamedTag("first");
+		CNamedTag second = new CNamedTag("second");
+		first.addTo(other);
+		second.addTo(s);
+		first.addTo(s);
+		assertEquals(Arrays.asList(first, second), s.getTags());
+		canvas.unregisterTag(first);
+		assertEquals(Arrays.asList(second), s.getTags());
+		assertEquals(Arrays.asList(second), s.duplicateWithTags().getTags());
+	}
+
+	@Test
+	public void combinationsAreBrowsedInDisplayOrder() {
+		Canvas canvas = new Canvas(100, 100);
+		CShape s1 = canvas.newRectangle(0, 0, 10, 10);
+		CShape s2 = canvas.newRectangle(20, 0, 10, 10);
+		CShape s3 = canvas.newRectangle(40, 0, 10, 10);
+		CShape s4 = canvas.newRectangle(60, 0, 10, 10);
+		CNamedTag selected = new CNamedTag("selected");
+		CNamedTag marked = new CNamedTag("marked");
+		selected.addTo(s1);
+		selected.addTo(s2);
+		selected.addTo(s3);
+		marked.addTo(s1);
+		marked.addTo(s3);
+		CTag and = selected.and(marked);
+		CTag or = selected.or(marked);
+		CTag not = marked.not();
+		assertEquals(Arrays.asList(s1, s3), and.getShapes());
+		// the order of cached combinations follows the display list
+		s1.aboveAll();
+		s4.belowAll();
+		assertEquals(Arrays.asList(s3, s1), and.getShapes());
+		assertEquals(Arrays.asList(s2, s3, s1), or.getShapes());
+		assertEquals(Arrays.asList(s4, s2), not.getShapes());
+		s2.aboveAll();
+		assertEquals(Arrays.asList(s3, s1, s2), or.getShapes());
+		assertEquals(Arrays.asList(s4, s2), not.getShapes());
+	}
+
+}
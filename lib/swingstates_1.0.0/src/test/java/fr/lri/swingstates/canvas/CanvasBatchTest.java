@@ -0,0 +1,118 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CanvasBatchTest {
+
+	// a canvas that records the regions marked to be repainted
+	private static class RecordingCanvas extends Canvas {
+		private static final long serialVersionUID = 1L;
+
+		final List<Rectangle> repainted = new ArrayList<Rectangle>();
+
+		RecordingCanvas() {
+			super(400, 400);
+			setSize(400, 400);
+		}
+
+		public void repaint(long tm, int x, int y, int width, int height) {
+			if (repainted != null)
+				repainted.add(new Rectangle(x, y, width, height));
+		}
+	}
+
+	@Test
+	public void nestedBatchesRepaintOnceWhenTheOutermostEnds() {
+		RecordingCanvas canvas = new RecordingCanvas();
+		CShape a = canvas.newRectangle(0, 0, 10, 10);
+		CShape b = canvas.newRectangle(100, 100, 10, 10);
+		canvas.repainted.clear();
+		canvas.beginBatch();
+		for (int i = 0; i < 3; i++)
+			a.translateBy(100, 0);
+		canvas.beginBatch();
+		b.translateBy(0, 50);
+		canvas.endBatch();
+		assertTrue(canvas.isBatching());
+		assertTrue(canvas.repainted.isEmpty());
+		// the shapes are up to date during the batch
+		assertEquals(300, a.getMinX(), 1e-9);
+		canvas.endBatch();
+		assertFalse(canvas.isBatching());
+		assertEquals(1, canvas.repainted.size());
+		Rectangle damage = canvas.repainted.get(0);
+		// the regions covered by the shapes before and after the batch
+		assertTrue(damage.contains(0, 0, 10, 10));
+		assertTrue(damage.contains(300, 0, 10, 10));
+		assertTrue(damage.contains(100, 100, 10, 10));
+		assertTrue(damage.contains(100, 150, 10, 10));
+		// the index used for picking is updated
+		assertEquals(a, canvas.pickCandidates(new Point2D.Double(305, 5)).get(0));
+		assertTrue(canvas.pickCandidates(new Point2D.Double(5, 5)).isEmpty());
+	}
+
+	@Test
+	public void shapesAreRepaintedAtOnceOutsideBatches() {
+		RecordingCanvas canvas = new RecordingCanvas();
+		CShape a = canvas.newRectangle(0, 0, 10, 10);
+		canvas.repainted.clear();
+		// the regions covered before and after each move
+		a.translateBy(10, 0);
+		assertEquals(2, canvas.repainted.size());
+		a.translateBy(10, 0);
+		assertEquals(4, canvas.repainted.size());
+		assertTrue(canvas.repainted.get(3).contains(20, 0, 10, 10));
+		// ending a batch that has not begun does nothing
+		canvas.endBatch();
+		assertFalse(canvas.isBatching());
+		assertEquals(4, canvas.repainted.size());
+	}
+
+	@Test
+	public void batchEndsWhenTheModificationsFail() {
+		RecordingCanvas canvas = new RecordingCanvas();
+		final CShape a = canvas.newRectangle(0, 0, 10, 10);
+		canvas.repainted.clear();
+		try {
+			canvas.batch(new Runnable() {
+				public void run() {
+					a.translateBy(50, 0);
+					throw new IllegalStateException();
+				}
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertFalse(canvas.isBatching());
+		assertEquals(1, canvas.repainted.size());
+		assertTrue(canvas.repainted.get(0).contains(50, 0, 10, 10));
+	}
+
+	@Test
+	public void bulkOperationsOfTagsAreBatches() {
+		RecordingCanvas canvas = new RecordingCanvas();
+		CExtensionalTag tag = canvas.newTag("moved");
+		for (int i = 0; i < 5; i++)
+			canvas.newRectangle(20 * i, 0, 10, 10).addTag(tag);
+		canvas.repainted.clear();
+		tag.translateBy(0, 100);
+		assertEquals(1, canvas.repainted.size());
+		assertTrue(canvas.repainted.get(0).contains(0, 0, 90, 110));
+	}
+
+}
@@ -0,0 +1,202 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Area;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class CanvasIntersectionTest {
+
+	// random rectangles and ellipses, some of them rotated, half of them tagged a and half
+	// of them tagged b, so that a quarter of them have both tags
+	private static List<CShape> fill(Canvas canvas, CNamedTag a, CNamedTag b, Random random) {
+		List<CShape> shapes = new ArrayList<CShape>();
+		for (int i = 0; i < 80; i++) {
+			double x = 500 * random.nextDouble(), y = 500 * random.nextDouble();
+			double w = 1 + 60 * random.nextDouble(), h = 1 + 60 * random.nextDouble();
+			CShape s = random.nextBoolean() ? canvas.newRectangle(x, y, w, h) : canvas.newEllipse(x, y, w, h);
+			if (random.nextInt(3) == 0)
+				s.rotateBy(random.nextDouble() * Math.PI);
+			if (random.nextBoolean())
+				s.addTag(a);
+			if (random.nextBoolean())
+				s.addTag(b);
+			shapes.add(s);
+		}
+		return shapes;
+	}
+
+	private static boolean boxesOverlap(CShape s1, CShape s2) {
+		Rectangle2D b1 = s1.getAbsBoundingBox(), b2 = s2.getAbsBoundingBox();
+		return b1.getMinX() <= b2.getMaxX() && b2.getMinX() <= b1.getMaxX()
+				&& b1.getMinY() <= b2.getMaxY() && b2.getMinY() <= b1.getMaxY();
+	}
+
+	private static boolean areasIntersect(CShape s1, CShape s2) {
+		Area area = new Area(s1.getAbsShape());
+		area.intersect(new Area(s2.getAbsShape()));
+		return !area.isEmpty();
+	}
+
+	private static String pair(CShape s1, CShape s2) {
+		return System.identityHashCode(s1) + "," + System.identityHashCode(s2);
+	}
+
+	private static Set<String> pairs(List<CShape[]> pairs) {
+		Set<String> set = new HashSet<String>();
+		for (CShape[] p : pairs) {
+			assertEquals(2, p.length);
+			assertTrue("duplicate pair", set.add(pair(p[0], p[1])));
+		}
+		return set;
+	}
+
+	@Test
+	public void candidatePairsOfATagAreThePairsOfOverlappingBoxes() {
+		Canvas canvas = new Canvas(600, 600);
+		CNamedTag a = canvas.newTag("a"), b = canvas.newTag("b");
+		fill(canvas, a, b, new Random(1));
+		List<CShape> tagged = a.getShapes();
+		List<CShape[]> candidates = canvas.getCandidatePairs(a);
+		Set<String> expected = new HashSet<String>();
+		int intersecting = 0;
+		for (int i = 0; i < tagged.size(); i++) {
+			for (int j = i + 1; j < tagged.size(); j++) {
+				CShape s1 = tagged.get(i), s2 = tagged.get(j);
+				if (boxesOverlap(s1, s2))
+					expected.add(pair(s1, s2));
+			}
+		}
+		Set<String> found = new HashSet<String>();
+		for (CShape[] p : candidates) {
+			assertTrue(a.tagsShape(p[0]) && a.tagsShape(p[1]));
+			assertTrue("duplicate pair", found.add(pair(p[0], p[1])) && !found.contains(pair(p[1], p[0])));
+			// each unordered pair is counted in the order of the expected pairs
+			if (!expected.contains(pair(p[0], p[1])))
+				assertTrue(expected.contains(pair(p[1], p[0])));
+			if (areasIntersect(p[0], p[1])) {
+				assertSame(p[0], p[0].intersects(p[1]));
+				intersecting++;
+			} else {
+				assertNull(p[0].intersects(p[1]));
+			}
+		}
+		assertEquals(expected.size(), candidates.size());
+		assertTrue(intersecting > 0);
+		assertTrue(intersecting < candidates.size());
+	}
+
+	@Test
+	public void candidatePairsOfTwoTagsAreThePairsOfOverlappingBoxes() {
+		Canvas canvas = new Canvas(600, 600);
+		CNamedTag a = canvas.newTag("a"), b = canvas.newTag("b");
+		fill(canvas, a, b, new Random(2));
+		Set<String> expected = new HashSet<String>();
+		for (CShape s1 : a.getShapes()) {
+			for (CShape s2 : b.getShapes()) {
+				if (s1 != s2 && boxesOverlap(s1, s2))
+					expected.add(pair(s1, s2));
+			}
+		}
+		assertTrue(expected.size() > 0);
+		assertEquals(expected, pairs(canvas.getCandidatePairs(a, b)));
+	}
+
+	@Test
+	public void intersectingShapesAreCandidatePairs() {
+		Canvas canvas = new Canvas(600, 600);
+		CNamedTag a = canvas.newTag("a"), b = canvas.newTag("b");
+		List<CShape> shapes = fill(canvas, a, b, new Random(3));
+		CNamedTag all = canvas.newTag("all");
+		for (CShape s : shapes)
+			s.addTag(all);
+		Set<String> candidates = pairs(canvas.getCandidatePairs(all));
+		for (int i = 0; i < shapes.size(); i++) {
+			for (int j = i + 1; j < shapes.size(); j++) {
+				CShape s1 = shapes.get(i), s2 = shapes.get(j);
+				if (areasIntersect(s1, s2))
+					assertTrue(candidates.contains(pair(s1, s2)) || candidates.contains(pair(s2, s1)));
+			}
+		}
+	}
+
+	@Test
+	public void canvasIntersectionIsTheBruteForceIntersection() {
+		Canvas canvas = new Canvas(600, 600);
+		CNamedTag a = canvas.newTag("a"), b = canvas.newTag("b");
+		List<CShape> shapes = fill(canvas, a, b, new Random(4));
+		Random random = new Random(5);
+		for (int k = 0; k < 30; k++) {
+			CShape probe = new CEllipse(500 * random.nextDouble(), 500 * random.nextDouble(), 40, 20);
+			CShape top = null;
+			Area expected = new Area();
+			// the shapes are created above the previous ones
+			for (CShape s : shapes) {
+				if (areasIntersect(s, probe)) {
+					top = s;
+					Area area = new Area(s.getAbsShape());
+					area.intersect(new Area(probe.getAbsShape()));
+					expected.add(area);
+				}
+			}
+			assertSame(top, canvas.intersects(probe));
+			CPolyLine intersection = canvas.getIntersection(probe);
+			if (top == null) {
+				assertNull(intersection);
+			} else {
+				assertNotNull(intersection);
+				// the intersection is a path of floats, whose bounds include its control points
+				Rectangle2D found = intersection.getShape().getBounds2D(), bounds = new GeneralPath(expected).getBounds2D();
+				assertEquals(bounds.getMinX(), found.getMinX(), 1e-3);
+				assertEquals(bounds.getMinY(), found.getMinY(), 1e-3);
+				assertEquals(bounds.getMaxX(), found.getMaxX(), 1e-3);
+				assertEquals(bounds.getMaxY(), found.getMaxY(), 1e-3);
+			}
+		}
+	}
+
+	@Test
+	public void cachedAreaFollowsTheShape() {
+		Canvas canvas = new Canvas(600, 600);
+		CShape parent = canvas.newRectangle(0, 0, 20, 20);
+		CShape child = canvas.newRectangle(100, 100, 10, 10);
+		CShape probe = new CRectangle(200, 200, 10, 10);
+		assertNull(child.intersects(probe));
+		child.translateBy(100, 100);
+		assertSame(child, child.intersects(probe));
+		assertSame(child, canvas.intersects(probe));
+		child.rotateBy(Math.PI / 4);
+		assertSame(child, child.intersects(probe));
+		child.translateBy(-100, -100);
+		assertNull(child.intersects(probe));
+		assertNull(canvas.intersects(probe));
+		// the absolute area of the child follows the transforms of its parent
+		child.setParent(parent);
+		assertNull(child.intersects(probe));
+		parent.translateBy(100, 100);
+		assertSame(child, child.intersects(probe));
+		parent.scaleBy(0.1);
+		assertNull(child.intersects(probe));
+		child.setParent(null);
+		parent.translateBy(-100, -100);
+		assertNull(child.intersects(probe));
+		assertNull(canvas.intersects(probe));
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CanvasPickingTest {
+
+	// the shapes of the display list whose bounds contain a point, from the topmost to the bottommost one
+	private static List<CShape> covering(Canvas canvas, Point2D p) {
+		List<CShape> shapes = new ArrayList<CShape>();
+		for (CShape s : canvas.getDisplayList())
+			if (s.getMinX() <= p.getX() && p.getX() <= s.getMaxX() && s.getMinY() <= p.getY() && p.getY() <= s.getMaxY())
+				shapes.add(s);
+		Collections.reverse(shapes);
+		return shapes;
+	}
+
+	// the shapes of the display list among some shapes, from the topmost to the bottommost one
+	private static List<CShape> frontToBack(Canvas canvas, List<CShape> among) {
+		HashSet<CShape> set = new HashSet<CShape>(among);
+		List<CShape> shapes = new ArrayList<CShape>();
+		for (CShape s : canvas.getDisplayList())
+			if (set.contains(s))
+				shapes.add(s);
+		Collections.reverse(shapes);
+		return shapes;
+	}
+
+	private static void assertCandidates(Canvas canvas, Random random) {
+		for (int i = 0; i < 200; i++) {
+			Point2D p = new Point2D.Double(400 * random.nextDouble(), 400 * random.nextDouble());
+			List<CShape> candidates = canvas.pickCandidates(p);
+			assertEquals(frontToBack(canvas, candidates), candidates);
+			assertTrue(candidates.containsAll(covering(canvas, p)));
+		}
+	}
+
+	@Test
+	public void candidatesFollowTheDisplayOrder() {
+		Canvas canvas = new Canvas(400, 400);
+		Random random = new Random(1);
+		List<CShape> shapes = new ArrayList<CShape>();
+		for (int i = 0; i < 40; i++)
+			shapes.add(canvas.newRectangle(350 * random.nextDouble(), 350 * random.nextDouble(),
+					10 + 150 * random.nextDouble(), 10 + 150 * random.nextDouble()));
+		assertCandidates(canvas, random);
+		// reorder, move and remove shapes
+		for (int i = 0; i < 40; i++) {
+			CShape s = shapes.get(random.nextInt(shapes.size()));
+			switch (random.nextInt(4)) {
+			case 0:
+				s.aboveAll();
+				break;
+			case 1:
+				s.belowAll();
+				break;
+			case 2:
+				s.above(shapes.get(random.nextInt(shapes.size())));
+				break;
+			default:
+				s.translateBy(100 * random.nextDouble() - 50, 100 * random.nextDouble() - 50);
+			}
+		}
+		canvas.removeShape(shapes.remove(0));
+		assertCandidates(canvas, random);
+	}
+
+	@Test
+	public void topmostCandidateIsTheLastShapeRaised() {
+		Canvas canvas = new Canvas(400, 400);
+		CShape back = canvas.newRectangle(0, 0, 100, 100);
+		CShape middle = canvas.newRectangle(50, 50, 100, 100);
+		CShape front = canvas.newRectangle(80, 80, 100, 100);
+		Point2D p = new Point2D.Double(90, 90);
+		assertEquals(front, canvas.pickCandidates(p).get(0));
+		back.aboveAll();
+		assertEquals(back, canvas.pickCandidates(p).get(0));
+		middle.translateBy(200, 200);
+		middle.aboveAll();
+		assertEquals(back, canvas.pickCandidates(p).get(0));
+		assertEquals(2, canvas.pickCandidates(p).size());
+		assertEquals(middle, canvas.pickCandidates(new Point2D.Double(300, 300)).get(0));
+	}
+
+}
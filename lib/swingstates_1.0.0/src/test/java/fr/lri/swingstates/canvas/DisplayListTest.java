@@ -0,0 +1,182 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DisplayListTest {
+
+	private static final Comparator<CShape> BY_X = new Comparator<CShape>() {
+		public int compare(CShape s1, CShape s2) {
+			return Double.compare(s1.getMinX(), s2.getMinX());
+		}
+	};
+
+	private static List<CShape> shapes(Canvas canvas, int n, long seed) {
+		Random random = new Random(seed);
+		List<CShape> shapes = new ArrayList<CShape>();
+		for (int i = 0; i < n; i++)
+			shapes.add(canvas.newRectangle(random.nextInt(1000), 0, 10, 10));
+		return shapes;
+	}
+
+	// checks that the list holds the expected shapes and that the display order agrees with it
+	private static void assertOrder(List<CShape> expected, List<CShape> displayList) {
+		assertEquals(expected, new ArrayList<CShape>(displayList));
+		assertEquals(expected.size(), displayList.size());
+		for (int i = 1; i < expected.size(); i++) {
+			assertTrue(expected.get(i).isAbove(expected.get(i - 1)));
+			assertTrue(expected.get(i - 1).isBelow(expected.get(i)));
+		}
+		for (Iterator<CShape> i = expected.iterator(); i.hasNext();)
+			assertTrue(displayList.contains(i.next()));
+	}
+
+	@Test
+	public void sortOrdersTheShapes() {
+		for (int n : new int[] { 5, 100 }) {
+			Canvas canvas = new Canvas(100, 100);
+			List<CShape> expected = shapes(canvas, n, n);
+			Collections.sort(expected, BY_X);
+			Collections.sort(canvas.getDisplayList(), BY_X);
+			assertOrder(expected, canvas.getDisplayList());
+		}
+	}
+
+	@Test
+	public void reverseReversesTheShapes() {
+		// small lists are reversed by swapping elements, large ones with two iterators
+		for (int n : new int[] { 1, 2, 5, 17, 18, 19, 100 }) {
+			Canvas canvas = new Canvas(100, 100);
+			List<CShape> expected = shapes(canvas, n, n);
+			Collections.reverse(expected);
+			Collections.reverse(canvas.getDisplayList());
+			assertOrder(expected, canvas.getDisplayList());
+		}
+	}
+
+	@Test
+	public void shuffleAndSwapKeepEachShapeOnce() {
+		Canvas canvas = new Canvas(100, 100);
+		List<CShape> expected = shapes(canvas, 50, 1);
+		Collections.shuffle(expected, new Random(2));
+		Collections.shuffle(canvas.getDisplayList(), new Random(2));
+		assertOrder(expected, canvas.getDisplayList());
+		Collections.swap(expected, 3, 40);
+		Collections.swap(canvas.getDisplayList(), 3, 40);
+		assertOrder(expected, canvas.getDisplayList());
+	}
+
+	@Test
+	public void setExchangesAShapeOfTheList() {
+		Canvas canvas = new Canvas(100, 100);
+		List<CShape> shapes = shapes(canvas, 4, 1);
+		List<CShape> displayList = canvas.getDisplayList();
+		assertSame(shapes.get(0), displayList.set(0, shapes.get(2)));
+		Collections.swap(shapes, 0, 2);
+		assertOrder(shapes, displayList);
+	}
+
+	@Test
+	public void setRejectsAShapeNotInTheList() {
+		Canvas canvas = new Canvas(100, 100);
+		List<CShape> shapes = shapes(canvas, 3, 1);
+		CShape other = new CRectangle(0, 0, 10, 10);
+		try {
+			canvas.getDisplayList().set(1, other);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// the replaced shape would stay attached to the canvas
+		}
+		assertEquals(shapes, new ArrayList<CShape>(canvas.getDisplayList()));
+		assertSame(canvas, shapes.get(1).getCanvas());
+		assertFalse(canvas.getDisplayList().contains(other));
+	}
+
+	@Test
+	public void setDoesNotInvalidateIterators() {
+		Canvas canvas = new Canvas(100, 100);
+		List<CShape> shapes = shapes(canvas, 5, 1);
+		Iterator<CShape> i = canvas.getDisplayList().iterator();
+		i.next();
+		canvas.getDisplayList().set(3, shapes.get(4));
+		assertSame(shapes.get(1), i.next());
+	}
+
+	@Test
+	public void intentionalTagsFollowTheOrderSetInTheList() {
+		Canvas canvas = new Canvas(100, 100);
+		List<CShape> expected = shapes(canvas, 30, 1);
+		CIntentionalTag all = new CIntentionalTag(canvas) {
+			public boolean criterion(CShape s) {
+				return true;
+			}
+		};
+		assertEquals(expected, new ArrayList<Object>(all.getCollection()));
+		Collections.reverse(expected);
+		Collections.reverse(canvas.getDisplayList());
+		assertEquals(expected, new ArrayList<Object>(all.getCollection()));
+	}
+
+	@Test
+	public void addRejectsAShapeAlreadyInTheList() {
+		Canvas canvas = new Canvas(100, 100);
+		List<CShape> shapes = shapes(canvas, 3, 1);
+		try {
+			canvas.getDisplayList().add(shapes.get(1));
+			fail("A shape was added twice");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			canvas.getDisplayList().add(0, shapes.get(2));
+			fail("A shape was added twice");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertOrder(shapes, canvas.getDisplayList());
+	}
+
+	@Test
+	public void addShapeTwiceKeepsTheShapeOnce() {
+		Canvas canvas = new Canvas(100, 100);
+		List<CShape> shapes = shapes(canvas, 3, 1);
+		canvas.addShape(shapes.get(0));
+		assertOrder(shapes, canvas.getDisplayList());
+	}
+
+	@Test
+	public void reorderingKeepsTheDisplayOrder() {
+		Canvas canvas = new Canvas(100, 100);
+		List<CShape> shapes = shapes(canvas, 2000, 1);
+		Random random = new Random(3);
+		// many insertions at the same place exhaust the gaps between labels
+		for (int i = 0; i < 5000; i++) {
+			CShape s = shapes.remove(random.nextInt(shapes.size()));
+			CShape below = shapes.get(shapes.size() / 2);
+			s.above(below);
+			shapes.add(shapes.indexOf(below) + 1, s);
+		}
+		assertOrder(shapes, canvas.getDisplayList());
+		canvas.removeShape(shapes.remove(10));
+		shapes.get(0).aboveAll();
+		shapes.add(shapes.remove(0));
+		assertOrder(shapes, canvas.getDisplayList());
+	}
+
+}
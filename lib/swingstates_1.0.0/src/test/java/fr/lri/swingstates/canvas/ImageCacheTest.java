@@ -0,0 +1,273 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ImageCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// a CImage that records the outcome of the decoding of its image, which may be known
+	// while the CImage is built if the image is already decoded
+	private static CImage watched(File file, final CountDownLatch done, final List<BufferedImage> loaded) {
+		return new CImage(file.getPath(), new Point2D.Double(0, 0)) {
+			void imageLoaded(BufferedImage image) {
+				super.imageLoaded(image);
+				loaded.add(image);
+				done.countDown();
+			}
+
+			void imageFailed(Exception e) {
+				super.imageFailed(e);
+				done.countDown();
+			}
+		};
+	}
+
+	private static BufferedImage image(int w, int h, Color color) {
+		BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(color);
+		g.fillRect(0, 0, w, h);
+		g.dispose();
+		return image;
+	}
+
+	private File png(String name, BufferedImage image) throws IOException {
+		File file = folder.newFile(name);
+		ImageIO.write(image, "png", file);
+		return file;
+	}
+
+	// the color of the center of a shape drawn on a canvas
+	private static Color center(CShape shape) {
+		Canvas canvas = new Canvas(20, 20);
+		canvas.addShape(shape);
+		BufferedImage drawn = image(20, 20, Color.WHITE);
+		Graphics2D g = drawn.createGraphics();
+		shape.paint(g);
+		g.dispose();
+		return new Color(drawn.getRGB((int) shape.getCenterX(), (int) shape.getCenterY()));
+	}
+
+	private static void await(CountDownLatch done) throws InterruptedException {
+		assertTrue("The image was not decoded", done.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void imagesOfTheSameFileAreDecodedOnce() throws Exception {
+		File file = png("red.png", image(10, 10, Color.RED));
+		CountDownLatch done = new CountDownLatch(2);
+		List<BufferedImage> loaded = new Vector<BufferedImage>();
+		CImage i1 = watched(file, done, loaded);
+		CImage i2 = watched(file, done, loaded);
+		await(done);
+		assertEquals(2, loaded.size());
+		assertSame(loaded.get(0), loaded.get(1));
+		assertEquals(10, i1.getWidth(), 0);
+		assertEquals(Color.RED, center(i2.duplicate()));
+		assertNull(i1.getLoadingFailure());
+	}
+
+	@Test
+	public void duplicateCopiesTheImageOfTheApplication() {
+		BufferedImage image = image(10, 10, Color.RED);
+		CImage original = new CImage(image, new Point2D.Double(0, 0));
+		CShape copy = original.duplicate();
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.BLUE);
+		g.fillRect(0, 0, 10, 10);
+		g.dispose();
+		original.imageChanged();
+		assertEquals(Color.BLUE, center(original));
+		assertEquals(Color.RED, center(copy));
+	}
+
+	@Test
+	public void failedDecodingIsRecorded() throws Exception {
+		// the header of the image can be read, not its pixels
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ImageIO.write(image(10, 10, Color.RED), "png", bytes);
+		File file = folder.newFile("truncated.png");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(Arrays.copyOf(bytes.toByteArray(), 40));
+		out.close();
+		CountDownLatch done = new CountDownLatch(1);
+		List<BufferedImage> loaded = new Vector<BufferedImage>();
+		CImage failed = watched(file, done, loaded);
+		failed.setFillPaint(Color.GREEN);
+		await(done);
+		assertTrue(loaded.isEmpty());
+		assertNotNull(failed.getLoadingFailure());
+		// the area of the image stays filled with the fill paint
+		assertEquals(10, failed.getWidth(), 0);
+		assertEquals(Color.GREEN, center(failed));
+		assertNotNull(((CImage) failed.duplicate()).getLoadingFailure());
+	}
+
+	@Test
+	public void unreadableImageIsEmpty() throws Exception {
+		CImage missing = new CImage(new File(folder.getRoot(), "missing.png").getPath(), new Point2D.Double(5, 5));
+		assertNotNull(missing.getLoadingFailure());
+		assertEquals(0, missing.getWidth(), 0);
+		assertEquals(0, missing.getHeight(), 0);
+		// the format of the image is known, not its size
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ImageIO.write(image(10, 10, Color.RED), "png", bytes);
+		File file = folder.newFile("signature.png");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(Arrays.copyOf(bytes.toByteArray(), 8));
+		out.close();
+		CImage headless = new CImage(file.getPath(), new Point2D.Double(5, 5));
+		assertNotNull(headless.getLoadingFailure());
+		assertEquals(0, headless.getWidth(), 0);
+	}
+
+	@Test
+	public void streamIsReadBeforeTheImageIsBuilt() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ImageIO.write(image(10, 10, Color.RED), "png", bytes);
+		// a stream that can not be read once closed
+		InputStream stream = new FilterInputStream(new ByteArrayInputStream(bytes.toByteArray())) {
+			private boolean closed = false;
+
+			public int read() throws IOException {
+				if (closed)
+					throw new IOException("Stream closed");
+				return super.read();
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (closed)
+					throw new IOException("Stream closed");
+				return super.read(b, off, len);
+			}
+
+			public void close() {
+				closed = true;
+			}
+		};
+		final CountDownLatch done = new CountDownLatch(1);
+		CImage streamed = new CImage(stream, new Point2D.Double(0, 0)) {
+			void imageLoaded(BufferedImage image) {
+				super.imageLoaded(image);
+				done.countDown();
+			}
+
+			void imageFailed(Exception e) {
+				super.imageFailed(e);
+				done.countDown();
+			}
+		};
+		stream.close();
+		await(done);
+		assertNull(streamed.getLoadingFailure());
+		assertEquals(10, streamed.getWidth(), 0);
+		assertEquals(Color.RED, center(streamed));
+	}
+
+	@Test
+	public void mipmapsAreReducedByPowersOf2() {
+		BufferedImage image = image(64, 30, Color.RED);
+		assertSame(image, ImageCache.mipmap(image, 0));
+		BufferedImage half = ImageCache.mipmap(image, 1);
+		assertEquals(32, half.getWidth());
+		assertEquals(15, half.getHeight());
+		BufferedImage smallest = ImageCache.mipmap(image, 6);
+		assertEquals(1, smallest.getWidth());
+		assertEquals(1, smallest.getHeight());
+		assertEquals(Color.RED, new Color(smallest.getRGB(0, 0)));
+		assertSame(half, ImageCache.mipmap(image, 1));
+		ImageCache.discardMipmaps(image);
+		assertNotSame(half, ImageCache.mipmap(image, 1));
+	}
+
+	@Test
+	public void mipmapLevelKeepsPixelsAtLeastHalfADevicePixel() {
+		BufferedImage image = image(64, 64, Color.RED);
+		assertEquals(0, ImageCache.mipmapLevel(image, 1));
+		assertEquals(0, ImageCache.mipmapLevel(image, 0.5));
+		assertEquals(1, ImageCache.mipmapLevel(image, 0.4));
+		assertEquals(3, ImageCache.mipmapLevel(image, 0.1));
+		// the smallest copy is one pixel wide and high
+		assertEquals(6, ImageCache.mipmapLevel(image, 0.0001));
+	}
+
+	// an image of columns one pixel wide, alternately red and blue
+	private static BufferedImage stripes(int w, int h) {
+		BufferedImage image = image(w, h, Color.RED);
+		for (int x = 1; x < w; x += 2)
+			for (int y = 0; y < h; y++)
+				image.setRGB(x, y, Color.BLUE.getRGB());
+		return image;
+	}
+
+	// the image drawn by a CImage at the top left corner of a graphics scaled by a factor
+	private static BufferedImage drawn(CImage shape, double scale) {
+		BufferedImage drawn = image(64, 64, Color.WHITE);
+		Graphics2D g = drawn.createGraphics();
+		g.scale(scale, scale);
+		shape.paint(g);
+		g.dispose();
+		return drawn;
+	}
+
+	@Test
+	public void reducedImagesAreDrawnAtSmallScales() {
+		BufferedImage image = stripes(64, 64);
+		CImage shape = new CImage(image, new Point2D.Double(0, 0));
+		shape.setOutlined(false);
+		// the pixels of the image are drawn large enough to be sampled
+		for (int x = 0; x < 32; x++) {
+			Color c = new Color(drawn(shape, 0.5).getRGB(x, 10));
+			assertTrue(c.equals(Color.RED) || c.equals(Color.BLUE));
+		}
+		// four pixels of the image in a pixel of the device: their average is drawn
+		Color c = new Color(drawn(shape, 0.25).getRGB(8, 8));
+		assertEquals(0, c.getGreen());
+		assertEquals(128, c.getRed(), 2);
+		assertEquals(128, c.getBlue(), 2);
+		assertEquals(Color.WHITE, new Color(drawn(shape, 0.25).getRGB(20, 8)));
+		// the reduced images follow the changes of the image
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.GREEN);
+		g.fillRect(0, 0, 64, 64);
+		g.dispose();
+		shape.imageChanged();
+		assertEquals(Color.GREEN, new Color(drawn(shape, 0.25).getRGB(8, 8)));
+		assertEquals(Color.GREEN, new Color(drawn(shape, 0.1).getRGB(3, 3)));
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+public class LayerTest {
+
+	// a rectangle that counts the times it is painted
+	private static class CountedRectangle extends CRectangle {
+		int painted = 0;
+
+		CountedRectangle(double x, double y, double w, double h) {
+			super(x, y, w, h);
+		}
+
+		public void paint(Graphics g) {
+			painted++;
+			super.paint(g);
+		}
+	}
+
+	private static Canvas canvas() {
+		Canvas canvas = new Canvas(300, 300);
+		canvas.setSize(300, 300);
+		canvas.setBackground(Color.WHITE);
+		return canvas;
+	}
+
+	private static CountedRectangle rectangle(Canvas canvas, double x, double y, Color color) {
+		CountedRectangle r = new CountedRectangle(x, y, 20, 20);
+		r.setFillPaint(color);
+		r.setOutlined(false);
+		canvas.addShape(r);
+		return r;
+	}
+
+	private static BufferedImage paint(Canvas canvas) {
+		BufferedImage image = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setClip(0, 0, 300, 300);
+		canvas.paintComponent(g);
+		g.dispose();
+		return image;
+	}
+
+	private static Color color(BufferedImage image, int x, int y) {
+		return new Color(image.getRGB(x, y));
+	}
+
+	@Test
+	public void layersArePaintedBelowTheOtherShapes() {
+		Canvas canvas = canvas();
+		CExtensionalTag background = canvas.newTag("background");
+		CShape front = rectangle(canvas, 10, 10, Color.BLUE);
+		CShape back = rectangle(canvas, 20, 20, Color.RED);
+		back.addTag(background);
+		assertEquals(Color.RED, color(paint(canvas), 25, 25));
+		canvas.addLayer(background);
+		BufferedImage layered = paint(canvas);
+		assertEquals(Color.BLUE, color(layered, 25, 25));
+		assertEquals(Color.RED, color(layered, 35, 35));
+		assertEquals(Color.BLUE, color(layered, 15, 15));
+		canvas.removeLayer(background);
+		assertEquals(Color.RED, color(paint(canvas), 25, 25));
+		front.aboveAll();
+		assertEquals(Color.BLUE, color(paint(canvas), 25, 25));
+	}
+
+	@Test
+	public void onlyTheDamagedRegionIsRasterizedAgain() {
+		Canvas canvas = canvas();
+		CExtensionalTag cached = canvas.newTag("cached");
+		CountedRectangle still = rectangle(canvas, 0, 0, Color.RED);
+		CountedRectangle moved = rectangle(canvas, 200, 0, Color.BLUE);
+		CountedRectangle direct = rectangle(canvas, 0, 200, Color.GREEN);
+		still.addTag(cached);
+		moved.addTag(cached);
+		canvas.addLayer(cached);
+		paint(canvas);
+		assertEquals(1, still.painted);
+		assertEquals(1, moved.painted);
+		assertEquals(1, direct.painted);
+		// nothing changed: the layer is drawn from its image
+		paint(canvas);
+		assertEquals(1, still.painted);
+		assertEquals(1, moved.painted);
+		assertEquals(2, direct.painted);
+		// the regions covered by the moved shape are rasterized again,
+		// the shapes of the layer that are far from them are not painted again
+		moved.translateBy(15, 0);
+		BufferedImage image = paint(canvas);
+		assertEquals(1, still.painted);
+		assertEquals(2, moved.painted);
+		assertEquals(Color.WHITE, color(image, 205, 5));
+		assertEquals(Color.BLUE, color(image, 230, 5));
+		assertEquals(Color.RED, color(image, 10, 10));
+		// a shape leaving the layer damages the region it covered
+		moved.removeTag(cached);
+		image = paint(canvas);
+		assertEquals(1, still.painted);
+		assertEquals(3, moved.painted);
+		assertEquals(Color.BLUE, color(image, 230, 5));
+		canvas.refreshLayers();
+		paint(canvas);
+		assertEquals(2, still.painted);
+	}
+
+}
@@ -0,0 +1,168 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class OutlinePickingTest {
+
+	private static final int[] CAPS = { BasicStroke.CAP_BUTT, BasicStroke.CAP_ROUND, BasicStroke.CAP_SQUARE };
+	private static final int[] JOINS = { BasicStroke.JOIN_MITER, BasicStroke.JOIN_ROUND, BasicStroke.JOIN_BEVEL };
+	private static final double TOLERANCE = 4;
+
+	// whether the stroked outline intersects the square of a given side centered on a point
+	private static boolean strokedHits(Shape stroked, double x, double y, double side) {
+		return stroked.intersects(x - side / 2, y - side / 2, side, side);
+	}
+
+	/**
+	 * Compares the closed form test of the outline of a shape with the intersection of its
+	 * stroked shape, at random points around the shape. The outline must be hit where the
+	 * stroked shape intersects the smaller square, and missed where it does not intersect
+	 * the larger one. The points that are closer to the border of the stroked shape than
+	 * a margin are skipped.
+	 * @return The number of points where the outline is hit.
+	 */
+	private static int assertOutlineHits(CShape shape, double inner, double outer, double margin, long seed) {
+		Shape stroked = shape.stroke.createStrokedShape(shape.getShape());
+		Random random = new Random(seed);
+		int hits = 0;
+		for (int i = 0; i < 5000; i++) {
+			double x = -20 + 160 * random.nextDouble();
+			double y = -20 + 160 * random.nextDouble();
+			boolean hit = shape.outlineHits(x, y, TOLERANCE);
+			String point = "(" + x + ", " + y + ")";
+			if (strokedHits(stroked, x, y, inner - 2 * margin))
+				assertTrue(point, hit);
+			if (!strokedHits(stroked, x, y, outer + 2 * margin))
+				assertFalse(point, hit);
+			if (hit)
+				hits++;
+		}
+		return hits;
+	}
+
+	// the closed form test is the same as the intersection with the picking square
+	private static int assertExactOutlineHits(CShape shape, long seed) {
+		return assertOutlineHits(shape, TOLERANCE, TOLERANCE, 1e-6, seed);
+	}
+
+	// the closed form test grows the outline by a distance between the half sides of the
+	// picking square and of its diagonal, whatever the orientation of the outline
+	private static int assertCloseOutlineHits(CShape shape, double margin, long seed) {
+		return assertOutlineHits(shape, TOLERANCE / Math.sqrt(2), TOLERANCE * Math.sqrt(2), margin, seed);
+	}
+
+	@Test
+	public void segmentOutlines() {
+		Canvas canvas = new Canvas(200, 200);
+		for (int cap : CAPS) {
+			for (float width : new float[] { 1, 12 }) {
+				BasicStroke stroke = new BasicStroke(width, cap, BasicStroke.JOIN_MITER);
+				CShape horizontal = canvas.newSegment(10, 20, 110, 20);
+				horizontal.setStroke(stroke);
+				assertTrue(assertOutlineHits(horizontal, cap == BasicStroke.CAP_ROUND ? TOLERANCE / Math.sqrt(2) : TOLERANCE,
+						TOLERANCE * Math.sqrt(2), 1e-6, cap) > 0);
+				CShape oblique = canvas.newSegment(10, 20, 110, 90);
+				oblique.setStroke(stroke);
+				assertTrue(assertCloseOutlineHits(oblique, 1e-6, cap) > 0);
+				CShape point = canvas.newSegment(50, 50, 50, 50);
+				point.setStroke(stroke);
+				if (cap == BasicStroke.CAP_BUTT) {
+					// the stroked shape is a flat path that is not drawn
+					assertFalse(point.outlineHits(50, 50, TOLERANCE));
+				} else {
+					assertTrue(assertCloseOutlineHits(point, 1e-6, cap) > 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void rectangleOutlines() {
+		Canvas canvas = new Canvas(200, 200);
+		for (int join : JOINS) {
+			for (float width : new float[] { 1, 16 }) {
+				CShape rectangle = canvas.newRectangle(10, 20, 100, 60);
+				rectangle.setStroke(new BasicStroke(width, BasicStroke.CAP_BUTT, join));
+				if (join == BasicStroke.JOIN_MITER)
+					assertTrue(assertExactOutlineHits(rectangle, join) > 0);
+				else
+					assertTrue(assertCloseOutlineHits(rectangle, 1e-6, join) > 0);
+			}
+		}
+	}
+
+	@Test
+	public void circleOutlines() {
+		Canvas canvas = new Canvas(200, 200);
+		for (float width : new float[] { 1, 16 }) {
+			CShape circle = canvas.newEllipse(10, 10, 100, 100);
+			circle.setStroke(new BasicStroke(width));
+			// the stroked shape is made of Bezier curves that approximate the circle
+			assertTrue(assertCloseOutlineHits(circle, 0.1, 1) > 0);
+		}
+	}
+
+	@Test
+	public void ellipseOutlines() {
+		Canvas canvas = new Canvas(200, 200);
+		for (float width : new float[] { 1, 8 }) {
+			CShape ellipse = canvas.newEllipse(10, 30, 100, 50);
+			ellipse.setStroke(new BasicStroke(width));
+			// grown and shrunk ellipses only approximate the border of a thick stroke
+			assertTrue(assertCloseOutlineHits(ellipse, 0.1 + width / 4, 1) > 0);
+		}
+	}
+
+	@Test
+	public void dashedOutlinesUseTheStrokedShape() {
+		Canvas canvas = new Canvas(200, 200);
+		CShape rectangle = canvas.newRectangle(10, 20, 100, 60);
+		rectangle.setStroke(new BasicStroke(4, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10, new float[] { 10, 10 }, 0));
+		assertExactOutlineHits(rectangle, 1);
+	}
+
+	@Test
+	public void pickingKeepsTheFractionalPartOfThePoint() {
+		Canvas canvas = new Canvas(200, 200);
+		CShape segment = canvas.newSegment(10, 10, 110, 10);
+		segment.setStroke(new BasicStroke(1));
+		// the outline covers [9.5, 10.5] across the segment, the picking square is 2 wide
+		assertSame(segment, segment.isOnOutline(new Point2D.Double(50, 11.4)));
+		assertNull(segment.isOnOutline(new Point2D.Double(50, 11.6)));
+		assertSame(segment, segment.isOnOutline(new Point2D.Double(50, 8.6)));
+		assertNull(segment.isOnOutline(new Point2D.Double(50, 8.4)));
+	}
+
+	@Test
+	public void outlineTransformsThePoint() {
+		Canvas canvas = new Canvas(200, 200);
+		CShape rectangle = canvas.newRectangle(0, 0, 100, 50);
+		rectangle.setFilled(false);
+		rectangle.setStroke(new BasicStroke(2));
+		rectangle.translateBy(20, 30);
+		rectangle.scaleBy(2);
+		Point2D corner = rectangle.getAbsTransform().transform(new Point2D.Double(100, 50), null);
+		Point2D center = rectangle.getAbsTransform().transform(new Point2D.Double(50, 25), null);
+		assertSame(rectangle, rectangle.isOnOutline(corner));
+		assertNull(rectangle.isOnOutline(center));
+		// the outline is 4 wide once scaled, 2 wide in the coordinates of the rectangle
+		Point2D inside = rectangle.getAbsTransform().transform(new Point2D.Double(100, 25), null);
+		assertSame(rectangle, rectangle.isOnOutline(new Point2D.Double(inside.getX() - 3.9, inside.getY())));
+		assertNull(rectangle.isOnOutline(new Point2D.Double(inside.getX() - 4.1, inside.getY())));
+	}
+
+}
@@ -0,0 +1,543 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.canvas;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PainterTest {
+
+	private static final Stroke THIN = new BasicStroke(1);
+	private static final Stroke THICK = new BasicStroke(5);
+
+	private static BufferedImage image() {
+		BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, 200, 200);
+		g.dispose();
+		return image;
+	}
+
+	private static CShape rectangle(Canvas canvas, double x, double y, Color color, Stroke stroke) {
+		CShape r = canvas.newRectangle(x, y, 20, 20);
+		r.setFillPaint(color);
+		r.setOutlined(false);
+		r.setStroke(stroke);
+		return r;
+	}
+
+	@Test
+	public void shapesSharingTheirStyleChangeTheGraphicsOnce() {
+		Canvas canvas = new Canvas(200, 200);
+		CountingGraphics g = new CountingGraphics(image().createGraphics());
+		Painter painter = new Painter(g);
+		for (int i = 0; i < 10; i++)
+			painter.paint(rectangle(canvas, 15 * i, 0, Color.RED, THICK));
+		assertEquals(10, g.count("fill"));
+		assertEquals(1, g.count("setStroke"));
+		assertEquals(1, g.count("setPaint"));
+		assertEquals(0, g.count("setComposite"));
+		assertEquals(0, g.count("setClip"));
+		assertEquals(0, g.count("setRenderingHints") + g.count("addRenderingHints"));
+	}
+
+	@Test
+	public void onlyTheChangedStatesAreSet() {
+		Canvas canvas = new Canvas(200, 200);
+		CShape[] shapes = {
+			rectangle(canvas, 0, 0, Color.RED, THIN),
+			rectangle(canvas, 20, 0, Color.RED, THIN),
+			rectangle(canvas, 40, 0, Color.RED, THICK),
+			rectangle(canvas, 60, 0, Color.BLUE, THICK),
+			rectangle(canvas, 80, 0, Color.BLUE, THIN)
+		};
+		shapes[4].setTransparencyFill(0.5f);
+		CountingGraphics g = new CountingGraphics(image().createGraphics());
+		Painter painter = new Painter(g);
+		for (int i = 0; i < shapes.length; i++)
+			painter.paint(shapes[i]);
+		// THICK, THIN, the graphics starts with a stroke equal to THIN
+		assertEquals(2, g.count("setStroke"));
+		// RED, BLUE, BLUE again once the composite has changed
+		assertEquals(3, g.count("setPaint"));
+		assertEquals(1, g.count("setComposite"));
+		painter.restore();
+		assertEquals(2, g.count("setStroke"));
+		assertEquals(2, g.count("setComposite"));
+	}
+
+	@Test
+	public void restoreGivesBackTheStateOfTheGraphics() {
+		Canvas canvas = new Canvas(200, 200);
+		Graphics2D g = image().createGraphics();
+		g.translate(3, 4);
+		g.setClip(0, 0, 150, 150);
+		Stroke stroke = g.getStroke();
+		Paint paint = g.getPaint();
+		Composite composite = g.getComposite();
+		Font font = g.getFont();
+		AffineTransform transform = g.getTransform();
+		Rectangle clip = g.getClipBounds();
+		Object antialiasing = g.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+		CShape clipped = rectangle(canvas, 10, 10, Color.RED, THICK);
+		clipped.setAntialiased(true);
+		clipped.setClip(canvas.newEllipse(0, 0, 30, 30));
+		clipped.rotateBy(0.3);
+		clipped.setTransparencyFill(0.5f);
+		CText text = canvas.newText(0, 100, "text", new Font("Dialog", Font.BOLD, 20));
+		text.translateBy(10, 0);
+		Painter painter = new Painter(g);
+		painter.paint(clipped);
+		painter.paint(text);
+		painter.restore();
+		assertEquals(stroke, g.getStroke());
+		assertEquals(paint, g.getPaint());
+		assertEquals(composite, g.getComposite());
+		assertEquals(font, g.getFont());
+		assertEquals(transform, g.getTransform());
+		assertEquals(clip, g.getClipBounds());
+		assertEquals(antialiasing, g.getRenderingHint(RenderingHints.KEY_ANTIALIASING));
+	}
+
+	@Test
+	public void paintingThroughAPainterGivesTheSamePixels() {
+		Canvas canvas = new Canvas(200, 200);
+		CShape[] shapes = {
+			rectangle(canvas, 10, 10, Color.RED, THICK),
+			rectangle(canvas, 20, 20, Color.RED, THICK),
+			rectangle(canvas, 30, 30, Color.BLUE, THIN),
+			canvas.newEllipse(40, 40, 60, 30),
+			canvas.newText(20, 120, "text", new Font("Dialog", Font.PLAIN, 24)),
+			rectangle(canvas, 50, 50, Color.GREEN, THIN),
+			canvas.newSegment(0, 0, 180, 190)
+		};
+		shapes[1].rotateBy(0.4);
+		shapes[2].setOutlined(true);
+		shapes[3].setFillPaint(Color.YELLOW);
+		shapes[3].setTransparencyFill(0.5f);
+		shapes[3].setStroke(THICK);
+		shapes[4].setOutlinePaint(Color.MAGENTA);
+		shapes[5].setTransparencyFill(0.3f);
+		shapes[5].setClip(shapes[3]);
+		shapes[6].setAntialiased(true);
+		BufferedImage expected = image();
+		Graphics2D g = expected.createGraphics();
+		for (int i = 0; i < shapes.length; i++)
+			shapes[i].paint((Graphics) g);
+		g.dispose();
+		BufferedImage painted = image();
+		g = painted.createGraphics();
+		Painter painter = new Painter(g);
+		for (int i = 0; i < shapes.length; i++)
+			painter.paint(shapes[i]);
+		painter.restore();
+		g.dispose();
+		int[] e = expected.getRGB(0, 0, 200, 200, null, 0, 200);
+		int[] p = painted.getRGB(0, 0, 200, 200, null, 0, 200);
+		assertTrue(e[15 * 200 + 15] != Color.WHITE.getRGB());
+		assertArrayEquals(e, p);
+	}
+
+	// a graphics that counts the calls to its methods
+	private static class CountingGraphics extends Graphics2D {
+		private final Graphics2D g;
+		private final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+		CountingGraphics(Graphics2D g) {
+			this.g = g;
+		}
+
+		int count(String method) {
+			Integer c = counts.get(method);
+			return c == null ? 0 : c.intValue();
+		}
+
+		private void called(String method) {
+			counts.put(method, Integer.valueOf(count(method) + 1));
+		}
+
+		public boolean drawImage(Image image0, int i1, int i2, int i3, int i4, int i5, int i6, int i7, int i8, Color color9, ImageObserver imageObserver10) {
+			called("drawImage");
+			return g.drawImage(image0, i1, i2, i3, i4, i5, i6, i7, i8, color9, imageObserver10);
+		}
+
+		public boolean drawImage(Image image0, int i1, int i2, int i3, int i4, int i5, int i6, int i7, int i8, ImageObserver imageObserver9) {
+			called("drawImage");
+			return g.drawImage(image0, i1, i2, i3, i4, i5, i6, i7, i8, imageObserver9);
+		}
+
+		public boolean drawImage(Image image0, int i1, int i2, int i3, int i4, Color color5, ImageObserver imageObserver6) {
+			called("drawImage");
+			return g.drawImage(image0, i1, i2, i3, i4, color5, imageObserver6);
+		}
+
+		public boolean drawImage(Image image0, int i1, int i2, int i3, int i4, ImageObserver imageObserver5) {
+			called("drawImage");
+			return g.drawImage(image0, i1, i2, i3, i4, imageObserver5);
+		}
+
+		public boolean drawImage(Image image0, int i1, int i2, Color color3, ImageObserver imageObserver4) {
+			called("drawImage");
+			return g.drawImage(image0, i1, i2, color3, imageObserver4);
+		}
+
+		public boolean drawImage(Image image0, int i1, int i2, ImageObserver imageObserver3) {
+			called("drawImage");
+			return g.drawImage(image0, i1, i2, imageObserver3);
+		}
+
+		public boolean drawImage(Image image0, AffineTransform affineTransform1, ImageObserver imageObserver2) {
+			called("drawImage");
+			return g.drawImage(image0, affineTransform1, imageObserver2);
+		}
+
+		public boolean hit(Rectangle rectangle0, Shape shape1, boolean b2) {
+			called("hit");
+			return g.hit(rectangle0, shape1, b2);
+		}
+
+		public Color getBackground() {
+			called("getBackground");
+			return g.getBackground();
+		}
+
+		public Color getColor() {
+			called("getColor");
+			return g.getColor();
+		}
+
+		public Composite getComposite() {
+			called("getComposite");
+			return g.getComposite();
+		}
+
+		public Font getFont() {
+			called("getFont");
+			return g.getFont();
+		}
+
+		public FontMetrics getFontMetrics(Font font0) {
+			called("getFontMetrics");
+			return g.getFontMetrics(font0);
+		}
+
+		public Graphics create() {
+			called("create");
+			return g.create();
+		}
+
+		public GraphicsConfiguration getDeviceConfiguration() {
+			called("getDeviceConfiguration");
+			return g.getDeviceConfiguration();
+		}
+
+		public Paint getPaint() {
+			called("getPaint");
+			return g.getPaint();
+		}
+
+		public Rectangle getClipBounds() {
+			called("getClipBounds");
+			return g.getClipBounds();
+		}
+
+		public RenderingHints getRenderingHints() {
+			called("getRenderingHints");
+			return g.getRenderingHints();
+		}
+
+		public Shape getClip() {
+			called("getClip");
+			return g.getClip();
+		}
+
+		public Stroke getStroke() {
+			called("getStroke");
+			return g.getStroke();
+		}
+
+		public FontRenderContext getFontRenderContext() {
+			called("getFontRenderContext");
+			return g.getFontRenderContext();
+		}
+
+		public AffineTransform getTransform() {
+			called("getTransform");
+			return g.getTransform();
+		}
+
+		public Object getRenderingHint(RenderingHints.Key key0) {
+			called("getRenderingHint");
+			return g.getRenderingHint(key0);
+		}
+
+		public void addRenderingHints(Map<?, ?> map0) {
+			called("addRenderingHints");
+			g.addRenderingHints(map0);
+		}
+
+		public void clearRect(int i0, int i1, int i2, int i3) {
+			called("clearRect");
+			g.clearRect(i0, i1, i2, i3);
+		}
+
+		public void clip(Shape shape0) {
+			called("clip");
+			g.clip(shape0);
+		}
+
+		public void clipRect(int i0, int i1, int i2, int i3) {
+			called("clipRect");
+			g.clipRect(i0, i1, i2, i3);
+		}
+
+		public void copyArea(int i0, int i1, int i2, int i3, int i4, int i5) {
+			called("copyArea");
+			g.copyArea(i0, i1, i2, i3, i4, i5);
+		}
+
+		public void dispose() {
+			called("dispose");
+			g.dispose();
+		}
+
+		public void draw(Shape shape0) {
+			called("draw");
+			g.draw(shape0);
+		}
+
+		public void drawArc(int i0, int i1, int i2, int i3, int i4, int i5) {
+			called("drawArc");
+			g.drawArc(i0, i1, i2, i3, i4, i5);
+		}
+
+		public void drawGlyphVector(GlyphVector glyphVector0, float f1, float f2) {
+			called("drawGlyphVector");
+			g.drawGlyphVector(glyphVector0, f1, f2);
+		}
+
+		public void drawImage(BufferedImage bufferedImage0, BufferedImageOp bufferedImageOp1, int i2, int i3) {
+			called("drawImage");
+			g.drawImage(bufferedImage0, bufferedImageOp1, i2, i3);
+		}
+
+		public void drawLine(int i0, int i1, int i2, int i3) {
+			called("drawLine");
+			g.drawLine(i0, i1, i2, i3);
+		}
+
+		public void drawOval(int i0, int i1, int i2, int i3) {
+			called("drawOval");
+			g.drawOval(i0, i1, i2, i3);
+		}
+
+		public void drawPolygon(int[] a0, int[] a1, int i2) {
+			called("drawPolygon");
+			g.drawPolygon(a0, a1, i2);
+		}
+
+		public void drawPolyline(int[] a0, int[] a1, int i2) {
+			called("drawPolyline");
+			g.drawPolyline(a0, a1, i2);
+		}
+
+		public void drawRenderableImage(RenderableImage renderableImage0, AffineTransform affineTransform1) {
+			called("drawRenderableImage");
+			g.drawRenderableImage(renderableImage0, affineTransform1);
+		}
+
+		public void drawRenderedImage(RenderedImage renderedImage0, AffineTransform affineTransform1) {
+			called("drawRenderedImage");
+			g.drawRenderedImage(renderedImage0, affineTransform1);
+		}
+
+		public void drawRoundRect(int i0, int i1, int i2, int i3, int i4, int i5) {
+			called("drawRoundRect");
+			g.drawRoundRect(i0, i1, i2, i3, i4, i5);
+		}
+
+		public void drawString(String string0, float f1, float f2) {
+			called("drawString");
+			g.drawString(string0, f1, f2);
+		}
+
+		public void drawString(String string0, int i1, int i2) {
+			called("drawString");
+			g.drawString(string0, i1, i2);
+		}
+
+		public void drawString(AttributedCharacterIterator attributedCharacterIterator0, float f1, float f2) {
+			called("drawString");
+			g.drawString(attributedCharacterIterator0, f1, f2);
+		}
+
+		public void drawString(AttributedCharacterIterator attributedCharacterIterator0, int i1, int i2) {
+			called("drawString");
+			g.drawString(attributedCharacterIterator0, i1, i2);
+		}
+
+		public void fill(Shape shape0) {
+			called("fill");
+			g.fill(shape0);
+		}
+
+		public void fillArc(int i0, int i1, int i2, int i3, int i4, int i5) {
+			called("fillArc");
+			g.fillArc(i0, i1, i2, i3, i4, i5);
+		}
+
+		public void fillOval(int i0, int i1, int i2, int i3) {
+			called("fillOval");
+			g.fillOval(i0, i1, i2, i3);
+		}
+
+		public void fillPolygon(int[] a0, int[] a1, int i2) {
+			called("fillPolygon");
+			g.fillPolygon(a0, a1, i2);
+		}
+
+		public void fillRect(int i0, int i1, int i2, int i3) {
+			called("fillRect");
+			g.fillRect(i0, i1, i2, i3);
+		}
+
+		public void fillRoundRect(int i0, int i1, int i2, int i3, int i4, int i5) {
+			called("fillRoundRect");
+			g.fillRoundRect(i0, i1, i2, i3, i4, i5);
+		}
+
+		public void rotate(double d0) {
+			called("rotate");
+			g.rotate(d0);
+		}
+
+		public void rotate(double d0, double d1, double d2) {
+			called("rotate");
+			g.rotate(d0, d1, d2);
+		}
+
+		public void scale(double d0, double d1) {
+			called("scale");
+			g.scale(d0, d1);
+		}
+
+		public void setBackground(Color color0) {
+			called("setBackground");
+			g.setBackground(color0);
+		}
+
+		public void setClip(int i0, int i1, int i2, int i3) {
+			called("setClip");
+			g.setClip(i0, i1, i2, i3);
+		}
+
+		public void setClip(Shape shape0) {
+			called("setClip");
+			g.setClip(shape0);
+		}
+
+		public void setColor(Color color0) {
+			called("setColor");
+			g.setColor(color0);
+		}
+
+		public void setComposite(Composite composite0) {
+			called("setComposite");
+			g.setComposite(composite0);
+		}
+
+		public void setFont(Font font0) {
+			called("setFont");
+			g.setFont(font0);
+		}
+
+		public void setPaint(Paint paint0) {
+			called("setPaint");
+			g.setPaint(paint0);
+		}
+
+		public void setPaintMode() {
+			called("setPaintMode");
+			g.setPaintMode();
+		}
+
+		public void setRenderingHint(RenderingHints.Key key0, Object object1) {
+			called("setRenderingHint");
+			g.setRenderingHint(key0, object1);
+		}
+
+		public void setRenderingHints(Map<?, ?> map0) {
+			called("setRenderingHints");
+			g.setRenderingHints(map0);
+		}
+
+		public void setStroke(Stroke stroke0) {
+			called("setStroke");
+			g.setStroke(stroke0);
+		}
+
+		public void setTransform(AffineTransform affineTransform0) {
+			called("setTransform");
+			g.setTransform(affineTransform0);
+		}
+
+		public void setXORMode(Color color0) {
+			called("setXORMode");
+			g.setXORMode(color0);
+		}
+
+		public void shear(double d0, double d1) {
+			called("shear");
+			g.shear(d0, d1);
+		}
+
+		public void transform(AffineTransform affineTransform0) {
+			called("transform");
+			g.transform(affineTransform0);
+		}
+
+		public void translate(double d0, double d1) {
+			called("translate");
+			g.translate(d0, d1);
+		}
+
+		public void translate(int i0, int i1) {
+			called("translate");
+			g.translate(i0, i1);
+		}
+
+	}
+
+}
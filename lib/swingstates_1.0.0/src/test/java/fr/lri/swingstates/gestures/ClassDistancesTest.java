@@ -0,0 +1,111 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.gestures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.lri.swingstates.gestures.rubine.RubineClassifier;
+
+public class ClassDistancesTest {
+
+	@Test
+	public void storesTheDistancesComputedSinceTheLastChange() {
+		ClassDistances distances = new ClassDistances();
+		distances.ensureSize(3);
+		long version = distances.getVersion();
+		distances.set(0, 1, 1.5, version);
+		assertEquals(1.5, distances.get(0, 1), 0);
+		assertTrue(Double.isNaN(distances.get(1, 0)));
+		// a distance computed before a change is dropped
+		version = distances.getVersion();
+		distances.invalidateRow(2);
+		distances.set(1, 0, 2.5, version);
+		assertTrue(Double.isNaN(distances.get(1, 0)));
+		assertEquals(1.5, distances.get(0, 1), 0);
+		distances.invalidate(1);
+		assertTrue(Double.isNaN(distances.get(0, 1)));
+	}
+
+	@Test
+	public void removingAClassShiftsTheOthers() {
+		ClassDistances distances = new ClassDistances();
+		distances.ensureSize(20);
+		long version = distances.getVersion();
+		for (int i = 0; i < 20; i++)
+			for (int j = 0; j < 20; j++)
+				distances.set(i, j, 100 * i + j, version);
+		distances.removeClass(5);
+		assertEquals(19, distances.size());
+		assertEquals(406, distances.get(4, 5), 0);
+		assertEquals(604, distances.get(5, 4), 0);
+		assertEquals(1919, distances.get(18, 18), 0);
+		distances.addClass();
+		assertTrue(Double.isNaN(distances.get(19, 3)));
+		assertTrue(Double.isNaN(distances.get(3, 19)));
+	}
+
+	@Test
+	public void rubineDistancesAreNotKeptUntilTheClassifierIsTrained() {
+		RubineClassifier classifier = new RubineClassifier();
+		// one example per class is not enough to train the classifier
+		TestGestures.train(classifier, 1, new Random(1));
+		assertEquals(10, classifier.distance("line", "circle"), 0);
+		Random random = new Random(2);
+		for (int shape = 0; shape < TestGestures.SHAPES.length; shape++)
+			classifier.addExample(TestGestures.SHAPES[shape], TestGestures.gesture(shape, 10, random));
+		double trained = classifier.distance("line", "circle");
+		assertTrue(trained != 10);
+		assertEquals(trained, classifier.distance("line", "circle"), 0);
+	}
+
+	// the examples of a Rubine classifier, the same gestures are given to the classifiers that are compared
+	private static void train(RubineClassifier classifier, Gesture[][] examples) {
+		for (int shape = 0; shape < examples.length; shape++) {
+			classifier.addClass(TestGestures.SHAPES[shape]);
+			for (int i = 0; i < examples[shape].length; i++)
+				classifier.addExample(TestGestures.SHAPES[shape], examples[shape][i]);
+		}
+	}
+
+	@Test
+	public void rubineDistancesFollowTheTraining() {
+		Random random = new Random(1);
+		Gesture[][] examples = new Gesture[TestGestures.SHAPES.length][3];
+		for (int shape = 0; shape < examples.length; shape++)
+			for (int i = 0; i < examples[shape].length; i++)
+				examples[shape][i] = TestGestures.gesture(shape, 10, random);
+		Gesture zigzag = TestGestures.gesture(3, 10, random);
+
+		RubineClassifier classifier = new RubineClassifier();
+		train(classifier, examples);
+		classifier.distance("line", "circle");
+		// an example of another class changes the weights of all the classes
+		classifier.addExample("zigzag", zigzag);
+		double distance = classifier.distance("line", "circle");
+
+		RubineClassifier fresh = new RubineClassifier();
+		train(fresh, examples);
+		fresh.addExample("zigzag", zigzag);
+		assertEquals(fresh.distance("line", "circle"), distance, 1e-9 * distance);
+	}
+
+	@Test
+	public void legacyClassifiersUseTheirOwnDistance() {
+		LegacyClassifier classifier = new LegacyClassifier();
+		TestGestures.train(classifier, 3, new Random(1));
+		classifier.addExample("line", TestGestures.gesture(0, 0, new Random(2)));
+		double[][] distances = classifier.getDistances();
+		for (int i = 0; i < distances.length; i++)
+			for (int j = 0; j < distances.length; j++)
+				assertEquals(classifier.distance(classifier.getClassesNames().get(i), classifier.getClassesNames().get(j)), distances[i][j], 0);
+		assertEquals(43, distances[0][1], 0);
+	}
+
+}
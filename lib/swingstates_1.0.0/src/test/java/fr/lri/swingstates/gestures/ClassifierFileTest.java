@@ -0,0 +1,155 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.gestures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.Vector;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.lri.swingstates.gestures.dtw.DTWClassifier;
+import fr.lri.swingstates.gestures.rubine.RubineClassifier;
+import fr.lri.swingstates.gestures.shapeMatching.ShapeMatchingClassifier;
+
+public class ClassifierFileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// a classifier with a class without template and a class without examples
+	private static void fill(AbstractClassifier classifier) {
+		Random random = new Random(1);
+		TestGestures.train(classifier, 3, random);
+		classifier.addClass("no template");
+		classifier.addExample("no template", TestGestures.gesture(1, 30, random));
+		classifier.addClass("no example");
+		classifier.setTemplate("no example", TestGestures.gesture(2, 30, random).getPoints());
+		classifier.setMinimumStrokeLength(7);
+	}
+
+	private static void assertPointsEquals(Vector<Point2D> expected, Vector<Point2D> actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getX(), actual.get(i).getX(), 0);
+			assertEquals(expected.get(i).getY(), actual.get(i).getY(), 0);
+		}
+	}
+
+	private static void assertClassifierEquals(AbstractClassifier expected, AbstractClassifier actual) {
+		assertEquals(expected.getClassesNames(), actual.getClassesNames());
+		assertEquals(expected.getMinimumStrokeLength(), actual.getMinimumStrokeLength());
+		for (String name : expected.getClassesNames()) {
+			assertPointsEquals(expected.getTemplate(name), actual.getTemplate(name));
+			Vector<Gesture> expectedExamples = expected.getExamples(name);
+			Vector<Gesture> actualExamples = actual.getExamples(name);
+			assertEquals(expectedExamples.size(), actualExamples.size());
+			for (int i = 0; i < expectedExamples.size(); i++) {
+				assertPointsEquals(expectedExamples.get(i).getPoints(), actualExamples.get(i).getPoints());
+				assertEquals(expectedExamples.get(i).getPointTimes(), actualExamples.get(i).getPointTimes());
+			}
+		}
+	}
+
+	@Test
+	public void dtwClassifierRoundTrip() throws IOException {
+		DTWClassifier classifier = new DTWClassifier();
+		fill(classifier);
+		File file = folder.newFile("dtw.cl");
+		classifier.saveCompact(file);
+		assertTrue(ClassifierFile.isCompact(file));
+		DTWClassifier read = DTWClassifier.newClassifier(file);
+		assertClassifierEquals(classifier, read);
+		Gesture g = TestGestures.gesture(3, 10, new Random(2));
+		assertEquals(classifier.classify(g), read.classify(g));
+	}
+
+	@Test
+	public void shapeMatchingClassifierRoundTrip() throws IOException {
+		ShapeMatchingClassifier classifier = new ShapeMatchingClassifier();
+		fill(classifier);
+		File file = folder.newFile("shapes.cl");
+		classifier.saveCompact(file);
+		ShapeMatchingClassifier read = ShapeMatchingClassifier.newClassifier(file);
+		assertClassifierEquals(classifier, read);
+		Gesture g = TestGestures.gesture(0, 10, new Random(2));
+		assertEquals(classifier.classify(g), read.classify(g));
+	}
+
+	@Test
+	public void rubineClassifierRoundTrip() throws Exception {
+		RubineClassifier classifier = new RubineClassifier();
+		fill(classifier);
+		File file = folder.newFile("rubine.cl");
+		classifier.saveCompact(file);
+		RubineClassifier read = RubineClassifier.newClassifier(file);
+		assertClassifierEquals(classifier, read);
+		Gesture g = TestGestures.gesture(2, 10, new Random(2));
+		assertEquals(classifier.classify(g), read.classify(g));
+	}
+
+	@Test
+	public void legacyClassifiersAreReadWithoutNotifyingTheirListeners() throws IOException {
+		LegacyClassifier classifier = new LegacyClassifier();
+		fill(classifier);
+		File file = folder.newFile("legacy.cl");
+		classifier.saveCompact(file);
+		LegacyClassifier read = new LegacyClassifier();
+		final int[] notified = { 0 };
+		read.addClassifierListener(new ClassifierListener() {
+			public void classAdded(String className) {
+				notified[0]++;
+			}
+
+			public void classRemoved(String className) {
+				notified[0]++;
+			}
+
+			public void exampleAdded(String className, Gesture example) {
+				notified[0]++;
+			}
+
+			public void exampleRemoved(String className, Gesture example) {
+				notified[0]++;
+			}
+
+			public void templateSet(String className, Vector<Point2D> template) {
+				notified[0]++;
+			}
+		});
+		read.load(file);
+		assertEquals(0, notified[0]);
+		assertClassifierEquals(classifier, read);
+		// the listeners are notified again once the classifier is read
+		read.addExample("line", TestGestures.gesture(0, 0, new Random(3)));
+		assertEquals(1, notified[0]);
+	}
+
+	@Test
+	public void compactAndClassicFormatsReadTheSameClassifier() throws IOException {
+		DTWClassifier classifier = new DTWClassifier();
+		fill(classifier);
+		File compact = folder.newFile("compact.cl");
+		File classic = folder.newFile("classic.cl");
+		classifier.saveCompact(compact);
+		classifier.save(classic);
+		assertFalse(ClassifierFile.isCompact(classic));
+		assertClassifierEquals(DTWClassifier.newClassifier(classic), DTWClassifier.newClassifier(compact));
+	}
+
+}
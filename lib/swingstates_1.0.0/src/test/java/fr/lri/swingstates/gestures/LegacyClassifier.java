@@ -0,0 +1,61 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.gestures;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * A classifier that only defines the methods of <code>AbstractClassifier</code> that were
+ * abstract before the distances between classes were kept by the classifier and classifiers
+ * were saved in the compact format, for the tests of the compatibility with the classifiers
+ * written then.
+ */
+public class LegacyClassifier extends AbstractClassifier {
+
+	private HashMap<String, Vector<Gesture>> examples = new HashMap<String, Vector<Gesture>>();
+
+	protected Object read(DataInputStream in) {
+		throw new UnsupportedOperationException();
+	}
+
+	protected void write(DataOutputStream out) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void removeExample(Gesture gesture) {
+		for (Vector<Gesture> classExamples : examples.values())
+			classExamples.remove(gesture);
+	}
+
+	public void addExample(String className, Gesture example) {
+		getExamples(className).add(example);
+		fireExampleAdded(className, example);
+	}
+
+	public Vector<Gesture> getExamples(String className) {
+		if (!examples.containsKey(className))
+			examples.put(className, new Vector<Gesture>());
+		return examples.get(className);
+	}
+
+	public String classify(Gesture g) {
+		return null;
+	}
+
+	public Vector<Score> sortedClasses(Gesture g) {
+		return new Vector<Score>();
+	}
+
+	/**
+	 * @return Ten times the number of examples of the first class plus the number of examples of the second one.
+	 */
+	public double distance(String gesture1, String gesture2) {
+		return 10 * getExamples(gesture1).size() + getExamples(gesture2).size();
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.gestures;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.Vector;
+
+import org.junit.Test;
+
+import fr.lri.swingstates.gestures.dollar1.Dollar1Classifier;
+import fr.lri.swingstates.gestures.dtw.DTWClassifier;
+
+public class ParallelClassificationTest {
+
+	// classifies noisy gestures sequentially, then in parallel with the smallest grain,
+	// and checks that both give the same classes and the same sorted scores
+	private static void assertSameResults(AbstractClassifier classifier) throws Exception {
+		TestGestures.train(classifier, 20, new Random(1));
+		Random random = new Random(2);
+		for (int i = 0; i < 40; i++) {
+			Gesture g = TestGestures.gesture(i % TestGestures.SHAPES.length, 30, random);
+			classifier.setParallel(false);
+			String sequential = classifier.classify(g);
+			Vector<Score> sequentialScores = classifier.sortedClasses(g);
+			classifier.setParallel(true);
+			classifier.setParallelGrain(1);
+			assertEquals(sequential, classifier.classify(g));
+			Vector<Score> parallelScores = classifier.sortedClasses(g);
+			assertEquals(sequentialScores.size(), parallelScores.size());
+			for (int j = 0; j < sequentialScores.size(); j++) {
+				assertEquals(sequentialScores.get(j).getName(), parallelScores.get(j).getName());
+				assertEquals(sequentialScores.get(j).getScore(), parallelScores.get(j).getScore(), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void dtwClassifiesAsSequentially() throws Exception {
+		assertSameResults(new DTWClassifier());
+	}
+
+	@Test
+	public void shapeMatchingClassifiesAsSequentially() throws Exception {
+		assertSameResults(new Dollar1Classifier());
+	}
+
+}
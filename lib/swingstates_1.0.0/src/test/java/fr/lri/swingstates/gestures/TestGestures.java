@@ -0,0 +1,83 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.gestures;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * Synthetic gestures for the tests of the classifiers: a few shapes, drawn with some noise.
+ */
+public class TestGestures {
+
+	/**
+	 * The names of the shapes.
+	 */
+	public static final String[] SHAPES = { "line", "vee", "circle", "zigzag" };
+
+	/**
+	 * Draws a shape.
+	 * @param shape The index of the shape in <code>SHAPES</code>.
+	 * @param noise The maximum displacement of the points.
+	 * @param random The source of noise.
+	 * @return The gesture.
+	 */
+	public static Gesture gesture(int shape, double noise, Random random) {
+		Gesture g = new Gesture();
+		int n = 40;
+		for (int i = 0; i < n; i++) {
+			double t = i / (double) (n - 1);
+			double x, y;
+			switch (shape) {
+			case 0:
+				x = 200 * t;
+				y = 100 * t;
+				break;
+			case 1:
+				x = 200 * t;
+				y = t < 0.5 ? 200 * t : 200 * (1 - t);
+				break;
+			case 2:
+				x = 100 + 100 * Math.cos(2 * Math.PI * t);
+				y = 100 + 100 * Math.sin(2 * Math.PI * t);
+				break;
+			default:
+				x = 200 * t;
+				y = (i / 5) % 2 == 0 ? 25 * (i % 5) : 100 - 25 * (i % 5);
+				break;
+			}
+			g.addPoint(x + noise * (random.nextDouble() - 0.5), y + noise * (random.nextDouble() - 0.5));
+		}
+		return g;
+	}
+
+	/**
+	 * Adds the shapes to a classifier, with a template and a few examples each.
+	 * @param classifier The classifier.
+	 * @param examples The number of examples of each shape.
+	 * @param random The source of noise.
+	 */
+	public static void train(AbstractClassifier classifier, int examples, Random random) {
+		for (int shape = 0; shape < SHAPES.length; shape++) {
+			classifier.addClass(SHAPES[shape]);
+			classifier.setTemplate(SHAPES[shape], gesture(shape, 0, random).getPoints());
+			for (int i = 0; i < examples; i++)
+				classifier.addExample(SHAPES[shape], gesture(shape, 10, random));
+		}
+	}
+
+	/**
+	 * @param points Points.
+	 * @return A copy of the points.
+	 */
+	public static Vector<Point2D> copy(Vector<Point2D> points) {
+		Vector<Point2D> copy = new Vector<Point2D>();
+		for (Point2D p : points)
+			copy.add(new Point2D.Double(p.getX(), p.getY()));
+		return copy;
+	}
+
+}
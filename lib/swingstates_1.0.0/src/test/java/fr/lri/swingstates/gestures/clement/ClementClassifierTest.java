@@ -0,0 +1,47 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.gestures.clement;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+import java.util.Vector;
+
+import org.junit.Test;
+
+import fr.lri.swingstates.gestures.Gesture;
+import fr.lri.swingstates.gestures.GestureUtils;
+import fr.lri.swingstates.gestures.TestGestures;
+import fr.lri.swingstates.gestures.clement.optimizers.TwoDimensions.OptimizationParameters;
+import fr.lri.swingstates.gestures.clement.optimizers.TwoDimensions.UniformScaleAndRotation;
+
+public class ClementClassifierTest {
+
+	@Test
+	public void distanceOfArraysMatchesTheDistanceOfVectors() {
+		ClementClassifier classifier = new ClementClassifier();
+		Random random = new Random(1);
+		for (int i = 0; i < 10; i++) {
+			Vector<Point2D> a = classifier.normalize(TestGestures.gesture(i % 4, 10, random).getPoints());
+			Vector<Point2D> b = classifier.normalize(TestGestures.gesture((i + 1) % 4, 10, random).getPoints());
+			double expected = new UniformScaleAndRotation().optimize(new OptimizationParameters(a, b));
+			assertEquals(expected, classifier.distance(GestureUtils.asArray(a), GestureUtils.asArray(b)), 1e-9 * Math.abs(expected));
+			assertEquals(expected, classifier.distance(a, b), 1e-9 * Math.abs(expected));
+		}
+	}
+
+	@Test
+	public void classifiesTheTrainedShapes() {
+		ClementClassifier classifier = new ClementClassifier();
+		TestGestures.train(classifier, 3, new Random(1));
+		Random random = new Random(2);
+		for (int shape = 0; shape < TestGestures.SHAPES.length; shape++) {
+			Gesture g = TestGestures.gesture(shape, 5, random);
+			assertEquals(TestGestures.SHAPES[shape], classifier.classify(g));
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.gestures.dtw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.lang.ref.WeakReference;
+import java.util.Random;
+import java.util.Vector;
+
+import org.junit.Test;
+
+import fr.lri.swingstates.gestures.Gesture;
+import fr.lri.swingstates.gestures.TestGestures;
+
+public class DTWClassifierTest {
+
+	private static DTWClassifier trained() {
+		DTWClassifier classifier = new DTWClassifier();
+		TestGestures.train(classifier, 5, new Random(1));
+		return classifier;
+	}
+
+	@Test
+	public void classifiesTheNearestExample() {
+		DTWClassifier classifier = trained();
+		Random random = new Random(2);
+		for (int i = 0; i < 40; i++) {
+			int shape = i % TestGestures.SHAPES.length;
+			Gesture g = TestGestures.gesture(shape, 10, random);
+			// the class of the nearest example or template, by exhaustive search
+			String nearest = null;
+			double min = Double.POSITIVE_INFINITY;
+			for (String name : classifier.getClassesNames()) {
+				double d = classifier.distance(g, name);
+				for (Gesture example : classifier.getExamples(name))
+					d = Math.min(d, classifier.distance(g.getPoints(), example.getPoints()));
+				if (d < min) {
+					min = d;
+					nearest = name;
+				}
+			}
+			assertEquals(nearest, classifier.classify(g));
+			assertEquals(TestGestures.SHAPES[shape], nearest);
+		}
+	}
+
+	@Test
+	public void queriesAreNotCached() {
+		DTWClassifier classifier = trained();
+		Vector<Point2D> query = TestGestures.gesture(0, 10, new Random(3)).getPoints();
+		double before = classifier.distance(query, "line");
+		// a caller reusing its vector for another gesture
+		Vector<Point2D> circle = TestGestures.gesture(2, 0, new Random(3)).getPoints();
+		query.clear();
+		query.addAll(circle);
+		assertEquals(classifier.distance(circle, "line"), classifier.distance(query, "line"), 1e-9);
+		assertTrue(classifier.distance(query, "line") > before);
+		assertEquals(0, classifier.distance(query, TestGestures.copy(query)), 1e-9);
+	}
+
+	@Test
+	public void queriesAreNotRetained() throws InterruptedException {
+		DTWClassifier classifier = trained();
+		Gesture g = TestGestures.gesture(1, 10, new Random(4));
+		classifier.classify(g);
+		classifier.distance(g, "vee");
+		classifier.distance(g.getPoints(), classifier.getTemplate("line"));
+		WeakReference<Vector<Point2D>> points = new WeakReference<Vector<Point2D>>(g.getPoints());
+		g = null;
+		for (int i = 0; i < 50 && points.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertTrue(points.get() == null);
+	}
+
+	@Test
+	public void followsChangesOfTemplatesAndClasses() {
+		DTWClassifier classifier = trained();
+		Gesture circle = TestGestures.gesture(2, 10, new Random(5));
+		assertEquals("circle", classifier.classify(circle));
+		classifier.removeClass("circle");
+		assertTrue(!"circle".equals(classifier.classify(circle)));
+		classifier.addClass("round");
+		classifier.setTemplate("round", TestGestures.gesture(2, 0, new Random(6)).getPoints());
+		assertEquals("round", classifier.classify(circle));
+		// the template of a class is replaced
+		classifier.setTemplate("round", TestGestures.gesture(0, 0, new Random(6)).getPoints());
+		assertEquals(classifier.distance(circle.getPoints(), TestGestures.gesture(0, 0, new Random(6)).getPoints()),
+				classifier.distance(circle, "round"), 1e-9);
+		// the distances between classes follow the examples
+		double before = classifier.distance("vee", "round");
+		classifier.addExample("vee", TestGestures.gesture(0, 0, new Random(7)));
+		assertTrue(classifier.distance("vee", "round") < before);
+	}
+
+	@Test
+	public void classesWithoutTemplatesAreComparedByTheirExamples() {
+		DTWClassifier classifier = trained();
+		classifier.addClass("empty");
+		Gesture circle = TestGestures.gesture(2, 10, new Random(8));
+		assertEquals(Double.POSITIVE_INFINITY, classifier.distance(circle, "empty"), 0);
+		assertEquals(Double.POSITIVE_INFINITY, classifier.distance("empty", "line"), 0);
+		assertEquals(Double.POSITIVE_INFINITY, classifier.distance("line", "empty"), 0);
+		assertTrue(Double.isNaN(classifier.distance(circle, "unknown")));
+		assertEquals("circle", classifier.classify(circle));
+		classifier.addClass("round");
+		Gesture example = TestGestures.gesture(2, 0, new Random(9));
+		classifier.addExample("round", example);
+		assertEquals(classifier.distance(circle.getPoints(), example.getPoints()), classifier.distance(circle, "round"), 1e-9);
+		assertEquals(classifier.distance(example.getPoints(), classifier.getTemplate("circle")), classifier.distance("round", "circle"), 1e-9);
+		assertTrue(classifier.distance("circle", "round") < classifier.distance("line", "round"));
+		int empty = classifier.getClassesNames().indexOf("empty");
+		assertEquals(Double.POSITIVE_INFINITY, classifier.getDistances()[empty][0], 0);
+	}
+
+}
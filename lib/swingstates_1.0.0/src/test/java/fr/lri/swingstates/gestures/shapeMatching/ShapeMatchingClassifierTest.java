@@ -0,0 +1,123 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.gestures.shapeMatching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+import org.junit.Test;
+
+import fr.lri.swingstates.gestures.Gesture;
+import fr.lri.swingstates.gestures.GestureUtils;
+import fr.lri.swingstates.gestures.TestGestures;
+
+public class ShapeMatchingClassifierTest {
+
+	// a classifier that redefines the distance between arrays of coordinates
+	static class ReversibleClassifier extends ShapeMatchingClassifier {
+		int calls = 0;
+		boolean reversed = false;
+
+		public double distance(double[] inputPointsResampled1, double[] inputPointsResampled2) {
+			calls++;
+			double d = super.distance(inputPointsResampled1, inputPointsResampled2);
+			return reversed ? -d : d;
+		}
+	}
+
+	@Test
+	public void classifyUsesTheDistanceOfASubclass() {
+		ShapeMatchingClassifier reference = new ShapeMatchingClassifier();
+		ReversibleClassifier classifier = new ReversibleClassifier();
+		TestGestures.train(reference, 3, new Random(1));
+		TestGestures.train(classifier, 3, new Random(1));
+		Random random = new Random(2);
+		for (int i = 0; i < 20; i++) {
+			Gesture g = TestGestures.gesture(i % TestGestures.SHAPES.length, 10, random);
+			assertEquals(reference.classify(g), classifier.classify(g));
+		}
+		assertTrue(classifier.calls > 0);
+		// the distance between vectors is the distance of the subclass
+		Gesture line = TestGestures.gesture(0, 0, new Random(3));
+		int calls = classifier.calls;
+		classifier.distance(classifier.normalize(line), classifier.getTemplate("vee"));
+		assertEquals(calls + 1, classifier.calls);
+		// the farthest class is recognized when the distance is reversed
+		classifier.reversed = true;
+		classifier.maximumDistance = Double.MAX_VALUE;
+		assertFalse("line".equals(classifier.classify(line)));
+	}
+
+	@Test
+	public void distancesBetweenVectorsAndArraysAgree() {
+		ShapeMatchingClassifier classifier = new ShapeMatchingClassifier();
+		Random random = new Random(1);
+		double[] a = classifier.normalizeAsArray(TestGestures.gesture(1, 10, random).getPoints());
+		double[] b = classifier.normalizeAsArray(TestGestures.gesture(2, 10, random).getPoints());
+		assertEquals(classifier.distance(a, b), classifier.distance(GestureUtils.asVector(a), GestureUtils.asVector(b)), 1e-9);
+	}
+
+	@Test
+	public void resampledGesturesAreCopies() {
+		ShapeMatchingClassifier classifier = new ShapeMatchingClassifier();
+		TestGestures.train(classifier, 2, new Random(1));
+		ShapeMatchingClassifier.ResampledGestureClass vees = classifier.classes.get(1);
+		Vector<Vector<Point2D>> resampled = vees.getResampledGestures();
+		assertEquals(2, resampled.size());
+		assertEquals(0, GestureUtils.pathDistance(vees.getResampledPoints().get(1), GestureUtils.asArray(resampled.get(1))), 0);
+		Gesture circle = TestGestures.gesture(2, 0, new Random(2));
+		Vector<Point2D> points = GestureUtils.asVector(classifier.normalizeAsArray(circle.getPoints()));
+		resampled.add(points);
+		assertEquals(2, vees.getResampledPoints().size());
+		assertEquals("circle", classifier.classify(circle));
+		// an example added to the class is compared to the gestures to classify
+		vees.addResampledExample(points);
+		List<double[]> arrays = vees.getResampledPoints();
+		assertEquals(3, arrays.size());
+		assertEquals(0, GestureUtils.pathDistance(arrays.get(2), GestureUtils.asArray(points)), 0);
+		assertEquals("vee", classifier.classify(circle));
+	}
+
+	@Test
+	public void templatesAreComparedAsSetOrRead() throws Exception {
+		ShapeMatchingClassifier classifier = new ShapeMatchingClassifier();
+		TestGestures.train(classifier, 0, new Random(1));
+		Gesture g = TestGestures.gesture(1, 10, new Random(2));
+		classifier.setTemplate("line", TestGestures.gesture(2, 0, new Random(3)).getPoints());
+		double[] points = classifier.normalizeAsArray(g.getPoints());
+		double expected = GestureUtils.pathDistance(points, GestureUtils.asArray(classifier.getTemplate("line")));
+		assertEquals(expected, classifier.distance(g, "line"), 1e-9);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		classifier.write(new DataOutputStream(bytes));
+		ShapeMatchingClassifier read = new ShapeMatchingClassifier();
+		read.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(expected, read.distance(g, "line"), 1e-9);
+		assertEquals(classifier.classify(g), read.classify(g));
+	}
+
+	@Test
+	public void removingAnExampleRemovesItsResampledPoints() {
+		ShapeMatchingClassifier classifier = new ShapeMatchingClassifier();
+		TestGestures.train(classifier, 3, new Random(1));
+		ShapeMatchingClassifier.ResampledGestureClass lines = classifier.classes.get(0);
+		Gesture second = classifier.getExamples("line").get(1);
+		Vector<Point2D> third = lines.getResampledGestures().get(2);
+		classifier.removeExample(second);
+		assertEquals(2, lines.getResampledGestures().size());
+		assertEquals(2, lines.getResampledPoints().size());
+		assertEquals(0, GestureUtils.pathDistance(lines.getResampledPoints().get(1), GestureUtils.asArray(third)), 0);
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ *   Copyright (c) Universite Paris-Sud XI, 2007. All Rights Reserved
+ *   Licensed under the GNU LGPL. For full terms see the file COPYING.
+ */
+package fr.lri.swingstates.sm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Component;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EventObject;
+import java.util.List;
+
+import javax.swing.JPanel;
+
+import org.junit.Test;
+
+import fr.lri.swingstates.events.VirtualEvent;
+import fr.lri.swingstates.sm.transitions.Click;
+import fr.lri.swingstates.sm.transitions.Drag;
+import fr.lri.swingstates.sm.transitions.Enter;
+import fr.lri.swingstates.sm.transitions.Event;
+import fr.lri.swingstates.sm.transitions.KeyPress;
+import fr.lri.swingstates.sm.transitions.KeyRelease;
+import fr.lri.swingstates.sm.transitions.KeyType;
+import fr.lri.swingstates.sm.transitions.Leave;
+import fr.lri.swingstates.sm.transitions.Move;
+import fr.lri.swingstates.sm.transitions.Press;
+import fr.lri.swingstates.sm.transitions.Release;
+import fr.lri.swingstates.sm.transitions.Wheel;
+
+public class StateDispatchTest {
+
+	private static final Component SOURCE = new JPanel();
+
+	// mouse and key events of every ID, with and without a button or a modifier
+	private static List<EventObject> events() {
+		List<EventObject> events = new ArrayList<EventObject>();
+		for (int id = MouseEvent.MOUSE_FIRST; id <= MouseEvent.MOUSE_LAST; id++) {
+			if (id == MouseEvent.MOUSE_WHEEL) {
+				events.add(new MouseWheelEvent(SOURCE, id, 0, 0, 5, 5, 0, false, MouseWheelEvent.WHEEL_UNIT_SCROLL, 1, 1));
+				events.add(new MouseWheelEvent(SOURCE, id, 0, InputEvent.SHIFT_DOWN_MASK, 5, 5, 0, false, MouseWheelEvent.WHEEL_UNIT_SCROLL, 1, 1));
+			} else {
+				events.add(new MouseEvent(SOURCE, id, 0, InputEvent.BUTTON1_DOWN_MASK, 5, 5, 1, false, MouseEvent.BUTTON1));
+				events.add(new MouseEvent(SOURCE, id, 0, InputEvent.BUTTON3_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK, 5, 5, 1, false, MouseEvent.BUTTON3));
+				events.add(new MouseEvent(SOURCE, id, 0, 0, 5, 5, 0, false, MouseEvent.NOBUTTON));
+			}
+		}
+		for (int id = KeyEvent.KEY_FIRST; id <= KeyEvent.KEY_LAST; id++) {
+			if (id == KeyEvent.KEY_TYPED) {
+				events.add(new KeyEvent(SOURCE, id, 0, 0, KeyEvent.VK_UNDEFINED, 'a'));
+			} else {
+				events.add(new KeyEvent(SOURCE, id, 0, 0, KeyEvent.VK_A, 'a'));
+				events.add(new KeyEvent(SOURCE, id, 0, InputEvent.SHIFT_DOWN_MASK, KeyEvent.VK_B, 'B'));
+			}
+		}
+		events.add(new VirtualEvent("virtual"));
+		return events;
+	}
+
+	// the transitions of a state that match an event, in the order of the state
+	private static List<Transition> matching(State state, EventObject event) {
+		List<Transition> matching = new ArrayList<Transition>();
+		for (Transition t : state.getTransitions())
+			if (t.matches(event))
+				matching.add(t);
+		return matching;
+	}
+
+	// the candidates of a state that match an event must be all the transitions that match it, in the same order
+	private static void assertDispatch(State state) {
+		for (EventObject event : events())
+			assertEquals(event.toString(), matching(state, event), matching(state, Arrays.asList(state.getCandidateTransitions(event)), event));
+	}
+
+	private static List<Transition> matching(State state, List<Transition> candidates, EventObject event) {
+		List<Transition> matching = new ArrayList<Transition>();
+		for (Transition t : candidates) {
+			assertTrue(state.getTransitions().contains(t));
+			if (t.matches(event))
+				matching.add(t);
+		}
+		return matching;
+	}
+
+	@Test
+	public void candidatesAreTheTransitionsThatMatch() {
+		State state = new State() { };
+		Transition[] transitions = {
+			new Press(BasicInputStateMachine.BUTTON1), new Release(), new Click(BasicInputStateMachine.BUTTON3, BasicInputStateMachine.SHIFT),
+			new Drag(), new Move(), new Enter(), new Leave(), new Wheel(), new Wheel(BasicInputStateMachine.SHIFT),
+			new KeyPress(KeyEvent.VK_A), new KeyRelease(), new KeyType('a'), new Event("virtual"), new Press()
+		};
+		for (int i = 0; i < transitions.length; i++)
+			state.addTransition(transitions[i]);
+		assertDispatch(state);
+		// only the transitions that manage the ID of an event are candidates,
+		// and those that do not declare the IDs they manage, such as Event
+		MouseEvent press = new MouseEvent(SOURCE, MouseEvent.MOUSE_PRESSED, 0, 0, 5, 5, 1, false, MouseEvent.BUTTON1);
+		assertEquals(Arrays.asList(transitions[0], transitions[12], transitions[13]), Arrays.asList(state.getCandidateTransitions(press)));
+	}
+
+	@Test
+	public void redefinedMatchesKeepsTheTransitionACandidate() {
+		State state = new State() { };
+		Transition anyMouseEvent = new Press() {
+			public boolean matches(EventObject event) {
+				return event instanceof MouseEvent;
+			}
+		};
+		state.addTransition(new Release());
+		state.addTransition(anyMouseEvent);
+		assertDispatch(state);
+		MouseEvent move = new MouseEvent(SOURCE, MouseEvent.MOUSE_MOVED, 0, 0, 5, 5, 0, false, MouseEvent.NOBUTTON);
+		assertEquals(Arrays.asList(anyMouseEvent), Arrays.asList(state.getCandidateTransitions(move)));
+	}
+
+	@Test
+	public void tablesFollowTheChangesOfTheTransitions() {
+		State state = new State() { };
+		Transition release = new Release();
+		state.addTransition(new Press());
+		state.buildDispatchTables();
+		assertFalse(state.hasTransitionOfClass(Release.class));
+		state.addTransition(release);
+		assertTrue(state.hasTransitionOfClass(Release.class));
+		assertDispatch(state);
+		state.removeTransition(release);
+		assertFalse(state.hasTransitionOfClass(new Class<?>[] { Release.class, Drag.class }));
+		assertDispatch(state);
+		state.getTransitions().set(0, new Drag());
+		assertTrue(state.hasTransitionOfClass(new Class<?>[] { Release.class, Drag.class }));
+		assertDispatch(state);
+	}
+
+}
@@ -0,0 +1,70 @@
+package e214.skeleton ;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.lri.swingstates.canvas.CExtensionalTag;
+import fr.lri.swingstates.canvas.CShape;
+
+/**
+ * The attachments of shapes to magnetic guides, per axis: a shape attached to an
+ * horizontal guide follows its vertical moves, a shape attached to a vertical guide
+ * follows its horizontal moves, and a shape can be attached to one guide of each.
+ * The shapes attached to a guide are tagged by this guide, so moving the guide moves
+ * them in one batched update of the canvas, along the axis of the move only.
+ */
+public class Attachments<G extends CExtensionalTag & Guide> {
+
+    private Map<CShape, G> horizontal = new HashMap<CShape, G>();
+    private Map<CShape, G> vertical = new HashMap<CShape, G>();
+
+    private Map<CShape, G> attachments(boolean h) {
+	   return h ? horizontal : vertical ;
+    }
+
+    /** Attaches a shape to a guide, detaching it from the guide of the same orientation if any */
+    public void attach(CShape shape, G g) {
+	   G previous = attachments(g.isHorizontal()).put(shape, g) ;
+	   if (previous == g) return ;
+	   if (previous != null) previous.removeFrom(shape) ;
+	   g.addTo(shape) ;
+    }
+
+    /** Detaches a shape from its guides */
+    public void detach(CShape shape) {
+	   G h = horizontal.remove(shape) ;
+	   if (h != null) h.removeFrom(shape) ;
+	   G v = vertical.remove(shape) ;
+	   if (v != null) v.removeFrom(shape) ;
+    }
+
+    /** Detaches all the shapes attached to a guide */
+    public void detachAll(G g) {
+	   List<CShape> shapes = new ArrayList<CShape>() ;
+	   for (g.reset(); g.hasNext();)
+		  shapes.add(g.nextShape()) ;
+	   Map<CShape, G> attachments = attachments(g.isHorizontal()) ;
+	   for (CShape shape : shapes) {
+		  attachments.remove(shape) ;
+		  g.removeFrom(shape) ;
+	   }
+    }
+
+    /**
+     * @param shape The shape
+     * @param h True for the horizontal guide, false for the vertical one
+     * @return The guide of the given orientation the shape is attached to, null if none
+     */
+    public G guideOf(CShape shape, boolean h) {
+	   return attachments(h).get(shape) ;
+    }
+
+    /** Moves the shapes attached to a guide that has moved by d across its direction */
+    public void guideMoved(G g, double d) {
+	   if (g.isHorizontal()) g.translateBy(0, d) ;
+	   else g.translateBy(d, 0) ;
+    }
+
+}
@@ -0,0 +1,15 @@
+package e214.skeleton ;
+
+/**
+ * A magnetic guide, as seen by the guide index and the attachments:
+ * an horizontal or vertical line at a given position.
+ */
+public interface Guide {
+
+    /** @return True for an horizontal guide, false for a vertical one */
+    boolean isHorizontal();
+
+    /** @return The y coordinate of an horizontal guide, the x coordinate of a vertical one */
+    double getPosition();
+
+}
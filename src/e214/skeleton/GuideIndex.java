@@ -0,0 +1,62 @@
+package e214.skeleton ;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The magnetic guides sorted by position: horizontal guides by y, vertical
+ * guides by x. Finding the nearest guide of a point, adding, removing or
+ * moving a guide take O(log n), so snapping can be computed on every drag.
+ */
+public class GuideIndex<G extends Guide> {
+
+    private TreeMap<Double, List<G>> horizontal = new TreeMap<Double, List<G>>();
+    private TreeMap<Double, List<G>> vertical = new TreeMap<Double, List<G>>();
+
+    private TreeMap<Double, List<G>> guides(boolean h) {
+	   return h ? horizontal : vertical ;
+    }
+
+    /** Adds a guide at its current position */
+    public void add(G g) {
+	   TreeMap<Double, List<G>> guides = guides(g.isHorizontal()) ;
+	   List<G> atPosition = guides.get(g.getPosition()) ;
+	   if (atPosition == null) {
+		  atPosition = new ArrayList<G>(1) ;
+		  guides.put(g.getPosition(), atPosition) ;
+	   }
+	   atPosition.add(g) ;
+    }
+
+    /** Removes a guide, which must not have moved since it was added */
+    public void remove(G g) {
+	   TreeMap<Double, List<G>> guides = guides(g.isHorizontal()) ;
+	   List<G> atPosition = guides.get(g.getPosition()) ;
+	   if (atPosition == null) return ;
+	   atPosition.remove(g) ;
+	   if (atPosition.isEmpty()) guides.remove(g.getPosition()) ;
+    }
+
+    /**
+     * Returns the nearest guide of a given orientation. Of two guides at the same
+     * distance, the one below the position is returned; of several guides at the
+     * same position, the one added last.
+     * @param h True for an horizontal guide, false for a vertical one
+     * @param position The y coordinate for an horizontal guide, the x coordinate for a vertical one
+     * @param maxDistance The maximum distance between the guide and the position
+     * @return The nearest guide, or null if no guide is within maxDistance
+     */
+    public G nearest(boolean h, double position, double maxDistance) {
+	   TreeMap<Double, List<G>> guides = guides(h) ;
+	   Map.Entry<Double, List<G>> below = guides.floorEntry(position) ;
+	   Map.Entry<Double, List<G>> above = guides.ceilingEntry(position) ;
+	   Map.Entry<Double, List<G>> nearest = below ;
+	   if (nearest == null || (above != null && above.getKey() - position < position - below.getKey()))
+		  nearest = above ;
+	   if (nearest == null || Math.abs(nearest.getKey() - position) > maxDistance) return null ;
+	   return nearest.getValue().get(nearest.getValue().size() - 1) ;
+    }
+
+}
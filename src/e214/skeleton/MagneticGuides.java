@@ -2,8 +2,11 @@ package e214.skeleton ;
 
 import java.awt.Color;
 import java.awt.geom.Point2D;
+import java.awt.Paint;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.JFrame;
 
@@ -34,6 +37,11 @@ public class MagneticGuides extends JFrame {
     private CStateMachine sm;
     private boolean trace, hidden;
     private List<MagneticGuide> allGuides;
+    private GuideIndex<MagneticGuide> guideIndex;
+    private Map<CShape, MagneticGuide> guideOfSegment;
+    private Attachments<MagneticGuide> attachments;
+    // the distance in pixels under which the center of a square snaps to a guide
+    private static final double SNAP_DISTANCE = 10;
 
     /** Constructor */
     public MagneticGuides(String title, int width, int height) {
@@ -47,13 +55,22 @@ public class MagneticGuides extends JFrame {
 	   oTag = new CExtensionalTag(canvas) {} ;
 	   hGuide = new CExtensionalTag(canvas) {};
 	   vGuide = new CExtensionalTag(canvas) {};
+	   // guides are cached offscreen, below the objects dragged over them
+	   canvas.addLayer(hGuide) ;
+	   canvas.addLayer(vGuide) ;
 	   
 	   allGuides = new ArrayList<MagneticGuide>();
+	   guideIndex = new GuideIndex<MagneticGuide>();
+	   guideOfSegment = new HashMap<CShape, MagneticGuide>();
+	   attachments = new Attachments<MagneticGuide>();
 
 	   //StateMachine
 	   sm = new CStateMachine() {
 			 private Point2D p ;
 			 private CShape draggedShape ;
+			 private MagneticGuide draggedGuide ;
+			 // the guides the dragged square would snap to if it was released
+			 private MagneticGuide hSnap, vSnap ;
 
 			 //when nothing happen
 			 public State start = new State() {
@@ -62,51 +79,54 @@ public class MagneticGuides extends JFrame {
 							 p = getPoint() ;
 							 draggedShape = getShape() ;
 							 draggedShape.aboveAll();
+							 attachments.detach(draggedShape) ;
 						  }
 					 };
 					 
 					 Transition pressOnHGuide = new PressOnTag(hGuide, BUTTON1, ">> hDrag") {
 						  public void action() {
 							 p = getPoint() ;
-							 draggedShape = getShape();
+							 draggedGuide = guideOfSegment.get(getShape());
 						  }
 					 };
 					 
 					 Transition deleteHGuide = new PressOnTag(hGuide, BUTTON2){
 						 public void action(){
-							 allGuides.remove(getShape());
-							 getShape().remove();
+							 guideOfSegment.get(getShape()).delete();
 						 }
 					 };
 					 
 					 Transition pressOnVGuide = new PressOnTag(vGuide, BUTTON1, ">> vDrag") {
 						  public void action() {
 							 p = getPoint() ;
-							 draggedShape = getShape() ;
+							 draggedGuide = guideOfSegment.get(getShape()) ;
 						  }
 					 };
 					 
 					 Transition deleteVGuide = new PressOnTag(vGuide, BUTTON2){
 						 public void action(){
-							 allGuides.remove(getShape());
-							 getShape().remove();
+							 guideOfSegment.get(getShape()).delete();
 						 }
 					 };
 					   
 					 Transition click = new Press(BUTTON1) {
     					public void action() {
     						p = getPoint();
-    						MagneticGuide g = new MagneticGuide(canvas, p, trace);
+    						new MagneticGuide(canvas, p, trace);
     						trace = !trace;
-    						allGuides.add(g);
     					}
     				};
     				
     				Transition hideGuides = new Press(BUTTON3){
     					public void action(){
-    						for(MagneticGuide g : allGuides) {
-    							g.hidde(hidden);
-    						}
+    						// one repaint for all the guides
+    						canvas.batch(new Runnable() {
+    							public void run() {
+    								for(MagneticGuide g : allGuides) {
+    									g.hidde(hidden);
+    								}
+    							}
+    						});
     						hidden = !hidden;
     					}
     				};
@@ -117,7 +137,7 @@ public class MagneticGuides extends JFrame {
 				Transition Gdrag = new Drag(BUTTON1) {
 					public void action() {
 							Point2D q = getPoint() ;
-							draggedShape.translateBy(0, q.getY() - p.getY()) ;
+							draggedGuide.moveBy(q.getY() - p.getY()) ;
 							p = q ;
 					}
 				};
@@ -130,7 +150,7 @@ public class MagneticGuides extends JFrame {
 				Transition Gdrag = new Drag(BUTTON1) {
 					public void action() {
 							Point2D q = getPoint() ;
-							draggedShape.translateBy(q.getX() - p.getX(), 0) ;
+							draggedGuide.moveBy(q.getX() - p.getX()) ;
 							p = q ;
 					}
 				};
@@ -145,22 +165,45 @@ public class MagneticGuides extends JFrame {
 							 Point2D q = getPoint() ;
 							 draggedShape.translateBy(q.getX() - p.getX(), q.getY() - p.getY()) ;
 							 p = q ;
+							 updateSnap() ;
 						  }
 				   } ;
 				   
 				   Transition release = new Release(BUTTON1, ">> start") {
 					   public void action() {
+						   updateSnap() ;
 						   Point2D shapeCenter = getShapeCenter(draggedShape);
-						   List<CShape> guides = canvas.pickAll(shapeCenter);
-						   if (!guides.isEmpty()){
-							   guides.remove(draggedShape);
-							   System.out.println(guides.size());
-							   for(CShape shape : guides)
-								   if(shape instanceof CSegment)
-									   shape.addChild(draggedShape);
+						   if (hSnap != null) {
+							   draggedShape.translateBy(0, hSnap.getPosition() - shapeCenter.getY()) ;
+							   attachments.attach(draggedShape, hSnap) ;
+							   hSnap.highlight(false) ;
+						   }
+						   if (vSnap != null) {
+							   draggedShape.translateBy(vSnap.getPosition() - shapeCenter.getX(), 0) ;
+							   attachments.attach(draggedShape, vSnap) ;
+							   vSnap.highlight(false) ;
 						   }
+						   hSnap = null ;
+						   vSnap = null ;
 					   }
 				   };
+				   
+				   // highlights the nearest horizontal and vertical guides of the dragged square
+				   private void updateSnap() {
+					   Point2D shapeCenter = getShapeCenter(draggedShape);
+					   MagneticGuide h = hidden ? null : guideIndex.nearest(true, shapeCenter.getY(), SNAP_DISTANCE) ;
+					   MagneticGuide v = hidden ? null : guideIndex.nearest(false, shapeCenter.getX(), SNAP_DISTANCE) ;
+					   if (h != hSnap) {
+						   if (hSnap != null) hSnap.highlight(false) ;
+						   if (h != null) h.highlight(true) ;
+						   hSnap = h ;
+					   }
+					   if (v != vSnap) {
+						   if (vSnap != null) vSnap.highlight(false) ;
+						   if (v != null) v.highlight(true) ;
+						   vSnap = v ;
+					   }
+				   }
 				} ;
 
 		  } ;
@@ -205,18 +248,67 @@ public class MagneticGuides extends JFrame {
 	   visual.setVisible(true);
     }
     
-    public class MagneticGuide extends CExtensionalTag {
+    public class MagneticGuide extends CExtensionalTag implements Guide {
     	
     	CSegment seg;
+    	boolean horizontal;
+    	// the y coordinate of an horizontal guide, the x coordinate of a vertical one
+    	double position;
+    	Paint paint;
     	
     	public MagneticGuide(Canvas canva, Point2D p, boolean trace) {
+    		horizontal = trace;
     		if(trace){
+    			position = p.getY();
     			seg = canva.newSegment(0.0, p.getY(), 2000.0, p.getY());
     			seg.addTag(hGuide);
     		} else{
+    			position = p.getX();
     			seg = canva.newSegment(p.getX(), 0.0, p.getX(), 2000.0);
     			seg.addTag(vGuide);
     		}
+    		paint = seg.getOutlinePaint();
+    		allGuides.add(this);
+    		guideOfSegment.put(seg, this);
+    		guideIndex.add(this);
+    	}
+    	
+    	public boolean isHorizontal() {
+    		return horizontal;
+    	}
+    	
+    	public double getPosition() {
+    		return position;
+    	}
+    	
+    	/** Moves this guide and the squares attached to it, across its direction */
+    	public void moveBy(double d) {
+    		guideIndex.remove(this);
+    		position += d;
+    		guideIndex.add(this);
+    		seg.getCanvas().beginBatch();
+    		try {
+    			if(horizontal)
+    				seg.translateBy(0, d);
+    			else
+    				seg.translateBy(d, 0);
+    			attachments.guideMoved(this, d);
+    		} finally {
+    			seg.getCanvas().endBatch();
+    		}
+    	}
+    	
+    	public void highlight(boolean b) {
+    		seg.setOutlinePaint(b ? Color.RED : paint);
+    	}
+    	
+    	/** Removes this guide, the squares attached to it stay where they are */
+    	public void delete() {
+    		attachments.detachAll(this);
+    		guideIndex.remove(this);
+    		guideOfSegment.remove(seg);
+    		allGuides.remove(this);
+    		seg.remove();
     	}
     	
     	public void hidde(Boolean b) {
@@ -0,0 +1,90 @@
+package e214.skeleton ;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import fr.lri.swingstates.canvas.CExtensionalTag;
+import fr.lri.swingstates.canvas.CShape;
+import fr.lri.swingstates.canvas.Canvas;
+
+public class AttachmentsTest {
+
+    private static class Line extends CExtensionalTag implements Guide {
+	   final boolean horizontal ;
+
+	   Line(Canvas canvas, boolean horizontal) {
+		  super(canvas) ;
+		  this.horizontal = horizontal ;
+	   }
+
+	   public boolean isHorizontal() {
+		  return horizontal ;
+	   }
+
+	   public double getPosition() {
+		  return 0 ;
+	   }
+    }
+
+    private static void assertAt(CShape shape, double x, double y) {
+	   assertEquals(x, shape.getMinX(), 1e-9) ;
+	   assertEquals(y, shape.getMinY(), 1e-9) ;
+    }
+
+    @Test
+    public void shapesFollowTheMovesAcrossTheirGuidesOnly() {
+	   Canvas canvas = new Canvas(400, 400) ;
+	   Line h = new Line(canvas, true) ;
+	   Line v = new Line(canvas, false) ;
+	   Attachments<Line> attachments = new Attachments<Line>() ;
+	   CShape both = canvas.newRectangle(0, 0, 10, 10) ;
+	   CShape vertical = canvas.newRectangle(100, 100, 10, 10) ;
+	   CShape free = canvas.newRectangle(200, 200, 10, 10) ;
+	   attachments.attach(both, h) ;
+	   attachments.attach(both, v) ;
+	   attachments.attach(vertical, v) ;
+	   attachments.guideMoved(h, 20) ;
+	   assertAt(both, 0, 20) ;
+	   assertAt(vertical, 100, 100) ;
+	   attachments.guideMoved(v, -5) ;
+	   assertAt(both, -5, 20) ;
+	   assertAt(vertical, 95, 100) ;
+	   assertAt(free, 200, 200) ;
+    }
+
+    @Test
+    public void aShapeHasOneGuidePerOrientation() {
+	   Canvas canvas = new Canvas(400, 400) ;
+	   Line h1 = new Line(canvas, true) ;
+	   Line h2 = new Line(canvas, true) ;
+	   Line v = new Line(canvas, false) ;
+	   Attachments<Line> attachments = new Attachments<Line>() ;
+	   CShape shape = canvas.newRectangle(0, 0, 10, 10) ;
+	   attachments.attach(shape, h1) ;
+	   attachments.attach(shape, v) ;
+	   attachments.attach(shape, h2) ;
+	   assertSame(h2, attachments.guideOf(shape, true)) ;
+	   assertSame(v, attachments.guideOf(shape, false)) ;
+	   assertFalse(h1.tagsShape(shape)) ;
+	   attachments.guideMoved(h1, 10) ;
+	   assertAt(shape, 0, 0) ;
+	   attachments.guideMoved(h2, 10) ;
+	   assertAt(shape, 0, 10) ;
+	   // detaching all the shapes of a guide keeps their other guide
+	   attachments.detachAll(h2) ;
+	   assertNull(attachments.guideOf(shape, true)) ;
+	   assertTrue(v.tagsShape(shape)) ;
+	   attachments.guideMoved(v, 10) ;
+	   assertAt(shape, 10, 10) ;
+	   attachments.detach(shape) ;
+	   assertNull(attachments.guideOf(shape, false)) ;
+	   attachments.guideMoved(v, 10) ;
+	   assertAt(shape, 10, 10) ;
+    }
+
+}
@@ -0,0 +1,78 @@
+package e214.skeleton ;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class GuideIndexTest {
+
+    private static class Line implements Guide {
+	   final boolean horizontal ;
+	   double position ;
+
+	   Line(boolean horizontal, double position) {
+		  this.horizontal = horizontal ;
+		  this.position = position ;
+	   }
+
+	   public boolean isHorizontal() {
+		  return horizontal ;
+	   }
+
+	   public double getPosition() {
+		  return position ;
+	   }
+    }
+
+    private static Line add(GuideIndex<Line> index, boolean h, double position) {
+	   Line l = new Line(h, position) ;
+	   index.add(l) ;
+	   return l ;
+    }
+
+    @Test
+    public void nearestGuideWithinDistance() {
+	   GuideIndex<Line> index = new GuideIndex<Line>() ;
+	   Line h100 = add(index, true, 100) ;
+	   Line h200 = add(index, true, 200) ;
+	   Line v150 = add(index, false, 150) ;
+	   assertSame(h100, index.nearest(true, 108, 10)) ;
+	   assertSame(h200, index.nearest(true, 155, 50)) ;
+	   assertSame(h100, index.nearest(true, 0, 100)) ;
+	   assertNull(index.nearest(true, 0, 99)) ;
+	   assertSame(h200, index.nearest(true, 1000, 800)) ;
+	   // the orientations are indexed apart
+	   assertSame(v150, index.nearest(false, 100, 50)) ;
+	   assertNull(index.nearest(false, 100, 49)) ;
+    }
+
+    @Test
+    public void tiesGoToTheGuideBelowThenToTheLastAdded() {
+	   GuideIndex<Line> index = new GuideIndex<Line>() ;
+	   Line below = add(index, true, 90) ;
+	   Line above = add(index, true, 110) ;
+	   assertSame(below, index.nearest(true, 100, 10)) ;
+	   assertSame(above, index.nearest(true, 100.5, 10)) ;
+	   Line first = add(index, false, 50) ;
+	   Line last = add(index, false, 50) ;
+	   assertSame(last, index.nearest(false, 52, 10)) ;
+	   index.remove(last) ;
+	   assertSame(first, index.nearest(false, 52, 10)) ;
+	   index.remove(first) ;
+	   assertNull(index.nearest(false, 52, 10)) ;
+    }
+
+    @Test
+    public void movedGuidesAreFoundAtTheirNewPosition() {
+	   GuideIndex<Line> index = new GuideIndex<Line>() ;
+	   Line moved = add(index, true, 100) ;
+	   Line other = add(index, true, 140) ;
+	   index.remove(moved) ;
+	   moved.position = 300 ;
+	   index.add(moved) ;
+	   assertSame(other, index.nearest(true, 110, 50)) ;
+	   assertSame(moved, index.nearest(true, 290, 10)) ;
+    }
+
+}